@@ -16,6 +16,9 @@
  */
 package org.wicketstuff.rest;
 
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPOutputStream;
+
 import org.apache.wicket.util.tester.WicketTester;
 import org.junit.Assert;
 import org.junit.Before;
@@ -56,4 +59,28 @@ public class TestPersonResource extends Assert
 		
 		assertTrue(tester.getLastResponseAsString().contains(jsonObj));
 	}
+
+	@Test
+	public void testCreatePersonWithCompressedBody() throws Exception
+	{
+		BufferedMockRequest mockRequest = new BufferedMockRequest(tester.getApplication(), tester.getHttpSession(),
+				tester.getServletContext(), "POST");
+		String jsonObj = gson.toJson(new PersonPojo("Jane", "Smith", "gzipped"));
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream outputStream = new GZIPOutputStream(compressed);
+		
+		outputStream.write(jsonObj.getBytes("UTF-8"));
+		outputStream.close();
+		
+		mockRequest.setBinaryRequestBody(compressed.toByteArray());
+		mockRequest.setHeader("Content-Encoding", "gzip");
+		
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./personsmanager/persons");
+		
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./personsmanager/persons");
+		
+		assertTrue(tester.getLastResponseAsString().contains(jsonObj));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to limit the number of concurrent invocations of a method with a
+ * limit that adapts to its latency. The latency of every invocation is
+ * compared with the minimum one observed: while they are close the limit
+ * grows, when latency rises (i.e. requests start queuing somewhere) the limit
+ * is lowered. Requests exceeding the current limit are rejected with error
+ * 503 and header 'Retry-After', before their parameters are bound and their
+ * body is read.<br/>
+ * The annotation can't be used with methods returning an {@link java.util.Iterator}
+ * or an {@link org.wicketstuff.rest.utils.sse.EventBroadcaster}, as the
+ * duration of a stream doesn't tell anything about the load of the server.
+ * 
+ * @author andrea del bene
+ * 
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD })
+@Inherited
+public @interface AdaptiveConcurrency {
+	/**
+	 * Gets the limit used before any latency has been measured.
+	 * 
+	 * @return the initial limit. The default value is 20.
+	 */
+	int initialLimit() default 20;
+
+	/**
+	 * Gets the lowest value of the limit.
+	 * 
+	 * @return the min limit. The default value is 1.
+	 */
+	int minLimit() default 1;
+
+	/**
+	 * Gets the highest value of the limit.
+	 * 
+	 * @return the max limit. The default value is 200.
+	 */
+	int maxLimit() default 200;
+
+	/**
+	 * Gets how many times the latency can exceed the minimum one before the
+	 * limit is lowered.
+	 * 
+	 * @return the latency tolerance. The default value is 1.5.
+	 */
+	double tolerance() default 1.5;
+
+	/**
+	 * Gets the value (in seconds) of header 'Retry-After' sent with the
+	 * rejected requests.
+	 * 
+	 * @return the delay suggested to the client. The default value is 1
+	 *         second.
+	 */
+	int retryAfter() default 1;
+}
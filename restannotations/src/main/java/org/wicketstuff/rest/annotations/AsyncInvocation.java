@@ -0,0 +1,41 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to invoke a mapped method (or, if used on a resource class, all
+ * its mapped methods) on the method executor of the resource (see
+ * {@link org.wicketstuff.rest.resource.AbstractRestResource#setMethodExecutor(java.util.concurrent.ExecutorService)}).
+ * The Wicket thread context is propagated to the executing thread and the
+ * invocation is bounded by the async result timeout: when it expires the
+ * executing thread is interrupted and a 504 HTTP code is returned. It's meant
+ * for methods that perform blocking calls which might hang.
+ * 
+ * @author andrea del bene
+ * 
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Inherited
+public @interface AsyncInvocation {
+}
@@ -0,0 +1,70 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to limit the number of concurrent invocations of a method, so
+ * that a slow method can't take all the threads of the container. Requests
+ * exceeding the limit can wait in a short queue for a free permit; if the
+ * queue is full or the wait times out, they are rejected with error 503 and
+ * header 'Retry-After', before their parameters are bound and their body is
+ * read.
+ * 
+ * @author andrea del bene
+ * 
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD })
+@Inherited
+public @interface Bulkhead {
+	/**
+	 * Gets the max number of concurrent invocations of the method.
+	 * 
+	 * @return the max number of concurrent invocations.
+	 */
+	int value();
+
+	/**
+	 * Gets the max number of requests that can wait for a free permit.
+	 * 
+	 * @return the size of the wait queue. The default value is 0, i.e.
+	 *         excess requests are rejected right away.
+	 */
+	int maxWaiting() default 0;
+
+	/**
+	 * Gets the max time (in milliseconds) a request waits for a free permit.
+	 * 
+	 * @return the max waiting time. The default value is 100 milliseconds.
+	 */
+	long maxWaitTime() default 100;
+
+	/**
+	 * Gets the value (in seconds) of header 'Retry-After' sent with the
+	 * rejected requests.
+	 * 
+	 * @return the delay suggested to the client. The default value is 1
+	 *         second.
+	 */
+	int retryAfter() default 1;
+}
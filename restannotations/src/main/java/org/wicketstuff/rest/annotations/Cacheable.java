@@ -0,0 +1,68 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to cache the serialized response of a GET method. The cache key
+ * is built with the URL of the request, the negotiated MIME type and the
+ * optional query parameters and headers listed in this annotation. While an
+ * entry is cached, the mapped method is not invoked and its result is not
+ * serialized again.
+ * 
+ * @author andrea del bene
+ * 
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD })
+@Inherited
+public @interface Cacheable {
+	/**
+	 * Gets the name of the cache, used to invalidate its entries (see
+	 * {@link org.wicketstuff.rest.resource.AbstractRestResource#invalidateResponseCache(String)}).
+	 * 
+	 * @return the name of the cache. The name of the method is used if it's
+	 *         empty.
+	 */
+	String value() default "";
+
+	/**
+	 * Gets the time to live (in seconds) of the cached responses.
+	 * 
+	 * @return the time to live. The default value is 60 seconds.
+	 */
+	long ttl() default 60;
+
+	/**
+	 * Gets the query parameters that are part of the cache key.
+	 * 
+	 * @return the names of the query parameters.
+	 */
+	String[] queryParams() default {};
+
+	/**
+	 * Gets the request headers that are part of the cache key.
+	 * 
+	 * @return the names of the headers.
+	 */
+	String[] headers() default {};
+}
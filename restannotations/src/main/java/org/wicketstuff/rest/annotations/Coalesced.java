@@ -0,0 +1,52 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to coalesce the concurrent invocations of a GET method. While a
+ * request is being served, the identical requests that arrive (same URL,
+ * negotiated MIME type and the optional query parameters and headers listed
+ * in this annotation) wait for it to complete and receive its serialized
+ * response, instead of invoking the method again.
+ * 
+ * @author andrea del bene
+ * 
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD })
+@Inherited
+public @interface Coalesced {
+	/**
+	 * Gets the query parameters that tell two requests apart.
+	 * 
+	 * @return the names of the query parameters.
+	 */
+	String[] queryParams() default {};
+
+	/**
+	 * Gets the request headers that tell two requests apart.
+	 * 
+	 * @return the names of the headers.
+	 */
+	String[] headers() default {};
+}
@@ -27,7 +27,9 @@ import org.wicketstuff.rest.utils.http.HttpMethod;
 /**
  * Annotation used to map a resource method to a given URL.
  * The specified URL can contain parameter segment (for example '{id}') and we can
- * specify also the request method that must be used.
+ * specify also the request method that must be used.<br/>
+ * Attribute produces can list more than one MIME type: in this case the type
+ * used for the response is negotiated with the client using header 'Accept'.
  * 
  * @author andrea del bene
  * @see HttpMethod
@@ -38,5 +40,5 @@ public @interface MethodMapping {
 	String value();
 	HttpMethod httpMethod() default HttpMethod.GET;
 	String consumes() default RestMimeTypes.APPLICATION_JSON;
-	String produces() default RestMimeTypes.APPLICATION_JSON;
+	String[] produces() default RestMimeTypes.APPLICATION_JSON;
 }
@@ -0,0 +1,117 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation to limit the rate at which each client can invoke a method. Every
+ * client gets a token bucket holding up to {@link #burst()} tokens, refilled
+ * with {@link #value()} tokens per {@link #period()}: a request consumes a
+ * token and, if the bucket is empty, it's rejected with error 429 and header
+ * 'Retry-After'. Clients are told apart by their IP address, by the value of
+ * a header or by their role (see {@link KeyType}).<br/>
+ * Buckets are kept in the rate limit store of the resource.
+ * 
+ * @author andrea del bene
+ * 
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD })
+@Inherited
+public @interface RateLimited {
+	/**
+	 * The ways clients are told apart.
+	 */
+	public enum KeyType {
+		/** Clients are identified by their IP address. */
+		CLIENT_IP,
+		/**
+		 * Clients are identified by the value of header {@link RateLimited#header()}
+		 * (e.g. an API key). Requests without the header are identified by
+		 * their IP address. The header must come from a trusted source (e.g.
+		 * a key validated by a gateway): a client choosing new values at
+		 * will gets a new bucket every time.
+		 */
+		HEADER,
+		/**
+		 * Clients are identified by the first role of
+		 * {@link RateLimited#roles()} they own, as checked by the role
+		 * checking strategy of the resource, and by their user (the
+		 * authenticated principal or the HTTP session): every user has its
+		 * own bucket, so users with the same role don't consume each other's
+		 * tokens. Clients with none of the roles, or with neither a principal
+		 * nor a session, are identified by their IP address.
+		 */
+		ROLE
+	}
+
+	/**
+	 * Gets the number of requests allowed per period.
+	 * 
+	 * @return the number of tokens added to a bucket every period.
+	 */
+	int value();
+
+	/**
+	 * Gets the length of the period.
+	 * 
+	 * @return the period. The default value is 1.
+	 */
+	long period() default 1;
+
+	/**
+	 * Gets the time unit of the period.
+	 * 
+	 * @return the time unit. The default value is {@link TimeUnit#SECONDS}.
+	 */
+	TimeUnit unit() default TimeUnit.SECONDS;
+
+	/**
+	 * Gets the max number of requests a client can send in a burst.
+	 * 
+	 * @return the capacity of a bucket. The default value is 0, i.e. the
+	 *         same as {@link #value()}.
+	 */
+	int burst() default 0;
+
+	/**
+	 * Gets how clients are told apart.
+	 * 
+	 * @return the key type. The default value is {@link KeyType#CLIENT_IP}.
+	 */
+	KeyType keyType() default KeyType.CLIENT_IP;
+
+	/**
+	 * Gets the header identifying a client, used with {@link KeyType#HEADER}.
+	 * 
+	 * @return the header name.
+	 */
+	String header() default "";
+
+	/**
+	 * Gets the roles sharing a bucket, used with {@link KeyType#ROLE}.
+	 * 
+	 * @return the roles, in order of precedence.
+	 */
+	String[] roles() default {};
+}
@@ -0,0 +1,34 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.contenthandling;
+
+/**
+ * Interface for objects returned by mapped methods that carry a version. The
+ * version changes every time the content of the object changes, and it's used
+ * to build the ETag of the response without serializing the object.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public interface IVersionedObject {
+	/**
+	 * Gets the current version of the object.
+	 * 
+	 * @return the version of the object, or null if it's unknown.
+	 */
+	public String getVersion();
+}
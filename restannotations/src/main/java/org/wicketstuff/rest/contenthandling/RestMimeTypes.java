@@ -46,4 +46,6 @@ public class RestMimeTypes {
 	public static final String IMAGE_PNG = "image/png";
 	
 	public static final String OCTET_STREAM = "application/octet-stream";
+	
+	public static final String TEXT_EVENT_STREAM = "text/event-stream";
 }
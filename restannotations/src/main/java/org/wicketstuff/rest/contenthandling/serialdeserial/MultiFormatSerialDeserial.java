@@ -65,6 +65,16 @@ public class MultiFormatSerialDeserial implements IObjectSerialDeserial {
 		serialsDeserials.put(mimeType, serialDeserial);
 	}
 	
+	/**
+	 * Gets the serial/deserial registered for the given MIME type.
+	 * @param mimeType
+	 * 			the MIME type.
+	 * @return the registered serial/deserial, or null if the MIME type is not handled.
+	 */
+	public IObjectSerialDeserial getSerDeser(String mimeType){
+		return serialsDeserials.get(mimeType);
+	}
+	
 	@Override
 	public boolean isMimeTypeSupported(String mimeType){
 		return serialsDeserials.get(mimeType) != null;
@@ -86,7 +86,7 @@ public abstract class TextualObjectSerialDeserial implements IObjectSerialDeseri
 	@Override
 	public <T> T requestToObject(WebRequest request, Class<T> targetClass, String mimeType)
 			throws Exception {
-		return stringToObject(HttpUtils.readStringFromRequest(request), targetClass, mimeType);
+		return stringToObject(HttpUtils.readStringFromRequest(request, charset), targetClass, mimeType);
 	}
 
 	/* (non-Javadoc)
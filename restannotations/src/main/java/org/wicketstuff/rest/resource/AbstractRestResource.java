@@ -16,29 +16,66 @@
  */
 package org.wicketstuff.rest.resource;
 
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.Session;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
 import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.protocol.http.servlet.ServletWebRequest;
+import org.apache.wicket.request.Response;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.http.WebRequest;
 import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.request.http.flow.AbortWithHttpErrorCodeException;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.IResource;
 import org.apache.wicket.util.collections.MultiMap;
 import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Time;
+import org.wicketstuff.rest.annotations.AdaptiveConcurrency;
+import org.wicketstuff.rest.annotations.AsyncInvocation;
 import org.wicketstuff.rest.annotations.AuthorizeInvocation;
+import org.wicketstuff.rest.annotations.Bulkhead;
+import org.wicketstuff.rest.annotations.Cacheable;
+import org.wicketstuff.rest.annotations.Coalesced;
+import org.wicketstuff.rest.annotations.Deadline;
+import org.wicketstuff.rest.annotations.Idempotent;
 import org.wicketstuff.rest.annotations.MethodMapping;
+import org.wicketstuff.rest.annotations.Priority;
+import org.wicketstuff.rest.annotations.RateLimited;
+import org.wicketstuff.rest.annotations.Versioned;
 import org.wicketstuff.rest.annotations.parameters.CookieParam;
 import org.wicketstuff.rest.annotations.parameters.HeaderParam;
 import org.wicketstuff.rest.annotations.parameters.MatrixParam;
@@ -46,12 +83,50 @@ import org.wicketstuff.rest.annotations.parameters.PathParam;
 import org.wicketstuff.rest.annotations.parameters.RequestBody;
 import org.wicketstuff.rest.annotations.parameters.RequestParam;
 import org.wicketstuff.rest.contenthandling.IObjectSerialDeserial;
+import org.wicketstuff.rest.contenthandling.IVersionedObject;
 import org.wicketstuff.rest.contenthandling.RestMimeTypes;
+import org.wicketstuff.rest.contenthandling.serialdeserial.MultiFormatSerialDeserial;
 import org.wicketstuff.rest.resource.urlsegments.AbstractURLSegment;
+import org.wicketstuff.rest.utils.batch.BatchProcessor;
+import org.wicketstuff.rest.utils.batch.BatchRequest;
+import org.wicketstuff.rest.utils.batch.BatchResponse;
+import org.wicketstuff.rest.utils.batch.BatchRoute;
+import org.wicketstuff.rest.utils.cache.CachedResponse;
+import org.wicketstuff.rest.utils.cache.IResponseCacheStore;
+import org.wicketstuff.rest.utils.cache.IdempotentResponses;
+import org.wicketstuff.rest.utils.cache.MemoryResponseCacheStore;
+import org.wicketstuff.rest.utils.cache.RecordedResponse;
+import org.wicketstuff.rest.utils.cache.RequestCoalescer;
+import org.wicketstuff.rest.utils.cache.ResponseCache;
+import org.wicketstuff.rest.utils.cache.SerializedObjectCache;
+import org.wicketstuff.rest.utils.concurrent.AdaptiveConcurrencyLimit;
+import org.wicketstuff.rest.utils.concurrent.ContextPropagatingCallable;
+import org.wicketstuff.rest.utils.concurrent.DeadlineCallable;
+import org.wicketstuff.rest.utils.concurrent.HeldPermits;
+import org.wicketstuff.rest.utils.concurrent.InvocationPermits;
+import org.wicketstuff.rest.utils.concurrent.NamedThreadFactory;
+import org.wicketstuff.rest.utils.concurrent.PriorityScheduler;
+import org.wicketstuff.rest.utils.concurrent.StreamPublisher;
+import org.wicketstuff.rest.utils.http.ByteArrayPool;
+import org.wicketstuff.rest.utils.http.CapturingWebResponse;
+import org.wicketstuff.rest.utils.http.CompressedContentCache;
+import org.wicketstuff.rest.utils.http.CompressingWebResponse;
+import org.wicketstuff.rest.utils.http.ContentLengthWebResponse;
+import org.wicketstuff.rest.utils.http.DecompressingHttpServletRequest;
 import org.wicketstuff.rest.utils.http.HttpMethod;
 import org.wicketstuff.rest.utils.http.HttpUtils;
+import org.wicketstuff.rest.utils.http.RecordingWebResponse;
+import org.wicketstuff.rest.utils.http.RequestBodyTooLargeException;
+import org.wicketstuff.rest.utils.http.StreamingWebResponse;
+import org.wicketstuff.rest.utils.http.VirtualHttpServletRequest;
+import org.wicketstuff.rest.utils.ratelimit.IRateLimitStore;
+import org.wicketstuff.rest.utils.ratelimit.MemoryRateLimitStore;
+import org.wicketstuff.rest.utils.ratelimit.RateLimiter;
 import org.wicketstuff.rest.utils.reflection.MethodParameter;
 import org.wicketstuff.rest.utils.reflection.ReflectionUtils;
+import org.wicketstuff.rest.utils.sse.EventBroadcaster;
+import org.wicketstuff.rest.utils.sse.IEventDataSerializer;
+import org.wicketstuff.rest.utils.sse.ServerSentEvent;
 
 /**
  * Base class to build a resource that serves REST requests.
@@ -69,129 +144,1457 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 	 */
 	private final T objSerialDeserial;
 
+	/**
+	 * The serializers/deserializers to use for every MIME type produced by the
+	 * mapped methods. They are resolved once when the resource is built.
+	 */
+	private final Map<String, IObjectSerialDeserial> serialDeserialsByMimeType = new HashMap<String, IObjectSerialDeserial>();
+
 	/** Role-checking strategy. */
 	private final IRoleCheckingStrategy roleCheckingStrategy;
 
 	/**
-	 * Constructor with no role-checker (i.e we don't use annotation
-	 * {@link AuthorizeInvocation}).
+	 * Responses smaller than this size (in bytes) are not compressed. A
+	 * negative value disables compression.
+	 */
+	private int compressionThreshold = 1024;
+
+	/**
+	 * The max size (in bytes) of a request body, after decompression. A
+	 * negative value means no limit.
+	 */
+	private long maxRequestBodySize = 10 * 1024 * 1024;
+
+	/** Optional cache of the compressed responses of GET methods. */
+	private CompressedContentCache compressedContentCache;
+
+	/**
+	 * Pool of the buffers used to send responses with header
+	 * 'Content-Length'. Its array size is the max buffered size, null if
+	 * buffering is disabled.
+	 */
+	private ByteArrayPool contentLengthBufferPool = new ByteArrayPool(8192, 32);
+
+	/** Cache of the responses of the methods annotated with {@link Cacheable}. */
+	private ResponseCache responseCache = new ResponseCache(1000);
+
+	/**
+	 * If true, the responses of GET methods with no version have an ETag
+	 * computed hashing their content.
+	 */
+	private boolean hashEntityTags;
+
+	/** Cache of the serialized form of the returned {@link IVersionedObject}s. */
+	private SerializedObjectCache serializedObjectCache = new SerializedObjectCache(64);
+
+	/** Header with the key of an idempotent request (See {@link Idempotent}). */
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+	/** The separator written after each element of a stream. */
+	private static final byte[] STREAM_SEPARATOR = new byte[] { '\n' };
+
+	/** Comment line of an event stream, used as heartbeat. */
+	private static final byte[] EVENT_STREAM_COMMENT = new byte[] { ':', '\n', '\n' };
+
+	/** Max length of header {@value #IDEMPOTENCY_KEY_HEADER}. */
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+	/**
+	 * Latency (in nanoseconds) of the mapped method invoked by the current
+	 * request, used by {@link AdaptiveConcurrency}.
+	 */
+	private static final MetaDataKey<Long> INVOCATION_LATENCY = new MetaDataKey<Long>() {
+		private static final long serialVersionUID = 1L;
+	};
+
+	/**
+	 * The permits taken by the current request, handed over to the submitted
+	 * invocation of the mapped method, if any.
+	 */
+	private static final MetaDataKey<HeldPermits> HELD_PERMITS = new MetaDataKey<HeldPermits>() {
+		private static final long serialVersionUID = 1L;
+	};
+
+	/** The in-flight invocations of the methods annotated with {@link Coalesced}. */
+	private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+	/**
+	 * Max time (in milliseconds) to wait for the result of a mapped method
+	 * returning a {@link Future}.
+	 */
+	private long asyncResultTimeout = 30000;
+
+	/** Max number of threads of the default method executor. */
+	private static final int DEFAULT_METHOD_THREADS = 256;
+
+	/** Max number of invocations queued by the default method executor. */
+	private static final int DEFAULT_METHOD_QUEUE_SIZE = 1024;
+
+	/**
+	 * Executor shared by the resources that don't set their own one. It's
+	 * bounded, so that invocations ignoring interruption can't pile up after
+	 * their deadline: once it's full, requests get a 503 HTTP code.
+	 */
+	private static final ExecutorService DEFAULT_METHOD_EXECUTOR = newDefaultMethodExecutor();
+
+	/** Executor of the methods annotated with {@link AsyncInvocation}. */
+	private ExecutorService methodExecutor = DEFAULT_METHOD_EXECUTOR;
+
+	/** Indicates if the resource class is annotated with {@link AsyncInvocation}. */
+	private final boolean asyncInvocation = getClass().isAnnotationPresent(AsyncInvocation.class);
+
+	/**
+	 * Max time (in milliseconds) a stream of events stays silent before a
+	 * heartbeat is sent.
+	 */
+	private long eventHeartbeatInterval = 15000;
+
+	/** The recorded responses of the methods annotated with {@link Idempotent}. */
+	private final IdempotentResponses idempotentResponses = new IdempotentResponses(
+			new MemoryResponseCacheStore(1000));
+
+	/** The batch route, relative to the resource path. */
+	private final BatchRoute batchRoute = new BatchRoute();
+
+	/** Marks the parameters whose value is read from the request body. */
+	private static final Object BODY_FROM_REQUEST = new Object();
+
+	/** The rate limiter of the methods annotated with {@link RateLimited}. */
+	private final RateLimiter rateLimiter = new RateLimiter(new MemoryRateLimitStore(10000));
+
+	/** The optional scheduler of the invocations, null if it's not used. */
+	private PriorityScheduler requestScheduler;
+
+	/** The scheduling priorities of the roles. */
+	private final Map<String, Integer> rolePriorities = new ConcurrentHashMap<String, Integer>();
+
+	/** The optional header carrying the scheduling priority of a request. */
+	private String priorityHeader;
+
+	/**
+	 * Constructor with no role-checker (i.e we don't use annotation
+	 * {@link AuthorizeInvocation}).
+	 * 
+	 * @param serialDeserial
+	 *            General class that is used to serialize/desiarilze objects to
+	 *            string.
+	 */
+	public AbstractRestResource(T serialDeserial) {
+		this(serialDeserial, null);
+	}
+
+	/**
+	 * Main constructor that takes in input the object serializer/deserializer
+	 * and the role-checking strategy to use.
+	 * 
+	 * @param serialDeserial
+	 *            General class that is used to serialize/desiarilze objects to
+	 *            string
+	 * @param roleCheckingStrategy
+	 *            the role-checking strategy.
+	 */
+	public AbstractRestResource(T serialDeserial, IRoleCheckingStrategy roleCheckingStrategy) {
+		this.objSerialDeserial = serialDeserial;
+		this.roleCheckingStrategy = roleCheckingStrategy;
+
+		configureObjSerialDeserial(serialDeserial);
+		loadAnnotatedMethods();
+	}
+
+	/***
+	 * Handles a REST request invoking one of the methods annotated with
+	 * {@link MethodMapping}. If the annotated method returns a value, this
+	 * latter is automatically serialized to a given string format (like JSON,
+	 * XML, etc...) and written to the web response.<br/>
+	 * If no method is found to serve the current request, a 400 HTTP code is
+	 * returned to the client. Similarly, a 401 HTTP code is return if the user
+	 * doesn't own one of the roles required to execute an annotated method (See
+	 * {@link AuthorizeInvocation}) and a 415 HTTP code is returned if the
+	 * request body has a content type not accepted by the method (See
+	 * {@link MethodMapping#consumes()}). If none of the MIME types produced by
+	 * the method is accepted by the client (See header 'Accept' and
+	 * {@link MethodMapping#produces()}), a 406 HTTP code is returned. The
+	 * requests exceeding the concurrency limit of a method (See
+	 * {@link Bulkhead} and {@link AdaptiveConcurrency}) get a 503 HTTP code
+	 * and header 'Retry-After', while the clients exceeding the rate limit of
+	 * a method (See {@link RateLimited}) get a 429 HTTP code.<br/>
+	 * Responses of methods annotated with {@link Cacheable} are served from
+	 * the response cache while they are not expired.<br/>
+	 * GET responses with an ETag (See {@link Versioned},
+	 * {@link IVersionedObject} and {@link #setHashEntityTags(boolean)}) or a
+	 * last modified time are checked against headers 'If-None-Match' and
+	 * 'If-Modified-Since': if the client has the current version, a 304 HTTP
+	 * code is returned without body.<br/>
+	 * Responses of methods annotated with {@link Idempotent} are replayed for
+	 * the requests that repeat the value of header 'Idempotency-Key'.<br/>
+	 * If a mapped method returns a {@link Future}, its result is awaited (See
+	 * {@link #setAsyncResultTimeout(long)}) and then written to the response.
+	 * The same is done for the methods invoked on the method executor (See
+	 * {@link AsyncInvocation} and {@link Deadline}). If a mapped method
+	 * returns an {@link Iterator} its elements are streamed to the client one
+	 * by one, while if it returns an {@link EventBroadcaster} the client is
+	 * subscribed to its events.<br/>
+	 * POST requests to the batch route (See {@link #setBatchPath(String)}) are
+	 * served executing their sub-requests.
+	 */
+	@Override
+	public final void respond(Attributes attributes) {
+		PageParameters pageParameters = attributes.getParameters();
+		WebResponse response = (WebResponse) attributes.getResponse();
+		HttpMethod httpMethod = HttpUtils.getHttpMethod((WebRequest) RequestCycle.get()
+				.getRequest());
+		int indexedParamCount = pageParameters.getIndexedCount();
+
+		if (batchRoute.matches(httpMethod, pageParameters)) {
+			respondToBatch(attributes);
+			return;
+		}
+
+		// mapped method are stored concatenating the number of the segments of
+		// their URL and their HTTP method (see annotation MethodMapping)
+		List<MethodMappingInfo> mappedMethodsCandidates = mappedMethods.get(indexedParamCount + "_"
+				+ httpMethod.getMethod());
+
+		MethodMappingInfo mappedMethod = selectMostSuitedMethod(mappedMethodsCandidates,
+				pageParameters);
+
+		if (mappedMethod != null) {
+			if (!hasAny(mappedMethod.getRoles())) {
+				response.sendError(401, "User is not allowed to invoke method on server.");
+				return;
+			}
+
+			if (mappedMethod.getRateLimited() != null) {
+				// buckets are scoped to the resource and the route
+				long waitTime = rateLimiter.tryConsume(getClass().getName() + '\n'
+						+ getRouteName(mappedMethod), mappedMethod.getRateLimited(),
+						mappedMethod.getRateRefillInterval(), (WebRequest) attributes.getRequest(),
+						roleCheckingStrategy);
+
+				if (waitTime > 0) {
+					// Retry-After is rounded up to the next second
+					response.setHeader("Retry-After", String.valueOf((waitTime + 999999) / 1000000));
+					response.sendError(429, "Too many requests.");
+					return;
+				}
+			}
+
+			// excess requests are rejected before any byte of the body is read
+			InvocationPermits permits = mappedMethod.getPermits();
+			int retryAfter = permits != null ? permits.tryAcquire() : -1;
+
+			if (retryAfter >= 0) {
+				response.setHeader("Retry-After", String.valueOf(retryAfter));
+				response.sendError(503, "Too many concurrent invocations of the requested method.");
+				return;
+			}
+
+			RequestCycle requestCycle = RequestCycle.get();
+			HeldPermits heldPermits = permits != null ? new HeldPermits(permits) : null;
+			boolean completed = false;
+
+			requestCycle.setMetaData(HELD_PERMITS, heldPermits);
+
+			try {
+				respondWithPermit(mappedMethod, attributes);
+				completed = true;
+			} finally {
+				// only the successful invocations tell the latency of the method
+				Long latency = requestCycle.getMetaData(INVOCATION_LATENCY);
+
+				requestCycle.setMetaData(INVOCATION_LATENCY, null);
+				requestCycle.setMetaData(HELD_PERMITS, null);
+
+				// a submitted invocation that has started releases them itself
+				if (heldPermits != null)
+					heldPermits.release(completed && latency != null ? latency : -1);
+			}
+		} else {
+			response.sendError(400, "No suitable method found for URL '" + extractUrlFromRequest()
+					+ "' and HTTP method " + httpMethod);
+		}
+	}
+
+	/**
+	 * Serves the request with the selected method, once the user has been
+	 * authorized and the bulkhead permit (if any) has been taken.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param attributes
+	 *            the current request attributes.
+	 */
+	private void respondWithPermit(MethodMappingInfo mappedMethod, Attributes attributes) {
+		WebResponse response = (WebResponse) attributes.getResponse();
+
+		// check the content type before any byte of the body is read
+		if (!prepareRequestContentType(mappedMethod)) {
+			WebRequest request = (WebRequest) attributes.getRequest();
+
+			response.sendError(415, "Content type '" + HttpUtils.getContentType(request)
+					+ "' with encoding '" + HttpUtils.getContentEncoding(request)
+					+ "' is not supported by the requested method.");
+			return;
+		}
+
+		if (mappedMethod.readsRequestBody() && isDeclaredBodyTooLarge()) {
+			response.sendError(413, "Request body exceeds the max allowed size.");
+			return;
+		}
+
+		String outputFormat = negotiateOutputFormat(mappedMethod, response);
+
+		if (outputFormat == null) {
+			response.sendError(406, "None of the accepted content types can be produced.");
+			return;
+		}
+
+		// retries of idempotent requests don't invoke the method again
+		if (mappedMethod.getIdempotent() != null
+				&& ((WebRequest) attributes.getRequest()).getHeader(IDEMPOTENCY_KEY_HEADER) != null) {
+			respondIdempotently(mappedMethod, attributes, outputFormat);
+			return;
+		}
+
+		respondWithMappedMethod(mappedMethod, attributes, outputFormat);
+	}
+
+	/**
+	 * Invokes the mapped method that serves the given HTTP method and path,
+	 * without going through HTTP. The method is selected with the same rules
+	 * used for HTTP requests and the user must own the roles required by
+	 * {@link AuthorizeInvocation}. Path, query string and matrix parameters
+	 * are taken from the path, while the parameter annotated with
+	 * {@link RequestBody} gets the given object as is: no serialization is
+	 * involved, neither for the body nor for the returned value. Header and
+	 * cookie parameters are read from the current request, if any. If the
+	 * method returns a {@link Future}, its result is awaited (See
+	 * {@link #setAsyncResultTimeout(long)}).<br/>
+	 * Errors are reported with an {@link AbortWithHttpErrorCodeException}, so
+	 * that a mapped method calling another one fails with the same HTTP code.
+	 * Hook methods, response caches and idempotency keys are specific to HTTP
+	 * and are not applied.
+	 * 
+	 * @param httpMethod
+	 *            the HTTP method.
+	 * @param path
+	 *            the path, relative to the resource path. It can contain a
+	 *            query string.
+	 * @param requestBody
+	 *            the value of the parameter annotated with {@link RequestBody}.
+	 *            Can be null.
+	 * @param resultType
+	 *            the type of the result. Results of primitive type are
+	 *            returned boxed, so their wrapper class must be used.
+	 * @return the value returned by the mapped method.
+	 * @throws AbortWithHttpErrorCodeException
+	 *             with code 400 if no method is mapped to the path or a
+	 *             required parameter is missing, 401 if the user is not
+	 *             allowed to invoke the method, 503 if the concurrency limit of
+	 *             the method is exceeded (See {@link Bulkhead} and
+	 *             {@link AdaptiveConcurrency}), 504 if its future result is not
+	 *             available in time.
+	 */
+	public <E> E invoke(HttpMethod httpMethod, String path, Object requestBody,
+			Class<E> resultType) {
+		Args.notNull(httpMethod, "httpMethod");
+		Args.notNull(path, "path");
+		Args.notNull(resultType, "resultType");
+
+		Url url = Url.parse(path);
+		PageParameters pageParameters = new PageParameters();
+		int segmentIndex = 0;
+
+		for (String segment : url.getSegments()) {
+			if (segment.length() > 0)
+				pageParameters.set(segmentIndex++, segment);
+		}
+
+		for (Url.QueryParameter queryParameter : url.getQueryParameters())
+			pageParameters.add(queryParameter.getName(), queryParameter.getValue());
+
+		MethodMappingInfo mappedMethod = selectMostSuitedMethod(
+				mappedMethods.get(segmentIndex + "_" + httpMethod.getMethod()), pageParameters);
+
+		if (mappedMethod == null)
+			throw new AbortWithHttpErrorCodeException(400, "No suitable method found for path '"
+					+ path + "' and HTTP method " + httpMethod);
+
+		if (!hasAny(mappedMethod.getRoles()))
+			throw new AbortWithHttpErrorCodeException(401,
+					"User is not allowed to invoke method on server.");
+
+		InvocationPermits permits = mappedMethod.getPermits();
+
+		if (permits != null && permits.tryAcquire() >= 0)
+			throw new AbortWithHttpErrorCodeException(503,
+					"Too many concurrent invocations of the requested method.");
+
+		long startTime = System.nanoTime();
+		boolean completed = false;
+
+		try {
+			E result = resultType.cast(invokeWithPermit(mappedMethod, pageParameters,
+					requestBody, path, httpMethod));
+
+			completed = true;
+			return result;
+		} finally {
+			if (permits != null)
+				permits.release(completed ? System.nanoTime() - startTime : -1);
+		}
+	}
+
+	/**
+	 * Gets the scheduling priority of a request (See
+	 * {@link #setRequestScheduler(PriorityScheduler)}). The default
+	 * implementation returns the highest value among the priority of the
+	 * method (See {@link Priority}), the priorities of the roles owned by the
+	 * user (See {@link #setRolePriority(String, int)}) and the value of the
+	 * priority header, if any (See {@link #setPriorityHeader(String)}).
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param request
+	 *            the current request.
+	 * @return the priority of the request. Higher values are run first.
+	 */
+	protected int getRequestPriority(MethodMappingInfo mappedMethod, WebRequest request) {
+		int priority = mappedMethod.getPriority();
+
+		if (roleCheckingStrategy != null) {
+			for (Map.Entry<String, Integer> rolePriority : rolePriorities.entrySet()) {
+				if (rolePriority.getValue() > priority
+						&& hasAny(new Roles(rolePriority.getKey())))
+					priority = rolePriority.getValue();
+			}
+		}
+
+		String headerValue = priorityHeader != null ? request.getHeader(priorityHeader) : null;
+
+		if (headerValue != null) {
+			try {
+				priority = Math.max(priority, Integer.parseInt(headerValue.trim()));
+			} catch (NumberFormatException e) {
+				// invalid priorities are ignored
+			}
+		}
+
+		return priority;
+	}
+
+	/**
+	 * Binds the parameters of an in-process invocation and invokes the
+	 * method, once the user has been authorized and the bulkhead permit (if
+	 * any) has been taken.
+	 * 
+	 * @return the value returned by the method.
+	 */
+	private Object invokeWithPermit(MethodMappingInfo mappedMethod, PageParameters pageParameters,
+			Object requestBody, String path, HttpMethod httpMethod) {
+		Object[] parametersValues = bindParametersValues(mappedMethod, pageParameters,
+				requestBody);
+
+		if (parametersValues == null)
+			throw new AbortWithHttpErrorCodeException(400,
+					"Missing required parameters for path '" + path + "' and HTTP method "
+							+ httpMethod);
+
+		Method method = mappedMethod.getMethod();
+		Object result;
+
+		try {
+			result = method.invoke(this, parametersValues);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw new WicketRuntimeException("Error invoking method '" + method.getName() + "'",
+					e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new WicketRuntimeException("Error invoking method '" + method.getName() + "'", e);
+		}
+
+		while (result instanceof Future)
+			result = awaitInvocationResult(mappedMethod, (Future<?>) result);
+
+		return result;
+	}
+
+	/**
+	 * Waits for the future result of an in-process invocation.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param future
+	 *            the future returned by the method.
+	 * @return the result of the future.
+	 */
+	private Object awaitInvocationResult(MethodMappingInfo mappedMethod, Future<?> future) {
+		String methodName = mappedMethod.getMethod().getName();
+
+		try {
+			return future.get(getResultTimeout(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new AbortWithHttpErrorCodeException(504,
+					"The requested method didn't complete in time.");
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new WicketRuntimeException("Interrupted while waiting for the result of method '"
+					+ methodName + "'", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw new WicketRuntimeException("Error invoking method '" + methodName + "'",
+					e.getCause());
+		} catch (CancellationException e) {
+			throw new WicketRuntimeException("Result of method '" + methodName
+					+ "' was cancelled", e);
+		}
+	}
+
+	/**
+	 * Serves a batch request. Its body is deserialized to an array of
+	 * {@link BatchRequest}s, which are executed with a {@link BatchProcessor}.
+	 * The resulting array of {@link BatchResponse}s is serialized with the same
+	 * MIME type of the request body.
+	 * 
+	 * @param attributes
+	 *            Attributes object for the current request.
+	 */
+	private void respondToBatch(Attributes attributes) {
+		WebRequest request = (WebRequest) attributes.getRequest();
+		WebResponse response = (WebResponse) attributes.getResponse();
+		HttpServletRequest httpRequest = (HttpServletRequest) request.getContainerRequest();
+
+		if (BatchRoute.isSubRequest(httpRequest)) {
+			response.sendError(400, "Batch requests can't be nested.");
+			return;
+		}
+
+		String contentType = HttpUtils.getContentType(request);
+		String mimeType = contentType != null ? contentType.split(";")[0].trim() : null;
+
+		if (mimeType == null || RestMimeTypes.TEXT_PLAIN.equals(mimeType)
+				|| !isMimeTypesSupported(mimeType)
+				|| !HttpUtils.isContentEncodingSupported(HttpUtils.getContentEncoding(request))) {
+			response.sendError(415, "Content type '" + contentType
+					+ "' is not supported for batch requests.");
+			return;
+		}
+
+		if (isDeclaredBodyTooLarge()) {
+			response.sendError(413, "Request body exceeds the max allowed size.");
+			return;
+		}
+
+		BatchRequest[] requests = (BatchRequest[]) deserializeObjectFromRequest(
+				BatchRequest[].class, mimeType);
+
+		if (requests == null) {
+			response.sendError(400, "Batch request has no sub-requests.");
+			return;
+		}
+
+		int maxBatchSize = batchRoute.getMaxSize();
+
+		if (requests.length > maxBatchSize) {
+			response.sendError(413, "Batch request exceeds the max number of " + maxBatchSize
+					+ " sub-requests.");
+			return;
+		}
+
+		BatchResponse[] responses = batchRoute.process((WebApplication) Application.get(),
+				new VirtualHttpServletRequest(httpRequest, ((ServletWebRequest) request)
+						.getFilterPrefix()), requests);
+
+		serializeObjectToResponse(response, responses, mimeType, false, null);
+	}
+
+	/**
+	 * Serves the current request with the given mapped method, once the
+	 * request has been validated and the output format negotiated.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @param attributes
+	 *            Attributes object for the current request.
+	 * @param outputFormat
+	 *            the negotiated MIME type of the response.
+	 */
+	private void respondWithMappedMethod(MethodMappingInfo mappedMethod, Attributes attributes,
+			String outputFormat) {
+		PageParameters pageParameters = attributes.getParameters();
+		WebResponse response = (WebResponse) attributes.getResponse();
+
+		String entityTag = null;
+		Object[] parametersValues = null;
+
+		// the version method is cheaper than the mapped method. Parameters are
+		// bound once and passed to both methods, as the request body can't be
+		// read twice
+		if (mappedMethod.getVersionMethod() != null) {
+			parametersValues = extractParametersValues(mappedMethod, attributes);
+
+			if (parametersValues == null)
+				return;
+
+			String version = invokeVersionMethod(mappedMethod, parametersValues, response);
+			entityTag = buildEntityTag(mappedMethod, version, outputFormat);
+
+			if (entityTag != null && isNotModified(entityTag, -1)) {
+				sendNotModified(response, entityTag, -1);
+				return;
+			}
+		}
+
+		String cacheKey = null;
+
+		if (mappedMethod.getCacheable() != null) {
+			cacheKey = buildCacheKey(mappedMethod, pageParameters, outputFormat);
+			CachedResponse cachedResponse = responseCache.get(cacheKey);
+
+			// cached responses skip invocation and serialization
+			if (cachedResponse != null) {
+				writeSerializedResponse(response, cachedResponse, entityTag);
+				return;
+			}
+		}
+
+		RequestCoalescer.Call coalescedCall = null;
+
+		if (mappedMethod.getCoalesced() != null) {
+			Coalesced coalesced = mappedMethod.getCoalesced();
+			RequestCoalescer.Call call = new RequestCoalescer.Call(mappedMethod.getMethod()
+					.getName()
+					+ '\n'
+					+ buildRequestKey(pageParameters, outputFormat, coalesced.queryParams(),
+							coalesced.headers()));
+			RequestCoalescer.Call inFlightCall = requestCoalescer.join(call);
+
+			if (inFlightCall == null) {
+				coalescedCall = call;
+			} else {
+				CachedResponse sharedResponse = requestCoalescer.awaitResponse(inFlightCall);
+
+				// if the response can't be shared the method is invoked again
+				if (sharedResponse != null) {
+					writeSerializedResponse(response, sharedResponse, entityTag);
+					return;
+				}
+			}
+		}
+
+		try {
+			onBeforeMethodInvoked(mappedMethod, attributes);
+
+			if (parametersValues == null)
+				parametersValues = extractParametersValues(mappedMethod, attributes);
+
+			Object result = null;
+
+			if (parametersValues != null) {
+				long startTime = System.nanoTime();
+				long deadline = startTime
+						+ TimeUnit.MILLISECONDS.toNanos(mappedMethod.getDeadline() > 0 ? mappedMethod
+								.getDeadline() : asyncResultTimeout);
+				ContextPropagatingCallable<Object> invocation = null;
+
+				// submitted invocations are bounded by the async result timeout
+				if (asyncInvocation || mappedMethod.isAsyncInvocation() || requestScheduler != null
+						|| mappedMethod.getDeadline() > 0) {
+					invocation = newInvocation(mappedMethod, parametersValues, startTime,
+							deadline);
+					result = submitMappedMethod(mappedMethod, invocation, attributes);
+				} else {
+					result = invokeMappedMethod(mappedMethod, parametersValues, response);
+				}
+
+				// asynchronous results are awaited before being written
+				while (result instanceof Future)
+					result = awaitAsyncResult(mappedMethod, (Future<?>) result, response,
+							invocation, deadline);
+
+				// the time spent writing the result depends on the client
+				RequestCycle.get().setMetaData(INVOCATION_LATENCY, System.nanoTime() - startTime);
+			}
+
+			onAfterMethodInvoked(mappedMethod, attributes, result);
+
+			// if the invoked method returns a value, it is written to response
+			if (result instanceof EventBroadcaster)
+				writeEvents(response, (EventBroadcaster) result, outputFormat);
+			else if (result instanceof Iterator)
+				writeStream(response, (Iterator<?>) result, outputFormat);
+			else if (result != null)
+				writeResult(response, mappedMethod, result, outputFormat, entityTag, cacheKey,
+						coalescedCall);
+		} finally {
+			if (coalescedCall != null)
+				requestCoalescer.complete(coalescedCall, null);
+		}
+	}
+
+	/**
+	 * Serves a request with header 'Idempotency-Key' (see {@link Idempotent}).
+	 * The stored response is replayed if the key has already been used by the
+	 * same user, otherwise the mapped method is invoked and its response
+	 * recorded. If a request with the same key is in progress, the current one
+	 * waits for it or, if the coalescing timeout expires, gets a 409 HTTP
+	 * code.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @param attributes
+	 *            Attributes object for the current request.
+	 * @param outputFormat
+	 *            the negotiated MIME type of the response.
+	 */
+	private void respondIdempotently(final MethodMappingInfo mappedMethod,
+			final Attributes attributes, final String outputFormat) {
+		WebResponse response = (WebResponse) attributes.getResponse();
+		String idempotencyKey = ((WebRequest) attributes.getRequest())
+				.getHeader(IDEMPOTENCY_KEY_HEADER);
+
+		if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+			response.sendError(400, "Header '" + IDEMPOTENCY_KEY_HEADER + "' is too long.");
+			return;
+		}
+
+		// keys are scoped to the user, the method and its URL
+		String storeKey = HttpUtils.getUserKey((WebRequest) attributes.getRequest()) + '\n'
+				+ mappedMethod.getMethod().getName() + '\n'
+				+ buildRequestKey(attributes.getParameters(), outputFormat, new String[0],
+						new String[0]) + '\n' + idempotencyKey;
+		long ttl = mappedMethod.getIdempotent().ttl() * 1000;
+
+		RecordedResponse recordedResponse = idempotentResponses.respond(storeKey, response, ttl,
+				new IdempotentResponses.IInvocation() {
+					@Override
+					public void invoke(WebResponse recordingResponse) {
+						RequestCycle requestCycle = RequestCycle.get();
+						Response previousResponse = requestCycle.setResponse(recordingResponse);
+
+						try {
+							respondWithMappedMethod(mappedMethod, new Attributes(attributes
+									.getRequest(), recordingResponse, attributes.getParameters()),
+									outputFormat);
+						} finally {
+							requestCycle.setResponse(previousResponse);
+						}
+					}
+				});
+
+		if (recordedResponse == null)
+			response.sendError(409, "A request with the same idempotency key is in progress.");
+		else
+			writeRecordedResponse(response, recordedResponse);
+	}
+
+	/**
+	 * Writes a recorded response. Its body is recorded uncompressed, so it's
+	 * compressed here if the current client accepts it.
+	 * 
+	 * @param response
+	 *            the current response object.
+	 * @param recordedResponse
+	 *            the recorded response.
+	 */
+	private void writeRecordedResponse(WebResponse response, RecordedResponse recordedResponse) {
+		if (recordedResponse.getStatus() >= 300 || recordedResponse.getContent().length == 0) {
+			recordedResponse.writeTo(response);
+			return;
+		}
+
+		ContentLengthWebResponse lengthResponse = contentLengthBufferPool != null
+				? new ContentLengthWebResponse(response, contentLengthBufferPool) : null;
+		WebResponse target = lengthResponse != null ? lengthResponse : response;
+		CompressingWebResponse compressingResponse = newCompressingResponse(target,
+				recordedResponse.getContentType(), null);
+
+		try {
+			if (compressingResponse == null) {
+				recordedResponse.writeTo(target);
+			} else {
+				compressingResponse.setEntityTag(recordedResponse.getHeader("ETag"));
+				recordedResponse.writeTo(compressingResponse);
+				compressingResponse.finish();
+			}
+
+			if (lengthResponse != null)
+				lengthResponse.finish();
+		} finally {
+			if (compressingResponse != null)
+				compressingResponse.release();
+
+			if (lengthResponse != null)
+				lengthResponse.release();
+		}
+	}
+
+	/**
+	 * Checks if the length declared by the current request (header
+	 * 'Content-Length') exceeds the max allowed size for the request body.
+	 * 
+	 * @return true if the declared length is too large.
+	 */
+	private boolean isDeclaredBodyTooLarge() {
+		WebRequest request = (WebRequest) RequestCycle.get().getRequest();
+		HttpServletRequest httpRequest = (HttpServletRequest) request.getContainerRequest();
+
+		return maxRequestBodySize >= 0 && httpRequest.getContentLength() > maxRequestBodySize;
+	}
+
+	/**
+	 * Checks if the content type and the content encoding of the current
+	 * request are accepted by the given mapped method and, if so, sets the
+	 * charset that will be used to decode the request body.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @return true if the content type and encoding are accepted, false
+	 *         otherwise.
+	 */
+	private boolean prepareRequestContentType(MethodMappingInfo mappedMethod) {
+		if (!mappedMethod.readsRequestBody())
+			return true;
+
+		WebRequest request = (WebRequest) RequestCycle.get().getRequest();
+		String contentType = HttpUtils.getContentType(request);
+
+		if (!mappedMethod.isContentTypeAccepted(contentType)
+				|| !HttpUtils.isContentEncodingSupported(HttpUtils.getContentEncoding(request)))
+			return false;
+
+		String charset = mappedMethod.getRequestCharset(contentType);
+		HttpServletRequest httpRequest = (HttpServletRequest) request.getContainerRequest();
+
+		if (charset != null && httpRequest.getCharacterEncoding() == null) {
+			try {
+				httpRequest.setCharacterEncoding(charset);
+			} catch (UnsupportedEncodingException e) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Selects the MIME type to use for the response of the given mapped method
+	 * according to header 'Accept' of the current request.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @param response
+	 *            the current response object.
+	 * @return the MIME type to use, or null if no produced type is accepted.
+	 */
+	private String negotiateOutputFormat(MethodMappingInfo mappedMethod, WebResponse response) {
+		// methods with no return value don't write any content, while event
+		// streams have their own content type
+		if (mappedMethod.getMethod().getReturnType() == void.class || mappedMethod.isEventStream())
+			return mappedMethod.getMimeOutputFormat();
+
+		// as before negotiation was supported, methods with a single output
+		// format ignore header 'Accept'
+		if (!mappedMethod.isOutputFormatNegotiated())
+			return mappedMethod.getMimeOutputFormat();
+
+		WebRequest request = (WebRequest) RequestCycle.get().getRequest();
+
+		response.addHeader("Vary", "Accept");
+
+		return mappedMethod.negotiateOutputFormat(request.getHeader("Accept"));
+	}
+
+	/**
+	 * Invoked just before a mapped method is invoked to serve the current
+	 * request.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @param attributes
+	 *            the current Attributes object.
+	 */
+	protected void onBeforeMethodInvoked(MethodMappingInfo mappedMethod, Attributes attributes) {
+	}
+
+	/**
+	 * Invoked just after a mapped method has been invoked to serve the current
+	 * request.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @param attributes
+	 *            the current Attributes object.
+	 * @param result
+	 *            the value returned by the invoked method. If the method
+	 *            returned a {@link Future}, this is the result of the future
+	 *            (null if it's not available).
+	 */
+	protected void onAfterMethodInvoked(MethodMappingInfo mappedMethod, Attributes attributes,
+			Object result) {
+	}
+
+	/**
+	 * Method invoked to serialize the result of the invoked method and write
+	 * this value to the response. The response is compressed if the client
+	 * accepts gzip or deflate encoding (See {@link #setCompressionThreshold(int)}).
+	 * Small responses are buffered and sent with header 'Content-Length' (See
+	 * {@link #setContentLengthThreshold(int)}). Responses recorded for
+	 * idempotent requests are recorded uncompressed and with the charset in
+	 * their content type (see {@link #writeRecordedResponse}).
+	 * 
+	 * @param response
+	 *            The current response object.
+	 * @param result
+	 *            The object to write to response.
+	 * @param mimeType
+	 *            The MIME type of the response.
+	 * @param cacheable
+	 *            true if the compressed response can be cached. Only
+	 *            responses with an ETag are cached.
+	 * @param entityTag
+	 *            the ETag of the response, null if it hasn't one.
+	 */
+	private void serializeObjectToResponse(WebResponse response, Object result, String mimeType,
+			boolean cacheable, String entityTag) {
+		if (response instanceof RecordingWebResponse) {
+			recordObject(response, result, mimeType, entityTag);
+			return;
+		}
+
+		ContentLengthWebResponse lengthResponse = contentLengthBufferPool != null ? new ContentLengthWebResponse(
+				response, contentLengthBufferPool) : null;
+		CompressingWebResponse compressingResponse = null;
+
+		try {
+			WebResponse target = lengthResponse != null ? lengthResponse : response;
+			compressingResponse = newCompressingResponse(target, mimeType, cacheable
+					&& entityTag != null ? extractUrlFromRequest() + "\n" + entityTag : null);
+
+			response.setContentType(mimeType);
+
+			if (entityTag != null)
+				response.setHeader("ETag", entityTag);
+
+			if (compressingResponse == null) {
+				writeObject(result, target, mimeType);
+			} else {
+				compressingResponse.setEntityTag(entityTag);
+				writeObject(result, compressingResponse, mimeType);
+				compressingResponse.finish();
+			}
+
+			if (lengthResponse != null)
+				lengthResponse.finish();
+		} catch (Exception e) {
+			throw new RuntimeException("Error writing object to response.", e);
+		} finally {
+			if (compressingResponse != null)
+				compressingResponse.release();
+
+			if (lengthResponse != null)
+				lengthResponse.release();
+		}
+	}
+
+	/**
+	 * Writes an object to a response that records it, uncompressed. The
+	 * recorded content type includes the charset set by the serial/deserial.
+	 * 
+	 * @param response
+	 *            the recording response.
+	 * @param result
+	 *            the object to write.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @param entityTag
+	 *            the ETag of the response, null if it hasn't one.
+	 */
+	private void recordObject(WebResponse response, Object result, String mimeType,
+			String entityTag) {
+		if (entityTag != null)
+			response.setHeader("ETag", entityTag);
+
+		try {
+			writeObject(result, response, mimeType);
+		} catch (Exception e) {
+			throw new RuntimeException("Error writing object to response.", e);
+		}
+
+		// the MIME type of a serialized response already includes the charset
+		response.setContentType(result instanceof CachedResponse ? mimeType : getContentType(
+				response, mimeType));
+	}
+
+	/**
+	 * Writes an object to the given response with the serial/deserial
+	 * registered for the MIME type. A {@link CachedResponse} is written as is.
+	 * 
+	 * @param result
+	 *            the object to write.
+	 * @param response
+	 *            the target response.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 */
+	private void writeObject(Object result, WebResponse response, String mimeType)
+			throws Exception {
+		if (result instanceof CachedResponse) {
+			response.write(((CachedResponse) result).getContent());
+			return;
+		}
+
+		IObjectSerialDeserial serialDeserial = serialDeserialsByMimeType.get(mimeType);
+
+		// MIME types not produced by mapped methods (e.g. of batch responses)
+		if (serialDeserial == null)
+			serialDeserial = objSerialDeserial;
+
+		serialDeserial.objectToResponse(result, response, mimeType);
+	}
+
+	/**
+	 * Streams the elements returned by a mapped method as an {@link Iterator}
+	 * (for example a {@link StreamPublisher}). Each element is serialized with
+	 * the serial/deserial of the MIME type, followed by a newline, and sent to
+	 * the client before the next one is requested. The iterator is closed at
+	 * the end if it implements {@link Closeable}.
+	 * 
+	 * @param response
+	 *            the current response object.
+	 * @param elements
+	 *            the elements to stream.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 */
+	private void writeStream(WebResponse response, Iterator<?> elements, String mimeType) {
+		StreamingWebResponse streamingResponse = new StreamingWebResponse(response,
+				STREAM_SEPARATOR);
+
+		try {
+			response.setContentType(mimeType);
+
+			while (elements.hasNext()) {
+				writeObject(elements.next(), streamingResponse, mimeType);
+				streamingResponse.endElement();
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Error writing stream to response.", e);
+		} finally {
+			// a producer might be waiting to publish other elements
+			if (elements instanceof Closeable)
+				IOUtils.closeQuietly((Closeable) elements);
+		}
+	}
+
+	/**
+	 * Subscribes the client to an {@link EventBroadcaster} and pushes it the
+	 * events as they are broadcast, until the broadcaster is closed or the
+	 * client goes away. The data of the events is serialized with the
+	 * serial/deserial of the MIME type. If the client sends header
+	 * 'Last-Event-ID', the events it missed are replayed first. A heartbeat
+	 * comment is sent when no event is broadcast within the heartbeat interval
+	 * (See {@link #setEventHeartbeatInterval(long)}).
+	 * 
+	 * @param response
+	 *            the current response object.
+	 * @param broadcaster
+	 *            the broadcaster of the events.
+	 * @param mimeType
+	 *            the MIME type of the data of the events.
+	 */
+	private void writeEvents(final WebResponse response, EventBroadcaster broadcaster,
+			final String mimeType) {
+		StreamingWebResponse streamingResponse = new StreamingWebResponse(response,
+				EVENT_STREAM_COMMENT);
+		IEventDataSerializer serializer = new IEventDataSerializer() {
+			@Override
+			public byte[] serialize(Object data) {
+				CapturingWebResponse capturingResponse = new CapturingWebResponse(response);
+
+				try {
+					writeObject(data, capturingResponse, mimeType);
+				} catch (Exception e) {
+					throw new RuntimeException("Error serializing event data.", e);
+				}
+
+				return capturingResponse.getContent();
+			}
+		};
+		long lastEventId = broadcaster.subscribe();
+		String lastEventIdHeader = ((WebRequest) RequestCycle.get().getRequest())
+				.getHeader("Last-Event-ID");
+
+		try {
+			long lastReceivedId = lastEventIdHeader != null ? Long.parseLong(lastEventIdHeader
+					.trim()) : -1;
+
+			// negative ids are not valid
+			if (lastReceivedId >= 0)
+				lastEventId = Math.min(lastEventId, lastReceivedId);
+		} catch (NumberFormatException e) {
+			// an invalid id is ignored
+		}
+
+		try {
+			response.setContentType(RestMimeTypes.TEXT_EVENT_STREAM + ";charset=UTF-8");
+			response.setHeader("Cache-Control", "no-cache");
+			// sends the headers to the client
+			streamingResponse.endElement();
+
+			List<ServerSentEvent> events;
+
+			while ((events = broadcaster.awaitEvents(lastEventId,
+					eventHeartbeatInterval)) != null) {
+				for (ServerSentEvent event : events) {
+					streamingResponse.write(event.getFrame(mimeType, serializer));
+					lastEventId = event.getId();
+				}
+
+				if (events.isEmpty())
+					streamingResponse.endElement();
+				else
+					streamingResponse.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			broadcaster.unsubscribe();
+		}
+	}
+
+	/**
+	 * Writes the result of a mapped method to the response. The result is
+	 * first serialized in memory if it must be cached, if it's an
+	 * {@link IVersionedObject} (See {@link #setSerializedObjectCache(SerializedObjectCache)})
+	 * or if its ETag is computed hashing its content.
+	 * 
+	 * @param response
+	 *            the current response object.
+	 * @param mappedMethod
+	 *            the invoked method.
+	 * @param result
+	 *            the object returned by the method.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @param entityTag
+	 *            the ETag obtained from the version method, null if not
+	 *            available.
+	 * @param cacheKey
+	 *            the key used to cache the response, null if the method is
+	 *            not annotated with {@link Cacheable}.
+	 * @param coalescedCall
+	 *            the coalesced invocation led by the current request, null if
+	 *            the method is not annotated with {@link Coalesced}.
+	 */
+	private void writeResult(WebResponse response, MethodMappingInfo mappedMethod, Object result,
+			String mimeType, String entityTag, String cacheKey, RequestCoalescer.Call coalescedCall) {
+		boolean isGetMethod = mappedMethod.getHttpMethod() == HttpMethod.GET;
+		String version = result instanceof IVersionedObject ? ((IVersionedObject) result)
+				.getVersion() : null;
+
+		if (isGetMethod && entityTag == null && version != null) {
+			entityTag = buildEntityTag(mappedMethod, version, mimeType);
+
+			if (entityTag != null && isNotModified(entityTag, -1)) {
+				sendNotModified(response, entityTag, -1);
+				return;
+			}
+		}
+
+		if (cacheKey != null) {
+			byte[] content = serializeToMemory(response, result, mimeType);
+			long now = System.currentTimeMillis();
+			long ttl = mappedMethod.getCacheable().ttl() * 1000;
+			CachedResponse cachedResponse = new CachedResponse(mappedMethod.getCacheName(),
+					getContentType(response, mimeType), content, HttpUtils.computeEntityTag(content,
+							content.length), now, now + ttl);
+
+			responseCache.put(cacheKey, cachedResponse);
+			shareCoalescedResponse(coalescedCall, cachedResponse);
+			writeSerializedResponse(response, cachedResponse, entityTag);
+		} else if (version != null && serializedObjectCache != null) {
+			CachedResponse serializedResponse = serializedObjectCache.get(result, version,
+					mimeType);
+
+			// the same version of an object is serialized only once
+			if (serializedResponse == null) {
+				byte[] content = serializeToMemory(response, result, mimeType);
+				serializedResponse = new CachedResponse(null, getContentType(response, mimeType),
+						content, entityTag, -1, Long.MAX_VALUE);
+				serializedObjectCache.put(result, version, mimeType, serializedResponse);
+			}
+
+			shareCoalescedResponse(coalescedCall, serializedResponse);
+			writeSerializedResponse(response, serializedResponse, entityTag);
+		} else if (isGetMethod && (entityTag == null && hashEntityTags || coalescedCall != null)) {
+			byte[] content = serializeToMemory(response, result, mimeType);
+			CachedResponse serializedResponse = new CachedResponse(null, getContentType(response,
+					mimeType), content,
+					HttpUtils.computeEntityTag(content, content.length), -1, Long.MAX_VALUE);
+
+			shareCoalescedResponse(coalescedCall, serializedResponse);
+			writeSerializedResponse(response, serializedResponse, entityTag);
+		} else {
+			serializeObjectToResponse(response, result, mimeType, isGetMethod, entityTag);
+		}
+	}
+
+	/**
+	 * Publishes the serialized response of a coalesced invocation to the
+	 * requests waiting for it. It's done before writing the response of the
+	 * leader, which might be slowed down by its client.
+	 * 
+	 * @param coalescedCall
+	 *            the coalesced invocation led by the current request. Can be
+	 *            null.
+	 * @param serializedResponse
+	 *            the serialized response.
+	 */
+	private void shareCoalescedResponse(RequestCoalescer.Call coalescedCall,
+			CachedResponse serializedResponse) {
+		if (coalescedCall != null)
+			requestCoalescer.complete(coalescedCall, serializedResponse);
+	}
+
+	/**
+	 * Serializes an object in memory.
+	 * 
+	 * @param response
+	 *            the current response object.
+	 * @param result
+	 *            the object to serialize.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @return the serialized object.
+	 */
+	private byte[] serializeToMemory(WebResponse response, Object result, String mimeType) {
+		CapturingWebResponse capturingResponse = new CapturingWebResponse(response);
+
+		try {
+			// the content type determines the charset used by the serial/deserial
+			response.setContentType(mimeType);
+			writeObject(result, capturingResponse, mimeType);
+		} catch (Exception e) {
+			throw new RuntimeException("Error writing object to response.", e);
+		}
+
+		return capturingResponse.getContent();
+	}
+
+	/**
+	 * Gets the content type of a response serialized in memory, including the
+	 * charset set by the serial/deserial. The charset must be sent again when
+	 * the serialized response is written without invoking the serial/deserial.
 	 * 
-	 * @param serialDeserial
-	 *            General class that is used to serialize/desiarilze objects to
-	 *            string.
+	 * @param response
+	 *            the current response object.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @return the content type.
 	 */
-	public AbstractRestResource(T serialDeserial) {
-		this(serialDeserial, null);
+	private String getContentType(WebResponse response, String mimeType) {
+		Object containerResponse = response.getContainerResponse();
+
+		if (!(containerResponse instanceof ServletResponse))
+			return mimeType;
+
+		return mimeType + ";charset=" + ((ServletResponse) containerResponse).getCharacterEncoding();
 	}
 
 	/**
-	 * Main constructor that takes in input the object serializer/deserializer
-	 * and the role-checking strategy to use.
+	 * Writes a response serialized in memory, or a 304 HTTP code if the
+	 * client already has its current version.
 	 * 
-	 * @param serialDeserial
-	 *            General class that is used to serialize/desiarilze objects to
-	 *            string
-	 * @param roleCheckingStrategy
-	 *            the role-checking strategy.
+	 * @param response
+	 *            the current response object.
+	 * @param serializedResponse
+	 *            the serialized response.
+	 * @param entityTag
+	 *            the ETag to use instead of the one of the serialized
+	 *            response. Can be null.
 	 */
-	public AbstractRestResource(T serialDeserial, IRoleCheckingStrategy roleCheckingStrategy) {
-		this.objSerialDeserial = serialDeserial;
-		this.roleCheckingStrategy = roleCheckingStrategy;
+	private void writeSerializedResponse(WebResponse response, CachedResponse serializedResponse,
+			String entityTag) {
+		String responseEntityTag = entityTag != null ? entityTag : serializedResponse
+				.getEntityTag();
+		long lastModified = serializedResponse.getCreationTime();
+
+		if (isNotModified(responseEntityTag, lastModified)) {
+			sendNotModified(response, responseEntityTag, lastModified);
+			return;
+		}
 
-		configureObjSerialDeserial(serialDeserial);
-		loadAnnotatedMethods();
+		if (lastModified >= 0)
+			response.setLastModifiedTime(Time.millis(lastModified));
+
+		serializeObjectToResponse(response, serializedResponse,
+				serializedResponse.getContentType(), true, responseEntityTag);
 	}
 
-	/***
-	 * Handles a REST request invoking one of the methods annotated with
-	 * {@link MethodMapping}. If the annotated method returns a value, this
-	 * latter is automatically serialized to a given string format (like JSON,
-	 * XML, etc...) and written to the web response.<br/>
-	 * If no method is found to serve the current request, a 400 HTTP code is
-	 * returned to the client. Similarly, a 401 HTTP code is return if the user
-	 * doesn't own one of the roles required to execute an annotated method (See
-	 * {@link AuthorizeInvocation}).
+	/**
+	 * Builds the ETag of a response from the version of its data.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 * @param version
+	 *            the version of the data, can be null.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @return the ETag, or null if the version is null.
 	 */
-	@Override
-	public final void respond(Attributes attributes) {
-		PageParameters pageParameters = attributes.getParameters();
-		WebResponse response = (WebResponse) attributes.getResponse();
-		HttpMethod httpMethod = HttpUtils.getHttpMethod((WebRequest) RequestCycle.get()
-				.getRequest());
-		int indexedParamCount = pageParameters.getIndexedCount();
+	private String buildEntityTag(MethodMappingInfo mappedMethod, String version, String mimeType) {
+		if (version == null)
+			return null;
 
-		// mapped method are stored concatenating the number of the segments of
-		// their URL and their HTTP method (see annotation MethodMapping)
-		List<MethodMappingInfo> mappedMethodsCandidates = mappedMethods.get(indexedParamCount + "_"
-				+ httpMethod.getMethod());
+		// each MIME type is a different representation of the same data
+		return HttpUtils.toEntityTag(mappedMethod.isOutputFormatNegotiated() ? version + "-"
+				+ mimeType : version);
+	}
 
-		MethodMappingInfo mappedMethod = selectMostSuitedMethod(mappedMethodsCandidates,
-				pageParameters);
+	/**
+	 * Checks the conditional headers of the current request. Header
+	 * 'If-None-Match' takes precedence over 'If-Modified-Since'.
+	 * 
+	 * @param entityTag
+	 *            the current ETag of the response, can be null.
+	 * @param lastModified
+	 *            the last modified time (in milliseconds) of the response, -1
+	 *            if unknown.
+	 * @return true if the client has the current version of the response.
+	 */
+	private boolean isNotModified(String entityTag, long lastModified) {
+		WebRequest request = (WebRequest) RequestCycle.get().getRequest();
 
-		if (mappedMethod != null) {
-			if (!hasAny(mappedMethod.getRoles())) {
-				response.sendError(401, "User is not allowed to invoke method on server.");
-				return;
-			}
+		if (HttpUtils.getHttpMethod(request) != HttpMethod.GET)
+			return false;
 
-			onBeforeMethodInvoked(mappedMethod, attributes);
-			Object result = invokeMappedMethod(mappedMethod, attributes);
-			onAfterMethodInvoked(mappedMethod, attributes, result);
+		String ifNoneMatch = request.getHeader("If-None-Match");
 
-			// if the invoked method returns a value, it is written to response
-			if (result != null) {
-				serializeObjectToResponse(response, result, mappedMethod.getMimeOutputFormat());
-			}
-		} else {
-			response.sendError(400, "No suitable method found for URL '" + extractUrlFromRequest()
-					+ "' and HTTP method " + httpMethod);
-		}
+		if (ifNoneMatch != null)
+			return entityTag != null && HttpUtils.matchesEntityTag(ifNoneMatch, entityTag);
+
+		if (lastModified < 0)
+			return false;
+
+		Time ifModifiedSince = request.getIfModifiedSinceHeader();
+
+		// HTTP dates have a precision of one second
+		return ifModifiedSince != null
+				&& lastModified / 1000 <= ifModifiedSince.getMilliseconds() / 1000;
 	}
 
 	/**
-	 * Invoked just before a mapped method is invoked to serve the current
-	 * request.
+	 * Sends a 304 HTTP code with no body.
 	 * 
-	 * @param mappedMethod
-	 *            the mapped method.
-	 * @param attributes
-	 *            the current Attributes object.
+	 * @param response
+	 *            the current response object.
+	 * @param entityTag
+	 *            the current ETag of the response, can be null.
+	 * @param lastModified
+	 *            the last modified time (in milliseconds) of the response, -1
+	 *            if unknown.
 	 */
-	protected void onBeforeMethodInvoked(MethodMappingInfo mappedMethod, Attributes attributes) {
+	private void sendNotModified(WebResponse response, String entityTag, long lastModified) {
+		response.setStatus(304);
+
+		if (entityTag != null)
+			response.setHeader("ETag", entityTag);
+
+		if (lastModified >= 0)
+			response.setLastModifiedTime(Time.millis(lastModified));
 	}
 
 	/**
-	 * Invoked just after a mapped method has been invoked to serve the current
-	 * request.
+	 * Builds the key used to cache the response of the current request. The
+	 * key is made of the cache name and its generation (See
+	 * {@link ResponseCache#buildKey(String, String)}) and the request key
+	 * built with the query parameters and headers listed in {@link Cacheable}.
 	 * 
 	 * @param mappedMethod
 	 *            the mapped method.
-	 * @param attributes
-	 *            the current Attributes object.
-	 * @param result
-	 *            the value returned by the invoked method.
+	 * @param pageParameters
+	 *            the PageParameters of the current request.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @return the cache key.
 	 */
-	protected void onAfterMethodInvoked(MethodMappingInfo mappedMethod, Attributes attributes,
-			Object result) {
+	private String buildCacheKey(MethodMappingInfo mappedMethod, PageParameters pageParameters,
+			String mimeType) {
+		Cacheable cacheable = mappedMethod.getCacheable();
+
+		return responseCache.buildKey(mappedMethod.getCacheName(),
+				buildRequestKey(pageParameters, mimeType, cacheable.queryParams(),
+						cacheable.headers()));
 	}
 
 	/**
-	 * Method invoked to serialize the result of the invoked method and write
-	 * this value to the response.
+	 * Builds a key that identifies the response of the current request. The
+	 * key is made of the MIME type, the URL segments and the given query
+	 * parameters and headers.
+	 * 
+	 * @param pageParameters
+	 *            the PageParameters of the current request.
+	 * @param mimeType
+	 *            the MIME type of the response.
+	 * @param queryParams
+	 *            the query parameters that are part of the key.
+	 * @param headers
+	 *            the headers that are part of the key.
+	 * @return the request key.
+	 */
+	private String buildRequestKey(PageParameters pageParameters, String mimeType,
+			String[] queryParams, String[] headers) {
+		WebRequest request = (WebRequest) RequestCycle.get().getRequest();
+		StringBuilder key = new StringBuilder(mimeType).append('\n');
+
+		for (int i = 0; i < pageParameters.getIndexedCount(); i++)
+			key.append('/').append(pageParameters.get(i));
+
+		for (String queryParam : queryParams)
+			key.append('\n').append(queryParam).append('=').append(pageParameters.get(queryParam));
+
+		for (String header : headers)
+			key.append('\n').append(header).append(':').append(request.getHeader(header));
+
+		return key.toString();
+	}
+
+	/**
+	 * Creates a compressing wrapper for the current response if the client
+	 * accepts a supported content encoding.
 	 * 
 	 * @param response
 	 *            The current response object.
-	 * @param result
-	 *            The object to write to response.
-	 * @param restMimeFormats
+	 * @param mimeType
+	 *            The MIME type of the response.
+	 * @param cacheKey
+	 *            the key used to cache the compressed response, null if it
+	 *            can't be cached.
+	 * @return the compressing response, or null if the response must not be
+	 *         compressed.
 	 */
-	private void serializeObjectToResponse(WebResponse response, Object result, String mimeType) {
-		try {
-			response.setContentType(mimeType);
-			objSerialDeserial.objectToResponse(result, response, mimeType);
-		} catch (Exception e) {
-			throw new RuntimeException("Error writing object to response.", e);
-		}
+	private CompressingWebResponse newCompressingResponse(WebResponse response, String mimeType,
+			String cacheKey) {
+		if (compressionThreshold < 0 || !HttpUtils.isCompressible(mimeType))
+			return null;
+
+		WebRequest request = (WebRequest) RequestCycle.get().getRequest();
+		String encoding = HttpUtils.selectContentEncoding(request.getHeader("Accept-Encoding"));
+
+		response.addHeader("Vary", "Accept-Encoding");
+
+		if (encoding == null)
+			return null;
+
+		return new CompressingWebResponse(response, encoding, compressionThreshold,
+				compressedContentCache, cacheKey);
 	}
 
 	/**
@@ -305,11 +1708,12 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 				HttpMethod httpMethod = methodMapped.httpMethod();
 				MethodMappingInfo urlMappingInfo = new MethodMappingInfo(methodMapped, method);
 
-				if (!isMimeTypesSupported(urlMappingInfo.getMimeInputFormat())
-						|| !isMimeTypesSupported(urlMappingInfo.getMimeOutputFormat()))
+				if (!isMimeTypesSupported(urlMappingInfo.getMimeInputFormat()))
 					throw new WicketRuntimeException(
 							"Mapped methods use a MIME type not supported by obj serializer/deserializer!");
 
+				loadOutputSerialDeserials(urlMappingInfo);
+
 				mappedMethods.addValue(
 						urlMappingInfo.getSegmentsCount() + "_" + httpMethod.getMethod(),
 						urlMappingInfo);
@@ -322,6 +1726,39 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 					"Annotation AuthorizeInvocation is used but no role-checking strategy has been set for the controller!");
 	}
 
+	/**
+	 * Resolves the serializers/deserializers for the output formats of the
+	 * given mapped method. If the current obj serial/deserial is a
+	 * {@link MultiFormatSerialDeserial}, the serial/deserial registered for
+	 * each MIME type is used directly.
+	 * 
+	 * @param mappedMethod
+	 *            the mapped method.
+	 */
+	private void loadOutputSerialDeserials(MethodMappingInfo mappedMethod) {
+		String[] outputFormats = mappedMethod.getMimeOutputFormats();
+
+		for (int i = 0; i < outputFormats.length; i++) {
+			String mimeType = outputFormats[i];
+
+			if (!isMimeTypesSupported(mimeType))
+				throw new WicketRuntimeException(
+						"Mapped methods use a MIME type not supported by obj serializer/deserializer!");
+
+			IObjectSerialDeserial serialDeserial = objSerialDeserial;
+
+			if (objSerialDeserial instanceof MultiFormatSerialDeserial) {
+				IObjectSerialDeserial registered = ((MultiFormatSerialDeserial) objSerialDeserial)
+						.getSerDeser(mimeType);
+
+				if (registered != null)
+					serialDeserial = registered;
+			}
+
+			serialDeserialsByMimeType.put(mimeType, serialDeserial);
+		}
+	}
+
 	/**
 	 * Checks if the given MIME type is supported by the current obj
 	 * serial/deserial.
@@ -342,21 +1779,309 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 	 * 
 	 * @param mappedMethod
 	 *            mapping info of the method.
-	 * @param attributes
-	 *            Attributes object for the current request.
-	 * @return the value returned by the invoked method
+	 * @param parametersValues
+	 *            the values of the method parameters.
+	 * @param response
+	 *            the current response object.
+	 * @return the value returned by the invoked method
+	 */
+	private Object invokeMappedMethod(MethodMappingInfo mappedMethod, Object[] parametersValues,
+			WebResponse response) {
+		Method method = mappedMethod.getMethod();
+
+		try {
+			return method.invoke(this, parametersValues);
+		} catch (InvocationTargetException e) {
+			// methods can fail with a specific HTTP code (e.g. in-process invocations)
+			if (e.getCause() instanceof AbortWithHttpErrorCodeException)
+				throw (AbortWithHttpErrorCodeException) e.getCause();
+
+			response.sendError(500, "General server error.");
+			throw new RuntimeException("Error invoking method '" + method.getName() + "'", e);
+		} catch (Exception e) {
+			response.sendError(500, "General server error.");
+			throw new RuntimeException("Error invoking method '" + method.getName() + "'", e);
+		}
+	}
+
+	/**
+	 * Creates the invocation of a mapped method to run on the method executor
+	 * or the request scheduler. Parameters are bound by the current thread,
+	 * while the invocation runs with a copy of its Wicket thread context and
+	 * with the given deadline (See {@link #getRemainingTime()}). Once started,
+	 * the invocation takes over the permits of the request (See
+	 * {@link Bulkhead} and {@link AdaptiveConcurrency}) and releases them when
+	 * it completes, even if the request is over.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param parametersValues
+	 *            the values of the method parameters.
+	 * @param startTime
+	 *            the time (as returned by {@link System#nanoTime()}) the
+	 *            invocation has been requested, used to compute its latency.
+	 * @param deadline
+	 *            the time (as returned by {@link System#nanoTime()}) by which
+	 *            the invocation must complete.
+	 * @return the invocation.
+	 */
+	private ContextPropagatingCallable<Object> newInvocation(final MethodMappingInfo mappedMethod,
+			final Object[] parametersValues, final long startTime, long deadline) {
+		final HeldPermits heldPermits = RequestCycle.get().getMetaData(HELD_PERMITS);
+		Callable<Object> invocation = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				boolean ownsPermits = heldPermits != null && heldPermits.takeOver();
+				boolean completed = false;
+
+				try {
+					Object result = mappedMethod.getMethod().invoke(AbstractRestResource.this,
+							parametersValues);
+
+					completed = true;
+					return result;
+				} catch (InvocationTargetException e) {
+					Throwable cause = e.getCause();
+
+					throw cause instanceof Exception ? (Exception) cause : e;
+				} finally {
+					if (ownsPermits)
+						heldPermits.releaseTakenOver(completed ? System.nanoTime() - startTime
+								: -1);
+				}
+			}
+		};
+
+		return new ContextPropagatingCallable<Object>(new DeadlineCallable<Object>(invocation,
+				deadline));
+	}
+
+	/**
+	 * Submits the invocation of a mapped method to the method executor (See
+	 * {@link AsyncInvocation} and {@link Deadline}) or, if the resource has
+	 * one, to the request scheduler (See
+	 * {@link #setRequestScheduler(PriorityScheduler)}). If the invocation is
+	 * rejected, a 503 HTTP code is returned to the client.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param invocation
+	 *            the invocation (See
+	 *            {@link #newInvocation(MethodMappingInfo, Object[], long, long)}).
+	 * @param attributes
+	 *            Attributes object for the current request.
+	 * @return the future result of the invocation, or null if the method is
+	 *         not invoked.
+	 */
+	private Future<Object> submitMappedMethod(MethodMappingInfo mappedMethod,
+			ContextPropagatingCallable<Object> invocation, Attributes attributes) {
+		try {
+			if (requestScheduler != null)
+				return requestScheduler.submit(invocation,
+						getRequestPriority(mappedMethod, (WebRequest) attributes.getRequest()));
+
+			return methodExecutor.submit(invocation);
+		} catch (RejectedExecutionException e) {
+			((WebResponse) attributes.getResponse()).sendError(503, "Server too busy.");
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the result of a mapped method that returned a {@link Future}.
+	 * If the result is not available within the deadline of the invocation or,
+	 * if it has none, within the async result timeout (see
+	 * {@link #setAsyncResultTimeout(long)}), the future is cancelled and a 504
+	 * HTTP code is returned to the client. The submitted invocation, if any,
+	 * loses the request cycle before being interrupted.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param future
+	 *            the future returned by the method.
+	 * @param response
+	 *            the current response object.
+	 * @param invocation
+	 *            the submitted invocation, null if the method has been invoked
+	 *            by the current thread.
+	 * @param deadline
+	 *            the time (as returned by {@link System#nanoTime()}) by which
+	 *            the submitted invocation must complete.
+	 * @return the result of the future, or null if it's not available.
+	 */
+	private Object awaitAsyncResult(MethodMappingInfo mappedMethod, Future<?> future,
+			WebResponse response, ContextPropagatingCallable<Object> invocation, long deadline) {
+		String methodName = mappedMethod.getMethod().getName();
+		// the deadline of a submitted invocation covers all its futures
+		long timeout = invocation != null ? deadline - System.nanoTime() : TimeUnit.MILLISECONDS
+				.toNanos(asyncResultTimeout);
+
+		try {
+			return future.get(Math.max(0, timeout), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			cancelInvocation(future, invocation);
+			response.sendError(504, "The requested method didn't complete in time.");
+			return null;
+		} catch (InterruptedException e) {
+			cancelInvocation(future, invocation);
+			Thread.currentThread().interrupt();
+			throw new WicketRuntimeException("Interrupted while waiting for the result of method '"
+					+ methodName + "'", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AbortWithHttpErrorCodeException)
+				throw (AbortWithHttpErrorCodeException) e.getCause();
+
+			// the invocation has been discarded by the request scheduler
+			if (e.getCause() instanceof RejectedExecutionException) {
+				response.sendError(503, "Server too busy.");
+				return null;
+			}
+
+			response.sendError(500, "General server error.");
+			throw new RuntimeException("Error invoking method '" + methodName + "'", e.getCause());
+		} catch (CancellationException e) {
+			response.sendError(500, "General server error.");
+			throw new RuntimeException("Result of method '" + methodName + "' was cancelled", e);
+		}
+	}
+
+	/**
+	 * Cancels an invocation whose result is no longer awaited. The submitted
+	 * invocation, if any, loses the request cycle before being interrupted,
+	 * since the request is over for it.
+	 * 
+	 * @param future
+	 *            the future result of the invocation.
+	 * @param invocation
+	 *            the submitted invocation, can be null.
+	 */
+	private void cancelInvocation(Future<?> future, ContextPropagatingCallable<Object> invocation) {
+		if (invocation != null)
+			invocation.revoke();
+
+		future.cancel(true);
+	}
+
+	/**
+	 * Gets the max time to wait for a future result. It's the time left
+	 * before the deadline of the invocation run by the current thread, if
+	 * any, or the async result timeout.
+	 * 
+	 * @return the timeout (in nanoseconds).
+	 */
+	private long getResultTimeout() {
+		long remainingTime = DeadlineCallable.getRemainingTime();
+
+		return remainingTime >= 0 ? remainingTime : TimeUnit.MILLISECONDS
+				.toNanos(asyncResultTimeout);
+	}
+
+	/**
+	 * Gets the time left before the deadline of the mapped method invoked by
+	 * the current request. Methods annotated with {@link Deadline} (or
+	 * invoked on the method executor, where the async result timeout applies)
+	 * can use it to bound the time of their downstream calls. When the
+	 * deadline passes the method is interrupted and loses the request cycle,
+	 * so blocking calls should stop when the thread is interrupted.
+	 * 
+	 * @return the time left (in milliseconds), 0 if the deadline has passed or
+	 *         -1 if the current invocation has no deadline.
+	 */
+	protected final long getRemainingTime() {
+		long remainingTime = DeadlineCallable.getRemainingTime();
+
+		return remainingTime >= 0 ? TimeUnit.NANOSECONDS.toMillis(remainingTime) : -1;
+	}
+
+	/**
+	 * Creates the default method executor: a pool of up to
+	 * {@value #DEFAULT_METHOD_THREADS} threads, which are stopped when idle,
+	 * with a queue of {@value #DEFAULT_METHOD_QUEUE_SIZE} invocations.
+	 * 
+	 * @return the executor.
+	 */
+	private static ExecutorService newDefaultMethodExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_METHOD_THREADS,
+				DEFAULT_METHOD_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+						DEFAULT_METHOD_QUEUE_SIZE), new NamedThreadFactory("rest-method"));
+
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Invokes the version method of a mapped method (See {@link Versioned}).
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param parametersValues
+	 *            the values of the method parameters.
+	 * @param response
+	 *            the current response object.
+	 * @return the version returned by the method, can be null.
+	 */
+	private String invokeVersionMethod(MethodMappingInfo mappedMethod, Object[] parametersValues,
+			WebResponse response) {
+		Method versionMethod = mappedMethod.getVersionMethod();
+
+		try {
+			Object version = versionMethod.invoke(this, parametersValues);
+
+			return version != null ? version.toString() : null;
+		} catch (Exception e) {
+			response.sendError(500, "General server error.");
+			throw new RuntimeException("Error invoking method '" + versionMethod.getName() + "'",
+					e);
+		}
+	}
+
+	/**
+	 * Extracts the values of the parameters of a mapped method from the
+	 * current request. If a required value is missing, a 400 HTTP code is
+	 * returned to the client.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param attributes
+	 *            Attributes object for the current request.
+	 * @return the values of the method parameters, or null if a required value
+	 *         is missing.
+	 */
+	private Object[] extractParametersValues(MethodMappingInfo mappedMethod, Attributes attributes) {
+		Object[] parametersValues = bindParametersValues(mappedMethod, attributes.getParameters(),
+				BODY_FROM_REQUEST);
+
+		if (parametersValues == null) {
+			WebResponse response = (WebResponse) attributes.getResponse();
+			HttpMethod httpMethod = HttpUtils.getHttpMethod((WebRequest) RequestCycle.get()
+					.getRequest());
+
+			response.sendError(400, "No suitable method found for URL '"
+					+ extractUrlFromRequest() + "' and HTTP method " + httpMethod);
+		}
+
+		return parametersValues;
+	}
+
+	/**
+	 * Binds the parameters of a mapped method to their values.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @param pageParameters
+	 *            the parameters of the URL.
+	 * @param requestBody
+	 *            the value of the parameter annotated with {@link RequestBody},
+	 *            or {@link #BODY_FROM_REQUEST} to deserialize it from the body
+	 *            of the current request.
+	 * @return the parameter values, or null if a required parameter has no
+	 *         value.
 	 */
-	private Object invokeMappedMethod(MethodMappingInfo mappedMethod, Attributes attributes) {
-
+	private Object[] bindParametersValues(MethodMappingInfo mappedMethod,
+			PageParameters pageParameters, Object requestBody) {
 		Method method = mappedMethod.getMethod();
 		List parametersValues = new ArrayList();
 
-		// Attributes objects
-		PageParameters pageParameters = attributes.getParameters();
-		WebResponse response = (WebResponse) attributes.getResponse();
-		HttpMethod httpMethod = HttpUtils.getHttpMethod((WebRequest) RequestCycle.get()
-				.getRequest());
-
 		LinkedHashMap<String, String> pathParameters = mappedMethod
 				.populatePathParameters(pageParameters);
 		Iterator<String> pathParamsIterator = pathParameters.values().iterator();
@@ -370,7 +2095,7 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 			//retrieve parameter value
 			if (annotation != null)
 				paramValue = extractParameterValue(methodParameter, pathParameters, annotation,
-						pageParameters);
+						pageParameters, requestBody);
 			else
 				paramValue = extractParameterFromUrl(methodParameter, pathParamsIterator);
 			//try to use the default value
@@ -378,21 +2103,13 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 				paramValue = toObject(methodParameter.getParameterClass(),
 						methodParameter.getDeaultValue());
 
-			if (paramValue == null && methodParameter.isRequired()) {
-				response.sendError(400, "No suitable method found for URL '"
-						+ extractUrlFromRequest() + "' and HTTP method " + httpMethod);
+			if (paramValue == null && methodParameter.isRequired())
 				return null;
-			}
 
 			parametersValues.add(paramValue);
 		}
 
-		try {
-			return method.invoke(this, parametersValues.toArray());
-		} catch (Exception e) {
-			response.sendError(500, "General server error.");
-			throw new RuntimeException("Error invoking method '" + method.getName() + "'", e);
-		}
+		return parametersValues.toArray();
 	}
 
 	/**
@@ -417,17 +2134,22 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 	 *            retrieve the value for the current parameter.
 	 * @param pageParameters
 	 *            PageParameters for the current request.
+	 * @param requestBody
+	 *            the value of the parameter annotated with {@link RequestBody},
+	 *            or {@link #BODY_FROM_REQUEST} to deserialize it from the body
+	 *            of the current request.
 	 * @return the extracted value.
 	 */
 	private Object extractParameterValue(MethodParameter methodParameter,
 			LinkedHashMap<String, String> pathParameters, Annotation annotation,
-			PageParameters pageParameters) {
+			PageParameters pageParameters, Object requestBody) {
 		Object paramValue = null;
 		Class<?> argClass = methodParameter.getParameterClass();
 		String mimeInputFormat = methodParameter.getOwnerMethod().getMimeInputFormat();
 
 		if (annotation instanceof RequestBody)
-			paramValue = deserializeObjectFromRequest(argClass, mimeInputFormat);
+			paramValue = requestBody == BODY_FROM_REQUEST ? deserializeObjectFromRequest(argClass,
+					mimeInputFormat) : requestBody;
 		else if (annotation instanceof PathParam)
 			paramValue = toObject(argClass, pathParameters.get(((PathParam) annotation).value()));
 		else if (annotation instanceof RequestParam)
@@ -483,6 +2205,11 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 	 */
 	private Object extractParameterFromHeader(HeaderParam headerParam, Class<?> argClass) {
 		String value = headerParam.value();
+
+		// in-process invocations can happen outside of a request
+		if (RequestCycle.get() == null)
+			return null;
+
 		WebRequest webRequest = (WebRequest) RequestCycle.get().getRequest();
 
 		return toObject(argClass, webRequest.getHeader(value));
@@ -523,6 +2250,10 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 	 */
 	private Object extractParameterFromCookies(CookieParam cookieParam, Class<?> argClass) {
 		String value = cookieParam.value();
+
+		if (RequestCycle.get() == null)
+			return null;
+
 		WebRequest webRequest = (WebRequest) RequestCycle.get().getRequest();
 
 		if (webRequest.getCookie(value) == null)
@@ -533,21 +2264,64 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 
 	/**
 	 * Internal method that tries to extract an instance of the given class from
-	 * the request body.
+	 * the request body. Bodies compressed with gzip or deflate are
+	 * decompressed while they are read, and a 413 HTTP code is returned if
+	 * the decompressed body exceeds the max allowed size (See
+	 * {@link #setMaxRequestBodySize(long)}). The inflater used to decompress
+	 * the body is released once the object has been read.
 	 * 
 	 * @param argClass
 	 *            the type we want to extract from request body.
 	 * @return the extracted object.
 	 */
 	private Object deserializeObjectFromRequest(Class<?> argClass, String mimeType) {
-		WebRequest servletRequest = (WebRequest) RequestCycle.get().getRequest();
+		WebRequest servletRequest = newDecodingRequest((WebRequest) RequestCycle.get()
+				.getRequest());
 		try {
 			return objSerialDeserial.requestToObject(servletRequest, argClass, mimeType);
 		} catch (Exception e) {
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof RequestBodyTooLargeException)
+					throw new AbortWithHttpErrorCodeException(413, cause.getMessage());
+			}
+
 			throw new RuntimeException("Error deserializing object from request", e);
+		} finally {
+			Object containerRequest = servletRequest.getContainerRequest();
+
+			// the body has been read, the inflater is no longer needed
+			if (containerRequest instanceof DecompressingHttpServletRequest)
+				((DecompressingHttpServletRequest) containerRequest).release();
 		}
 	}
 
+	/**
+	 * Wraps the given request so that its body is decompressed while it's
+	 * read, if it has been sent with a content encoding. When a max body size
+	 * is set the body is always wrapped, so that bytes are counted also for
+	 * requests without a declared length (like chunked ones).
+	 * 
+	 * @param request
+	 *            the current request.
+	 * @return the wrapped request, or the request itself if its body is
+	 *         neither encoded nor limited.
+	 */
+	private WebRequest newDecodingRequest(WebRequest request) {
+		String encoding = HttpUtils.getContentEncoding(request);
+
+		if ((encoding == null && maxRequestBodySize < 0)
+				|| !(request instanceof ServletWebRequest))
+			return request;
+
+		ServletWebRequest servletRequest = (ServletWebRequest) request;
+		long maxBodySize = maxRequestBodySize >= 0 ? maxRequestBodySize : Long.MAX_VALUE;
+		HttpServletRequest decompressingRequest = new DecompressingHttpServletRequest(
+				servletRequest.getContainerRequest(), encoding, maxBodySize);
+
+		return new ServletWebRequest(decompressingRequest, servletRequest.getFilterPrefix(),
+				servletRequest.getUrl());
+	}
+
 	/***
 	 * Extract a parameter values from the rest URL.
 	 * 
@@ -612,4 +2386,515 @@ public abstract class AbstractRestResource<T extends IObjectSerialDeserial> impl
 			return roleCheckingStrategy.hasAnyRole(roles);
 		}
 	}
+
+	/**
+	 * Gets the size (in bytes) under which responses are not compressed.
+	 * 
+	 * @return the compression threshold, negative if compression is disabled.
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Sets the size (in bytes) under which responses are not compressed. Use a
+	 * negative value to disable compression. The default value is 1024.
+	 * 
+	 * @param compressionThreshold
+	 *            the compression threshold.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Gets the cache used to keep the compressed responses of GET methods.
+	 * 
+	 * @return the cache of compressed contents, null if not used.
+	 */
+	public CompressedContentCache getCompressedContentCache() {
+		return compressedContentCache;
+	}
+
+	/**
+	 * Sets the cache used to keep the compressed responses of GET methods, so
+	 * that the same content is not compressed again when it's served
+	 * repeatedly. Responses are cached by URL and ETag, so only the ones with
+	 * an ETag are cached (See {@link #setHashEntityTags(boolean)}). No cache
+	 * is used by default.
+	 * 
+	 * @param compressedContentCache
+	 *            the cache of compressed contents. Can be null.
+	 */
+	public void setCompressedContentCache(CompressedContentCache compressedContentCache) {
+		this.compressedContentCache = compressedContentCache;
+	}
+
+	/**
+	 * Gets the max size (in bytes) of a request body.
+	 * 
+	 * @return the max size of a request body, negative if there's no limit.
+	 */
+	public long getMaxRequestBodySize() {
+		return maxRequestBodySize;
+	}
+
+	/**
+	 * Sets the max size (in bytes) of a request body. The limit is checked
+	 * against header 'Content-Length' before the body is read and, for bodies
+	 * compressed with gzip or deflate, against the decompressed size while the
+	 * body is read. Use a negative value to remove the limit. The default
+	 * value is 10MB.
+	 * 
+	 * @param maxRequestBodySize
+	 *            the max size of a request body.
+	 */
+	public void setMaxRequestBodySize(long maxRequestBodySize) {
+		this.maxRequestBodySize = maxRequestBodySize;
+	}
+
+	/**
+	 * Gets the max size (in bytes) of the responses sent with header
+	 * 'Content-Length'.
+	 * 
+	 * @return the content length threshold, 0 if buffering is disabled.
+	 */
+	public int getContentLengthThreshold() {
+		return contentLengthBufferPool != null ? contentLengthBufferPool.getArraySize() : 0;
+	}
+
+	/**
+	 * Sets the max size (in bytes) of the responses sent with header
+	 * 'Content-Length'. Responses up to this size are buffered in memory, so
+	 * that their exact length is known before they are sent, while bigger
+	 * responses are streamed with no length. Use 0 or a negative value to
+	 * disable buffering. The default value is 8192.
+	 * 
+	 * @param contentLengthThreshold
+	 *            the content length threshold.
+	 */
+	public void setContentLengthThreshold(int contentLengthThreshold) {
+		this.contentLengthBufferPool = contentLengthThreshold > 0 ? new ByteArrayPool(
+				contentLengthThreshold, 32) : null;
+	}
+
+	/**
+	 * Gets the cache of the responses of the methods annotated with
+	 * {@link Cacheable}.
+	 * 
+	 * @return the response cache.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Sets the cache of the responses of the methods annotated with
+	 * {@link Cacheable}. The default cache keeps up to 1000 responses in
+	 * memory. Responses can be kept outside the JVM heap or shared with other
+	 * JVMs using a different {@link IResponseCacheStore} (See
+	 * {@link ResponseCache#ResponseCache(IResponseCacheStore)}).
+	 * 
+	 * @param responseCache
+	 *            the response cache.
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		Args.notNull(responseCache, "responseCache");
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Removes the cached responses of the methods using the given cache name
+	 * (see {@link Cacheable#value()}). It's typically invoked by the methods
+	 * that modify the data returned by the cached ones.
+	 * 
+	 * @param cacheName
+	 *            the name of the cache.
+	 */
+	public void invalidateResponseCache(String cacheName) {
+		responseCache.invalidate(cacheName);
+	}
+
+	/**
+	 * Removes all the cached responses.
+	 */
+	public void invalidateResponseCache() {
+		responseCache.invalidateAll();
+	}
+
+	/**
+	 * Checks if the responses of GET methods have an ETag computed hashing
+	 * their content.
+	 * 
+	 * @return true if hashed ETags are enabled.
+	 */
+	public boolean isHashEntityTags() {
+		return hashEntityTags;
+	}
+
+	/**
+	 * Enables ETags computed hashing the content of the responses of GET
+	 * methods that have no version (See {@link Versioned} and
+	 * {@link IVersionedObject}). Such responses are serialized in memory
+	 * before being sent, so that a 304 HTTP code can be returned if the client
+	 * already has the same content. This saves bandwidth but not the
+	 * invocation of the method. Responses of methods annotated with
+	 * {@link Cacheable} always have a hashed ETag. Disabled by default.
+	 * 
+	 * @param hashEntityTags
+	 *            true to enable hashed ETags.
+	 */
+	public void setHashEntityTags(boolean hashEntityTags) {
+		this.hashEntityTags = hashEntityTags;
+	}
+
+	/**
+	 * Gets the cache of the serialized form of the returned
+	 * {@link IVersionedObject}s.
+	 * 
+	 * @return the cache of serialized objects, null if not used.
+	 */
+	public SerializedObjectCache getSerializedObjectCache() {
+		return serializedObjectCache;
+	}
+
+	/**
+	 * Sets the cache of the serialized form of the returned
+	 * {@link IVersionedObject}s. While the version of a returned object
+	 * doesn't change, its serialized form is written to the response without
+	 * invoking the serial/deserial again. The default cache keeps the last 64
+	 * serialized objects. Use null to disable it.
+	 * 
+	 * @param serializedObjectCache
+	 *            the cache of serialized objects. Can be null.
+	 */
+	public void setSerializedObjectCache(SerializedObjectCache serializedObjectCache) {
+		this.serializedObjectCache = serializedObjectCache;
+	}
+
+	/**
+	 * Gets the max time a request waits for the response of a coalesced
+	 * invocation (see {@link Coalesced}).
+	 * 
+	 * @return the coalescing timeout (in milliseconds).
+	 */
+	public long getCoalescingTimeout() {
+		return requestCoalescer.getTimeout();
+	}
+
+	/**
+	 * Sets the max time a request waits for the response of a coalesced
+	 * invocation (see {@link Coalesced}). When the time expires, the request
+	 * invokes the method on its own. The default value is 30 seconds.
+	 * 
+	 * @param coalescingTimeout
+	 *            the coalescing timeout (in milliseconds).
+	 */
+	public void setCoalescingTimeout(long coalescingTimeout) {
+		requestCoalescer.setTimeout(coalescingTimeout);
+		idempotentResponses.setTimeout(coalescingTimeout);
+	}
+
+	/**
+	 * Gets the store of the responses of the methods annotated with
+	 * {@link Idempotent}.
+	 * 
+	 * @return the idempotency store.
+	 */
+	public IResponseCacheStore getIdempotencyStore() {
+		return idempotentResponses.getStore();
+	}
+
+	/**
+	 * Sets the store of the responses of the methods annotated with
+	 * {@link Idempotent}. The default store keeps up to 1000 responses in
+	 * memory. A store shared by several nodes (or JVMs) is needed if the
+	 * retries of a client can reach a different node.
+	 * 
+	 * @param idempotencyStore
+	 *            the idempotency store.
+	 */
+	public void setIdempotencyStore(IResponseCacheStore idempotencyStore) {
+		Args.notNull(idempotencyStore, "idempotencyStore");
+		idempotentResponses.setStore(idempotencyStore);
+	}
+
+	/**
+	 * Gets the max time to wait for the result of a mapped method returning a
+	 * {@link Future}.
+	 * 
+	 * @return the async result timeout (in milliseconds).
+	 */
+	public long getAsyncResultTimeout() {
+		return asyncResultTimeout;
+	}
+
+	/**
+	 * Sets the max time to wait for the result of a mapped method returning a
+	 * {@link Future}. When the time expires, the future is cancelled and a 504
+	 * HTTP code is returned to the client. The default value is 30 seconds.
+	 * 
+	 * @param asyncResultTimeout
+	 *            the async result timeout (in milliseconds).
+	 */
+	public void setAsyncResultTimeout(long asyncResultTimeout) {
+		this.asyncResultTimeout = asyncResultTimeout;
+	}
+
+	/**
+	 * Gets the executor of the methods annotated with {@link AsyncInvocation}.
+	 * 
+	 * @return the method executor.
+	 */
+	public ExecutorService getMethodExecutor() {
+		return methodExecutor;
+	}
+
+	/**
+	 * Sets the executor of the methods annotated with {@link AsyncInvocation}.
+	 * By default they are run by a pool of up to 256 daemon threads with a
+	 * queue of 1024 invocations, shared by all the resources. Requests
+	 * exceeding the capacity of the executor get a 503 HTTP code: since an
+	 * invocation that ignores interruption keeps its thread after its
+	 * deadline, an unbounded executor should not be used.
+	 * 
+	 * @param methodExecutor
+	 *            the method executor.
+	 */
+	public void setMethodExecutor(ExecutorService methodExecutor) {
+		Args.notNull(methodExecutor, "methodExecutor");
+		this.methodExecutor = methodExecutor;
+	}
+
+	/**
+	 * Gets the max time a stream of Server-Sent Events stays silent before a
+	 * heartbeat is sent.
+	 * 
+	 * @return the heartbeat interval (in milliseconds).
+	 */
+	public long getEventHeartbeatInterval() {
+		return eventHeartbeatInterval;
+	}
+
+	/**
+	 * Sets the max time a stream of Server-Sent Events (See
+	 * {@link EventBroadcaster}) stays silent before a heartbeat comment is
+	 * sent. Heartbeats keep proxies from closing idle connections and let the
+	 * server notice the clients that went away. The default value is 15
+	 * seconds.
+	 * 
+	 * @param eventHeartbeatInterval
+	 *            the heartbeat interval (in milliseconds).
+	 */
+	public void setEventHeartbeatInterval(long eventHeartbeatInterval) {
+		Args.isTrue(eventHeartbeatInterval > 0, "eventHeartbeatInterval must be positive");
+		this.eventHeartbeatInterval = eventHeartbeatInterval;
+	}
+
+	/**
+	 * Gets the path of the batch route.
+	 * 
+	 * @return the batch path, or null if the batch route is not exposed.
+	 */
+	public String getBatchPath() {
+		return batchRoute.getPath();
+	}
+
+	/**
+	 * Exposes a batch route at the given path, relative to the resource path.
+	 * A POST request to this route carries an array of {@link BatchRequest}s
+	 * (method, path, headers and body) and is answered with an array of
+	 * {@link BatchResponse}s (status, headers and body), both serialized with
+	 * the MIME type of the request body. Sub-requests are served by the
+	 * request cycle of the application like any other request, so they can
+	 * target any resource. Consecutive GET sub-requests are run in parallel
+	 * (See {@link #setBatchExecutor(ExecutorService)}). By default the batch
+	 * route is not exposed.
+	 * 
+	 * @param batchPath
+	 *            the batch path (e.g. '/batch'), or null to hide the batch
+	 *            route.
+	 */
+	public void setBatchPath(String batchPath) {
+		batchRoute.setPath(batchPath);
+	}
+
+	/**
+	 * Gets the max number of sub-requests of a batch request.
+	 * 
+	 * @return the max batch size.
+	 */
+	public int getMaxBatchSize() {
+		return batchRoute.getMaxSize();
+	}
+
+	/**
+	 * Sets the max number of sub-requests of a batch request. Bigger batches
+	 * get a 413 HTTP code. The default value is 50.
+	 * 
+	 * @param maxBatchSize
+	 *            the max batch size.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		batchRoute.setMaxSize(maxBatchSize);
+	}
+
+	/**
+	 * Gets the executor of the sub-requests of batch requests.
+	 * 
+	 * @return the batch executor.
+	 */
+	public ExecutorService getBatchExecutor() {
+		return batchRoute.getExecutor();
+	}
+
+	/**
+	 * Sets the executor of the sub-requests of batch requests run in
+	 * parallel. By default they are run by a pool of daemon threads shared by
+	 * all the resources, twice as big as the number of processors.
+	 * 
+	 * @param batchExecutor
+	 *            the batch executor.
+	 */
+	public void setBatchExecutor(ExecutorService batchExecutor) {
+		batchRoute.setExecutor(batchExecutor);
+	}
+
+	/**
+	 * Gets the store of the token buckets used by {@link RateLimited}.
+	 * 
+	 * @return the rate limit store.
+	 */
+	public IRateLimitStore getRateLimitStore() {
+		return rateLimiter.getStore();
+	}
+
+	/**
+	 * Sets the store of the token buckets used by {@link RateLimited}. The
+	 * default store keeps up to 10000 buckets in memory; a shared store (See
+	 * {@link org.wicketstuff.rest.utils.ratelimit.MappedFileRateLimitStore})
+	 * applies the same limits on several JVMs.
+	 * 
+	 * @param rateLimitStore
+	 *            the rate limit store.
+	 */
+	public void setRateLimitStore(IRateLimitStore rateLimitStore) {
+		rateLimiter.setStore(rateLimitStore);
+	}
+
+	/**
+	 * Gets the scheduler of the invocations.
+	 * 
+	 * @return the request scheduler, or null if it's not used.
+	 */
+	public PriorityScheduler getRequestScheduler() {
+		return requestScheduler;
+	}
+
+	/**
+	 * Sets a scheduler that runs the invocations of the mapped methods on its
+	 * worker pool, in order of priority (See
+	 * {@link #getRequestPriority(MethodMappingInfo, WebRequest)}). Parameters
+	 * are bound by the request thread, which then waits for the result as for
+	 * {@link AsyncInvocation} (See {@link #setAsyncResultTimeout(long)}).
+	 * Invocations rejected or discarded by the scheduler get a 503 HTTP code.
+	 * By default no scheduler is used.
+	 * 
+	 * @param requestScheduler
+	 *            the request scheduler, or null to invoke the methods on the
+	 *            request thread.
+	 */
+	public void setRequestScheduler(PriorityScheduler requestScheduler) {
+		this.requestScheduler = requestScheduler;
+	}
+
+	/**
+	 * Sets the scheduling priority of the users owning a role. Roles are
+	 * checked with the role checking strategy of the resource.
+	 * 
+	 * @param role
+	 *            the role.
+	 * @param priority
+	 *            the priority of the requests of the users owning the role.
+	 */
+	public void setRolePriority(String role, int priority) {
+		Args.notEmpty(role, "role");
+		rolePriorities.put(role, priority);
+	}
+
+	/**
+	 * Gets the header carrying the scheduling priority of a request.
+	 * 
+	 * @return the priority header, or null if it's not used.
+	 */
+	public String getPriorityHeader() {
+		return priorityHeader;
+	}
+
+	/**
+	 * Sets a header carrying the scheduling priority of a request. A request
+	 * can raise its priority with this header, so it should be used only if
+	 * the header is set by a trusted proxy.
+	 * 
+	 * @param priorityHeader
+	 *            the priority header, or null to ignore it.
+	 */
+	public void setPriorityHeader(String priorityHeader) {
+		this.priorityHeader = priorityHeader;
+	}
+
+	/**
+	 * Gets the number of invocations in progress for each method limited by
+	 * {@link Bulkhead} or {@link AdaptiveConcurrency}.
+	 * 
+	 * @return the in-flight invocations, keyed by HTTP method and mapped path
+	 *         (e.g. 'GET /reports/{id}').
+	 */
+	public Map<String, Integer> getInFlightCounts() {
+		Map<String, Integer> inFlightCounts = new TreeMap<String, Integer>();
+
+		for (List<MethodMappingInfo> methods : mappedMethods.values()) {
+			for (MethodMappingInfo mappedMethod : methods) {
+				InvocationPermits permits = mappedMethod.getPermits();
+
+				if (permits != null)
+					inFlightCounts.put(getRouteName(mappedMethod), permits.getInFlightCount());
+			}
+		}
+
+		return inFlightCounts;
+	}
+
+	/**
+	 * Gets the current concurrency limit of each method annotated with
+	 * {@link AdaptiveConcurrency}.
+	 * 
+	 * @return the concurrency limits, keyed by HTTP method and mapped path
+	 *         (e.g. 'GET /reports/{id}').
+	 */
+	public Map<String, Integer> getConcurrencyLimits() {
+		Map<String, Integer> concurrencyLimits = new TreeMap<String, Integer>();
+
+		for (List<MethodMappingInfo> methods : mappedMethods.values()) {
+			for (MethodMappingInfo mappedMethod : methods) {
+				AdaptiveConcurrencyLimit concurrencyLimit = mappedMethod.getConcurrencyLimit();
+
+				if (concurrencyLimit != null)
+					concurrencyLimits.put(getRouteName(mappedMethod), concurrencyLimit.getLimit());
+			}
+		}
+
+		return concurrencyLimits;
+	}
+
+	/**
+	 * Gets the name of the route served by a method.
+	 * 
+	 * @param mappedMethod
+	 *            mapping info of the method.
+	 * @return HTTP method and mapped path.
+	 */
+	private String getRouteName(MethodMappingInfo mappedMethod) {
+		return mappedMethod.getHttpMethod().getMethod() + " " + mappedMethod.getPath();
+	}
 }
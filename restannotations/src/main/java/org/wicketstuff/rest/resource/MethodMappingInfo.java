@@ -17,18 +17,39 @@
 package org.wicketstuff.rest.resource;
 
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.authroles.authorization.strategies.role.Roles;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.wicketstuff.rest.annotations.AdaptiveConcurrency;
+import org.wicketstuff.rest.annotations.AsyncInvocation;
 import org.wicketstuff.rest.annotations.AuthorizeInvocation;
+import org.wicketstuff.rest.annotations.Bulkhead;
+import org.wicketstuff.rest.annotations.Cacheable;
+import org.wicketstuff.rest.annotations.Coalesced;
+import org.wicketstuff.rest.annotations.Deadline;
+import org.wicketstuff.rest.annotations.Idempotent;
 import org.wicketstuff.rest.annotations.MethodMapping;
+import org.wicketstuff.rest.annotations.Priority;
+import org.wicketstuff.rest.annotations.RateLimited;
+import org.wicketstuff.rest.annotations.Versioned;
+import org.wicketstuff.rest.annotations.parameters.RequestBody;
 import org.wicketstuff.rest.contenthandling.RestMimeTypes;
 import org.wicketstuff.rest.resource.urlsegments.AbstractURLSegment;
+import org.wicketstuff.rest.utils.concurrent.AdaptiveConcurrencyLimit;
+import org.wicketstuff.rest.utils.concurrent.BulkheadPermits;
+import org.wicketstuff.rest.utils.concurrent.InvocationPermits;
 import org.wicketstuff.rest.utils.http.HttpMethod;
+import org.wicketstuff.rest.utils.http.MediaType;
+import org.wicketstuff.rest.utils.reflection.ReflectionUtils;
+import org.wicketstuff.rest.utils.sse.EventBroadcaster;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -42,6 +63,8 @@ import org.wicketstuff.rest.utils.http.HttpMethod;
 public class MethodMappingInfo {
 	/** The HTTP method used to invoke this mapped method. */
 	private final HttpMethod httpMethod;
+	/** The path we mapped the method on. */
+	private final String path;
 	/** Segments that compose the URL we mapped the method on. */
 	private final List<AbstractURLSegment> segments;
 	
@@ -51,8 +74,49 @@ public class MethodMappingInfo {
 	private final Method method;
 	/** The MIME type to use in input. */
 	private final String inputFormat;
-	/** The MIME type to use in output. */
-	private final String outputFormat;
+	/** The optional charset declared for the input (null if not declared). */
+	private final String inputCharset;
+	/** Indicates if one of the method parameters is read from request body. */
+	private final boolean readsRequestBody;
+	/** The MIME types that can be used in output, in order of preference. */
+	private final String[] outputFormats;
+	/**
+	 * Cache of the results of content negotiation, keyed by the raw value of
+	 * header 'Accept'.
+	 */
+	private final ConcurrentHashMap<String, String> negotiatedFormats = new ConcurrentHashMap<String, String>();
+	/** The optional cache settings of the method (see {@link Cacheable}). */
+	private final Cacheable cacheable;
+	/** The optional coalescing settings of the method (see {@link Coalesced}). */
+	private final Coalesced coalesced;
+	/** The optional idempotency settings of the method (see {@link Idempotent}). */
+	private final Idempotent idempotent;
+	/** Indicates if the method is annotated with {@link AsyncInvocation}. */
+	private final boolean asyncInvocation;
+	/** The optional method returning the version of the data (see {@link Versioned}). */
+	private final Method versionMethod;
+	/** The optional concurrency limit of the method (see {@link Bulkhead}). */
+	private final Bulkhead bulkhead;
+	/** The permits of the bulkhead, null if the method is not limited. */
+	private final BulkheadPermits bulkheadPermits;
+	/** The optional adaptive concurrency settings (see {@link AdaptiveConcurrency}). */
+	private final AdaptiveConcurrency adaptiveConcurrency;
+	/** The adaptive concurrency limit, null if the method is not limited. */
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+	/** The permits needed to invoke the method, null if it's not limited. */
+	private final InvocationPermits permits;
+	/** The optional rate limit of the method (see {@link RateLimited}). */
+	private final RateLimited rateLimited;
+	/** The time (in microseconds) needed to refill a token of the rate limit. */
+	private final long rateRefillInterval;
+	/** The scheduling priority of the method (see {@link Priority}). */
+	private final int priority;
+	/** The max time (in milliseconds) the method can take, 0 if not bounded. */
+	private final long deadline;
+	/** Max number of entries kept in the negotiation cache. */
+	private static final int MAX_NEGOTIATED_FORMATS = 64;
+	/** Value cached when no output format is acceptable. */
+	private static final String NOT_ACCEPTABLE = "";
 
 	/**
 	 * Class constructor.
@@ -63,12 +127,311 @@ public class MethodMappingInfo {
 	public MethodMappingInfo(MethodMapping methodMapped, Method method) {
 		this.httpMethod = methodMapped.httpMethod();
 		this.method = method;
-		this.segments = Collections.unmodifiableList(loadSegments(methodMapped.value()));
+		this.path = methodMapped.value();
+		this.segments = Collections.unmodifiableList(loadSegments(path));
 		this.roles = loadRoles();
 
-		this.inputFormat = methodMapped.consumes();
-		this.outputFormat = methodMapped.produces();
+		MediaType consumes = MediaType.parse(methodMapped.consumes());
+
+		if (consumes == null || !consumes.isCharsetSupported())
+			throw new WicketRuntimeException("Invalid MIME type '" + methodMapped.consumes()
+					+ "' used as input format for method '" + method.getName() + "'");
+
+		this.inputFormat = consumes.getType();
+		this.inputCharset = consumes.getCharset();
+		this.readsRequestBody = loadReadsRequestBody();
+		this.outputFormats = loadOutputFormats(methodMapped.produces());
+		this.cacheable = method.getAnnotation(Cacheable.class);
+
+		if (cacheable != null && httpMethod != HttpMethod.GET)
+			throw new WicketRuntimeException("Annotation Cacheable can be used only with GET methods. Method: '"
+					+ method.getName() + "'");
+
+		this.coalesced = method.getAnnotation(Coalesced.class);
+
+		if (coalesced != null && httpMethod != HttpMethod.GET)
+			throw new WicketRuntimeException("Annotation Coalesced can be used only with GET methods. Method: '"
+					+ method.getName() + "'");
+
+		this.idempotent = method.getAnnotation(Idempotent.class);
+
+		if (idempotent != null && httpMethod != HttpMethod.POST && httpMethod != HttpMethod.PUT
+				&& httpMethod != HttpMethod.PATCH)
+			throw new WicketRuntimeException("Annotation Idempotent can be used only with POST, PUT or PATCH methods. Method: '"
+					+ method.getName() + "'");
+
+		this.asyncInvocation = method.isAnnotationPresent(AsyncInvocation.class);
+		this.versionMethod = loadVersionMethod();
+		this.bulkhead = method.getAnnotation(Bulkhead.class);
+
+		if (bulkhead != null && bulkhead.value() <= 0)
+			throw new WicketRuntimeException("Annotation Bulkhead must allow at least one invocation. Method: '"
+					+ method.getName() + "'");
+
+		this.bulkheadPermits = bulkhead != null ? new BulkheadPermits(bulkhead.value(),
+				bulkhead.maxWaiting(), bulkhead.maxWaitTime()) : null;
+		this.adaptiveConcurrency = method.getAnnotation(AdaptiveConcurrency.class);
+		this.concurrencyLimit = loadConcurrencyLimit();
+		this.permits = bulkheadPermits != null || concurrencyLimit != null ? new InvocationPermits(
+				concurrencyLimit, adaptiveConcurrency != null ? adaptiveConcurrency.retryAfter() : 0,
+				bulkheadPermits, bulkhead != null ? bulkhead.retryAfter() : 0) : null;
+		this.rateLimited = method.getAnnotation(RateLimited.class);
+		this.rateRefillInterval = loadRateRefillInterval();
+
+		Priority priorityAnnotation = method.getAnnotation(Priority.class);
+		this.priority = priorityAnnotation != null ? priorityAnnotation.value() : 0;
+
+		Deadline deadlineAnnotation = method.getAnnotation(Deadline.class);
+
+		if (deadlineAnnotation != null && deadlineAnnotation.value() <= 0)
+			throw new WicketRuntimeException("Annotation Deadline must allow a positive time. Method: '"
+					+ method.getName() + "'");
+
+		this.deadline = deadlineAnnotation != null ? deadlineAnnotation.value() : 0;
+	}
+
+	/**
+	 * Checks the settings of annotation {@link RateLimited} and computes the
+	 * refill interval of the token buckets.
+	 * 
+	 * @return the refill interval (in microseconds), or 0 if the annotation
+	 *         is not used.
+	 */
+	private long loadRateRefillInterval() {
+		if (rateLimited == null)
+			return 0;
+
+		if (rateLimited.value() <= 0 || rateLimited.period() <= 0 || rateLimited.burst() < 0)
+			throw new WicketRuntimeException("Invalid rate for annotation RateLimited. Method: '"
+					+ method.getName() + "'");
+
+		if (rateLimited.keyType() == RateLimited.KeyType.HEADER
+				&& rateLimited.header().length() == 0)
+			throw new WicketRuntimeException("Annotation RateLimited requires a header to identify clients. Method: '"
+					+ method.getName() + "'");
+
+		if (rateLimited.keyType() == RateLimited.KeyType.ROLE && rateLimited.roles().length == 0)
+			throw new WicketRuntimeException("Annotation RateLimited requires the roles sharing a bucket. Method: '"
+					+ method.getName() + "'");
+
+		long refillInterval = rateLimited.unit().toMicros(rateLimited.period()) / rateLimited.value();
+
+		if (refillInterval <= 0)
+			throw new WicketRuntimeException("Annotation RateLimited allows more than one request per microsecond. Method: '"
+					+ method.getName() + "'");
+
+		return refillInterval;
+	}
+
+	/**
+	 * Creates the concurrency limit configured with annotation
+	 * {@link AdaptiveConcurrency}.
+	 * 
+	 * @return the concurrency limit, or null if the annotation is not used.
+	 */
+	private AdaptiveConcurrencyLimit loadConcurrencyLimit() {
+		if (adaptiveConcurrency == null)
+			return null;
+
+		if (isEventStream() || Iterator.class.isAssignableFrom(method.getReturnType()))
+			throw new WicketRuntimeException("Annotation AdaptiveConcurrency can not be used with methods returning a stream. Method: '"
+					+ method.getName() + "'");
+
+		try {
+			return new AdaptiveConcurrencyLimit(adaptiveConcurrency.initialLimit(),
+					adaptiveConcurrency.minLimit(), adaptiveConcurrency.maxLimit(),
+					adaptiveConcurrency.tolerance());
+		} catch (IllegalArgumentException e) {
+			throw new WicketRuntimeException("Invalid settings for annotation AdaptiveConcurrency. Method: '"
+					+ method.getName() + "'", e);
+		}
+	}
+
+	/**
+	 * Loads the method indicated by annotation {@link Versioned}.
+	 * 
+	 * @return the version method, or null if the annotation is not used.
+	 */
+	private Method loadVersionMethod() {
+		Versioned versioned = method.getAnnotation(Versioned.class);
+
+		if (versioned == null)
+			return null;
+
+		if (httpMethod != HttpMethod.GET)
+			throw new WicketRuntimeException("Annotation Versioned can be used only with GET methods. Method: '"
+					+ method.getName() + "'");
+
+		try {
+			return method.getDeclaringClass().getMethod(versioned.value(),
+					method.getParameterTypes());
+		} catch (NoSuchMethodException e) {
+			throw new WicketRuntimeException("Version method '" + versioned.value()
+					+ "' not found for method '" + method.getName()
+					+ "'. It must be public and take the same parameters of the mapped method.", e);
+		}
+	}
+
+	/**
+	 * Normalizes the MIME types used as output formats.
+	 * 
+	 * @param produces
+	 *            the value of {@link MethodMapping#produces()}.
+	 * @return the lower-case output formats.
+	 */
+	private String[] loadOutputFormats(String[] produces) {
+		if (produces.length == 0)
+			throw new WicketRuntimeException("No output format specified for method '"
+					+ method.getName() + "'");
+
+		String[] formats = new String[produces.length];
+
+		for (int i = 0; i < produces.length; i++) {
+			MediaType mediaType = MediaType.parse(produces[i]);
+
+			if (mediaType == null)
+				throw new WicketRuntimeException("Invalid MIME type '" + produces[i]
+						+ "' used as output format for method '" + method.getName() + "'");
 
+			formats[i] = mediaType.getType();
+		}
+
+		return formats;
+	}
+
+	/**
+	 * Selects the output format to use for a request with the given value for
+	 * header 'Accept'. The result is cached per header value, so that the
+	 * common headers are parsed only once. The cache is emptied when it's
+	 * full. Methods with a single output format always use it, whatever the
+	 * value of the header.
+	 * 
+	 * @param accept
+	 *            the value of header 'Accept', can be null.
+	 * @return the output format with the highest quality factor (ties are
+	 *         resolved following the order of
+	 *         {@link MethodMapping#produces()}), or null if no output format
+	 *         is acceptable.
+	 */
+	public String negotiateOutputFormat(String accept) {
+		if (accept == null || outputFormats.length == 1)
+			return outputFormats[0];
+
+		String outputFormat = negotiatedFormats.get(accept);
+
+		if (outputFormat == null) {
+			outputFormat = selectOutputFormat(MediaType.parseList(accept));
+
+			// the header is set by clients: once the cache is full it's emptied,
+			// so that unusual values can't keep out the common ones
+			if (negotiatedFormats.size() >= MAX_NEGOTIATED_FORMATS)
+				negotiatedFormats.clear();
+
+			negotiatedFormats.put(accept, outputFormat);
+		}
+
+		return NOT_ACCEPTABLE.equals(outputFormat) ? null : outputFormat;
+	}
+
+	/**
+	 * Selects the output format with the highest quality factor for the given
+	 * media ranges.
+	 * 
+	 * @param mediaRanges
+	 *            the media ranges accepted by the client.
+	 * @return the selected output format or {@link #NOT_ACCEPTABLE}.
+	 */
+	private String selectOutputFormat(List<MediaType> mediaRanges) {
+		if (mediaRanges.isEmpty())
+			return outputFormats[0];
+
+		String bestFormat = NOT_ACCEPTABLE;
+		float bestQuality = 0f;
+
+		for (int i = 0; i < outputFormats.length; i++) {
+			String outputFormat = outputFormats[i];
+			int bestPrecision = 0;
+			float quality = 0f;
+
+			// the most specific media range determines the quality
+			for (MediaType mediaRange : mediaRanges) {
+				int precision = mediaRange.matchPrecision(outputFormat);
+
+				if (precision > bestPrecision) {
+					bestPrecision = precision;
+					quality = mediaRange.getQuality();
+				}
+			}
+
+			if (quality > bestQuality) {
+				bestQuality = quality;
+				bestFormat = outputFormat;
+			}
+		}
+
+		return bestFormat;
+	}
+
+	/**
+	 * Checks if one of the method parameters is annotated with
+	 * {@link RequestBody}.
+	 * 
+	 * @return true if the method reads its request body, false otherwise.
+	 */
+	private boolean loadReadsRequestBody() {
+		int paramsCount = method.getParameterTypes().length;
+
+		for (int i = 0; i < paramsCount; i++) {
+			if (ReflectionUtils.isParameterAnnotatedWith(i, method, RequestBody.class))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if a request with the given content type can be served by this
+	 * method. Requests without a content type are accepted and so are methods
+	 * that don't read the request body.
+	 * 
+	 * @param contentType
+	 *            the value of request header 'Content-Type', can be null.
+	 * @return true if the content type is compatible with the MIME type and
+	 *         the optional charset this method consumes, false otherwise.
+	 */
+	public boolean isContentTypeAccepted(String contentType) {
+		if (!readsRequestBody || contentType == null)
+			return true;
+
+		MediaType requestType = MediaType.parse(contentType);
+
+		if (requestType == null || !requestType.hasType(inputFormat)
+				|| !requestType.isCharsetSupported())
+			return false;
+
+		if (inputCharset == null || requestType.getCharset() == null)
+			return true;
+
+		return Charset.forName(inputCharset).equals(Charset.forName(requestType.getCharset()));
+	}
+
+	/**
+	 * Returns the charset that must be used to decode the body of a request
+	 * with the given content type.
+	 * 
+	 * @param contentType
+	 *            the value of request header 'Content-Type', can be null.
+	 * @return the charset declared by the request, or the one declared with
+	 *         {@link MethodMapping#consumes()} if the request has none. Null if
+	 *         no charset is available.
+	 */
+	public String getRequestCharset(String contentType) {
+		MediaType requestType = MediaType.parse(contentType);
+
+		if (requestType != null && requestType.getCharset() != null)
+			return requestType.getCharset();
+
+		return inputCharset;
 	}
 
 	/**
@@ -138,6 +501,15 @@ public class MethodMappingInfo {
 
 	// getters and setters
 
+	/**
+	 * Gets the path the method is mapped on.
+	 * 
+	 * @return the value of {@link MethodMapping#value()}.
+	 */
+	public String getPath() {
+		return path;
+	}
+
 	/**
 	 * Gets the segments of the mapped URL.
 	 * 
@@ -193,11 +565,214 @@ public class MethodMappingInfo {
 	}
 
 	/**
-	 * Gets the mime output format.
+	 * Gets the optional charset declared for the mime input format.
+	 *
+	 * @return the input charset or null if not declared
+	 */
+	public String getInputCharset() {
+		return inputCharset;
+	}
+
+	/**
+	 * Checks if the method reads the request body (i.e. it has a parameter
+	 * annotated with {@link RequestBody}).
+	 *
+	 * @return true if the request body is read
+	 */
+	public boolean readsRequestBody() {
+		return readsRequestBody;
+	}
+
+	/**
+	 * Gets the preferred mime output format.
 	 *
 	 * @return the mime output format
 	 */
 	public String getMimeOutputFormat() {
-		return outputFormat;
+		return outputFormats[0];
+	}
+
+	/**
+	 * Checks if the output format is negotiated with the client, i.e. if the
+	 * method produces more than one MIME type.
+	 *
+	 * @return true if the method produces more than one MIME type
+	 */
+	public boolean isOutputFormatNegotiated() {
+		return outputFormats.length > 1;
+	}
+
+	/**
+	 * Gets all the mime output formats, in order of preference.
+	 *
+	 * @return the mime output formats
+	 */
+	public String[] getMimeOutputFormats() {
+		return outputFormats.clone();
+	}
+
+	/**
+	 * Gets the cache settings of the method.
+	 * 
+	 * @return the {@link Cacheable} annotation of the method, or null if its
+	 *         responses are not cached.
+	 */
+	public Cacheable getCacheable() {
+		return cacheable;
+	}
+
+	/**
+	 * Gets the name of the cache used for the responses of the method.
+	 * 
+	 * @return the value of {@link Cacheable#value()} or, if it's empty, the
+	 *         name of the method. Null if the responses are not cached.
+	 */
+	public String getCacheName() {
+		if (cacheable == null)
+			return null;
+
+		return cacheable.value().length() > 0 ? cacheable.value() : method.getName();
+	}
+
+	/**
+	 * Gets the coalescing settings of the method.
+	 * 
+	 * @return the {@link Coalesced} annotation of the method, or null if its
+	 *         concurrent invocations are not coalesced.
+	 */
+	public Coalesced getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Gets the idempotency settings of the method.
+	 * 
+	 * @return the {@link Idempotent} annotation of the method, or null if its
+	 *         responses are not replayed.
+	 */
+	public Idempotent getIdempotent() {
+		return idempotent;
+	}
+
+	/**
+	 * Checks if the method returns an {@link EventBroadcaster}, i.e. it
+	 * serves a stream of Server-Sent Events. Its output formats are used for
+	 * the data of the events.
+	 * 
+	 * @return true if the method serves a stream of events.
+	 */
+	public boolean isEventStream() {
+		return EventBroadcaster.class.isAssignableFrom(method.getReturnType());
+	}
+
+	/**
+	 * Checks if the method is annotated with {@link AsyncInvocation}.
+	 * 
+	 * @return true if the method is invoked on the method executor of the
+	 *         resource.
+	 */
+	public boolean isAsyncInvocation() {
+		return asyncInvocation;
+	}
+
+	/**
+	 * Gets the method returning the version of the data served by this
+	 * method.
+	 * 
+	 * @return the version method (see {@link Versioned}), or null if it's
+	 *         not declared.
+	 */
+	public Method getVersionMethod() {
+		return versionMethod;
+	}
+
+	/**
+	 * Gets the concurrency limit of the method.
+	 * 
+	 * @return the {@link Bulkhead} annotation of the method, or null if its
+	 *         concurrent invocations are not limited.
+	 */
+	public Bulkhead getBulkhead() {
+		return bulkhead;
+	}
+
+	/**
+	 * Gets the permits of the bulkhead of the method.
+	 * 
+	 * @return the permits, or null if the method is not annotated with
+	 *         {@link Bulkhead}.
+	 */
+	public BulkheadPermits getBulkheadPermits() {
+		return bulkheadPermits;
+	}
+
+	/**
+	 * Gets the adaptive concurrency settings of the method.
+	 * 
+	 * @return the {@link AdaptiveConcurrency} annotation of the method, or
+	 *         null if its concurrency is not adapted to its latency.
+	 */
+	public AdaptiveConcurrency getAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+
+	/**
+	 * Gets the adaptive concurrency limit of the method.
+	 * 
+	 * @return the concurrency limit, or null if the method is not annotated
+	 *         with {@link AdaptiveConcurrency}.
+	 */
+	public AdaptiveConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	/**
+	 * Gets the permits needed to invoke the method.
+	 * 
+	 * @return the permits, or null if the method is not annotated with
+	 *         {@link Bulkhead} or {@link AdaptiveConcurrency}.
+	 */
+	public InvocationPermits getPermits() {
+		return permits;
+	}
+
+	/**
+	 * Gets the rate limit of the method.
+	 * 
+	 * @return the {@link RateLimited} annotation of the method, or null if its
+	 *         invocations are not rate limited.
+	 */
+	public RateLimited getRateLimited() {
+		return rateLimited;
+	}
+
+	/**
+	 * Gets the time needed to refill a token of the rate limit.
+	 * 
+	 * @return the refill interval (in microseconds), or 0 if the method is
+	 *         not annotated with {@link RateLimited}.
+	 */
+	public long getRateRefillInterval() {
+		return rateRefillInterval;
+	}
+
+	/**
+	 * Gets the scheduling priority of the method.
+	 * 
+	 * @return the value of annotation {@link Priority}, or 0 if the method is
+	 *         not annotated.
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Gets the max time the method can take.
+	 * 
+	 * @return the value of annotation {@link Deadline} (in milliseconds), or 0
+	 *         if the method is not annotated.
+	 */
+	public long getDeadline() {
+		return deadline;
 	}
-}
\ No newline at end of file
+}
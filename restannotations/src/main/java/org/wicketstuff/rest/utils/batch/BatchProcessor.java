@@ -0,0 +1,233 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.batch;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.string.Strings;
+import org.wicketstuff.rest.utils.http.BufferedHttpServletResponse;
+import org.wicketstuff.rest.utils.http.InternalRequestDispatcher;
+import org.wicketstuff.rest.utils.http.VirtualHttpServletRequest;
+
+/**
+ * Executes the sub-requests of a batch request with an
+ * {@link InternalRequestDispatcher}. Consecutive sub-requests with a safe
+ * method (GET, HEAD and OPTIONS) don't depend on each other, so they are
+ * executed in parallel: the first one on the current thread and the others on
+ * the executor. Any other sub-request is executed alone, once the previous
+ * ones have completed, so that the effects of writes are seen by the
+ * sub-requests that follow them.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class BatchProcessor {
+	/** Request attribute that marks the sub-requests of a batch. */
+	public static final String SUB_REQUEST_ATTRIBUTE = BatchProcessor.class.getName()
+			+ ".subRequest";
+
+	/** The dispatcher that serves the sub-requests. */
+	private final InternalRequestDispatcher dispatcher;
+
+	/** Executor of the sub-requests run in parallel. */
+	private final ExecutorService executor;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher that serves the sub-requests.
+	 * @param executor
+	 *            executor of the sub-requests run in parallel. If it rejects
+	 *            a sub-request, this latter is run on the current thread.
+	 */
+	public BatchProcessor(InternalRequestDispatcher dispatcher, ExecutorService executor) {
+		Args.notNull(dispatcher, "dispatcher");
+		Args.notNull(executor, "executor");
+
+		this.dispatcher = dispatcher;
+		this.executor = executor;
+	}
+
+	/**
+	 * Executes the sub-requests of a batch.
+	 * 
+	 * @param batchRequest
+	 *            the request of the batch, which provides session, cookies and
+	 *            client data to the sub-requests.
+	 * @param requests
+	 *            the sub-requests.
+	 * @return the responses, in the same order of the sub-requests.
+	 */
+	public BatchResponse[] process(VirtualHttpServletRequest batchRequest, BatchRequest[] requests) {
+		BatchResponse[] responses = new BatchResponse[requests.length];
+		int groupStart = 0;
+
+		while (groupStart < requests.length) {
+			int groupEnd = groupStart + 1;
+
+			if (isSafe(requests[groupStart])) {
+				while (groupEnd < requests.length && isSafe(requests[groupEnd]))
+					groupEnd++;
+			}
+
+			processGroup(batchRequest, requests, responses, groupStart, groupEnd);
+			groupStart = groupEnd;
+		}
+
+		return responses;
+	}
+
+	/**
+	 * Executes in parallel the sub-requests from index start (inclusive) to
+	 * index end (exclusive).
+	 */
+	private void processGroup(final VirtualHttpServletRequest batchRequest,
+			BatchRequest[] requests, BatchResponse[] responses, int start, int end) {
+		List<Future<BatchResponse>> futures = new ArrayList<Future<BatchResponse>>(end - start);
+
+		for (int i = start + 1; i < end; i++) {
+			final BatchRequest request = requests[i];
+
+			try {
+				futures.add(executor.submit(new Callable<BatchResponse>() {
+					@Override
+					public BatchResponse call() throws Exception {
+						return serve(batchRequest, request);
+					}
+				}));
+			} catch (RejectedExecutionException e) {
+				futures.add(null);
+			}
+		}
+
+		responses[start] = serve(batchRequest, requests[start]);
+
+		for (int i = start + 1; i < end; i++) {
+			Future<BatchResponse> future = futures.get(i - start - 1);
+
+			if (future == null)
+				responses[i] = serve(batchRequest, requests[i]);
+			else
+				responses[i] = awaitResponse(future);
+		}
+	}
+
+	/**
+	 * Waits for the response of a sub-request run on the executor.
+	 */
+	private BatchResponse awaitResponse(Future<BatchResponse> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			return new BatchResponse(500, "Unexpected error serving the request.");
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			return new BatchResponse(503, "Batch has been interrupted.");
+		}
+	}
+
+	/**
+	 * Serves a sub-request.
+	 * 
+	 * @param batchRequest
+	 *            the request of the batch.
+	 * @param request
+	 *            the sub-request.
+	 * @return the response to the sub-request.
+	 */
+	protected BatchResponse serve(VirtualHttpServletRequest batchRequest, BatchRequest request) {
+		if (Strings.isEmpty(request.getMethod()) || Strings.isEmpty(request.getPath()))
+			return new BatchResponse(400, "Method and path are required.");
+
+		VirtualHttpServletRequest subRequest = batchRequest.newRequest(request.getMethod(),
+				request.getPath());
+
+		subRequest.setAttribute(SUB_REQUEST_ATTRIBUTE, Boolean.TRUE);
+
+		if (request.getHeaders() != null) {
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+				subRequest.addHeader(header.getKey(), header.getValue());
+		}
+
+		try {
+			subRequest.setCharacterEncoding("UTF-8");
+
+			if (request.getBody() != null)
+				subRequest.setBody(request.getBody().getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+
+		BufferedHttpServletResponse response;
+
+		try {
+			response = dispatcher.dispatch(subRequest);
+		} catch (RuntimeException e) {
+			return new BatchResponse(500, "Unexpected error serving the request.");
+		}
+
+		return toBatchResponse(response);
+	}
+
+	/**
+	 * Converts the response of a sub-request. Multiple values of the same
+	 * header are joined with commas.
+	 */
+	private BatchResponse toBatchResponse(BufferedHttpServletResponse response) {
+		String body = response.getContentAsString();
+
+		if (body.length() == 0 && response.getErrorMessage() != null)
+			body = response.getErrorMessage();
+
+		BatchResponse batchResponse = new BatchResponse(response.getStatus(), body);
+		Map<String, String> headers = batchResponse.getHeaders();
+		List<String> headerNames = response.getHeaderNames();
+		List<String> headerValues = response.getHeaderValues();
+
+		for (int i = 0; i < headerNames.size(); i++) {
+			String name = headerNames.get(i);
+
+			// the length of the body is not the length of the content
+			if ("Content-Length".equalsIgnoreCase(name))
+				continue;
+
+			String value = headers.get(name);
+			headers.put(name, value == null ? headerValues.get(i) : value + ", "
+					+ headerValues.get(i));
+		}
+
+		return batchResponse;
+	}
+
+	private static boolean isSafe(BatchRequest request) {
+		String method = request.getMethod();
+
+		return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)
+				|| "OPTIONS".equalsIgnoreCase(method);
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.batch;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.lang.Args;
+import org.wicketstuff.rest.utils.concurrent.NamedThreadFactory;
+import org.wicketstuff.rest.utils.http.HttpMethod;
+import org.wicketstuff.rest.utils.http.InternalRequestDispatcher;
+import org.wicketstuff.rest.utils.http.VirtualHttpServletRequest;
+
+/**
+ * The batch route of a resource: its path, the max number of sub-requests of
+ * a batch and the executor of the sub-requests run in parallel. The route is
+ * not exposed until its path is set.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class BatchRoute {
+	/** Max number of sub-requests waiting for a thread of the default executor. */
+	private static final int DEFAULT_QUEUE_SIZE = 256;
+
+	/** Executor shared by the routes that don't set their own one. */
+	private static final ExecutorService DEFAULT_EXECUTOR = newDefaultExecutor();
+
+	/** The path of the route, null if the route is not exposed. */
+	private volatile String path;
+
+	/** Max number of sub-requests of a batch request. */
+	private volatile int maxSize = 50;
+
+	/** Executor of the sub-requests run in parallel. */
+	private volatile ExecutorService executor = DEFAULT_EXECUTOR;
+
+	/**
+	 * Checks if a request targets the batch route. Only POST requests are
+	 * served as batches.
+	 * 
+	 * @param httpMethod
+	 *            the HTTP method of the request.
+	 * @param pageParameters
+	 *            the page parameters of the request.
+	 * @return true if the request must be served as a batch.
+	 */
+	public boolean matches(HttpMethod httpMethod, PageParameters pageParameters) {
+		String batchPath = path;
+
+		if (batchPath == null || httpMethod != HttpMethod.POST)
+			return false;
+
+		StringBuilder requestPath = new StringBuilder();
+
+		for (int i = 0; i < pageParameters.getIndexedCount(); i++)
+			requestPath.append('/').append(pageParameters.get(i).toString());
+
+		return batchPath.equals(requestPath.toString());
+	}
+
+	/**
+	 * Checks if a request is a sub-request of a batch. Batches can't be
+	 * nested, as their sub-requests could otherwise exhaust the executor.
+	 * 
+	 * @param request
+	 *            the request to check.
+	 * @return true if the request is a sub-request of a batch.
+	 */
+	public static boolean isSubRequest(HttpServletRequest request) {
+		return request.getAttribute(BatchProcessor.SUB_REQUEST_ATTRIBUTE) != null;
+	}
+
+	/**
+	 * Executes the sub-requests of a batch with the request cycle of the
+	 * given application.
+	 * 
+	 * @param application
+	 *            the application that serves the sub-requests.
+	 * @param batchRequest
+	 *            the request of the batch.
+	 * @param requests
+	 *            the sub-requests.
+	 * @return the responses, in the same order of the sub-requests.
+	 * @see BatchProcessor#process(VirtualHttpServletRequest, BatchRequest[])
+	 */
+	public BatchResponse[] process(WebApplication application,
+			VirtualHttpServletRequest batchRequest, BatchRequest[] requests) {
+		BatchProcessor batchProcessor = new BatchProcessor(new InternalRequestDispatcher(
+				application), executor);
+
+		return batchProcessor.process(batchRequest, requests);
+	}
+
+	/**
+	 * Gets the path of the route.
+	 * 
+	 * @return the path, or null if the route is not exposed.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Sets the path of the route. A trailing slash is removed.
+	 * 
+	 * @param path
+	 *            the path (e.g. '/batch'), or null to hide the route.
+	 */
+	public void setPath(String path) {
+		if (path != null) {
+			Args.isTrue(path.startsWith("/") && path.length() > 1, "batchPath must start with '/'");
+
+			if (path.endsWith("/"))
+				path = path.substring(0, path.length() - 1);
+		}
+
+		this.path = path;
+	}
+
+	/**
+	 * Gets the max number of sub-requests of a batch request.
+	 * 
+	 * @return the max batch size.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the max number of sub-requests of a batch request. The default
+	 * value is 50.
+	 * 
+	 * @param maxSize
+	 *            the max batch size.
+	 */
+	public void setMaxSize(int maxSize) {
+		Args.isTrue(maxSize > 0, "maxBatchSize must be positive");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Gets the executor of the sub-requests run in parallel.
+	 * 
+	 * @return the batch executor.
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor of the sub-requests run in parallel. By default they
+	 * are run by a pool of daemon threads shared by all the routes, twice as
+	 * big as the number of processors, with a queue of
+	 * {@value #DEFAULT_QUEUE_SIZE} sub-requests. Sub-requests rejected by the
+	 * executor are run by the thread serving the batch.
+	 * 
+	 * @param executor
+	 *            the batch executor.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		Args.notNull(executor, "batchExecutor");
+		this.executor = executor;
+	}
+
+	/**
+	 * Creates the default executor. Its queue is bounded, so that a burst of
+	 * batches makes their own threads run the sub-requests instead of piling
+	 * them up.
+	 * 
+	 * @return the executor.
+	 */
+	private static ExecutorService newDefaultExecutor() {
+		int threads = Runtime.getRuntime().availableProcessors() * 2;
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(DEFAULT_QUEUE_SIZE),
+				new NamedThreadFactory("rest-batch"));
+
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base class for {@link IResponseCacheStore} implementations, which manages
+ * the invalidation listeners.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public abstract class AbstractResponseCacheStore implements IResponseCacheStore {
+	/** The registered invalidation listeners. */
+	private final CopyOnWriteArrayList<IInvalidationListener> listeners = new CopyOnWriteArrayList<IInvalidationListener>();
+
+	@Override
+	public void addInvalidationListener(IInvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Notifies the registered listeners of an invalidation.
+	 * 
+	 * @param key
+	 *            the key of the invalidated value, or null if all the values
+	 *            have been invalidated.
+	 */
+	protected void fireInvalidated(String key) {
+		for (IInvalidationListener listener : listeners)
+			listener.onInvalidate(key);
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * A serialized response with its ETag, usually stored in a
+ * {@link ResponseCache}. Instances are immutable.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class CachedResponse {
+	/** The name of the cache the response belongs to. */
+	private final String cacheName;
+
+	/** The content type of the response, including the charset. */
+	private final String contentType;
+
+	/** The serialized response. */
+	private final byte[] content;
+
+	/** The ETag of the response. */
+	private final String entityTag;
+
+	/** The time (in milliseconds) the response was created. */
+	private final long creationTime;
+
+	/** The time (in milliseconds) after which the response is expired. */
+	private final long expirationTime;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param cacheName
+	 *            the name of the cache the response belongs to.
+	 * @param contentType
+	 *            the content type of the response, including the charset.
+	 * @param content
+	 *            the serialized response.
+	 * @param entityTag
+	 *            the ETag of the response.
+	 * @param creationTime
+	 *            the time (in milliseconds) the response was created.
+	 * @param expirationTime
+	 *            the time (in milliseconds) after which the response is
+	 *            expired.
+	 */
+	public CachedResponse(String cacheName, String contentType, byte[] content,
+			String entityTag, long creationTime, long expirationTime) {
+		this.cacheName = cacheName;
+		this.contentType = contentType;
+		this.content = content;
+		this.entityTag = entityTag;
+		this.creationTime = creationTime;
+		this.expirationTime = expirationTime;
+	}
+
+	/**
+	 * Checks if the response is expired at the given time.
+	 * 
+	 * @param now
+	 *            the current time (in milliseconds).
+	 * @return true if the response is expired.
+	 */
+	public boolean isExpired(long now) {
+		return now >= expirationTime;
+	}
+
+	/**
+	 * Gets the name of the cache the response belongs to.
+	 * 
+	 * @return the cache name.
+	 */
+	public String getCacheName() {
+		return cacheName;
+	}
+
+	/**
+	 * Gets the content type of the response, including the charset.
+	 * 
+	 * @return the content type.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Gets the serialized response. The returned array must not be modified.
+	 * 
+	 * @return the serialized response.
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * Gets the ETag of the response.
+	 * 
+	 * @return the ETag.
+	 */
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	/**
+	 * Gets the time (in milliseconds) the response was created. It's used as
+	 * value for header 'Last-Modified'.
+	 * 
+	 * @return the creation time.
+	 */
+	public long getCreationTime() {
+		return creationTime;
+	}
+
+	/**
+	 * Gets the time (in milliseconds) after which the response is expired.
+	 * 
+	 * @return the expiration time.
+	 */
+	public long getExpirationTime() {
+		return expirationTime;
+	}
+
+	/**
+	 * Encodes the response as a byte array, so that it can be kept by an
+	 * {@link IResponseCacheStore}.
+	 * 
+	 * @return the encoded response.
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 128);
+		DataOutputStream output = new DataOutputStream(bytes);
+
+		try {
+			output.writeUTF(cacheName != null ? cacheName : "");
+			output.writeUTF(contentType);
+			output.writeUTF(entityTag != null ? entityTag : "");
+			output.writeLong(creationTime);
+			output.writeLong(expirationTime);
+			output.writeInt(content.length);
+			output.write(content);
+		} catch (IOException e) {
+			throw new WicketRuntimeException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes a response encoded with {@link #toByteArray()}.
+	 * 
+	 * @param bytes
+	 *            the encoded response.
+	 * @return the decoded response.
+	 */
+	public static CachedResponse fromByteArray(byte[] bytes) {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+		try {
+			String cacheName = input.readUTF();
+			String contentType = input.readUTF();
+			String entityTag = input.readUTF();
+			long creationTime = input.readLong();
+			long expirationTime = input.readLong();
+			byte[] content = new byte[input.readInt()];
+
+			input.readFully(content);
+
+			return new CachedResponse(cacheName.length() > 0 ? cacheName : null, contentType,
+					content, entityTag.length() > 0 ? entityTag : null, creationTime,
+					expirationTime);
+		} catch (IOException e) {
+			throw new WicketRuntimeException("Invalid cached response.", e);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+/**
+ * Storage of the serialized responses kept by a {@link ResponseCache}. Values
+ * are plain byte arrays, so that implementations can keep them outside the
+ * JVM heap or share them among JVMs and nodes. Implementations must be
+ * thread-safe.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public interface IResponseCacheStore {
+	/**
+	 * Gets a stored value.
+	 * 
+	 * @param key
+	 *            the key of the value.
+	 * @return the value, or null if it's not stored or it's expired.
+	 */
+	public byte[] get(String key);
+
+	/**
+	 * Stores a value. The store can discard it at any time, e.g. to make room
+	 * for other values.
+	 * 
+	 * @param key
+	 *            the key of the value.
+	 * @param value
+	 *            the value. It must not be modified after this call.
+	 * @param expirationTime
+	 *            the time (in milliseconds) after which the value is expired.
+	 */
+	public void put(String key, byte[] value, long expirationTime);
+
+	/**
+	 * Removes a value. Registered {@link IInvalidationListener}s are notified.
+	 * 
+	 * @param key
+	 *            the key of the value.
+	 */
+	public void invalidate(String key);
+
+	/**
+	 * Removes all the values. Registered {@link IInvalidationListener}s are
+	 * notified.
+	 */
+	public void invalidateAll();
+
+	/**
+	 * Registers a listener notified when values are invalidated. Stores that
+	 * replicate values among nodes use it to broadcast invalidations, while
+	 * invalidations received from other nodes are applied calling
+	 * {@link #invalidate(String)}.
+	 * 
+	 * @param listener
+	 *            the listener.
+	 */
+	public void addInvalidationListener(IInvalidationListener listener);
+}
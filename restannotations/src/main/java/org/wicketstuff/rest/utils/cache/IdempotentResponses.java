@@ -0,0 +1,188 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.util.lang.Args;
+import org.wicketstuff.rest.utils.http.RecordingWebResponse;
+
+/**
+ * Serves the requests of the methods annotated with
+ * {@link org.wicketstuff.rest.annotations.Idempotent}. The first request with
+ * a given key invokes the method while its response is recorded, then the
+ * retries with the same key replay the stored response. Retries arriving
+ * while the first request is in progress wait for it.<br/>
+ * The recorded response is returned to the caller instead of being written,
+ * so that it's written in the same way (for example compressed according to
+ * the header 'Accept-Encoding' of each request) both the first time and when
+ * it's replayed.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class IdempotentResponses {
+	/** Store of the recorded responses. */
+	private volatile IResponseCacheStore store;
+
+	/** The in-flight requests. */
+	private final RequestCoalescer calls = new RequestCoalescer();
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param store
+	 *            store of the recorded responses.
+	 */
+	public IdempotentResponses(IResponseCacheStore store) {
+		setStore(store);
+	}
+
+	/**
+	 * Serves a request with an idempotency key. The stored response is
+	 * returned if the key has already been used, setting header
+	 * {@link RecordedResponse#REPLAYED_HEADER} on the current response.
+	 * Otherwise the invocation is run and its response recorded. Responses
+	 * with a 5xx HTTP code are not stored, so that the request can be
+	 * retried.
+	 * 
+	 * @param key
+	 *            the key of the request in the store.
+	 * @param response
+	 *            the current response.
+	 * @param ttl
+	 *            the time to live (in milliseconds) of the recorded response.
+	 * @param invocation
+	 *            the invocation that writes the response.
+	 * @return the response to write, or null if a request with the same key
+	 *         is still in progress once the timeout has expired (See
+	 *         {@link #setTimeout(long)}).
+	 */
+	public RecordedResponse respond(String key, WebResponse response, long ttl,
+			IInvocation invocation) {
+		while (true) {
+			RecordedResponse storedResponse = replay(key, response);
+
+			if (storedResponse != null)
+				return storedResponse;
+
+			RequestCoalescer.Call call = new RequestCoalescer.Call(key);
+			RequestCoalescer.Call inFlightCall = calls.join(call);
+
+			if (inFlightCall == null) {
+				try {
+					// the previous request might have completed in the meantime
+					storedResponse = replay(key, response);
+
+					return storedResponse != null ? storedResponse : record(key, response, ttl,
+							invocation);
+				} finally {
+					calls.complete(call, null);
+				}
+			}
+
+			calls.awaitResponse(inFlightCall);
+
+			if (!inFlightCall.isCompleted())
+				return null;
+		}
+	}
+
+	/**
+	 * Gets the stored response with the given key, if any.
+	 */
+	private RecordedResponse replay(String key, WebResponse response) {
+		byte[] storedResponse = store.get(key);
+
+		if (storedResponse == null)
+			return null;
+
+		response.setHeader(RecordedResponse.REPLAYED_HEADER, "true");
+		return RecordedResponse.fromByteArray(storedResponse);
+	}
+
+	/**
+	 * Runs the invocation recording its response.
+	 */
+	private RecordedResponse record(String key, WebResponse response, long ttl,
+			IInvocation invocation) {
+		RecordingWebResponse recordingResponse = new RecordingWebResponse(response);
+
+		invocation.invoke(recordingResponse);
+
+		RecordedResponse recordedResponse = recordingResponse.getRecordedResponse();
+
+		if (recordedResponse.getStatus() < 500)
+			store.put(key, recordedResponse.toByteArray(), System.currentTimeMillis() + ttl);
+
+		return recordedResponse;
+	}
+
+	/**
+	 * Gets the store of the recorded responses.
+	 * 
+	 * @return the store of the recorded responses.
+	 */
+	public IResponseCacheStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Sets the store of the recorded responses.
+	 * 
+	 * @param store
+	 *            the store of the recorded responses.
+	 */
+	public void setStore(IResponseCacheStore store) {
+		Args.notNull(store, "store");
+		this.store = store;
+	}
+
+	/**
+	 * Gets the max time a request waits for an in-progress request with the
+	 * same key.
+	 * 
+	 * @return the timeout (in milliseconds).
+	 */
+	public long getTimeout() {
+		return calls.getTimeout();
+	}
+
+	/**
+	 * Sets the max time a request waits for an in-progress request with the
+	 * same key. The default value is 30 seconds.
+	 * 
+	 * @param timeout
+	 *            the timeout (in milliseconds).
+	 */
+	public void setTimeout(long timeout) {
+		calls.setTimeout(timeout);
+	}
+
+	/**
+	 * The invocation that serves a request with an idempotency key.
+	 */
+	public interface IInvocation {
+		/**
+		 * Writes the response of the request.
+		 * 
+		 * @param response
+		 *            the response to write to, which records what's written
+		 *            without sending it.
+		 */
+		void invoke(WebResponse response);
+	}
+}
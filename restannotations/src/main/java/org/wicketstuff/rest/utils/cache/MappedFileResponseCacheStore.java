@@ -0,0 +1,374 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.wicketstuff.rest.utils.concurrent.FileRegionLocks;
+
+/**
+ * {@link IResponseCacheStore} that keeps values in a memory-mapped file, so
+ * that they can be shared by several JVMs running on the same host. The file
+ * is split into a fixed number of slots of the same size, grouped in sets of
+ * {@value #SET_SIZE}. A key can take any slot of the set selected by its hash:
+ * when the set is full, the value that expires first is replaced, so that
+ * the ones that never expire (like the generations of {@link ResponseCache})
+ * are replaced last. Values that don't fit a slot are not stored.<br/>
+ * Accesses to a set are synchronized among threads and, with file locks,
+ * among processes. All the JVMs sharing a file must use the same number and
+ * size of slots.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class MappedFileResponseCacheStore extends AbstractResponseCacheStore implements Closeable {
+	/** Identifies the files written by this class. */
+	private static final int MAGIC = 0x52455354;
+
+	/** Version of the file layout. */
+	private static final int FORMAT_VERSION = 2;
+
+	/** Size of the file header: magic, format version, slot count and size. */
+	private static final int FILE_HEADER_SIZE = 16;
+
+	/** Size of the slot header: state, expiration, key hash, key and value length. */
+	private static final int SLOT_HEADER_SIZE = 24;
+
+	/** Number of slots a key can take. */
+	private static final int SET_SIZE = 4;
+
+	/** State of a slot with no value. */
+	private static final int EMPTY = 0;
+
+	/** State of a slot with a value. */
+	private static final int FULL = 1;
+
+	/** The number of slots. */
+	private final int slotCount;
+
+	/** The number of sets of slots. */
+	private final int setCount;
+
+	/** The size (in bytes) of a slot. */
+	private final int slotSize;
+
+	/** The mapped file. */
+	private final RandomAccessFile file;
+
+	/** The channel of the mapped file, used for file locks. */
+	private final FileChannel channel;
+
+	/** The mapped content of the file. */
+	private final MappedByteBuffer buffer;
+
+	/** Locks of the sets of slots. */
+	private final FileRegionLocks locks;
+
+	/**
+	 * Class constructor. The file is created if it doesn't exist.
+	 * 
+	 * @param path
+	 *            the path of the file.
+	 * @param slotCount
+	 *            the number of slots. It's rounded up to a multiple of
+	 *            {@value #SET_SIZE}.
+	 * @param slotSize
+	 *            the size (in bytes) of a slot. Values whose key and content
+	 *            exceed this size are not stored.
+	 * @throws IOException
+	 *             if the file can't be mapped or it was created with a
+	 *             different number or size of slots.
+	 */
+	public MappedFileResponseCacheStore(File path, int slotCount, int slotSize)
+			throws IOException {
+		if (slotCount <= 0 || slotCount > Integer.MAX_VALUE - SET_SIZE
+				|| slotSize <= SLOT_HEADER_SIZE)
+			throw new IllegalArgumentException("Invalid slot count or size.");
+
+		this.setCount = (slotCount + SET_SIZE - 1) / SET_SIZE;
+		this.slotCount = setCount * SET_SIZE;
+		this.slotSize = slotSize;
+
+		long fileSize = FILE_HEADER_SIZE + (long) this.slotCount * slotSize;
+
+		if (fileSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid slot count or size.");
+
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+
+		try {
+			this.locks = new FileRegionLocks(path, channel, "cache file");
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+			initHeader();
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Initializes or checks the file header, locking it for the other threads
+	 * and processes.
+	 */
+	private void initHeader() throws IOException {
+		synchronized (locks.getFileMonitor()) {
+			FileLock fileLock = channel.lock(0, FILE_HEADER_SIZE, false);
+
+			try {
+				checkHeader();
+			} finally {
+				fileLock.release();
+			}
+		}
+	}
+
+	/**
+	 * Writes the file header if the file is new, or checks that its layout
+	 * matches the one of this store. The header must be locked.
+	 */
+	private void checkHeader() throws IOException {
+		if (buffer.getInt(0) == 0) {
+			buffer.putInt(4, FORMAT_VERSION);
+			buffer.putInt(8, slotCount);
+			buffer.putInt(12, slotSize);
+			buffer.putInt(0, MAGIC);
+		} else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+				|| buffer.getInt(8) != slotCount || buffer.getInt(12) != slotSize) {
+			throw new IOException("The cache file has a different layout (slots: "
+					+ buffer.getInt(8) + ", slot size: " + buffer.getInt(12) + ").");
+		}
+	}
+
+	@Override
+	public byte[] get(String key) {
+		byte[] keyBytes = toBytes(key);
+		int set = getSet(key);
+
+		synchronized (locks.getMonitor(set)) {
+			FileLock fileLock = lockSet(set, true);
+
+			try {
+				ByteBuffer slotBuffer = findSlot(set, key, keyBytes);
+
+				if (slotBuffer == null || System.currentTimeMillis() >= slotBuffer.getLong(4))
+					return null;
+
+				byte[] value = new byte[slotBuffer.getInt(20)];
+
+				slotBuffer.position(SLOT_HEADER_SIZE + keyBytes.length);
+				slotBuffer.get(value);
+
+				return value;
+			} finally {
+				locks.release(fileLock);
+			}
+		}
+	}
+
+	@Override
+	public void put(String key, byte[] value, long expirationTime) {
+		byte[] keyBytes = toBytes(key);
+		int set = getSet(key);
+
+		if (SLOT_HEADER_SIZE + keyBytes.length + value.length > slotSize)
+			return;
+
+		synchronized (locks.getMonitor(set)) {
+			FileLock fileLock = lockSet(set, false);
+
+			try {
+				ByteBuffer slotBuffer = findSlot(set, key, keyBytes);
+
+				if (slotBuffer == null)
+					slotBuffer = findFreeSlot(set);
+
+				// the slot is marked as full only when it's complete
+				slotBuffer.putInt(0, EMPTY);
+				slotBuffer.putLong(4, expirationTime);
+				slotBuffer.putInt(12, key.hashCode());
+				slotBuffer.putInt(16, keyBytes.length);
+				slotBuffer.putInt(20, value.length);
+				slotBuffer.position(SLOT_HEADER_SIZE);
+				slotBuffer.put(keyBytes);
+				slotBuffer.put(value);
+				slotBuffer.putInt(0, FULL);
+			} finally {
+				locks.release(fileLock);
+			}
+		}
+	}
+
+	@Override
+	public void invalidate(String key) {
+		byte[] keyBytes = toBytes(key);
+		int set = getSet(key);
+
+		synchronized (locks.getMonitor(set)) {
+			FileLock fileLock = lockSet(set, false);
+
+			try {
+				ByteBuffer slotBuffer = findSlot(set, key, keyBytes);
+
+				if (slotBuffer != null)
+					slotBuffer.putInt(0, EMPTY);
+			} finally {
+				locks.release(fileLock);
+			}
+		}
+
+		fireInvalidated(key);
+	}
+
+	@Override
+	public void invalidateAll() {
+		for (int set = 0; set < setCount; set++) {
+			synchronized (locks.getMonitor(set)) {
+				FileLock fileLock = lockSet(set, false);
+
+				try {
+					for (int i = 0; i < SET_SIZE; i++)
+						getSlotBuffer(set * SET_SIZE + i).putInt(0, EMPTY);
+				} finally {
+					locks.release(fileLock);
+				}
+			}
+		}
+
+		fireInvalidated(null);
+	}
+
+	/**
+	 * Closes the file. The store can't be used after this call.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Finds the slot of a set that contains the given key.
+	 * 
+	 * @return the buffer of the slot, or null if the key is not in the set.
+	 */
+	private ByteBuffer findSlot(int set, String key, byte[] keyBytes) {
+		for (int i = 0; i < SET_SIZE; i++) {
+			ByteBuffer slotBuffer = getSlotBuffer(set * SET_SIZE + i);
+
+			if (containsKey(slotBuffer, key, keyBytes))
+				return slotBuffer;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finds the slot of a set to use for a new key: an empty or expired slot
+	 * if any, otherwise the one that expires first.
+	 */
+	private ByteBuffer findFreeSlot(int set) {
+		long now = System.currentTimeMillis();
+		ByteBuffer freeSlot = null;
+		long minExpirationTime = Long.MAX_VALUE;
+
+		for (int i = 0; i < SET_SIZE; i++) {
+			ByteBuffer slotBuffer = getSlotBuffer(set * SET_SIZE + i);
+			long expirationTime = slotBuffer.getLong(4);
+
+			if (slotBuffer.getInt(0) != FULL || now >= expirationTime)
+				return slotBuffer;
+
+			if (freeSlot == null || expirationTime < minExpirationTime) {
+				freeSlot = slotBuffer;
+				minExpirationTime = expirationTime;
+			}
+		}
+
+		return freeSlot;
+	}
+
+	/**
+	 * Checks if a slot contains the given key.
+	 */
+	private boolean containsKey(ByteBuffer slotBuffer, String key, byte[] keyBytes) {
+		if (slotBuffer.getInt(0) != FULL || slotBuffer.getInt(12) != key.hashCode()
+				|| slotBuffer.getInt(16) != keyBytes.length)
+			return false;
+
+		for (int i = 0; i < keyBytes.length; i++) {
+			if (slotBuffer.get(SLOT_HEADER_SIZE + i) != keyBytes[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the set of slots of a key.
+	 */
+	private int getSet(String key) {
+		int hash = key.hashCode();
+
+		// spreads the bits of hash codes that differ only in the upper bits
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+		return (hash & Integer.MAX_VALUE) % setCount;
+	}
+
+	/**
+	 * Gets a buffer on the content of a slot. The buffer has its own position,
+	 * so it can be used while other threads access other slots.
+	 */
+	private ByteBuffer getSlotBuffer(int slot) {
+		ByteBuffer slotBuffer = buffer.duplicate();
+		int start = FILE_HEADER_SIZE + slot * slotSize;
+
+		slotBuffer.position(start);
+		slotBuffer.limit(start + slotSize);
+
+		return slotBuffer.slice();
+	}
+
+	/**
+	 * Locks a set of slots for the other processes.
+	 */
+	private FileLock lockSet(int set, boolean shared) {
+		return locks.lock(FILE_HEADER_SIZE + (long) set * SET_SIZE * slotSize, SET_SIZE
+				* slotSize, shared);
+	}
+
+	/**
+	 * Encodes a key with UTF-8.
+	 */
+	private static byte[] toBytes(String key) {
+		try {
+			return key.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new WicketRuntimeException(e);
+		}
+	}
+}
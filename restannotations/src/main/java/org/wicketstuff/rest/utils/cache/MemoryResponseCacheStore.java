@@ -0,0 +1,120 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded {@link IResponseCacheStore} that keeps values in the JVM heap.
+ * When the max number of entries is exceeded, the least recently used values
+ * are evicted. Expired values are removed when they are read.<br/>
+ * Since {@link ResponseCache} reads the generation of a cache name every time
+ * it builds a key, the generation is always more recently used than the
+ * responses built with it, and it's evicted only after them.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class MemoryResponseCacheStore extends AbstractResponseCacheStore {
+	/** The stored values in access order. Guarded by itself. */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param maxEntries
+	 *            max number of stored values.
+	 */
+	public MemoryResponseCacheStore(final int maxEntries) {
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	@Override
+	public byte[] get(String key) {
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+
+			if (entry == null)
+				return null;
+
+			if (System.currentTimeMillis() >= entry.expirationTime) {
+				entries.remove(key);
+				return null;
+			}
+
+			return entry.value;
+		}
+	}
+
+	@Override
+	public void put(String key, byte[] value, long expirationTime) {
+		synchronized (entries) {
+			entries.put(key, new Entry(value, expirationTime));
+		}
+	}
+
+	@Override
+	public void invalidate(String key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+
+		fireInvalidated(key);
+	}
+
+	@Override
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+
+		fireInvalidated(null);
+	}
+
+	/**
+	 * Gets the number of stored values, including the expired ones not
+	 * removed yet.
+	 * 
+	 * @return the number of stored values.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * A stored value with its expiration time.
+	 */
+	private static class Entry {
+		final byte[] value;
+		final long expirationTime;
+
+		Entry(byte[] value, long expirationTime) {
+			this.value = value;
+			this.expirationTime = expirationTime;
+		}
+	}
+}
@@ -0,0 +1,458 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * {@link IResponseCacheStore} that keeps values in an append-only
+ * memory-mapped file, so that they survive restarts. Every put and
+ * invalidation appends a record to the file, while an in-memory index points
+ * to the last record of each key. When the store is created, the index is
+ * rebuilt reading the file: records with a wrong checksum (e.g. written while
+ * the process was killed) end the reading, and expired values are skipped.
+ * When the file is full, its live records are compacted at its beginning.
+ * The first moved record is marked as valid only when the compaction is
+ * complete: if the process is killed in the meantime, the records after it
+ * are lost, but replaced or invalidated values are never restored.<br/>
+ * The file header contains a data version provided by the application: if it
+ * doesn't match, the file is cleared. A new version should be used whenever
+ * the format of the cached responses changes, e.g. after a deploy that
+ * changes the serialized classes.<br/>
+ * The file must be used by a single store at a time.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class PersistentResponseCacheStore extends AbstractResponseCacheStore implements
+		Closeable {
+	/** Identifies the files written by this class. */
+	private static final int MAGIC = 0x52455350;
+
+	/** Version of the file layout. */
+	private static final int FORMAT_VERSION = 1;
+
+	/** Size of the file header: magic, format version and data version. */
+	private static final int FILE_HEADER_SIZE = 512;
+
+	/** Marks the beginning of a record. */
+	private static final int RECORD_MARKER = 0x5245434f;
+
+	/** Size of the record header: marker, key and value length, expiration and checksum. */
+	private static final int RECORD_HEADER_SIZE = 24;
+
+	/** Value length of the records that invalidate a key. */
+	private static final int TOMBSTONE = -1;
+
+	/** The mapped file. */
+	private final RandomAccessFile file;
+
+	/** The mapped content of the file. */
+	private final MappedByteBuffer buffer;
+
+	/** The last record of each key. */
+	private final Map<String, Record> index = new HashMap<String, Record>();
+
+	/** Protects the index and the file content. */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** The position where the next record is written. */
+	private int writePosition = FILE_HEADER_SIZE;
+
+	/**
+	 * Class constructor. The file is created if it doesn't exist, otherwise
+	 * its records are loaded.
+	 * 
+	 * @param path
+	 *            the path of the file.
+	 * @param capacity
+	 *            the size (in bytes) of the file.
+	 * @param dataVersion
+	 *            the version of the cached data. If it differs from the one of
+	 *            an existing file, the file is cleared.
+	 * @throws IOException
+	 *             if the file can't be mapped.
+	 */
+	public PersistentResponseCacheStore(File path, int capacity, String dataVersion)
+			throws IOException {
+		byte[] versionBytes = toBytes(dataVersion);
+
+		if (capacity <= FILE_HEADER_SIZE || versionBytes.length > FILE_HEADER_SIZE - 12)
+			throw new IllegalArgumentException("Invalid capacity or data version.");
+
+		this.file = new RandomAccessFile(path, "rw");
+
+		try {
+			if (file.length() != capacity)
+				file.setLength(capacity);
+
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+
+		if (hasHeader(versionBytes))
+			loadRecords();
+		else
+			writeHeader(versionBytes);
+	}
+
+	/**
+	 * Checks if the file has a header with the given data version.
+	 */
+	private boolean hasHeader(byte[] versionBytes) {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+				|| buffer.getInt(8) != versionBytes.length)
+			return false;
+
+		for (int i = 0; i < versionBytes.length; i++) {
+			if (buffer.get(12 + i) != versionBytes[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes the file header and clears the records.
+	 */
+	private void writeHeader(byte[] versionBytes) {
+		ByteBuffer header = buffer.duplicate();
+
+		header.putInt(0, 0);
+		header.putInt(FILE_HEADER_SIZE, 0);
+		header.putInt(4, FORMAT_VERSION);
+		header.putInt(8, versionBytes.length);
+		header.position(12);
+		header.put(versionBytes);
+		header.putInt(0, MAGIC);
+	}
+
+	/**
+	 * Rebuilds the index reading the records of the file.
+	 */
+	private void loadRecords() {
+		long now = System.currentTimeMillis();
+		int position = FILE_HEADER_SIZE;
+		Record record;
+
+		while ((record = readRecord(position)) != null) {
+			if (record.valueLength == TOMBSTONE || now >= record.expirationTime)
+				index.remove(record.key);
+			else
+				index.put(record.key, record);
+
+			position += record.size;
+		}
+
+		writePosition = position;
+
+		// a damaged record ends the file
+		if (writePosition + 4 <= buffer.capacity())
+			buffer.putInt(writePosition, 0);
+	}
+
+	/**
+	 * Reads the record at the given position.
+	 * 
+	 * @return the record, or null if there's no valid record.
+	 */
+	private Record readRecord(int position) {
+		if (position + RECORD_HEADER_SIZE > buffer.capacity()
+				|| buffer.getInt(position) != RECORD_MARKER)
+			return null;
+
+		int keyLength = buffer.getInt(position + 4);
+		int valueLength = buffer.getInt(position + 8);
+		long expirationTime = buffer.getLong(position + 12);
+		int checksum = buffer.getInt(position + 20);
+
+		if (keyLength < 0 || valueLength < TOMBSTONE)
+			return null;
+
+		int size = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+
+		if (position + size > buffer.capacity())
+			return null;
+
+		ByteBuffer content = buffer.duplicate();
+		byte[] data = new byte[size - RECORD_HEADER_SIZE];
+
+		content.position(position + RECORD_HEADER_SIZE);
+		content.get(data);
+
+		if (checksum(keyLength, valueLength, expirationTime, data) != checksum)
+			return null;
+
+		try {
+			return new Record(new String(data, 0, keyLength, "UTF-8"), position, keyLength,
+					valueLength, expirationTime);
+		} catch (UnsupportedEncodingException e) {
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	@Override
+	public byte[] get(String key) {
+		lock.readLock().lock();
+
+		try {
+			Record record = index.get(key);
+
+			if (record == null || System.currentTimeMillis() >= record.expirationTime)
+				return null;
+
+			ByteBuffer content = buffer.duplicate();
+			byte[] value = new byte[record.valueLength];
+
+			content.position(record.position + RECORD_HEADER_SIZE + record.keyLength);
+			content.get(value);
+
+			return value;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(String key, byte[] value, long expirationTime) {
+		appendRecord(key, value, expirationTime);
+	}
+
+	@Override
+	public void invalidate(String key) {
+		appendRecord(key, null, 0);
+		fireInvalidated(key);
+	}
+
+	@Override
+	public void invalidateAll() {
+		lock.writeLock().lock();
+
+		try {
+			index.clear();
+			writePosition = FILE_HEADER_SIZE;
+			buffer.putInt(writePosition, 0);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		fireInvalidated(null);
+	}
+
+	/**
+	 * Writes the changes of the file to the storage device.
+	 */
+	public void flush() {
+		buffer.force();
+	}
+
+	/**
+	 * Flushes and closes the file. The store can't be used after this call.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		file.close();
+	}
+
+	/**
+	 * Appends a record to the file, compacting the file if it's full.
+	 * 
+	 * @param key
+	 *            the key of the record.
+	 * @param value
+	 *            the value, or null to invalidate the key.
+	 * @param expirationTime
+	 *            the time (in milliseconds) after which the value is expired.
+	 */
+	private void appendRecord(String key, byte[] value, long expirationTime) {
+		byte[] keyBytes = toBytes(key);
+		int valueLength = value != null ? value.length : TOMBSTONE;
+		int size = RECORD_HEADER_SIZE + keyBytes.length + (value != null ? value.length : 0);
+
+		lock.writeLock().lock();
+
+		try {
+			// a missing key needs no tombstone
+			if (value == null && !index.containsKey(key))
+				return;
+
+			if (writePosition + size + 4 > buffer.capacity()) {
+				// the old record of the key is being replaced, it's not moved
+				index.remove(key);
+				compact();
+
+				// the key is gone, and a value that doesn't fit is not stored
+				if (value == null || writePosition + size + 4 > buffer.capacity())
+					return;
+			}
+
+			byte[] data = new byte[keyBytes.length + Math.max(valueLength, 0)];
+
+			System.arraycopy(keyBytes, 0, data, 0, keyBytes.length);
+
+			if (value != null)
+				System.arraycopy(value, 0, data, keyBytes.length, value.length);
+
+			ByteBuffer content = buffer.duplicate();
+
+			// the end marker is written before the record is complete
+			content.putInt(writePosition + size, 0);
+			content.putInt(writePosition + 4, keyBytes.length);
+			content.putInt(writePosition + 8, valueLength);
+			content.putLong(writePosition + 12, expirationTime);
+			content.putInt(writePosition + 20,
+					checksum(keyBytes.length, valueLength, expirationTime, data));
+			content.position(writePosition + RECORD_HEADER_SIZE);
+			content.put(data);
+			content.putInt(writePosition, RECORD_MARKER);
+
+			if (value != null)
+				index.put(key, new Record(key, writePosition, keyBytes.length, valueLength,
+						expirationTime));
+			else
+				index.remove(key);
+
+			writePosition += size;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves the live records at the beginning of the file, dropping the
+	 * replaced, invalidated and expired ones. The marker of the first moved
+	 * record is written last, so that the file ends before it until the
+	 * compaction is complete. Must be called holding the write lock.
+	 */
+	private void compact() {
+		long now = System.currentTimeMillis();
+		List<Record> liveRecords = new ArrayList<Record>(index.values());
+
+		// records are moved in file order, so they never overwrite each other
+		Collections.sort(liveRecords);
+
+		int position = FILE_HEADER_SIZE;
+		int firstMovedPosition = -1;
+		ByteBuffer content = buffer.duplicate();
+
+		index.clear();
+
+		for (Record record : liveRecords) {
+			if (now >= record.expirationTime)
+				continue;
+
+			int size = record.size;
+
+			if (record.position != position) {
+				byte[] data = new byte[size];
+
+				content.position(record.position);
+				content.get(data);
+
+				if (firstMovedPosition < 0) {
+					firstMovedPosition = position;
+					// the file ends here until the compaction is complete
+					ByteBuffer.wrap(data).putInt(0, 0);
+				}
+
+				content.position(position);
+				content.put(data);
+			}
+
+			index.put(record.key, new Record(record.key, position, record.keyLength,
+					record.valueLength, record.expirationTime));
+			position += size;
+		}
+
+		writePosition = position;
+		buffer.putInt(writePosition, 0);
+
+		if (firstMovedPosition >= 0)
+			buffer.putInt(firstMovedPosition, RECORD_MARKER);
+	}
+
+	/**
+	 * Computes the checksum of a record.
+	 */
+	private static int checksum(int keyLength, int valueLength, long expirationTime, byte[] data) {
+		CRC32 crc = new CRC32();
+		ByteBuffer header = ByteBuffer.allocate(16);
+
+		header.putInt(keyLength).putInt(valueLength).putLong(expirationTime);
+		crc.update(header.array());
+		crc.update(data);
+
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Encodes a string with UTF-8.
+	 */
+	private static byte[] toBytes(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Position and size of a record in the file.
+	 */
+	private static class Record implements Comparable<Record> {
+		final String key;
+		final int position;
+		final int keyLength;
+		final int valueLength;
+		final long expirationTime;
+		final int size;
+
+		Record(String key, int position, int keyLength, int valueLength, long expirationTime) {
+			this.key = key;
+			this.position = position;
+			this.keyLength = keyLength;
+			this.valueLength = valueLength;
+			this.expirationTime = expirationTime;
+			this.size = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+		}
+
+		@Override
+		public int compareTo(Record other) {
+			return position < other.position ? -1 : (position == other.position ? 0 : 1);
+		}
+	}
+}
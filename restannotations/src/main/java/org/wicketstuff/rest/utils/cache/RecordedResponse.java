@@ -0,0 +1,247 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.http.WebResponse;
+
+/**
+ * A complete response (status, headers and body) recorded to be replayed
+ * later, usually stored for the methods annotated with
+ * {@link org.wicketstuff.rest.annotations.Idempotent}. Instances are
+ * immutable.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class RecordedResponse {
+	/** Header added to the responses replayed to retried requests. */
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	/** The HTTP status code. */
+	private final int status;
+
+	/** The message sent with the error status, null if it's not an error. */
+	private final String errorMessage;
+
+	/** The URL the client was redirected to, null if it's not a redirect. */
+	private final String redirectUrl;
+
+	/** The content type of the response, null if not set. */
+	private final String contentType;
+
+	/** The names of the headers, in the order they were set. */
+	private final List<String> headerNames;
+
+	/** The values of the headers. */
+	private final List<String> headerValues;
+
+	/** The body of the response. */
+	private final byte[] content;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param status
+	 *            the HTTP status code.
+	 * @param errorMessage
+	 *            the message sent with the error status, null if it's not an
+	 *            error.
+	 * @param redirectUrl
+	 *            the URL the client was redirected to, null if it's not a
+	 *            redirect.
+	 * @param contentType
+	 *            the content type of the response, can be null.
+	 * @param headerNames
+	 *            the names of the headers.
+	 * @param headerValues
+	 *            the values of the headers.
+	 * @param content
+	 *            the body of the response.
+	 */
+	public RecordedResponse(int status, String errorMessage, String redirectUrl,
+			String contentType, List<String> headerNames, List<String> headerValues, byte[] content) {
+		this.status = status;
+		this.errorMessage = errorMessage;
+		this.redirectUrl = redirectUrl;
+		this.contentType = contentType;
+		this.headerNames = Collections.unmodifiableList(new ArrayList<String>(headerNames));
+		this.headerValues = Collections.unmodifiableList(new ArrayList<String>(headerValues));
+		this.content = content;
+	}
+
+	/**
+	 * Writes the recorded response to the given response.
+	 * 
+	 * @param response
+	 *            the response to write to.
+	 */
+	public void writeTo(WebResponse response) {
+		for (int i = 0; i < headerNames.size(); i++)
+			response.addHeader(headerNames.get(i), headerValues.get(i));
+
+		if (redirectUrl != null) {
+			response.sendRedirect(redirectUrl);
+			return;
+		}
+
+		if (errorMessage != null) {
+			response.sendError(status, errorMessage);
+			return;
+		}
+
+		response.setStatus(status);
+
+		if (contentType != null)
+			response.setContentType(contentType);
+
+		response.setContentLength(content.length);
+
+		if (content.length > 0)
+			response.write(content);
+	}
+
+	/**
+	 * Gets the HTTP status code.
+	 * 
+	 * @return the status code.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the content type of the response.
+	 * 
+	 * @return the content type, null if not set.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Gets the value of a header.
+	 * 
+	 * @param name
+	 *            the name of the header (case-insensitive).
+	 * @return the last value of the header, null if it's not set.
+	 */
+	public String getHeader(String name) {
+		for (int i = headerNames.size() - 1; i >= 0; i--) {
+			if (headerNames.get(i).equalsIgnoreCase(name))
+				return headerValues.get(i);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the body of the response.
+	 * 
+	 * @return the body of the response.
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * Encodes the response as a byte array, used by
+	 * {@link IResponseCacheStore}s.
+	 * 
+	 * @return the encoded response.
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 256);
+		DataOutputStream output = new DataOutputStream(bytes);
+
+		try {
+			output.writeInt(status);
+			writeNullableUTF(output, errorMessage);
+			writeNullableUTF(output, redirectUrl);
+			writeNullableUTF(output, contentType);
+			output.writeInt(headerNames.size());
+
+			for (int i = 0; i < headerNames.size(); i++) {
+				output.writeUTF(headerNames.get(i));
+				output.writeUTF(headerValues.get(i));
+			}
+
+			output.writeInt(content.length);
+			output.write(content);
+		} catch (IOException e) {
+			throw new WicketRuntimeException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes a response encoded with {@link #toByteArray()}.
+	 * 
+	 * @param bytes
+	 *            the encoded response.
+	 * @return the decoded response.
+	 */
+	public static RecordedResponse fromByteArray(byte[] bytes) {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+		try {
+			int status = input.readInt();
+			String errorMessage = readNullableUTF(input);
+			String redirectUrl = readNullableUTF(input);
+			String contentType = readNullableUTF(input);
+			int headerCount = input.readInt();
+			List<String> headerNames = new ArrayList<String>(headerCount);
+			List<String> headerValues = new ArrayList<String>(headerCount);
+
+			for (int i = 0; i < headerCount; i++) {
+				headerNames.add(input.readUTF());
+				headerValues.add(input.readUTF());
+			}
+
+			byte[] content = new byte[input.readInt()];
+
+			input.readFully(content);
+
+			return new RecordedResponse(status, errorMessage, redirectUrl, contentType,
+					headerNames, headerValues, content);
+		} catch (IOException e) {
+			throw new WicketRuntimeException("Invalid recorded response.", e);
+		}
+	}
+
+	private static void writeNullableUTF(DataOutputStream output, String value)
+			throws IOException {
+		output.writeBoolean(value != null);
+
+		if (value != null)
+			output.writeUTF(value);
+	}
+
+	private static String readNullableUTF(DataInputStream input) throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * Keeps track of the in-flight invocations of the methods annotated with
+ * {@link org.wicketstuff.rest.annotations.Coalesced}. The first request with
+ * a given key becomes the leader of the invocation, while the following ones
+ * wait for the leader to publish the serialized response, up to a timeout.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class RequestCoalescer {
+	/** The in-flight invocations. */
+	private final ConcurrentHashMap<String, Call> calls = new ConcurrentHashMap<String, Call>();
+
+	/** Max time (in milliseconds) to wait for an in-flight invocation. */
+	private volatile long timeout = 30000;
+
+	/**
+	 * Joins the in-flight invocation with the given key or, if there is none,
+	 * registers the given one. In the latter case the caller becomes the
+	 * leader of the invocation: it must invoke the method and then call
+	 * {@link #complete}.
+	 * 
+	 * @param call
+	 *            the new invocation to register.
+	 * @return the in-flight invocation to wait for, or null if the given one
+	 *         has been registered.
+	 */
+	public Call join(Call call) {
+		return calls.putIfAbsent(call.key, call);
+	}
+
+	/**
+	 * Completes an invocation registered with {@link #join(Call)}, releasing the
+	 * requests waiting for it. It must be called even if the invocation fails,
+	 * typically in a finally block. Only the first completion of an invocation
+	 * is taken into account.
+	 * 
+	 * @param call
+	 *            the invocation registered with {@link #join(Call)}.
+	 * @param serializedResponse
+	 *            the serialized response, null if it can't be shared (the
+	 *            waiting requests invoke the method on their own).
+	 */
+	public void complete(Call call, CachedResponse serializedResponse) {
+		calls.remove(call.key, call);
+		call.complete(serializedResponse);
+	}
+
+	/**
+	 * Waits for an in-flight invocation returned by {@link #join(Call)}, up to
+	 * the coalescing timeout (See {@link #setTimeout(long)}).
+	 * 
+	 * @param inFlightCall
+	 *            the in-flight invocation.
+	 * @return the serialized response, or null if it can't be shared or the
+	 *         timeout expired.
+	 */
+	public CachedResponse awaitResponse(Call inFlightCall) {
+		try {
+			return inFlightCall.await(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WicketRuntimeException("Interrupted while waiting for a coalesced response.", e);
+		}
+	}
+
+	/**
+	 * Gets the max time to wait for an in-flight invocation.
+	 * 
+	 * @return the coalescing timeout (in milliseconds).
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the max time to wait for an in-flight invocation. The default value
+	 * is 30 seconds.
+	 * 
+	 * @param timeout
+	 *            the coalescing timeout (in milliseconds).
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Gets the number of in-flight invocations.
+	 * 
+	 * @return the number of in-flight invocations.
+	 */
+	public int size() {
+		return calls.size();
+	}
+
+	/**
+	 * An in-flight invocation.
+	 */
+	public static class Call {
+		private final String key;
+		private final CountDownLatch completion = new CountDownLatch(1);
+		private volatile CachedResponse serializedResponse;
+
+		/**
+		 * Class constructor.
+		 * 
+		 * @param key
+		 *            the key of the request.
+		 */
+		public Call(String key) {
+			this.key = key;
+		}
+
+		private void complete(CachedResponse serializedResponse) {
+			if (completion.getCount() == 0)
+				return;
+
+			this.serializedResponse = serializedResponse;
+			completion.countDown();
+		}
+
+		/**
+		 * Waits for the leader to complete the invocation.
+		 * 
+		 * @param timeout
+		 *            the max time to wait (in milliseconds).
+		 * @return the serialized response, or null if the leader couldn't
+		 *         share it or the time expired.
+		 * @throws InterruptedException
+		 *             if the current thread is interrupted while waiting.
+		 */
+		public CachedResponse await(long timeout) throws InterruptedException {
+			if (!completion.await(timeout, TimeUnit.MILLISECONDS))
+				return null;
+
+			return serializedResponse;
+		}
+
+		/**
+		 * Checks if the leader has completed the invocation.
+		 * 
+		 * @return true if the invocation is complete.
+		 */
+		public boolean isCompleted() {
+			return completion.getCount() == 0;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Cache of serialized responses, grouped by cache name (see
+ * {@link org.wicketstuff.rest.annotations.Cacheable#value()}). Responses are
+ * kept by an {@link IResponseCacheStore}, which can be local to the JVM or
+ * shared among JVMs and nodes.<br/>
+ * Each cache name has a generation that is part of the keys of its
+ * responses. Invalidating a cache name removes its generation from the store,
+ * so that a new one is created and the old responses are no longer reachable.
+ * This works with any store and, since a lost generation is replaced with a
+ * new one, a store that discards entries can only cause cache misses.
+ * However, a store that evicts a generation while its responses are still in
+ * use makes all of them unreachable, so bounded stores should evict the
+ * least recently used values (see {@link MemoryResponseCacheStore}).
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class ResponseCache {
+	/** Prefix of the keys of the generations. */
+	private static final String GENERATION_PREFIX = "generation\n";
+
+	/** The charset of the stored generations. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The store of the responses. */
+	private final IResponseCacheStore store;
+
+	/**
+	 * Creates a cache that keeps up to the given number of entries in memory.
+	 * 
+	 * @param maxEntries
+	 *            max number of cached entries.
+	 */
+	public ResponseCache(int maxEntries) {
+		this(new MemoryResponseCacheStore(maxEntries));
+	}
+
+	/**
+	 * Creates a cache that keeps its entries in the given store.
+	 * 
+	 * @param store
+	 *            the store of the responses.
+	 */
+	public ResponseCache(IResponseCacheStore store) {
+		Args.notNull(store, "store");
+		this.store = store;
+	}
+
+	/**
+	 * Builds the key of a response, made of the cache name, its current
+	 * generation and the given key. The key must be built before the response
+	 * is computed: if the cache is invalidated in the meantime, the response
+	 * is stored with the old generation and it's never returned.
+	 * 
+	 * @param cacheName
+	 *            the name of the cache.
+	 * @param key
+	 *            the key of the response within the cache.
+	 * @return the key of the response.
+	 */
+	public String buildKey(String cacheName, String key) {
+		return cacheName + '\n' + getGeneration(cacheName) + '\n' + key;
+	}
+
+	/**
+	 * Gets a cached response.
+	 * 
+	 * @param key
+	 *            the key of the response (see
+	 *            {@link #buildKey(String, String)}).
+	 * @return the cached response, or null if it's not cached or it's
+	 *         expired.
+	 */
+	public CachedResponse get(String key) {
+		byte[] value = store.get(key);
+
+		if (value == null)
+			return null;
+
+		CachedResponse response = CachedResponse.fromByteArray(value);
+
+		return response.isExpired(System.currentTimeMillis()) ? null : response;
+	}
+
+	/**
+	 * Stores a response.
+	 * 
+	 * @param key
+	 *            the key of the response (see
+	 *            {@link #buildKey(String, String)}).
+	 * @param response
+	 *            the response to cache.
+	 */
+	public void put(String key, CachedResponse response) {
+		store.put(key, response.toByteArray(), response.getExpirationTime());
+	}
+
+	/**
+	 * Removes all the responses of the given cache.
+	 * 
+	 * @param cacheName
+	 *            the name of the cache.
+	 */
+	public void invalidate(String cacheName) {
+		store.invalidate(GENERATION_PREFIX + cacheName);
+	}
+
+	/**
+	 * Removes all the cached responses.
+	 */
+	public void invalidateAll() {
+		store.invalidateAll();
+	}
+
+	/**
+	 * Gets the store of the responses.
+	 * 
+	 * @return the store.
+	 */
+	public IResponseCacheStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Gets the current generation of a cache name, creating a new one if it's
+	 * missing.
+	 */
+	private String getGeneration(String cacheName) {
+		String generationKey = GENERATION_PREFIX + cacheName;
+		byte[] generation = store.get(generationKey);
+
+		if (generation != null)
+			return new String(generation, UTF_8);
+
+		String newGeneration = UUID.randomUUID().toString();
+
+		store.put(generationKey, newGeneration.getBytes(UTF_8), Long.MAX_VALUE);
+		return newGeneration;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache that maps an object to its serialized form. Objects
+ * are compared by identity and by version (see
+ * {@link org.wicketstuff.rest.contenthandling.IVersionedObject}), so that
+ * long-lived objects returned by mapped methods are serialized only once per
+ * version and MIME type. The cache doesn't prevent objects from being garbage
+ * collected.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class SerializedObjectCache {
+	/** Max number of cached entries. */
+	private final int maxEntries;
+
+	/** The cached entries, in access order. */
+	private final LinkedHashMap<ObjectKey, CachedResponse> entries;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param maxEntries
+	 *            max number of cached entries.
+	 */
+	public SerializedObjectCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<ObjectKey, CachedResponse>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ObjectKey, CachedResponse> eldest) {
+				return size() > SerializedObjectCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the serialized form of an object.
+	 * 
+	 * @param object
+	 *            the object.
+	 * @param version
+	 *            the current version of the object.
+	 * @param mimeType
+	 *            the MIME type used to serialize the object.
+	 * @return the serialized object, or null if it's not cached.
+	 */
+	public CachedResponse get(Object object, String version, String mimeType) {
+		synchronized (entries) {
+			return entries.get(new ObjectKey(object, version, mimeType));
+		}
+	}
+
+	/**
+	 * Stores the serialized form of an object.
+	 * 
+	 * @param object
+	 *            the object.
+	 * @param version
+	 *            the current version of the object.
+	 * @param mimeType
+	 *            the MIME type used to serialize the object.
+	 * @param serializedObject
+	 *            the serialized object.
+	 */
+	public void put(Object object, String version, String mimeType,
+			CachedResponse serializedObject) {
+		ObjectKey key = new ObjectKey(object, version, mimeType);
+
+		synchronized (entries) {
+			entries.put(key, serializedObject);
+		}
+	}
+
+	/**
+	 * Key of the cache, compared by object identity, version and MIME type.
+	 */
+	private static class ObjectKey {
+		private final WeakReference<Object> object;
+		private final String version;
+		private final String mimeType;
+		private final int hashCode;
+
+		ObjectKey(Object object, String version, String mimeType) {
+			this.object = new WeakReference<Object>(object);
+			this.version = version;
+			this.mimeType = mimeType;
+			this.hashCode = 31 * (31 * System.identityHashCode(object) + version.hashCode())
+					+ mimeType.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+
+			if (!(obj instanceof ObjectKey))
+				return false;
+
+			ObjectKey other = (ObjectKey) obj;
+			Object referent = object.get();
+
+			// keys of collected objects are equal only to themselves
+			return referent != null && referent == other.object.get() && hashCode == other.hashCode
+					&& version.equals(other.version) && mimeType.equals(other.mimeType);
+		}
+	}
+}
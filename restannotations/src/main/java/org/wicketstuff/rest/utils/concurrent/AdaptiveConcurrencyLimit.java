@@ -0,0 +1,250 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Concurrency limit that adapts to the observed latency, following a gradient
+ * approach. For every completed invocation the ratio between the minimum
+ * latency observed and the latency of the invocation (multiplied by a
+ * tolerance) gives the gradient: if it's at least 1 the system is not queuing
+ * and the limit can grow, otherwise the limit is scaled down by the gradient.
+ * A headroom equal to the square root of the limit lets it grow until latency
+ * rises, but only while at least half of the limit is in use: a low load
+ * doesn't show that a higher one can be served. The new value is smoothed
+ * with the previous one.<br/>
+ * The minimum latency is measured again every {@value #PROBE_INTERVAL}
+ * samples: the limit is halved and kept until the invocations admitted after
+ * the change have completed, so that the new minimum is taken while they run
+ * without queuing. This way the limit follows the changes of the hardware and
+ * of the downstream latencies.<br/>
+ * All the state is kept in atomic variables updated with compare-and-set
+ * loops, so no lock is taken to acquire a permit or to record a sample.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class AdaptiveConcurrencyLimit {
+	/** The number of samples after which the minimum latency is measured again. */
+	public static final int PROBE_INTERVAL = 1000;
+
+	/** Weight of a new estimate of the limit. */
+	private static final double SMOOTHING = 0.1;
+
+	/** Min value of the gradient, i.e. max decrease of the estimate for a sample. */
+	private static final double MIN_GRADIENT = 0.5;
+
+	/** The lowest value of the limit. */
+	private final int minLimit;
+
+	/** The highest value of the limit. */
+	private final int maxLimit;
+
+	/** How many times the latency can exceed the minimum one. */
+	private final double tolerance;
+
+	/** The estimated limit, stored as the bits of a double. */
+	private final AtomicLong estimatedLimit;
+
+	/** The minimum latency observed (in nanoseconds). */
+	private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+
+	/** The number of samples recorded. */
+	private final AtomicLong sampleCount = new AtomicLong();
+
+	/** The number of samples after which the probe of the minimum latency ends. */
+	private volatile long probeEnd;
+
+	/** The number of invocations in progress. */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param initialLimit
+	 *            the limit used before any latency has been measured.
+	 * @param minLimit
+	 *            the lowest value of the limit.
+	 * @param maxLimit
+	 *            the highest value of the limit.
+	 * @param tolerance
+	 *            how many times the latency can exceed the minimum one before
+	 *            the limit is lowered.
+	 */
+	public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+		Args.isTrue(minLimit > 0, "minLimit must be greater than 0");
+		Args.isTrue(minLimit <= initialLimit && initialLimit <= maxLimit,
+				"initialLimit must be between minLimit and maxLimit");
+		Args.isTrue(tolerance >= 1, "tolerance can not be less than 1");
+
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.estimatedLimit = new AtomicLong(Double.doubleToLongBits(initialLimit));
+	}
+
+	/**
+	 * Takes a permit if the number of invocations in progress is below the
+	 * current limit. This method never blocks.
+	 * 
+	 * @return true if the permit has been taken, false if the request must be
+	 *         rejected. A taken permit must be given back with
+	 *         {@link #release(long)}.
+	 */
+	public boolean tryAcquire() {
+		int limit = getLimit();
+
+		while (true) {
+			int current = inFlight.get();
+
+			if (current >= limit)
+				return false;
+
+			if (inFlight.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * Gives back a permit and updates the limit with the latency of the
+	 * invocation.
+	 * 
+	 * @param latency
+	 *            the latency of the invocation (in nanoseconds), or a negative
+	 *            value if the invocation failed and its latency must not be
+	 *            used.
+	 */
+	public void release(long latency) {
+		int inFlightCount = inFlight.getAndDecrement();
+
+		if (latency >= 0)
+			recordSample(Math.max(latency, 1), inFlightCount);
+	}
+
+	/**
+	 * Updates the minimum latency and the limit with a new sample.
+	 * 
+	 * @param latency
+	 *            the latency of the invocation (in nanoseconds).
+	 * @param inFlightCount
+	 *            the number of invocations in progress, including the sampled
+	 *            one.
+	 */
+	private void recordSample(long latency, int inFlightCount) {
+		long count = sampleCount.incrementAndGet();
+
+		if (count % PROBE_INTERVAL == 0) {
+			startProbe(count);
+			return;
+		}
+
+		long min;
+
+		while (latency < (min = minLatency.get()) && !minLatency.compareAndSet(min, latency))
+			;
+
+		// while probing only the minimum latency is measured
+		if (count < probeEnd)
+			return;
+
+		double gradient = Math.max(MIN_GRADIENT,
+				Math.min(1.0, tolerance * Math.min(min, latency) / latency));
+
+		// without queuing the limit grows only if it's used
+		if (gradient >= 1.0 && inFlightCount < getLimit() / 2)
+			return;
+
+		updateLimit(gradient, SMOOTHING);
+	}
+
+	/**
+	 * Starts measuring again the minimum latency. The limit is halved and
+	 * kept for enough samples to see the invocations admitted after the
+	 * change complete.
+	 * 
+	 * @param count
+	 *            the current number of samples.
+	 */
+	private void startProbe(long count) {
+		updateLimit(MIN_GRADIENT, 0);
+		minLatency.set(Long.MAX_VALUE);
+		probeEnd = count + 3 * getLimit() + 1;
+	}
+
+	/**
+	 * Scales the estimated limit by the given gradient and adds the headroom.
+	 * 
+	 * @param gradient
+	 *            the gradient.
+	 * @param smoothing
+	 *            the weight of the new estimate, or 0 to replace the limit
+	 *            with the scaled value without headroom.
+	 */
+	private void updateLimit(double gradient, double smoothing) {
+		while (true) {
+			long bits = estimatedLimit.get();
+			double limit = Double.longBitsToDouble(bits);
+			double newLimit;
+
+			if (smoothing == 0) {
+				newLimit = limit * gradient;
+			} else {
+				newLimit = limit * gradient + Math.sqrt(limit);
+				newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+			}
+
+			newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+			if (estimatedLimit.compareAndSet(bits, Double.doubleToLongBits(newLimit)))
+				return;
+		}
+	}
+
+	/**
+	 * Gets the current limit.
+	 * 
+	 * @return the max number of concurrent invocations allowed now.
+	 */
+	public int getLimit() {
+		return (int) Double.longBitsToDouble(estimatedLimit.get());
+	}
+
+	/**
+	 * Gets the number of invocations in progress.
+	 * 
+	 * @return the number of taken permits.
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Gets the minimum latency observed.
+	 * 
+	 * @return the minimum latency (in nanoseconds), or -1 if no latency has
+	 *         been measured yet.
+	 */
+	public long getMinLatency() {
+		long min = minLatency.get();
+
+		return min == Long.MAX_VALUE ? -1 : min;
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * The permits of a bulkhead, i.e. a limit on the number of concurrent
+ * invocations of a method. Permits are taken with a non-fair
+ * {@link Semaphore}, whose tryAcquire is a compare-and-set loop that never
+ * blocks. Only the requests that find no free permit and get a place in the
+ * wait queue are parked, for a bounded time.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class BulkheadPermits {
+	/** The max number of concurrent invocations. */
+	private final int maxConcurrent;
+
+	/** The max number of requests waiting for a permit. */
+	private final int maxWaiting;
+
+	/** The max time (in milliseconds) a request waits for a permit. */
+	private final long maxWaitTime;
+
+	/** The free permits. */
+	private final Semaphore permits;
+
+	/** The number of requests waiting for a permit. */
+	private final AtomicInteger waitingCount = new AtomicInteger();
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param maxConcurrent
+	 *            the max number of concurrent invocations.
+	 * @param maxWaiting
+	 *            the max number of requests waiting for a permit.
+	 * @param maxWaitTime
+	 *            the max time (in milliseconds) a request waits for a
+	 *            permit.
+	 */
+	public BulkheadPermits(int maxConcurrent, int maxWaiting, long maxWaitTime) {
+		Args.isTrue(maxConcurrent > 0, "maxConcurrent must be greater than 0");
+		Args.isTrue(maxWaiting >= 0, "maxWaiting can not be negative");
+		Args.isTrue(maxWaitTime >= 0, "maxWaitTime can not be negative");
+
+		this.maxConcurrent = maxConcurrent;
+		this.maxWaiting = maxWaiting;
+		this.maxWaitTime = maxWaitTime;
+		this.permits = new Semaphore(maxConcurrent);
+	}
+
+	/**
+	 * Takes a permit. If none is free and the wait queue is not full, waits
+	 * for one at most the max waiting time.
+	 * 
+	 * @return true if the permit has been taken, false if the request must be
+	 *         rejected. A taken permit must be given back with
+	 *         {@link #release()}.
+	 */
+	public boolean tryAcquire() {
+		if (permits.tryAcquire())
+			return true;
+
+		if (maxWaiting == 0 || maxWaitTime == 0)
+			return false;
+
+		if (waitingCount.incrementAndGet() > maxWaiting) {
+			waitingCount.decrementAndGet();
+			return false;
+		}
+
+		try {
+			return permits.tryAcquire(maxWaitTime, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			waitingCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Gives back a permit taken with {@link #tryAcquire()}.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * Gets the number of invocations in progress.
+	 * 
+	 * @return the number of taken permits.
+	 */
+	public int getInFlightCount() {
+		return maxConcurrent - permits.availablePermits();
+	}
+
+	/**
+	 * Gets the number of requests waiting for a permit.
+	 * 
+	 * @return the number of waiting requests.
+	 */
+	public int getWaitingCount() {
+		return waitingCount.get();
+	}
+
+	/**
+	 * Gets the max number of concurrent invocations.
+	 * 
+	 * @return the number of permits.
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+}
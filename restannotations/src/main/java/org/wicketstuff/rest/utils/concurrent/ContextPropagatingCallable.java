@@ -0,0 +1,104 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.concurrent.Callable;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.Session;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.request.cycle.RequestCycle;
+
+/**
+ * Callable that runs another callable with the Wicket thread context
+ * (application, session and request cycle) of the thread that created it.
+ * This allows code running on an executor to use
+ * {@link org.apache.wicket.Application#get()},
+ * {@link org.apache.wicket.Session#get()} and
+ * {@link org.apache.wicket.request.cycle.RequestCycle#get()}. The previous
+ * context of the executing thread is restored once the callable completes.<br/>
+ * The executing thread gets its own copy of the context, so that the creating
+ * thread can revoke the request cycle (see {@link #revoke()}) when it stops
+ * waiting for the result.
+ * 
+ * @author andrea del bene
+ * 
+ * @param <V>
+ *            the type of the result.
+ */
+public class ContextPropagatingCallable<V> implements Callable<V> {
+	/** The callable to run. */
+	private final Callable<V> callable;
+
+	/** The copy of the thread context of the creating thread. */
+	private final ThreadContext threadContext;
+
+	/**
+	 * Class constructor. It must be invoked by the thread whose context must
+	 * be propagated.
+	 * 
+	 * @param callable
+	 *            the callable to run.
+	 */
+	public ContextPropagatingCallable(Callable<V> callable) {
+		this.callable = callable;
+
+		Application application = ThreadContext.getApplication();
+		RequestCycle requestCycle = ThreadContext.getRequestCycle();
+		Session session = ThreadContext.getSession();
+		ThreadContext ownContext = ThreadContext.detach();
+
+		try {
+			ThreadContext.setApplication(application);
+			ThreadContext.setRequestCycle(requestCycle);
+			ThreadContext.setSession(session);
+			this.threadContext = ThreadContext.detach();
+		} finally {
+			ThreadContext.restore(ownContext);
+		}
+	}
+
+	@Override
+	public V call() throws Exception {
+		ThreadContext previousContext = ThreadContext.detach();
+
+		try {
+			ThreadContext.restore(threadContext);
+			return callable.call();
+		} finally {
+			ThreadContext.restore(previousContext);
+		}
+	}
+
+	/**
+	 * Removes the request cycle from the context of the executing thread. It's
+	 * invoked by the creating thread when it stops waiting for the result
+	 * (e.g. after a timeout), since the request cycle can't be used once the
+	 * request is over. The executing thread sees the change at the latest
+	 * when it next synchronizes, e.g. when it's interrupted.
+	 */
+	public void revoke() {
+		ThreadContext ownContext = ThreadContext.detach();
+
+		try {
+			ThreadContext.restore(threadContext);
+			ThreadContext.setRequestCycle(null);
+		} finally {
+			ThreadContext.restore(ownContext);
+		}
+	}
+}
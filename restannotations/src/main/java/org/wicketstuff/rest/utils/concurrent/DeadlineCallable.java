@@ -0,0 +1,88 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Callable that runs another callable with a deadline, which the running code
+ * can read with {@link #getRemainingTime()}. The deadline is bound to the
+ * executing thread only while the callable runs, so it stays valid even after
+ * the thread that submitted the callable has stopped waiting for it.
+ * 
+ * @author andrea del bene
+ * 
+ * @param <V>
+ *            the type of the result.
+ */
+public class DeadlineCallable<V> implements Callable<V> {
+	/** The deadline of the callable run by the current thread, if any. */
+	private static final ThreadLocal<Long> CURRENT_DEADLINE = new ThreadLocal<Long>();
+
+	/** The callable to run. */
+	private final Callable<V> callable;
+
+	/** The deadline, as returned by {@link System#nanoTime()}. */
+	private final long deadline;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param callable
+	 *            the callable to run.
+	 * @param deadline
+	 *            the time (as returned by {@link System#nanoTime()}) by which
+	 *            the callable must complete.
+	 */
+	public DeadlineCallable(Callable<V> callable, long deadline) {
+		this.callable = callable;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public V call() throws Exception {
+		Long previousDeadline = CURRENT_DEADLINE.get();
+
+		CURRENT_DEADLINE.set(deadline);
+
+		try {
+			return callable.call();
+		} finally {
+			if (previousDeadline != null)
+				CURRENT_DEADLINE.set(previousDeadline);
+			else
+				CURRENT_DEADLINE.remove();
+		}
+	}
+
+	/**
+	 * Gets the time left before the deadline of the callable run by the
+	 * current thread.
+	 * 
+	 * @return the time left (in nanoseconds), 0 if the deadline has passed or
+	 *         -1 if the current thread isn't running a callable with a
+	 *         deadline.
+	 */
+	public static long getRemainingTime() {
+		Long deadline = CURRENT_DEADLINE.get();
+
+		if (deadline == null)
+			return -1;
+
+		return Math.max(0, deadline - System.nanoTime());
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * Locks of the regions of a memory-mapped file shared by several threads and
+ * processes. A region is locked for the threads of this JVM with a striped
+ * monitor and for the other processes with a {@link FileLock}. File locks are
+ * held by the whole JVM, so the monitors are shared by all the instances
+ * created for the same file.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class FileRegionLocks {
+	/** Number of monitors used to synchronize the threads of this JVM. */
+	private static final int LOCK_STRIPES = 64;
+
+	/** The monitors of the files, by canonical path. */
+	private static final ConcurrentHashMap<String, Object[]> MONITORS_BY_PATH = new ConcurrentHashMap<String, Object[]>();
+
+	/** The channel of the file. */
+	private final FileChannel channel;
+
+	/** The monitors of the file. */
+	private final Object[] monitors;
+
+	/** Describes the file in error messages. */
+	private final String fileDescription;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param path
+	 *            the path of the file.
+	 * @param channel
+	 *            the channel of the file.
+	 * @param fileDescription
+	 *            describes the file in error messages (e.g. "cache file").
+	 * @throws IOException
+	 *             if the canonical path of the file can't be resolved.
+	 */
+	public FileRegionLocks(File path, FileChannel channel, String fileDescription)
+			throws IOException {
+		this.channel = channel;
+		this.monitors = getMonitors(path.getCanonicalPath());
+		this.fileDescription = fileDescription;
+	}
+
+	/**
+	 * Gets the monitors of a file.
+	 */
+	private static Object[] getMonitors(String canonicalPath) {
+		Object[] monitors = MONITORS_BY_PATH.get(canonicalPath);
+
+		if (monitors == null) {
+			monitors = new Object[LOCK_STRIPES];
+
+			for (int i = 0; i < LOCK_STRIPES; i++)
+				monitors[i] = new Object();
+
+			Object[] existingMonitors = MONITORS_BY_PATH.putIfAbsent(canonicalPath, monitors);
+
+			if (existingMonitors != null)
+				monitors = existingMonitors;
+		}
+
+		return monitors;
+	}
+
+	/**
+	 * Gets the monitor synchronizing the threads of this JVM that access a
+	 * region.
+	 * 
+	 * @param region
+	 *            the index of the region.
+	 * @return the monitor.
+	 */
+	public Object getMonitor(int region) {
+		return monitors[region % LOCK_STRIPES];
+	}
+
+	/**
+	 * Gets the monitor synchronizing the threads of this JVM that access the
+	 * whole file, e.g. its header.
+	 * 
+	 * @return the monitor.
+	 */
+	public Object getFileMonitor() {
+		return monitors;
+	}
+
+	/**
+	 * Locks a region of the file for the other processes. The monitor of the
+	 * region must be held.
+	 * 
+	 * @param position
+	 *            the position of the region.
+	 * @param size
+	 *            the size of the region.
+	 * @param shared
+	 *            true for a shared (read) lock.
+	 * @return the file lock.
+	 */
+	public FileLock lock(long position, long size, boolean shared) {
+		try {
+			return channel.lock(position, size, shared);
+		} catch (IOException e) {
+			throw new WicketRuntimeException("Error locking the " + fileDescription + ".", e);
+		}
+	}
+
+	/**
+	 * Releases a file lock.
+	 * 
+	 * @param fileLock
+	 *            the file lock.
+	 */
+	public void release(FileLock fileLock) {
+		try {
+			fileLock.release();
+		} catch (IOException e) {
+			throw new WicketRuntimeException("Error unlocking the " + fileDescription + ".", e);
+		}
+	}
+}
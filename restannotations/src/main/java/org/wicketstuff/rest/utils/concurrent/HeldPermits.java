@@ -0,0 +1,95 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link InvocationPermits} taken by a request, released exactly once.
+ * They are held by the thread that serves the request until the invocation
+ * of the method starts on another thread (see {@link #takeOver()}): from then
+ * on they are released by that thread when the invocation completes, even if
+ * the request is already over (e.g. after a timeout). This way the permits
+ * are never given back while the method is still running.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class HeldPermits {
+	/** The permits are held by the thread that serves the request. */
+	private static final int HELD = 0;
+
+	/** The permits are held by the thread that runs the invocation. */
+	private static final int TAKEN_OVER = 1;
+
+	/** The permits have been released. */
+	private static final int RELEASED = 2;
+
+	/** The permits taken by the request. */
+	private final InvocationPermits permits;
+
+	/** The state of the permits. */
+	private final AtomicInteger state = new AtomicInteger(HELD);
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param permits
+	 *            the permits, already taken with
+	 *            {@link InvocationPermits#tryAcquire()}.
+	 */
+	public HeldPermits(InvocationPermits permits) {
+		this.permits = permits;
+	}
+
+	/**
+	 * Transfers the permits to the current thread, which is about to run the
+	 * invocation. It must then release them with
+	 * {@link #releaseTakenOver(long)}.
+	 * 
+	 * @return true if the permits have been transferred, false if they have
+	 *         already been released.
+	 */
+	public boolean takeOver() {
+		return state.compareAndSet(HELD, TAKEN_OVER);
+	}
+
+	/**
+	 * Releases the permits, unless they have been taken over by the thread
+	 * running the invocation.
+	 * 
+	 * @param latency
+	 *            the latency of the invocation (in nanoseconds), or -1 if it
+	 *            failed.
+	 */
+	public void release(long latency) {
+		if (state.compareAndSet(HELD, RELEASED))
+			permits.release(latency);
+	}
+
+	/**
+	 * Releases the permits taken over with {@link #takeOver()}.
+	 * 
+	 * @param latency
+	 *            the latency of the invocation (in nanoseconds), or -1 if it
+	 *            failed.
+	 */
+	public void releaseTakenOver(long latency) {
+		if (state.compareAndSet(TAKEN_OVER, RELEASED))
+			permits.release(latency);
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+/**
+ * The permits needed to invoke a method limited by an
+ * {@link AdaptiveConcurrencyLimit}, a {@link BulkheadPermits} or both. The
+ * bulkhead permit is taken first, since the bulkhead can make the request
+ * wait: this way the adaptive limit counts only the invocations that can run
+ * and its latencies don't include the waiting time. The bulkhead permit is
+ * given back if the adaptive limit rejects the invocation.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class InvocationPermits {
+	/** The adaptive concurrency limit, can be null. */
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+	/** The delay (in seconds) suggested when the adaptive limit is exceeded. */
+	private final int limitRetryAfter;
+
+	/** The permits of the bulkhead, can be null. */
+	private final BulkheadPermits bulkheadPermits;
+
+	/** The delay (in seconds) suggested when the bulkhead is full. */
+	private final int bulkheadRetryAfter;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param concurrencyLimit
+	 *            the adaptive concurrency limit. Can be null.
+	 * @param limitRetryAfter
+	 *            the delay (in seconds) suggested to the client when the
+	 *            adaptive limit is exceeded.
+	 * @param bulkheadPermits
+	 *            the permits of the bulkhead. Can be null.
+	 * @param bulkheadRetryAfter
+	 *            the delay (in seconds) suggested to the client when the
+	 *            bulkhead is full.
+	 */
+	public InvocationPermits(AdaptiveConcurrencyLimit concurrencyLimit, int limitRetryAfter,
+			BulkheadPermits bulkheadPermits, int bulkheadRetryAfter) {
+		this.concurrencyLimit = concurrencyLimit;
+		this.limitRetryAfter = limitRetryAfter;
+		this.bulkheadPermits = bulkheadPermits;
+		this.bulkheadRetryAfter = bulkheadRetryAfter;
+	}
+
+	/**
+	 * Takes the permits needed for an invocation.
+	 * 
+	 * @return -1 if the permits have been taken, otherwise the delay (in
+	 *         seconds) the client should wait before retrying.
+	 */
+	public int tryAcquire() {
+		if (bulkheadPermits != null && !bulkheadPermits.tryAcquire())
+			return bulkheadRetryAfter;
+
+		if (concurrencyLimit != null && !concurrencyLimit.tryAcquire()) {
+			if (bulkheadPermits != null)
+				bulkheadPermits.release();
+
+			return limitRetryAfter;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Gives back the permits taken with {@link #tryAcquire()}.
+	 * 
+	 * @param latency
+	 *            the latency of the invocation (in nanoseconds), or -1 if it
+	 *            failed.
+	 */
+	public void release(long latency) {
+		if (concurrencyLimit != null)
+			concurrencyLimit.release(latency);
+
+		if (bulkheadPermits != null)
+			bulkheadPermits.release();
+	}
+
+	/**
+	 * Gets the number of invocations in progress.
+	 * 
+	 * @return the number of in-flight invocations.
+	 */
+	public int getInFlightCount() {
+		return bulkheadPermits != null ? bulkheadPermits.getInFlightCount() : concurrencyLimit
+				.getInFlightCount();
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory that creates daemon threads named with a common prefix and a
+ * sequence number, so that they can be recognized in thread dumps and don't
+ * prevent the JVM from shutting down.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class NamedThreadFactory implements ThreadFactory {
+	/** The prefix of the thread names. */
+	private final String namePrefix;
+
+	/** The sequence number of the next thread. */
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param namePrefix
+	 *            the prefix of the thread names.
+	 */
+	public NamedThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Runs tasks on a fixed pool of worker threads, in order of priority. Tasks
+ * with the same priority are run in the order they were submitted. To
+ * prevent starvation, a task that has been waiting longer than the max wait
+ * time goes ahead of the tasks with higher priority.<br/>
+ * The queue is bounded: when it's full, a new task takes the place of the
+ * last task with the lowest priority, if it has a higher priority, otherwise
+ * it's rejected. The future of a discarded task fails with a
+ * {@link RejectedExecutionException}.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class PriorityScheduler {
+	/** The max number of queued tasks. */
+	private final int maxQueueSize;
+
+	/** The time (in nanoseconds) after which a task goes ahead of the others. */
+	private final long maxWaitTime;
+
+	/** The queued tasks, by priority (the highest first). */
+	private final TreeMap<Integer, ArrayDeque<ScheduledTask<?>>> queues = new TreeMap<Integer, ArrayDeque<ScheduledTask<?>>>(
+			Collections.reverseOrder());
+
+	/** Guards the queues. */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled when a task is queued. */
+	private final Condition taskQueued = lock.newCondition();
+
+	/** The number of queued tasks. */
+	private int queuedCount;
+
+	/** Set when the scheduler is shut down. */
+	private volatile boolean shutdown;
+
+	/** The worker threads. */
+	private final Thread[] workers;
+
+	/**
+	 * Class constructor. The worker threads are started right away.
+	 * 
+	 * @param workerCount
+	 *            the number of worker threads.
+	 * @param maxQueueSize
+	 *            the max number of queued tasks.
+	 * @param maxWaitTime
+	 *            the time (in milliseconds) after which a task goes ahead of
+	 *            the tasks with higher priority.
+	 */
+	public PriorityScheduler(int workerCount, int maxQueueSize, long maxWaitTime) {
+		Args.isTrue(workerCount > 0, "workerCount must be greater than 0");
+		Args.isTrue(maxQueueSize > 0, "maxQueueSize must be greater than 0");
+		Args.isTrue(maxWaitTime > 0, "maxWaitTime must be greater than 0");
+
+		this.maxQueueSize = maxQueueSize;
+		this.maxWaitTime = TimeUnit.MILLISECONDS.toNanos(maxWaitTime);
+		this.workers = new Thread[workerCount];
+
+		NamedThreadFactory threadFactory = new NamedThreadFactory("rest-scheduler");
+
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					runTasks();
+				}
+			});
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Queues a task.
+	 * 
+	 * @param callable
+	 *            the task.
+	 * @param priority
+	 *            the priority of the task. Higher values are run first.
+	 * @return the future result of the task.
+	 * @throws RejectedExecutionException
+	 *             if the queue is full of tasks with the same or higher
+	 *             priority, or the scheduler has been shut down.
+	 */
+	public <T> Future<T> submit(Callable<T> callable, int priority) {
+		ScheduledTask<T> task = new ScheduledTask<T>(callable);
+		ScheduledTask<?> discardedTask = null;
+
+		lock.lock();
+
+		try {
+			if (shutdown)
+				throw new RejectedExecutionException("The scheduler has been shut down.");
+
+			if (queuedCount >= maxQueueSize) {
+				Map.Entry<Integer, ArrayDeque<ScheduledTask<?>>> lowest = queues.lastEntry();
+
+				if (lowest.getKey() >= priority)
+					throw new RejectedExecutionException("The scheduler queue is full.");
+
+				discardedTask = lowest.getValue().pollLast();
+				queuedCount--;
+
+				if (lowest.getValue().isEmpty())
+					queues.remove(lowest.getKey());
+			}
+
+			ArrayDeque<ScheduledTask<?>> queue = queues.get(priority);
+
+			if (queue == null) {
+				queue = new ArrayDeque<ScheduledTask<?>>();
+				queues.put(priority, queue);
+			}
+
+			queue.addLast(task);
+			queuedCount++;
+			taskQueued.signal();
+		} finally {
+			lock.unlock();
+		}
+
+		if (discardedTask != null)
+			discardedTask.discard();
+
+		return task;
+	}
+
+	/**
+	 * Takes the next task to run, waiting for one if the queue is empty.
+	 * 
+	 * @return the next task.
+	 * @throws InterruptedException
+	 *             if the worker is interrupted while waiting.
+	 */
+	private ScheduledTask<?> take() throws InterruptedException {
+		lock.lockInterruptibly();
+
+		try {
+			while (queuedCount == 0)
+				taskQueued.await();
+
+			// the task waiting the longest goes ahead once it's waited too much
+			ArrayDeque<ScheduledTask<?>> selectedQueue = null;
+			long oldestQueueTime = Long.MAX_VALUE;
+
+			for (ArrayDeque<ScheduledTask<?>> queue : queues.values()) {
+				long queueTime = queue.peekFirst().queueTime;
+
+				if (selectedQueue == null || queueTime - oldestQueueTime < 0) {
+					selectedQueue = queue;
+					oldestQueueTime = queueTime;
+				}
+			}
+
+			if (System.nanoTime() - oldestQueueTime <= maxWaitTime)
+				selectedQueue = queues.firstEntry().getValue();
+
+			ScheduledTask<?> task = selectedQueue.pollFirst();
+
+			queuedCount--;
+
+			if (selectedQueue.isEmpty())
+				queues.values().remove(selectedQueue);
+
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Loop of the worker threads.
+	 */
+	private void runTasks() {
+		while (!shutdown) {
+			try {
+				take().run();
+			} catch (InterruptedException e) {
+				// workers are interrupted when the scheduler is shut down
+			}
+
+			// clears the interruption of a cancelled task
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Gets the number of queued tasks.
+	 * 
+	 * @return the number of tasks waiting for a worker.
+	 */
+	public int getQueuedCount() {
+		lock.lock();
+
+		try {
+			return queuedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the worker threads. Queued tasks are discarded and new tasks are
+	 * rejected.
+	 */
+	public void shutdown() {
+		lock.lock();
+
+		try {
+			shutdown = true;
+
+			for (ArrayDeque<ScheduledTask<?>> queue : queues.values()) {
+				for (ScheduledTask<?> task : queue)
+					task.discard();
+			}
+
+			queues.clear();
+			queuedCount = 0;
+		} finally {
+			lock.unlock();
+		}
+
+		for (Thread worker : workers)
+			worker.interrupt();
+	}
+
+	/**
+	 * Queued task, which remembers when it was queued.
+	 */
+	private static class ScheduledTask<T> extends FutureTask<T> {
+		private final long queueTime = System.nanoTime();
+
+		ScheduledTask(Callable<T> callable) {
+			super(callable);
+		}
+
+		/**
+		 * Fails the task without running it.
+		 */
+		void discard() {
+			setException(new RejectedExecutionException("The task has been discarded by the scheduler."));
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.concurrent;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Bounded buffer between a producer of elements and the response they are
+ * streamed to. It can be returned by a mapped method: the elements are then
+ * serialized and written as soon as they are published. The producer (usually
+ * running on another thread) is blocked when the buffer is full, so its pace
+ * is tied to the speed of the client and the memory used is bounded.<br/>
+ * If the client goes away, the publisher is closed and
+ * {@link #publish(Object)} returns false, telling the producer to stop.
+ * 
+ * @author andrea del bene
+ * 
+ * @param <T>
+ *            the type of the elements.
+ */
+public class StreamPublisher<T> implements Iterator<T>, Closeable {
+	/** Max number of buffered elements. */
+	private final int capacity;
+
+	/** The buffered elements. */
+	private final ArrayDeque<T> elements;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/** True once the producer has published its last element. */
+	private boolean completed;
+
+	/** True once the consumer has stopped reading. */
+	private boolean closed;
+
+	/** The error that ended the stream, if any. */
+	private Throwable failure;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param capacity
+	 *            max number of buffered elements.
+	 */
+	public StreamPublisher(int capacity) {
+		Args.isTrue(capacity > 0, "capacity must be positive");
+		this.capacity = capacity;
+		this.elements = new ArrayDeque<T>(capacity);
+	}
+
+	/**
+	 * Publishes an element, waiting while the buffer is full.
+	 * 
+	 * @param element
+	 *            the element to publish. Can't be null.
+	 * @return false if the publisher has been closed by the consumer, i.e. the
+	 *         producer should stop.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting.
+	 */
+	public boolean publish(T element) throws InterruptedException {
+		Args.notNull(element, "element");
+		lock.lockInterruptibly();
+
+		try {
+			while (elements.size() >= capacity && !closed)
+				notFull.await();
+
+			if (closed)
+				return false;
+
+			elements.add(element);
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Signals that no more elements will be published.
+	 */
+	public void complete() {
+		lock.lock();
+
+		try {
+			completed = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Ends the stream with an error. The elements already published are still
+	 * consumed, then the error is reported to the consumer.
+	 * 
+	 * @param error
+	 *            the error.
+	 */
+	public void fail(Throwable error) {
+		lock.lock();
+
+		try {
+			failure = error;
+			completed = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if the consumer has stopped reading.
+	 * 
+	 * @return true if the publisher has been closed.
+	 */
+	public boolean isClosed() {
+		lock.lock();
+
+		try {
+			return closed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for the next element or for the end of the stream.
+	 * 
+	 * @throws WicketRuntimeException
+	 *             if the stream ended with an error, or if the current thread
+	 *             is interrupted while waiting.
+	 */
+	@Override
+	public boolean hasNext() {
+		lock.lock();
+
+		try {
+			while (elements.isEmpty() && !completed)
+				notEmpty.await();
+
+			if (!elements.isEmpty())
+				return true;
+
+			if (failure != null)
+				throw new WicketRuntimeException("The stream ended with an error.", failure);
+
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WicketRuntimeException("Interrupted while waiting for the next element.", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		lock.lock();
+
+		try {
+			T element = elements.poll();
+
+			notFull.signal();
+			return element;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the consumption of the stream, discarding the buffered elements
+	 * and releasing the producer.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+
+		try {
+			closed = true;
+			elements.clear();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,376 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Response that keeps in memory status, headers and content written to it. It
+ * is used to serve a {@link VirtualHttpServletRequest}, whose response is
+ * sent to the client by the application instead of the servlet container.
+ * Cookies are ignored.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class BufferedHttpServletResponse implements HttpServletResponse {
+	/** Pattern of the HTTP dates (RFC 1123). */
+	private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	/** The content written to the response. */
+	private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+	/** The names of the headers. */
+	private final List<String> headerNames = new ArrayList<String>();
+
+	/** The values of the headers. */
+	private final List<String> headerValues = new ArrayList<String>();
+
+	private int status = SC_OK;
+	private String errorMessage;
+	private String characterEncoding;
+	private Locale locale = Locale.getDefault();
+	private boolean committed;
+	private ServletOutputStream outputStream;
+	private PrintWriter writer;
+
+	/**
+	 * Gets the status code.
+	 * 
+	 * @return the status code.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the message passed to {@link #sendError(int, String)}.
+	 * 
+	 * @return the error message or null if no error has been sent.
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	/**
+	 * Gets the names of the headers in the order they were set. A name is
+	 * repeated for every value of the header.
+	 * 
+	 * @return the header names.
+	 */
+	public List<String> getHeaderNames() {
+		return Collections.unmodifiableList(headerNames);
+	}
+
+	/**
+	 * Gets the values of the headers, in the same order of
+	 * {@link #getHeaderNames()}.
+	 * 
+	 * @return the header values.
+	 */
+	public List<String> getHeaderValues() {
+		return Collections.unmodifiableList(headerValues);
+	}
+
+	/**
+	 * Gets the first value of a header.
+	 * 
+	 * @param name
+	 *            the header name.
+	 * @return the header value or null if the header is not set.
+	 */
+	public String getHeader(String name) {
+		int index = indexOfHeader(name);
+
+		return index < 0 ? null : headerValues.get(index);
+	}
+
+	/**
+	 * Gets the content written to the response.
+	 * 
+	 * @return the content bytes.
+	 */
+	public byte[] getContent() {
+		if (writer != null)
+			writer.flush();
+
+		return content.toByteArray();
+	}
+
+	/**
+	 * Gets the content written to the response decoded with its character
+	 * encoding (UTF-8 if it's not specified).
+	 * 
+	 * @return the content as string.
+	 */
+	public String getContentAsString() {
+		String charset = characterEncoding != null && Charset.isSupported(characterEncoding) ? characterEncoding
+				: "UTF-8";
+
+		try {
+			return new String(getContent(), charset);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private int indexOfHeader(String name) {
+		for (int i = 0; i < headerNames.size(); i++) {
+			if (headerNames.get(i).equalsIgnoreCase(name))
+				return i;
+		}
+
+		return -1;
+	}
+
+	private void removeHeader(String name) {
+		int index;
+
+		while ((index = indexOfHeader(name)) >= 0) {
+			headerNames.remove(index);
+			headerValues.remove(index);
+		}
+	}
+
+	private static String formatDate(long date) {
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(date));
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding != null ? characterEncoding : "ISO-8859-1";
+	}
+
+	@Override
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		if (outputStream == null) {
+			outputStream = new ServletOutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					committed = true;
+					content.write(b);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					committed = true;
+					content.write(b, off, len);
+				}
+			};
+		}
+
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null)
+			writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+					getCharacterEncoding()));
+
+		return writer;
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+		this.characterEncoding = charset;
+	}
+
+	@Override
+	public void setContentLength(int length) {
+		setIntHeader("Content-Length", length);
+	}
+
+	@Override
+	public void setContentType(String type) {
+		if (type == null) {
+			removeHeader("Content-Type");
+			return;
+		}
+
+		setHeader("Content-Type", type);
+
+		int charsetIndex = type.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+
+		if (charsetIndex >= 0)
+			characterEncoding = type.substring(charsetIndex + 8).trim();
+	}
+
+	@Override
+	public void setBufferSize(int size) {
+	}
+
+	@Override
+	public int getBufferSize() {
+		return content.size();
+	}
+
+	@Override
+	public void flushBuffer() {
+		committed = true;
+	}
+
+	@Override
+	public void resetBuffer() {
+		if (committed)
+			throw new IllegalStateException("Response has already been committed.");
+
+		content.reset();
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	@Override
+	public void reset() {
+		resetBuffer();
+		headerNames.clear();
+		headerValues.clear();
+		status = SC_OK;
+		errorMessage = null;
+	}
+
+	@Override
+	public void setLocale(Locale locale) {
+		this.locale = locale;
+	}
+
+	@Override
+	public Locale getLocale() {
+		return locale;
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+		// there is no cookie store on the client side of a virtual request
+	}
+
+	@Override
+	public boolean containsHeader(String name) {
+		return indexOfHeader(name) >= 0;
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(String url) {
+		return url;
+	}
+
+	@Override
+	public void sendError(int code, String message) {
+		status = code;
+		errorMessage = message;
+		committed = true;
+	}
+
+	@Override
+	public void sendError(int code) {
+		sendError(code, null);
+	}
+
+	@Override
+	public void sendRedirect(String location) {
+		status = SC_FOUND;
+		setHeader("Location", location);
+		committed = true;
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		setHeader(name, formatDate(date));
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		addHeader(name, formatDate(date));
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		removeHeader(name);
+		addHeader(name, value);
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		headerNames.add(name);
+		headerValues.add(value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		addHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void setStatus(int code) {
+		status = code;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(int code, String message) {
+		status = code;
+	}
+}
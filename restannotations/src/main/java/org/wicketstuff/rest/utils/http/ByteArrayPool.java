@@ -0,0 +1,98 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of byte arrays of the same size, used as temporary buffers to
+ * avoid allocating a new array for every response.
+ *
+ * @author andrea del bene
+ *
+ */
+public class ByteArrayPool {
+	/** The size of the pooled arrays. */
+	private final int arraySize;
+
+	/** Max number of idle arrays kept in the pool. */
+	private final int maxIdle;
+
+	/** The idle arrays. */
+	private final ConcurrentLinkedQueue<byte[]> idleArrays = new ConcurrentLinkedQueue<byte[]>();
+
+	/** Number of idle arrays (ConcurrentLinkedQueue.size() is not constant-time). */
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param arraySize
+	 *            the size of the pooled arrays.
+	 * @param maxIdle
+	 *            max number of idle arrays kept in the pool.
+	 */
+	public ByteArrayPool(int arraySize, int maxIdle) {
+		this.arraySize = arraySize;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Takes an idle array from the pool, or creates a new one if the pool is
+	 * empty.
+	 *
+	 * @return an array of size {@link #getArraySize()}.
+	 */
+	public byte[] acquire() {
+		byte[] array = idleArrays.poll();
+
+		if (array == null)
+			return new byte[arraySize];
+
+		idleCount.decrementAndGet();
+		return array;
+	}
+
+	/**
+	 * Gives an array back to the pool. If the pool is full the array is
+	 * discarded.
+	 *
+	 * @param array
+	 *            the array obtained with {@link #acquire()}.
+	 */
+	public void release(byte[] array) {
+		if (array.length != arraySize)
+			return;
+
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			return;
+		}
+
+		idleArrays.offer(array);
+	}
+
+	/**
+	 * Gets the size of the pooled arrays.
+	 *
+	 * @return the size of the arrays
+	 */
+	public int getArraySize() {
+		return arraySize;
+	}
+}
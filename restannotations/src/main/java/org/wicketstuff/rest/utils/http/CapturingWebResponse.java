@@ -0,0 +1,70 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.wicket.request.http.WebResponse;
+
+/**
+ * Response wrapper that keeps in memory the content written to it instead of
+ * sending it to the client. Headers, status and cookies are still passed to
+ * the wrapped response.
+ *
+ * @author andrea del bene
+ *
+ */
+public class CapturingWebResponse extends DelegatingWebResponse {
+	/** The captured content. */
+	private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param originalResponse
+	 *            the response to wrap.
+	 */
+	public CapturingWebResponse(WebResponse originalResponse) {
+		super(originalResponse);
+	}
+
+	@Override
+	public void write(byte[] array, int offset, int length) {
+		content.write(array, offset, length);
+	}
+
+	@Override
+	public void setContentLength(long length) {
+		// the captured content is not sent
+	}
+
+	/**
+	 * Does nothing, the content is read with {@link #getContent()}.
+	 */
+	@Override
+	public void finish() {
+	}
+
+	/**
+	 * Gets the captured content.
+	 *
+	 * @return a copy of the content written so far.
+	 */
+	public byte[] getContent() {
+		return content.toByteArray();
+	}
+}
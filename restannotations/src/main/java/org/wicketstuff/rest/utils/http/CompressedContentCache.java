@@ -0,0 +1,130 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of compressed responses. Entries are keyed by the
+ * request URL and the ETag of the uncompressed content, so a response is
+ * found without comparing or hashing its payload. It's used to avoid
+ * compressing again the same payload when it's served repeatedly.
+ *
+ * @author andrea del bene
+ *
+ */
+public class CompressedContentCache {
+	/** Max number of cached entries. */
+	private final int maxEntries;
+
+	/** Max size (in bytes) of the uncompressed content that can be cached. */
+	private final int maxContentSize;
+
+	/** The cached entries, in access order. */
+	private final LinkedHashMap<String, CompressedContent> entries;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param maxEntries
+	 *            max number of cached entries.
+	 * @param maxContentSize
+	 *            max size (in bytes) of the uncompressed content that can be
+	 *            cached.
+	 */
+	public CompressedContentCache(final int maxEntries, int maxContentSize) {
+		this.maxEntries = maxEntries;
+		this.maxContentSize = maxContentSize;
+		this.entries = new LinkedHashMap<String, CompressedContent>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompressedContent> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the compressed version of a content.
+	 *
+	 * @param encoding
+	 *            the content encoding (gzip or deflate).
+	 * @param key
+	 *            the key of the content, made of the request URL and the ETag
+	 *            of the uncompressed content.
+	 * @param length
+	 *            the size of the uncompressed content. An entry with a
+	 *            different size is not returned.
+	 * @return the compressed content or null if it's not cached.
+	 */
+	public byte[] get(String encoding, String key, int length) {
+		CompressedContent content;
+
+		synchronized (entries) {
+			content = entries.get(encoding + '\n' + key);
+		}
+
+		return content != null && content.length == length ? content.compressed : null;
+	}
+
+	/**
+	 * Stores the compressed version of a content.
+	 *
+	 * @param encoding
+	 *            the content encoding (gzip or deflate).
+	 * @param key
+	 *            the key of the content, made of the request URL and the ETag
+	 *            of the uncompressed content.
+	 * @param length
+	 *            the size of the uncompressed content.
+	 * @param compressed
+	 *            the compressed content.
+	 */
+	public void put(String encoding, String key, int length, byte[] compressed) {
+		if (length > maxContentSize)
+			return;
+
+		CompressedContent content = new CompressedContent(length, compressed);
+
+		synchronized (entries) {
+			entries.put(encoding + '\n' + key, content);
+		}
+	}
+
+	/**
+	 * Gets the max size (in bytes) of the uncompressed content that can be
+	 * cached.
+	 *
+	 * @return the max content size.
+	 */
+	public int getMaxContentSize() {
+		return maxContentSize;
+	}
+
+	/**
+	 * A compressed content with the size it had before compression.
+	 */
+	private static class CompressedContent {
+		private final int length;
+		private final byte[] compressed;
+
+		CompressedContent(int length, byte[] compressed) {
+			this.length = length;
+			this.compressed = compressed;
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.wicket.request.http.WebResponse;
+
+/**
+ * Response wrapper that compresses the content written to it using gzip or
+ * deflate encoding. Content is kept in memory until it reaches the
+ * compression threshold: smaller contents are written uncompressed, while
+ * bigger ones are compressed in a streaming fashion. Method {@link #finish()}
+ * must be called once the whole content has been written, and
+ * {@link #release()} once the response is no longer used.
+ *
+ * @author andrea del bene
+ *
+ */
+public class CompressingWebResponse extends DelegatingWebResponse {
+	/** Value of header 'Content-Encoding' for gzip. */
+	public static final String GZIP = "gzip";
+
+	/** Value of header 'Content-Encoding' for deflate. */
+	public static final String DEFLATE = "deflate";
+
+	/** Pool of deflaters used for gzip encoding (raw deflate data). */
+	private static final DeflaterPool GZIP_DEFLATERS = new DeflaterPool(
+			Deflater.DEFAULT_COMPRESSION, true, 32);
+
+	/** Pool of deflaters used for deflate encoding (zlib format). */
+	private static final DeflaterPool ZLIB_DEFLATERS = new DeflaterPool(
+			Deflater.DEFAULT_COMPRESSION, false, 32);
+
+	/** The header of a gzip stream with no optional fields. */
+	private static final byte[] GZIP_HEADER = new byte[] { (byte) 0x1f, (byte) 0x8b,
+			Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+	/** The content encoding (gzip or deflate). */
+	private final String encoding;
+
+	/** Contents smaller than this size (in bytes) are not compressed. */
+	private final int threshold;
+
+	/** Optional cache of compressed contents. */
+	private final CompressedContentCache cache;
+
+	/** The key of the content in the cache. */
+	private final String cacheKey;
+
+	/** The content kept in memory before compression starts. */
+	private final ContentBuffer buffer = new ContentBuffer();
+
+	/** The ETag of the uncompressed content, null if not known. */
+	private String entityTag;
+
+	/** The deflater in use, null until compression starts. */
+	private Deflater deflater;
+
+	/** Output buffer of the deflater. */
+	private byte[] deflaterOutput;
+
+	/** Checksum of the uncompressed content (for gzip). */
+	private CRC32 checksum;
+
+	/** Size of the uncompressed content written so far. */
+	private long contentSize;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param originalResponse
+	 *            the response to wrap.
+	 * @param encoding
+	 *            the content encoding, {@link #GZIP} or {@link #DEFLATE}.
+	 * @param threshold
+	 *            contents smaller than this size (in bytes) are not
+	 *            compressed.
+	 * @param cache
+	 *            optional cache of compressed contents. Can be null.
+	 * @param cacheKey
+	 *            the key of the content in the cache, made of the request URL
+	 *            and the ETag of the content. If it's null the cache is not
+	 *            used.
+	 */
+	public CompressingWebResponse(WebResponse originalResponse, String encoding, int threshold,
+			CompressedContentCache cache, String cacheKey) {
+		super(originalResponse);
+
+		if (!GZIP.equals(encoding) && !DEFLATE.equals(encoding))
+			throw new IllegalArgumentException("Unsupported content encoding: " + encoding);
+
+		this.encoding = encoding;
+		this.threshold = threshold;
+		this.cache = cacheKey != null ? cache : null;
+		this.cacheKey = cacheKey;
+	}
+
+	@Override
+	public void write(byte[] array, int offset, int length) {
+		contentSize += length;
+
+		if (deflater != null) {
+			deflate(array, offset, length);
+			return;
+		}
+
+		buffer.write(array, offset, length);
+
+		// contents that might be cached are kept in memory as long as possible
+		int bufferLimit = cache != null ? Math.max(threshold, cache.getMaxContentSize())
+				: threshold;
+
+		if (buffer.size() > bufferLimit) {
+			startCompression(null);
+			deflate(buffer.getBytes(), 0, buffer.size());
+			buffer.reset();
+		}
+	}
+
+	/**
+	 * Writes the content still in memory and completes the compressed stream.
+	 */
+	@Override
+	public void finish() {
+		if (deflater != null) {
+			finishCompression();
+			return;
+		}
+
+		int size = buffer.size();
+
+		if (size < threshold) {
+			if (size > 0)
+				getOriginalResponse().write(buffer.getBytes(), 0, size);
+			return;
+		}
+
+		byte[] compressed = cache != null ? cache.get(encoding, cacheKey, size) : null;
+
+		if (compressed == null) {
+			ContentBuffer compressedBuffer = new ContentBuffer();
+
+			startCompression(compressedBuffer);
+			deflate(buffer.getBytes(), 0, size, compressedBuffer);
+			finishCompression(compressedBuffer);
+			compressed = compressedBuffer.toByteArray();
+
+			if (cache != null)
+				cache.put(encoding, cacheKey, size, compressed);
+		} else {
+			setContentEncodingHeaders();
+		}
+
+		getOriginalResponse().write(compressed);
+	}
+
+	/**
+	 * Gives the deflater back to its pool if compression has been started
+	 * but not completed, for example because writing the content failed. It
+	 * must be called once the response is no longer used and can be called
+	 * more than once.
+	 */
+	public void release() {
+		if (deflater == null)
+			return;
+
+		(checksum != null ? GZIP_DEFLATERS : ZLIB_DEFLATERS).release(deflater);
+		deflater = null;
+	}
+
+	/**
+	 * Sets the ETag of the uncompressed content. If the content is compressed,
+	 * the ETag header is replaced with one specific for the content encoding.
+	 *
+	 * @param entityTag
+	 *            the ETag of the uncompressed content.
+	 */
+	public void setEntityTag(String entityTag) {
+		this.entityTag = entityTag;
+	}
+
+	/**
+	 * Sets the headers of a compressed response.
+	 */
+	private void setContentEncodingHeaders() {
+		getOriginalResponse().setHeader("Content-Encoding", encoding);
+
+		if (entityTag != null)
+			getOriginalResponse().setHeader("ETag", HttpUtils.toEncodedEntityTag(entityTag, encoding));
+	}
+
+	/**
+	 * Acquires a deflater and writes the header of the compressed stream (if
+	 * any) to the target buffer or, if it's null, to the original response.
+	 */
+	private void startCompression(ContentBuffer target) {
+		setContentEncodingHeaders();
+
+		if (GZIP.equals(encoding)) {
+			deflater = GZIP_DEFLATERS.acquire();
+			checksum = new CRC32();
+		} else {
+			deflater = ZLIB_DEFLATERS.acquire();
+		}
+
+		deflaterOutput = new byte[8192];
+
+		if (checksum != null)
+			writeOutput(GZIP_HEADER, GZIP_HEADER.length, target);
+	}
+
+	/**
+	 * Compresses the given bytes and writes them to the original response.
+	 */
+	private void deflate(byte[] array, int offset, int length) {
+		deflate(array, offset, length, null);
+	}
+
+	/**
+	 * Compresses the given bytes and writes them to the target buffer or, if
+	 * it's null, to the original response.
+	 */
+	private void deflate(byte[] array, int offset, int length, ContentBuffer target) {
+		if (checksum != null)
+			checksum.update(array, offset, length);
+
+		deflater.setInput(array, offset, length);
+
+		while (!deflater.needsInput())
+			writeOutput(deflaterOutput, deflater.deflate(deflaterOutput), target);
+	}
+
+	/**
+	 * Completes the compressed stream writing it to the original response.
+	 */
+	private void finishCompression() {
+		finishCompression(null);
+	}
+
+	/**
+	 * Completes the compressed stream writing it to the target buffer or, if
+	 * it's null, to the original response. The deflater is then given back to
+	 * its pool.
+	 */
+	private void finishCompression(ContentBuffer target) {
+		try {
+			deflater.finish();
+
+			while (!deflater.finished())
+				writeOutput(deflaterOutput, deflater.deflate(deflaterOutput), target);
+
+			if (checksum != null) {
+				byte[] trailer = new byte[8];
+
+				writeIntLE(trailer, 0, checksum.getValue());
+				writeIntLE(trailer, 4, contentSize);
+				writeOutput(trailer, trailer.length, target);
+			}
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Writes the lower 32 bits of a value in little-endian order.
+	 */
+	private static void writeIntLE(byte[] target, int offset, long value) {
+		for (int i = 0; i < 4; i++)
+			target[offset + i] = (byte) (value >> (8 * i));
+	}
+
+	/**
+	 * Writes compressed data to the target buffer or, if it's null, to the
+	 * original response.
+	 */
+	private void writeOutput(byte[] array, int length, ContentBuffer target) {
+		if (length == 0)
+			return;
+
+		if (target != null)
+			target.write(array, 0, length);
+		else
+			getOriginalResponse().write(array, 0, length);
+	}
+
+	@Override
+	public void setContentLength(long length) {
+		// the length of the content is changed by the compression
+	}
+
+	/**
+	 * ByteArrayOutputStream that gives access to its internal array.
+	 */
+	private static class ContentBuffer extends ByteArrayOutputStream {
+		byte[] getBytes() {
+			return buf;
+		}
+	}
+}
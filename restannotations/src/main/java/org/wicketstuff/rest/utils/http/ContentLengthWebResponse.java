@@ -0,0 +1,110 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import org.apache.wicket.request.http.WebResponse;
+
+/**
+ * Response wrapper that collects small contents in a pooled buffer, so that
+ * they can be sent with an exact 'Content-Length' header instead of using
+ * chunked transfer encoding. As soon as the content exceeds the buffer size,
+ * it's streamed to the original response. Method {@link #finish()} must be
+ * called once the whole content has been written.
+ *
+ * @author andrea del bene
+ *
+ */
+public class ContentLengthWebResponse extends DelegatingWebResponse {
+	/** The pool the buffer comes from. */
+	private final ByteArrayPool bufferPool;
+
+	/** The buffer, null once the content is streamed or finished. */
+	private byte[] buffer;
+
+	/** The number of bytes in the buffer. */
+	private int count;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param originalResponse
+	 *            the response to wrap.
+	 * @param bufferPool
+	 *            the pool of buffers. Contents bigger than the size of its
+	 *            arrays are streamed.
+	 */
+	public ContentLengthWebResponse(WebResponse originalResponse, ByteArrayPool bufferPool) {
+		super(originalResponse);
+		this.bufferPool = bufferPool;
+		this.buffer = bufferPool.acquire();
+	}
+
+	@Override
+	public void write(byte[] array, int offset, int length) {
+		if (buffer != null && count + length <= buffer.length) {
+			System.arraycopy(array, offset, buffer, count, length);
+			count += length;
+			return;
+		}
+
+		// the content is too big: write what we have and stream the rest
+		if (buffer != null) {
+			getOriginalResponse().write(buffer, 0, count);
+			release();
+		}
+
+		getOriginalResponse().write(array, offset, length);
+	}
+
+	@Override
+	public void setContentLength(long length) {
+		// the length is set by the wrapper when the content is buffered
+		if (buffer == null)
+			super.setContentLength(length);
+	}
+
+	/**
+	 * Sends the buffered content with its length. Nothing is done if the
+	 * content has already been streamed.
+	 */
+	@Override
+	public void finish() {
+		if (buffer == null)
+			return;
+
+		try {
+			getOriginalResponse().setContentLength(count);
+
+			if (count > 0)
+				getOriginalResponse().write(buffer, 0, count);
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Gives the buffer back to its pool. Can be called more than once.
+	 */
+	public void release() {
+		if (buffer == null)
+			return;
+
+		bufferPool.release(buffer);
+		buffer = null;
+		count = 0;
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Request wrapper that decompresses a request body sent with header
+ * 'Content-Encoding' set to gzip or deflate. The body is decompressed while
+ * it's read and an {@link RequestBodyTooLargeException} is thrown as soon as
+ * the decompressed content exceeds a given size. A body without encoding is
+ * only counted, so that the size limit applies also to chunked requests.
+ * Method {@link #release()} must be called once the body has been read.
+ *
+ * @author andrea del bene
+ *
+ */
+public class DecompressingHttpServletRequest extends HttpServletRequestWrapper {
+	/** The content encoding of the body (gzip or deflate), null if it's not encoded. */
+	private final String encoding;
+
+	/** The max size (in bytes) of the decompressed body. */
+	private final long maxBodySize;
+
+	/** The decompressed body, created on first access. */
+	private ServletInputStream inputStream;
+
+	/** The reader on the decompressed body, created on first access. */
+	private BufferedReader reader;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param request
+	 *            the request to wrap.
+	 * @param encoding
+	 *            the content encoding, {@link CompressingWebResponse#GZIP},
+	 *            {@link CompressingWebResponse#DEFLATE} or null if the body is
+	 *            not encoded.
+	 * @param maxBodySize
+	 *            the max size (in bytes) of the decompressed body.
+	 */
+	public DecompressingHttpServletRequest(HttpServletRequest request, String encoding,
+			long maxBodySize) {
+		super(request);
+		this.encoding = encoding;
+		this.maxBodySize = maxBodySize;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		if (inputStream == null) {
+			InputStream body = new FilterInputStream(super.getInputStream()) {
+				@Override
+				public void close() throws IOException {
+					// the body is owned by the container
+				}
+			};
+			InputStream decompressed = body;
+
+			if (CompressingWebResponse.GZIP.equals(encoding))
+				decompressed = new GZIPInputStream(body);
+			else if (encoding != null)
+				decompressed = newInflaterStream(body);
+
+			inputStream = new LimitedServletInputStream(decompressed, maxBodySize);
+		}
+
+		return inputStream;
+	}
+
+	/**
+	 * Creates the stream to read a deflate-encoded body. Some clients send raw
+	 * deflate data instead of the zlib format required by the specification,
+	 * so the first bytes are checked to tell the two formats apart.
+	 *
+	 * @param body
+	 *            the compressed body.
+	 * @return the decompressed body.
+	 */
+	private InputStream newInflaterStream(InputStream body) throws IOException {
+		PushbackInputStream pushbackStream = new PushbackInputStream(body, 2);
+		byte[] header = new byte[2];
+		int read = 0;
+		int count;
+
+		while (read < 2 && (count = pushbackStream.read(header, read, 2 - read)) > 0)
+			read += count;
+
+		pushbackStream.unread(header, 0, read);
+
+		int cmf = header[0] & 0xff;
+		int flg = header[1] & 0xff;
+		boolean zlibFormat = read == 2 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+
+		return new InflaterInputStream(pushbackStream, new Inflater(!zlibFormat)) {
+			@Override
+			public void close() throws IOException {
+				super.close();
+				// a custom inflater is not released by InflaterInputStream
+				inf.end();
+			}
+		};
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		if (reader == null) {
+			String charset = getCharacterEncoding();
+
+			reader = new BufferedReader(new InputStreamReader(getInputStream(),
+					charset != null ? charset : "ISO-8859-1"));
+		}
+
+		return reader;
+	}
+
+	/**
+	 * Releases the inflater used to decompress the body, without waiting for
+	 * the garbage collector to free its native memory. The stream of the
+	 * wrapped request is left open. It can be called more than once.
+	 */
+	public void release() {
+		if (inputStream == null)
+			return;
+
+		try {
+			inputStream.close();
+		} catch (IOException e) {
+			// nothing is written and the container stream is not closed
+		}
+	}
+
+	@Override
+	public int getContentLength() {
+		// the decompressed length is not known in advance
+		return encoding == null ? super.getContentLength() : -1;
+	}
+
+	/**
+	 * Input stream that fails if more than a given number of bytes are read.
+	 */
+	private static class LimitedServletInputStream extends ServletInputStream {
+		private final InputStream inputStream;
+		private final long maxSize;
+		private long readCount;
+
+		LimitedServletInputStream(InputStream inputStream, long maxSize) {
+			this.inputStream = inputStream;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = inputStream.read();
+
+			if (value >= 0)
+				countRead(1);
+
+			return value;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = inputStream.read(b, off, len);
+
+			if (count > 0)
+				countRead(count);
+
+			return count;
+		}
+
+		private void countRead(int count) throws RequestBodyTooLargeException {
+			readCount += count;
+
+			if (readCount > maxSize)
+				throw new RequestBodyTooLargeException(maxSize);
+		}
+
+		@Override
+		public void close() throws IOException {
+			inputStream.close();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of {@link Deflater} instances. Creating a Deflater allocates
+ * native memory, so instances are reset and reused instead of being created
+ * for every compressed response.
+ *
+ * @author andrea del bene
+ *
+ */
+public class DeflaterPool {
+	/** The compression level of the pooled deflaters. */
+	private final int level;
+
+	/** If true, deflaters produce raw data without zlib header (used by gzip). */
+	private final boolean nowrap;
+
+	/** Max number of idle deflaters kept in the pool. */
+	private final int maxIdle;
+
+	/** The idle deflaters. */
+	private final ConcurrentLinkedQueue<Deflater> idleDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+	/** Number of idle deflaters (ConcurrentLinkedQueue.size() is not constant-time). */
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param level
+	 *            the compression level (see {@link Deflater#setLevel(int)}).
+	 * @param nowrap
+	 *            if true, no zlib header and checksum are produced.
+	 * @param maxIdle
+	 *            max number of idle deflaters kept in the pool.
+	 */
+	public DeflaterPool(int level, boolean nowrap, int maxIdle) {
+		this.level = level;
+		this.nowrap = nowrap;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Takes an idle deflater from the pool, or creates a new one if the pool
+	 * is empty.
+	 *
+	 * @return a deflater ready to be used.
+	 */
+	public Deflater acquire() {
+		Deflater deflater = idleDeflaters.poll();
+
+		if (deflater == null)
+			return new Deflater(level, nowrap);
+
+		idleCount.decrementAndGet();
+		return deflater;
+	}
+
+	/**
+	 * Gives a deflater back to the pool. If the pool is full the deflater is
+	 * released.
+	 *
+	 * @param deflater
+	 *            the deflater obtained with {@link #acquire()}.
+	 */
+	public void release(Deflater deflater) {
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			deflater.end();
+			return;
+		}
+
+		deflater.reset();
+		idleDeflaters.offer(deflater);
+	}
+}
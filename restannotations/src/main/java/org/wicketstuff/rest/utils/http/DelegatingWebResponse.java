@@ -0,0 +1,219 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.util.time.Time;
+
+/**
+ * Base class for response wrappers that process the content written to a
+ * {@link WebResponse}. Headers, status and cookies are passed to the wrapped
+ * response, while textual content is converted to bytes using the character
+ * encoding of the container response. Long textual contents are converted and
+ * written in chunks, so that they are never copied at once.
+ *
+ * @author andrea del bene
+ *
+ */
+public abstract class DelegatingWebResponse extends WebResponse {
+	/** Size (in chars and bytes) of the chunks used to encode long contents. */
+	private static final int WRITE_CHUNK_SIZE = 8192;
+
+	/** The wrapped response. */
+	private final WebResponse originalResponse;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param originalResponse
+	 *            the response to wrap.
+	 */
+	public DelegatingWebResponse(WebResponse originalResponse) {
+		this.originalResponse = originalResponse;
+	}
+
+	@Override
+	public void write(CharSequence sequence) {
+		if (sequence.length() <= WRITE_CHUNK_SIZE) {
+			try {
+				write(sequence.toString().getBytes(getCharacterEncoding()));
+			} catch (UnsupportedEncodingException e) {
+				throw new WicketRuntimeException(e);
+			}
+
+			return;
+		}
+
+		// long contents are encoded in chunks instead of being copied at once
+		CharsetEncoder encoder = newEncoder();
+		CharBuffer input = CharBuffer.wrap(sequence);
+		ByteBuffer output = ByteBuffer.allocate(WRITE_CHUNK_SIZE);
+
+		while (encoder.encode(input, output, true).isOverflow())
+			writeChunk(output);
+
+		while (encoder.flush(output).isOverflow())
+			writeChunk(output);
+
+		writeChunk(output);
+	}
+
+	/**
+	 * Creates an encoder for the character encoding used to write textual
+	 * content. Malformed and unmappable characters are replaced, as done by
+	 * {@link String#getBytes(String)}.
+	 */
+	private CharsetEncoder newEncoder() {
+		try {
+			return Charset.forName(getCharacterEncoding()).newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		} catch (IllegalArgumentException e) {
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes the encoded bytes kept by the given buffer and clears it.
+	 */
+	private void writeChunk(ByteBuffer output) {
+		if (output.position() > 0)
+			write(output.array(), 0, output.position());
+
+		output.clear();
+	}
+
+	/**
+	 * Gets the character encoding used to write textual content.
+	 *
+	 * @return the character encoding of the container response.
+	 */
+	protected String getCharacterEncoding() {
+		Object containerResponse = originalResponse.getContainerResponse();
+
+		if (containerResponse instanceof ServletResponse)
+			return ((ServletResponse) containerResponse).getCharacterEncoding();
+
+		return "UTF-8";
+	}
+
+	@Override
+	public void write(byte[] array) {
+		write(array, 0, array.length);
+	}
+
+	/**
+	 * Writes the content still kept by the wrapper to the original response.
+	 * Must be called once the whole content has been written.
+	 */
+	public abstract void finish();
+
+	@Override
+	public void addCookie(Cookie cookie) {
+		originalResponse.addCookie(cookie);
+	}
+
+	@Override
+	public void clearCookie(Cookie cookie) {
+		originalResponse.clearCookie(cookie);
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		originalResponse.setHeader(name, value);
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		originalResponse.addHeader(name, value);
+	}
+
+	@Override
+	public void setDateHeader(String name, Time date) {
+		originalResponse.setDateHeader(name, date);
+	}
+
+	@Override
+	public void setContentLength(long length) {
+		originalResponse.setContentLength(length);
+	}
+
+	@Override
+	public void setContentType(String mimeType) {
+		originalResponse.setContentType(mimeType);
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		originalResponse.setStatus(sc);
+	}
+
+	@Override
+	public void sendError(int sc, String msg) {
+		originalResponse.sendError(sc, msg);
+	}
+
+	@Override
+	public String encodeRedirectURL(CharSequence url) {
+		return originalResponse.encodeRedirectURL(url);
+	}
+
+	@Override
+	public void sendRedirect(String url) {
+		originalResponse.sendRedirect(url);
+	}
+
+	@Override
+	public boolean isRedirect() {
+		return originalResponse.isRedirect();
+	}
+
+	@Override
+	public void flush() {
+		originalResponse.flush();
+	}
+
+	@Override
+	public String encodeURL(CharSequence url) {
+		return originalResponse.encodeURL(url);
+	}
+
+	@Override
+	public Object getContainerResponse() {
+		return originalResponse.getContainerResponse();
+	}
+
+	/**
+	 * Gets the wrapped response.
+	 *
+	 * @return the wrapped response.
+	 */
+	public WebResponse getOriginalResponse() {
+		return originalResponse;
+	}
+}
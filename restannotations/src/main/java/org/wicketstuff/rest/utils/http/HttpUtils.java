@@ -16,11 +16,17 @@
  */
 package org.wicketstuff.rest.utils.http;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 
+import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.request.http.WebRequest;
 
 /**
@@ -30,6 +36,12 @@ import org.apache.wicket.request.http.WebRequest;
  *
  */
 public class HttpUtils {
+	/** Size (in chars) of the chunks used to read a request body. */
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	/** Max initial capacity (in chars) of the buffer used to read a request body. */
+	private static final int MAX_INITIAL_BODY_CAPACITY = 1024 * 1024;
+
 	/**
 	 * Read the string content of the current request.
 	 * 
@@ -40,17 +52,258 @@ public class HttpUtils {
 	 * @throws IOException
 	 */
 	public static String readStringFromRequest(WebRequest request) throws IOException{
+		return readStringFromRequest(request, null);
+	}
+	
+	/**
+	 * Read the string content of the current request. If the request doesn't
+	 * specify its character encoding, the given default charset is used to
+	 * decode the body. The body is read in chunks into a buffer sized with the
+	 * declared content length, if any.
+	 * 
+	 * @param request
+	 * 			the current request
+	 * @param defaultCharset
+	 * 			the charset to use if the request doesn't specify one. Can be null.
+	 * @return
+	 * 			the string inside body request.
+	 * @throws IOException
+	 */
+	public static String readStringFromRequest(WebRequest request, String defaultCharset) throws IOException{
 		HttpServletRequest httpRequest = (HttpServletRequest) request.getContainerRequest();
-		BufferedReader bufReader = httpRequest.getReader();
-		StringBuilder builder = new StringBuilder();
-		String stringLine;
+		
+		if (defaultCharset != null && httpRequest.getCharacterEncoding() == null)
+			httpRequest.setCharacterEncoding(defaultCharset);
+		
+		Reader reader = httpRequest.getReader();
+		int contentLength = httpRequest.getContentLength();
+		// the length in bytes is an upper bound of the length in chars
+		StringBuilder builder = new StringBuilder(contentLength > 0 ? Math.min(contentLength,
+				MAX_INITIAL_BODY_CAPACITY) : 256);
+		char[] buffer = new char[READ_BUFFER_SIZE];
+		int count;
 
-		while ((stringLine = bufReader.readLine()) != null)
-			builder.append(stringLine);
+		while ((count = reader.read(buffer)) >= 0)
+			builder.append(buffer, 0, count);
 		
 		return builder.toString();
 	}
 	
+	/**
+	 * Utility method to read the 'Content-Type' header of the request.
+	 * 
+	 * @param request
+	 *            the current request object
+	 * @return the value of header 'Content-Type', or null if it's missing.
+	 */
+	public static String getContentType(WebRequest request) {
+		return request.getHeader("Content-Type");
+	}
+	
+	/**
+	 * Utility method to read the 'Content-Encoding' header of the request.
+	 * 
+	 * @param request
+	 *            the current request object
+	 * @return the lower-case content encoding, or null if the body is not
+	 *         encoded (i.e. the header is missing or its value is 'identity').
+	 *         Alias 'x-gzip' is returned as {@link CompressingWebResponse#GZIP}.
+	 */
+	public static String getContentEncoding(WebRequest request) {
+		String encoding = request.getHeader("Content-Encoding");
+
+		if (encoding == null)
+			return null;
+
+		encoding = encoding.trim().toLowerCase();
+
+		if (encoding.length() == 0 || encoding.equals("identity"))
+			return null;
+
+		return encoding.equals("x-gzip") ? CompressingWebResponse.GZIP : encoding;
+	}
+
+	/**
+	 * Checks if a request body with the given content encoding can be decoded
+	 * (See {@link #getContentEncoding(WebRequest)}).
+	 * 
+	 * @param encoding
+	 *            the content encoding.
+	 * @return true if the encoding is null, gzip or deflate.
+	 */
+	public static boolean isContentEncodingSupported(String encoding) {
+		return encoding == null || encoding.equals(CompressingWebResponse.GZIP)
+				|| encoding.equals(CompressingWebResponse.DEFLATE);
+	}
+
+	/**
+	 * Selects the content encoding to use for the response according to the
+	 * value of header 'Accept-Encoding'. Only gzip and deflate are supported
+	 * and gzip is preferred if they have the same quality factor.
+	 * 
+	 * @param acceptEncoding
+	 *            the value of header 'Accept-Encoding', can be null.
+	 * @return {@link CompressingWebResponse#GZIP},
+	 *         {@link CompressingWebResponse#DEFLATE} or null if the response
+	 *         must not be compressed.
+	 */
+	public static String selectContentEncoding(String acceptEncoding) {
+		if (acceptEncoding == null)
+			return null;
+
+		// -1 means 'not listed'
+		float gzipQuality = -1f;
+		float deflateQuality = -1f;
+		float anyQuality = 0f;
+		String[] codings = acceptEncoding.split(",");
+
+		for (int i = 0; i < codings.length; i++) {
+			String[] parts = codings[i].split(";");
+			String coding = parts[0].trim().toLowerCase();
+			float quality = 1f;
+
+			for (int j = 1; j < parts.length; j++) {
+				String parameter = parts[j].trim();
+
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Float.parseFloat(parameter.substring(2).trim());
+					} catch (NumberFormatException e) {
+						quality = 0f;
+					}
+				}
+			}
+
+			if (coding.equals(CompressingWebResponse.GZIP) || coding.equals("x-gzip"))
+				gzipQuality = quality;
+			else if (coding.equals(CompressingWebResponse.DEFLATE))
+				deflateQuality = quality;
+			else if (coding.equals("*"))
+				anyQuality = quality;
+		}
+
+		// '*' applies to the codings not explicitly listed
+		if (gzipQuality < 0)
+			gzipQuality = anyQuality;
+
+		if (deflateQuality < 0)
+			deflateQuality = anyQuality;
+
+		if (gzipQuality > 0 && gzipQuality >= deflateQuality)
+			return CompressingWebResponse.GZIP;
+
+		if (deflateQuality > 0)
+			return CompressingWebResponse.DEFLATE;
+
+		return null;
+	}
+
+	/**
+	 * Checks if it's worth compressing a content of the given MIME type.
+	 * Textual formats are compressible, while images and binary data are
+	 * usually already compressed.
+	 * 
+	 * @param mimeType
+	 *            the MIME type of the content, optionally with parameters.
+	 * @return true if the content should be compressed, false otherwise.
+	 */
+	public static boolean isCompressible(String mimeType) {
+		if (mimeType == null)
+			return false;
+
+		int paramsIndex = mimeType.indexOf(';');
+		String type = (paramsIndex < 0 ? mimeType : mimeType.substring(0, paramsIndex)).trim()
+				.toLowerCase();
+
+		return type.startsWith("text/") || type.endsWith("/json") || type.endsWith("+json")
+				|| type.endsWith("/xml") || type.endsWith("+xml") || type.endsWith("/javascript");
+	}
+
+	/**
+	 * Builds a strong ETag (a quoted string) with the given value. Characters
+	 * not allowed in an ETag are replaced.
+	 * 
+	 * @param value
+	 *            the opaque value of the ETag, e.g. a version or a hash.
+	 * @return the ETag.
+	 */
+	public static String toEntityTag(String value) {
+		StringBuilder entityTag = new StringBuilder(value.length() + 2).append('"');
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			entityTag.append(c == '"' || c < 0x21 || c > 0x7e ? '_' : c);
+		}
+
+		return entityTag.append('"').toString();
+	}
+
+	/**
+	 * Builds a strong ETag hashing the given content.
+	 * 
+	 * @param content
+	 *            the content of the response.
+	 * @param length
+	 *            the number of valid bytes of content.
+	 * @return the ETag.
+	 */
+	public static String computeEntityTag(byte[] content, int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(content, 0, length);
+
+			return toEntityTag(new BigInteger(1, digest.digest()).toString(36));
+		} catch (NoSuchAlgorithmException e) {
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gets the ETag of a response compressed with the given content encoding.
+	 * Different encodings of the same content must have different strong
+	 * ETags, so the encoding is appended to the opaque value.
+	 * 
+	 * @param entityTag
+	 *            the ETag of the uncompressed content.
+	 * @param encoding
+	 *            the content encoding.
+	 * @return the ETag of the compressed content.
+	 */
+	public static String toEncodedEntityTag(String entityTag, String encoding) {
+		return entityTag.substring(0, entityTag.length() - 1) + "-" + encoding + '"';
+	}
+
+	/**
+	 * Checks if the value of header 'If-None-Match' matches the given ETag.
+	 * The comparison is weak (prefix 'W/' is ignored) and ETags of compressed
+	 * contents match the ETag of the uncompressed one.
+	 * 
+	 * @param ifNoneMatch
+	 *            the value of header 'If-None-Match'.
+	 * @param entityTag
+	 *            the current ETag of the resource.
+	 * @return true if the ETag matches.
+	 */
+	public static boolean matchesEntityTag(String ifNoneMatch, String entityTag) {
+		if (ifNoneMatch.trim().equals("*"))
+			return true;
+
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+
+			if (candidate.startsWith("W/"))
+				candidate = candidate.substring(2);
+
+			if (candidate.equals(entityTag)
+					|| candidate.equals(toEncodedEntityTag(entityTag, CompressingWebResponse.GZIP))
+					|| candidate.equals(toEncodedEntityTag(entityTag,
+							CompressingWebResponse.DEFLATE)))
+				return true;
+		}
+
+		return false;
+	}
+
 	/**
 	 * Utility method to extract the HTTP request method.
 	 * 
@@ -63,4 +316,26 @@ public class HttpUtils {
 		HttpServletRequest httpRequest = (HttpServletRequest) request.getContainerRequest();
 		return HttpMethod.toHttpMethod((httpRequest.getMethod()));
 	}
+
+	/**
+	 * Gets a key that identifies the user of a request: the name of the
+	 * authenticated principal if any, otherwise the id of the HTTP session.
+	 * No session is created.
+	 * 
+	 * @param request
+	 *            the current request object
+	 * @return the key of the user, null if the request has neither a
+	 *         principal nor a session.
+	 */
+	public static String getUserKey(WebRequest request) {
+		HttpServletRequest httpRequest = (HttpServletRequest) request.getContainerRequest();
+		Principal principal = httpRequest.getUserPrincipal();
+
+		if (principal != null)
+			return "principal:" + principal.getName();
+
+		HttpSession session = httpRequest.getSession(false);
+
+		return session != null ? "session:" + session.getId() : null;
+	}
 }
@@ -0,0 +1,103 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.protocol.http.servlet.ServletWebRequest;
+import org.apache.wicket.protocol.http.servlet.ServletWebResponse;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Serves {@link VirtualHttpServletRequest}s with the request cycle of a Wicket
+ * application, just like the Wicket filter does with the requests received by
+ * the servlet container. Virtual requests go through the same request mappers
+ * of the application, so REST resources handle them with the same routing,
+ * parameter binding, authorization and serialization used for HTTP requests.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class InternalRequestDispatcher {
+	/** The application that serves the requests. */
+	private final WebApplication application;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param application
+	 *            the application that serves the requests.
+	 */
+	public InternalRequestDispatcher(WebApplication application) {
+		Args.notNull(application, "application");
+		this.application = application;
+	}
+
+	/**
+	 * Serves a request on the current thread. The Wicket thread context of the
+	 * current thread (if any) is restored before returning.
+	 * 
+	 * @param request
+	 *            the request to serve.
+	 * @return the response, with status 404 if no request handler was found
+	 *         for the request.
+	 */
+	public BufferedHttpServletResponse dispatch(VirtualHttpServletRequest request) {
+		BufferedHttpServletResponse response = new BufferedHttpServletResponse();
+		ThreadContext previousContext = ThreadContext.detach();
+
+		try {
+			ThreadContext.setApplication(application);
+
+			if (request.getCharacterEncoding() == null)
+				request.setCharacterEncoding(application.getRequestCycleSettings()
+						.getResponseRequestEncoding());
+
+			WebRequest webRequest = application.newWebRequest(request, request.getFilterPath());
+			WebResponse webResponse = new ServletWebResponse((ServletWebRequest) webRequest,
+					response);
+			RequestCycle requestCycle = application.createRequestCycle(webRequest, webResponse);
+
+			if (requestCycle.processRequestAndDetach())
+				webResponse.flush();
+			else
+				response.sendError(404, "No handler found for URL '" + request.getRequestURI()
+						+ "'");
+		} catch (UnsupportedEncodingException e) {
+			throw new WicketRuntimeException(e);
+		} finally {
+			ThreadContext.restore(previousContext);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Gets the application that serves the requests.
+	 * 
+	 * @return the application.
+	 */
+	public WebApplication getApplication() {
+		return application;
+	}
+}
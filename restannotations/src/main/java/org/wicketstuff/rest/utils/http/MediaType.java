@@ -0,0 +1,259 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable representation of a media type as found in headers like
+ * 'Content-Type' (for example 'application/json; charset=UTF-8') or as
+ * media range of header 'Accept' (for example 'text/*;q=0.8'). The type part
+ * is always stored lower-case, while parameters other than 'charset' and 'q'
+ * are ignored.
+ *
+ * @author andrea del bene
+ *
+ */
+public class MediaType {
+	/** The type/subtype part of the media type (lower-case). */
+	private final String type;
+
+	/** The optional charset parameter, null if not specified. */
+	private final String charset;
+
+	/** The quality factor (parameter 'q'), 1 if not specified. */
+	private final float quality;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param type
+	 *            the type/subtype part of the media type.
+	 * @param charset
+	 *            the optional charset parameter.
+	 */
+	public MediaType(String type, String charset) {
+		this(type, charset, 1f);
+	}
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param type
+	 *            the type/subtype part of the media type.
+	 * @param charset
+	 *            the optional charset parameter.
+	 * @param quality
+	 *            the quality factor.
+	 */
+	public MediaType(String type, String charset, float quality) {
+		this.type = type.toLowerCase();
+		this.charset = charset;
+		this.quality = quality;
+	}
+
+	/**
+	 * Parses a header value like 'application/json; charset=UTF-8'.
+	 *
+	 * @param value
+	 *            the value to parse.
+	 * @return the corresponding media type, or null if the value is null,
+	 *         empty or doesn't contain a valid type/subtype pair.
+	 */
+	public static MediaType parse(String value) {
+		if (value == null)
+			return null;
+
+		String[] parts = value.split(";");
+		String type = parts[0].trim();
+		int slashIndex = type.indexOf('/');
+
+		if (slashIndex <= 0 || slashIndex == type.length() - 1)
+			return null;
+
+		String charset = null;
+		float quality = 1f;
+
+		for (int i = 1; i < parts.length; i++) {
+			String parameter = parts[i].trim();
+			int equalsIndex = parameter.indexOf('=');
+
+			if (equalsIndex < 0)
+				continue;
+
+			String name = parameter.substring(0, equalsIndex).trim();
+			String parameterValue = unquote(parameter.substring(equalsIndex + 1).trim());
+
+			if ("charset".equalsIgnoreCase(name))
+				charset = parameterValue;
+			else if ("q".equalsIgnoreCase(name))
+				quality = parseQuality(parameterValue);
+		}
+
+		return new MediaType(type, charset, quality);
+	}
+
+	/**
+	 * Parses a comma-separated list of media types, like the value of header
+	 * 'Accept'. Invalid entries are skipped.
+	 *
+	 * @param value
+	 *            the value to parse.
+	 * @return the list of media types, in the same order they have in the
+	 *         value. The list is empty if value is null.
+	 */
+	public static List<MediaType> parseList(String value) {
+		List<MediaType> mediaTypes = new ArrayList<MediaType>();
+
+		if (value == null)
+			return mediaTypes;
+
+		String[] entries = value.split(",");
+
+		for (int i = 0; i < entries.length; i++) {
+			MediaType mediaType = parse(entries[i]);
+
+			if (mediaType != null)
+				mediaTypes.add(mediaType);
+		}
+
+		return mediaTypes;
+	}
+
+	/**
+	 * Parses a quality factor. Invalid values are considered as 0 (i.e. 'not
+	 * acceptable').
+	 *
+	 * @param value
+	 *            the value of parameter 'q'.
+	 * @return the quality factor, between 0 and 1.
+	 */
+	private static float parseQuality(String value) {
+		try {
+			float quality = Float.parseFloat(value);
+
+			return quality < 0 || quality > 1 ? 0f : quality;
+		} catch (NumberFormatException e) {
+			return 0f;
+		}
+	}
+
+	/**
+	 * Removes the optional double quotes surrounding a parameter value.
+	 *
+	 * @param value
+	 *            the parameter value.
+	 * @return the unquoted value.
+	 */
+	private static String unquote(String value) {
+		if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+			return value.substring(1, value.length() - 1);
+
+		return value;
+	}
+
+	/**
+	 * Checks if the charset parameter (if any) is supported by the JVM.
+	 *
+	 * @return true if no charset has been specified or if it's supported,
+	 *         false otherwise.
+	 */
+	public boolean isCharsetSupported() {
+		if (charset == null)
+			return true;
+
+		try {
+			return Charset.isSupported(charset);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if the type/subtype part equals the given MIME type, ignoring
+	 * case.
+	 *
+	 * @param mimeType
+	 *            the MIME type to compare with.
+	 * @return true if the two types are equal.
+	 */
+	public boolean hasType(String mimeType) {
+		return type.equalsIgnoreCase(mimeType);
+	}
+
+	/**
+	 * Checks how precisely this media type (used as media range) matches the
+	 * given MIME type.
+	 *
+	 * @param mimeType
+	 *            a MIME type without wildcards (for example
+	 *            'application/json').
+	 * @return 3 if the two types are equal, 2 if this type is like 'type/*'
+	 *         and the main types are equal, 1 if this type is '*&#47;*' and 0
+	 *         if the types don't match.
+	 */
+	public int matchPrecision(String mimeType) {
+		if (type.equalsIgnoreCase(mimeType))
+			return 3;
+
+		if ("*/*".equals(type))
+			return 1;
+
+		if (type.endsWith("/*")) {
+			String mainType = type.substring(0, type.length() - 1);
+
+			if (mimeType.toLowerCase().startsWith(mainType))
+				return 2;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Gets the type/subtype part of the media type.
+	 *
+	 * @return the type/subtype part
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the charset parameter.
+	 *
+	 * @return the charset or null if not specified.
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Gets the quality factor.
+	 *
+	 * @return the quality factor, 1 if not specified.
+	 */
+	public float getQuality() {
+		return quality;
+	}
+
+	@Override
+	public String toString() {
+		return charset == null ? type : type + ";charset=" + charset;
+	}
+}
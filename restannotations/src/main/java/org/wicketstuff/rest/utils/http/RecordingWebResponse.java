@@ -0,0 +1,174 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.ByteArrayOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.util.time.Time;
+import org.wicketstuff.rest.utils.cache.RecordedResponse;
+
+/**
+ * Response wrapper that records status, headers and content written to it
+ * without passing them to the wrapped response, so that the recorded
+ * response can be stored before it's written (see
+ * {@link RecordedResponse#writeTo(WebResponse)}). Cookies are passed but not
+ * recorded, as they are usually specific to the client.
+ *
+ * @author andrea del bene
+ *
+ */
+public class RecordingWebResponse extends DelegatingWebResponse {
+	/** The recorded content. */
+	private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+	/** The names of the recorded headers. */
+	private final List<String> headerNames = new ArrayList<String>();
+
+	/** The values of the recorded headers. */
+	private final List<String> headerValues = new ArrayList<String>();
+
+	private int status = 200;
+	private String errorMessage;
+	private String redirectUrl;
+	private String contentType;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param originalResponse
+	 *            the response to wrap.
+	 */
+	public RecordingWebResponse(WebResponse originalResponse) {
+		super(originalResponse);
+	}
+
+	@Override
+	public void write(byte[] array, int offset, int length) {
+		content.write(array, offset, length);
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		removeHeader(name);
+		addRecordedHeader(name, value);
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		addRecordedHeader(name, value);
+	}
+
+	@Override
+	public void setDateHeader(String name, Time date) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+				Locale.US);
+
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		removeHeader(name);
+		addRecordedHeader(name, format.format(new Date(date.getMilliseconds())));
+	}
+
+	/**
+	 * Sets the recorded content type. It should include the charset, which
+	 * is not recorded if it's set on the container response.
+	 */
+	@Override
+	public void setContentType(String mimeType) {
+		contentType = mimeType;
+	}
+
+	@Override
+	public void setContentLength(long length) {
+		// the length is set when the recorded response is written
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		status = sc;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) {
+		status = sc;
+		errorMessage = msg != null ? msg : "";
+	}
+
+	@Override
+	public void sendRedirect(String url) {
+		status = 302;
+		redirectUrl = url;
+	}
+
+	@Override
+	public boolean isRedirect() {
+		return redirectUrl != null;
+	}
+
+	/**
+	 * Does nothing, the wrapped response is not written.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Does nothing, the wrapped response is not written.
+	 */
+	@Override
+	public void finish() {
+	}
+
+	/**
+	 * Gets the recorded HTTP status code.
+	 *
+	 * @return the status code (200 if it was not set).
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the response recorded so far.
+	 *
+	 * @return the recorded response.
+	 */
+	public RecordedResponse getRecordedResponse() {
+		return new RecordedResponse(status, errorMessage, redirectUrl, contentType, headerNames,
+				headerValues, content.toByteArray());
+	}
+
+	private void addRecordedHeader(String name, String value) {
+		headerNames.add(name);
+		headerValues.add(value);
+	}
+
+	private void removeHeader(String name) {
+		for (int i = headerNames.size() - 1; i >= 0; i--) {
+			if (headerNames.get(i).equalsIgnoreCase(name)) {
+				headerNames.remove(i);
+				headerValues.remove(i);
+			}
+		}
+	}
+}
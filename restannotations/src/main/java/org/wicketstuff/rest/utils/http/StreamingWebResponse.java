@@ -0,0 +1,71 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import org.apache.wicket.request.http.WebResponse;
+
+/**
+ * Response wrapper used to stream a sequence of elements. Content is passed to
+ * the wrapped response as bytes, so that textual and binary writes can be
+ * mixed, and each element is sent to the client as soon as it ends (see
+ * {@link #endElement()}).
+ *
+ * @author andrea del bene
+ *
+ */
+public class StreamingWebResponse extends DelegatingWebResponse {
+	/** The separator written after each element. */
+	private final byte[] separator;
+
+	/**
+	 * Class constructor.
+	 *
+	 * @param originalResponse
+	 *            the response to wrap.
+	 * @param separator
+	 *            the separator written after each element.
+	 */
+	public StreamingWebResponse(WebResponse originalResponse, byte[] separator) {
+		super(originalResponse);
+		this.separator = separator;
+	}
+
+	@Override
+	public void write(byte[] array, int offset, int length) {
+		getOriginalResponse().write(array, offset, length);
+	}
+
+	/**
+	 * Writes the element separator and flushes the wrapped response.
+	 */
+	public void endElement() {
+		write(separator);
+		flush();
+	}
+
+	@Override
+	public void setContentLength(long length) {
+		// the length of a stream is not known in advance
+	}
+
+	/**
+	 * Does nothing, the content is written as it arrives.
+	 */
+	@Override
+	public void finish() {
+	}
+}
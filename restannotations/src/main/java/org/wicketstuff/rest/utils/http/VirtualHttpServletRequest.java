@@ -0,0 +1,621 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.http;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.Principal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.wicket.util.string.Strings;
+
+/**
+ * Request that is not received from the servlet container but built by the
+ * application, for example from a frame of a WebSocket connection or from an
+ * element of a batch request. The connection data (session, context path,
+ * client and server addresses, cookies, user principal, ...) are copied from a
+ * real request when the template is created, so they remain valid after the
+ * real request has completed. Method, URL, headers and body are then set on
+ * each request obtained with {@link #newRequest(String, String)}.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class VirtualHttpServletRequest implements HttpServletRequest {
+	/** Pattern of the HTTP dates (RFC 1123). */
+	private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	private final ServletContext servletContext;
+	private final HttpSession session;
+	private final String requestedSessionId;
+	private final String contextPath;
+	private final String filterPath;
+	private final String protocol;
+	private final String scheme;
+	private final String serverName;
+	private final int serverPort;
+	private final String remoteAddr;
+	private final String remoteHost;
+	private final int remotePort;
+	private final String localName;
+	private final String localAddr;
+	private final int localPort;
+	private final boolean secure;
+	private final String authType;
+	private final Principal userPrincipal;
+	private final Cookie[] cookies;
+
+	/** The request attributes. */
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+	/** The request headers, with case-insensitive names. */
+	private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(
+			String.CASE_INSENSITIVE_ORDER);
+
+	/** The query string parameters. */
+	private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+	private String method = "GET";
+	private String path = "/";
+	private String queryString;
+	private String characterEncoding;
+	private byte[] body = new byte[0];
+	private BufferedReader reader;
+	private ServletInputStream inputStream;
+
+	/**
+	 * Creates a template that copies the connection data of a real request.
+	 * 
+	 * @param originalRequest
+	 *            the real request.
+	 * @param filterPath
+	 *            the path the Wicket filter is mapped to (without leading and
+	 *            trailing slashes, empty if the filter is mapped to '/*').
+	 */
+	public VirtualHttpServletRequest(HttpServletRequest originalRequest, String filterPath) {
+		this.session = originalRequest.getSession(false);
+		this.servletContext = session != null ? session.getServletContext() : null;
+		this.requestedSessionId = originalRequest.getRequestedSessionId();
+		this.contextPath = originalRequest.getContextPath();
+		this.filterPath = Strings.isEmpty(filterPath) ? "" : "/" + filterPath;
+		this.protocol = originalRequest.getProtocol();
+		this.scheme = originalRequest.getScheme();
+		this.serverName = originalRequest.getServerName();
+		this.serverPort = originalRequest.getServerPort();
+		this.remoteAddr = originalRequest.getRemoteAddr();
+		this.remoteHost = originalRequest.getRemoteHost();
+		this.remotePort = originalRequest.getRemotePort();
+		this.localName = originalRequest.getLocalName();
+		this.localAddr = originalRequest.getLocalAddr();
+		this.localPort = originalRequest.getLocalPort();
+		this.secure = originalRequest.isSecure();
+		this.authType = originalRequest.getAuthType();
+		this.userPrincipal = originalRequest.getUserPrincipal();
+		this.cookies = originalRequest.getCookies();
+	}
+
+	/**
+	 * Copy constructor used by {@link #newRequest(String, String)}.
+	 */
+	private VirtualHttpServletRequest(VirtualHttpServletRequest template) {
+		this.servletContext = template.servletContext;
+		this.session = template.session;
+		this.requestedSessionId = template.requestedSessionId;
+		this.contextPath = template.contextPath;
+		this.filterPath = template.filterPath;
+		this.protocol = template.protocol;
+		this.scheme = template.scheme;
+		this.serverName = template.serverName;
+		this.serverPort = template.serverPort;
+		this.remoteAddr = template.remoteAddr;
+		this.remoteHost = template.remoteHost;
+		this.remotePort = template.remotePort;
+		this.localName = template.localName;
+		this.localAddr = template.localAddr;
+		this.localPort = template.localPort;
+		this.secure = template.secure;
+		this.authType = template.authType;
+		this.userPrincipal = template.userPrincipal;
+		this.cookies = template.cookies;
+	}
+
+	/**
+	 * Creates a new request with the connection data of this one.
+	 * 
+	 * @param method
+	 *            the HTTP method.
+	 * @param url
+	 *            the URL of the request, relative to the path of the Wicket
+	 *            filter. It can contain a query string.
+	 * @return the new request.
+	 */
+	public VirtualHttpServletRequest newRequest(String method, String url) {
+		VirtualHttpServletRequest request = new VirtualHttpServletRequest(this);
+		int queryIndex = url.indexOf('?');
+
+		request.method = method.toUpperCase(Locale.ENGLISH);
+		request.path = queryIndex < 0 ? url : url.substring(0, queryIndex);
+
+		if (!request.path.startsWith("/"))
+			request.path = "/" + request.path;
+
+		if (queryIndex >= 0) {
+			request.queryString = url.substring(queryIndex + 1);
+			request.parseQueryString();
+		}
+
+		return request;
+	}
+
+	/**
+	 * Adds a value to a request header. Header 'Accept-Encoding' is ignored:
+	 * responses to virtual requests are embedded as text in another response
+	 * (a batch or a frame), so they must not be compressed.
+	 * 
+	 * @param name
+	 *            the header name.
+	 * @param value
+	 *            the header value.
+	 */
+	public void addHeader(String name, String value) {
+		if ("Accept-Encoding".equalsIgnoreCase(name))
+			return;
+
+		List<String> values = headers.get(name);
+
+		if (values == null) {
+			values = new ArrayList<String>(1);
+			headers.put(name, values);
+		}
+
+		values.add(value);
+	}
+
+	/**
+	 * Sets the request body.
+	 * 
+	 * @param body
+	 *            the body bytes.
+	 */
+	public void setBody(byte[] body) {
+		this.body = body;
+	}
+
+	/**
+	 * Gets the path the Wicket filter is mapped to.
+	 * 
+	 * @return the filter path, without leading and trailing slashes.
+	 */
+	public String getFilterPath() {
+		return filterPath.length() > 0 ? filterPath.substring(1) : "";
+	}
+
+	/**
+	 * Splits the query string into parameters.
+	 */
+	private void parseQueryString() {
+		Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+
+		for (String pair : Strings.split(queryString, '&')) {
+			if (pair.length() == 0)
+				continue;
+
+			int equalIndex = pair.indexOf('=');
+			String name = decode(equalIndex < 0 ? pair : pair.substring(0, equalIndex));
+			String value = equalIndex < 0 ? "" : decode(pair.substring(equalIndex + 1));
+			List<String> nameValues = values.get(name);
+
+			if (nameValues == null) {
+				nameValues = new ArrayList<String>(1);
+				values.put(name, nameValues);
+			}
+
+			nameValues.add(value);
+		}
+
+		for (Map.Entry<String, List<String>> entry : values.entrySet())
+			parameters.put(entry.getKey(),
+					entry.getValue().toArray(new String[entry.getValue().size()]));
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalArgumentException e) {
+			// malformed escapes are kept as they are
+			return value;
+		}
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		if (value == null)
+			attributes.remove(name);
+		else
+			attributes.put(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	@Override
+	public void setCharacterEncoding(String encoding) throws UnsupportedEncodingException {
+		if (!Charset.isSupported(encoding))
+			throw new UnsupportedEncodingException(encoding);
+
+		this.characterEncoding = encoding;
+	}
+
+	@Override
+	public int getContentLength() {
+		return body.length;
+	}
+
+	@Override
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		if (reader != null)
+			throw new IllegalStateException("getReader() has already been called.");
+
+		if (inputStream == null) {
+			final ByteArrayInputStream bodyStream = new ByteArrayInputStream(body);
+
+			inputStream = new ServletInputStream() {
+				@Override
+				public int read() throws IOException {
+					return bodyStream.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					return bodyStream.read(b, off, len);
+				}
+			};
+		}
+
+		return inputStream;
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		if (inputStream != null)
+			throw new IllegalStateException("getInputStream() has already been called.");
+
+		if (reader == null) {
+			String charset = characterEncoding != null ? characterEncoding : "ISO-8859-1";
+
+			reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body),
+					charset));
+		}
+
+		return reader;
+	}
+
+	@Override
+	public String getParameter(String name) {
+		String[] values = parameters.get(name);
+
+		return values != null ? values[0] : null;
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(parameters.keySet());
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		return parameters.get(name);
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return Collections.unmodifiableMap(parameters);
+	}
+
+	@Override
+	public String getProtocol() {
+		return protocol;
+	}
+
+	@Override
+	public String getScheme() {
+		return scheme;
+	}
+
+	@Override
+	public String getServerName() {
+		return serverName;
+	}
+
+	@Override
+	public int getServerPort() {
+		return serverPort;
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return remoteAddr;
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return remoteHost;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return remotePort;
+	}
+
+	@Override
+	public String getLocalName() {
+		return localName;
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return localAddr;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return localPort;
+	}
+
+	@Override
+	public Locale getLocale() {
+		String acceptLanguage = getHeader("Accept-Language");
+
+		if (Strings.isEmpty(acceptLanguage))
+			return Locale.getDefault();
+
+		String language = acceptLanguage.split("[,;]")[0].trim();
+		int separatorIndex = language.indexOf('-');
+
+		return separatorIndex < 0 ? new Locale(language) : new Locale(language.substring(0,
+				separatorIndex), language.substring(separatorIndex + 1));
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singletonList(getLocale()));
+	}
+
+	@Override
+	public boolean isSecure() {
+		return secure;
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return servletContext != null ? servletContext.getRequestDispatcher(path) : null;
+	}
+
+	@Override
+	@Deprecated
+	public String getRealPath(String path) {
+		return servletContext != null ? servletContext.getRealPath(path) : null;
+	}
+
+	@Override
+	public String getAuthType() {
+		return authType;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return cookies;
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		String value = getHeader(name);
+
+		if (value == null)
+			return -1;
+
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+		try {
+			return format.parse(value).getTime();
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Header '" + name + "' is not a valid date: "
+					+ value);
+		}
+	}
+
+	@Override
+	public String getHeader(String name) {
+		List<String> values = headers.get(name);
+
+		return values != null ? values.get(0) : null;
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		List<String> values = headers.get(name);
+
+		return Collections.enumeration(values != null ? values : Collections.<String> emptyList());
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(headers.keySet());
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		String value = getHeader(name);
+
+		return value != null ? Integer.parseInt(value.trim()) : -1;
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+
+	@Override
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	@Override
+	public String getQueryString() {
+		return queryString;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return userPrincipal != null ? userPrincipal.getName() : null;
+	}
+
+	/**
+	 * Container roles are not available once the real request has completed,
+	 * so this method always returns false.
+	 */
+	@Override
+	public boolean isUserInRole(String role) {
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return userPrincipal;
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		return requestedSessionId;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return contextPath + filterPath + path;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		StringBuffer url = new StringBuffer();
+
+		url.append(scheme).append("://").append(serverName);
+
+		if (serverPort > 0)
+			url.append(':').append(serverPort);
+
+		return url.append(getRequestURI());
+	}
+
+	@Override
+	public String getServletPath() {
+		return filterPath + path;
+	}
+
+	/**
+	 * Returns the session of the real request, if it had one. A new session
+	 * can't be created without the servlet container, so null is returned
+	 * even if parameter create is true.
+	 */
+	@Override
+	public HttpSession getSession(boolean create) {
+		return session;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return session;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return session != null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return session != null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.ratelimit;
+
+/**
+ * Base class for {@link IRateLimitStore} implementations. Each bucket is
+ * represented by a single value, its theoretical arrival time (the generic
+ * cell rate algorithm): the time at which the bucket would be full again if
+ * no more tokens were consumed. Consuming a token moves it forward by the
+ * refill interval, and a token is available as long as it doesn't go beyond
+ * the current time by more than the capacity of the bucket. A single value
+ * can be updated with a compare-and-set, without locking.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public abstract class AbstractRateLimitStore implements IRateLimitStore {
+	/**
+	 * Gets the current time. Times are taken from the system clock, so that
+	 * they can be compared among JVMs.
+	 * 
+	 * @return the current time (in microseconds).
+	 */
+	protected long currentTime() {
+		return System.currentTimeMillis() * 1000;
+	}
+
+	/**
+	 * Gets the time to wait before a token of a bucket is available.
+	 * 
+	 * @param arrivalTime
+	 *            the theoretical arrival time of the bucket (0 for a new
+	 *            bucket).
+	 * @param now
+	 *            the current time.
+	 * @param capacity
+	 *            the max number of tokens of the bucket.
+	 * @param refillInterval
+	 *            the time needed to get a new token.
+	 * @return the time to wait, 0 or less if a token is available.
+	 */
+	protected static long getWaitTime(long arrivalTime, long now, int capacity,
+			long refillInterval) {
+		return getNextArrivalTime(arrivalTime, now, refillInterval) - now
+				- capacity * refillInterval;
+	}
+
+	/**
+	 * Gets the theoretical arrival time of a bucket after a token has been
+	 * consumed.
+	 * 
+	 * @param arrivalTime
+	 *            the theoretical arrival time of the bucket (0 for a new
+	 *            bucket).
+	 * @param now
+	 *            the current time.
+	 * @param refillInterval
+	 *            the time needed to get a new token.
+	 * @return the new arrival time.
+	 */
+	protected static long getNextArrivalTime(long arrivalTime, long now, long refillInterval) {
+		return Math.max(arrivalTime, now) + refillInterval;
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.ratelimit;
+
+/**
+ * Storage of the token buckets used for rate limiting. A bucket holds up to
+ * a given number of tokens and gets a new one at fixed intervals; every
+ * request consumes a token and is rejected if the bucket is empty. Buckets
+ * are created full. Implementations must be thread-safe.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public interface IRateLimitStore {
+	/**
+	 * Consumes a token of a bucket.
+	 * 
+	 * @param key
+	 *            the key of the bucket.
+	 * @param capacity
+	 *            the max number of tokens of the bucket.
+	 * @param refillInterval
+	 *            the time (in microseconds) needed to get a new token.
+	 * @return 0 if a token has been consumed, otherwise the time (in
+	 *         microseconds) before a token is available.
+	 */
+	public long tryConsume(String key, int capacity, long refillInterval);
+}
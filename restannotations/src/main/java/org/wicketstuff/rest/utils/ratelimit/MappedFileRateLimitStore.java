@@ -0,0 +1,226 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.ratelimit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.wicketstuff.rest.utils.concurrent.FileRegionLocks;
+
+/**
+ * {@link IRateLimitStore} that keeps the buckets in a memory-mapped file, so
+ * that several JVMs running on the same host share the rate limits. It's
+ * meant for tests and small deployments, as a stand-in for a distributed
+ * store.<br/>
+ * The file is split into a fixed number of slots, each holding the hash of a
+ * key and the theoretical arrival time of its bucket. Slots are grouped in
+ * sets of {@value #SET_SIZE} and a key can take any slot of the set selected
+ * by its hash. A slot held by another key is taken only if its bucket is
+ * full again, i.e. it's equivalent to a missing bucket: if all the slots of
+ * the set hold buckets in use, the request is rejected until one of them is
+ * full. This way colliding keys never reset each other's buckets. Accesses to
+ * a set are synchronized among threads and, with file locks, among processes.
+ * All the JVMs sharing a file must use the same number of slots.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class MappedFileRateLimitStore extends AbstractRateLimitStore implements Closeable {
+	/** Identifies the files written by this class. */
+	private static final int MAGIC = 0x524c494d;
+
+	/** Version of the file layout. */
+	private static final int FORMAT_VERSION = 2;
+
+	/** Size of the file header: magic, format version and slot count. */
+	private static final int FILE_HEADER_SIZE = 16;
+
+	/** Size of a slot: key hash and arrival time. */
+	private static final int SLOT_SIZE = 16;
+
+	/** Number of slots a key can take. */
+	private static final int SET_SIZE = 4;
+
+	/** The number of slots. */
+	private final int slotCount;
+
+	/** The number of sets of slots. */
+	private final int setCount;
+
+	/** The mapped file. */
+	private final RandomAccessFile file;
+
+	/** The channel of the mapped file, used for file locks. */
+	private final FileChannel channel;
+
+	/** The mapped content of the file. */
+	private final MappedByteBuffer buffer;
+
+	/** Locks of the sets of slots. */
+	private final FileRegionLocks locks;
+
+	/**
+	 * Class constructor. The file is created if it doesn't exist.
+	 * 
+	 * @param path
+	 *            the path of the file.
+	 * @param slotCount
+	 *            the number of slots. It's rounded up to a multiple of
+	 *            {@value #SET_SIZE}.
+	 * @throws IOException
+	 *             if the file can't be mapped or it was created with a
+	 *             different number of slots.
+	 */
+	public MappedFileRateLimitStore(File path, int slotCount) throws IOException {
+		if (slotCount <= 0 || slotCount > Integer.MAX_VALUE - SET_SIZE)
+			throw new IllegalArgumentException("Invalid slot count.");
+
+		this.setCount = (slotCount + SET_SIZE - 1) / SET_SIZE;
+		this.slotCount = setCount * SET_SIZE;
+
+		long fileSize = FILE_HEADER_SIZE + (long) this.slotCount * SLOT_SIZE;
+
+		if (fileSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid slot count.");
+
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+
+		try {
+			this.locks = new FileRegionLocks(path, channel, "rate limit file");
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+			initHeader();
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the file header if the file is new, or checks that its layout
+	 * matches the one of this store.
+	 */
+	private void initHeader() throws IOException {
+		synchronized (locks.getFileMonitor()) {
+			FileLock fileLock = channel.lock(0, FILE_HEADER_SIZE, false);
+
+			try {
+				if (buffer.getInt(0) == 0) {
+					buffer.putInt(4, FORMAT_VERSION);
+					buffer.putInt(8, slotCount);
+					buffer.putInt(0, MAGIC);
+				} else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+						|| buffer.getInt(8) != slotCount) {
+					throw new IOException("The rate limit file has a different layout (slots: "
+							+ buffer.getInt(8) + ").");
+				}
+			} finally {
+				fileLock.release();
+			}
+		}
+	}
+
+	@Override
+	public long tryConsume(String key, int capacity, long refillInterval) {
+		long now = currentTime();
+		long keyHash = hash(key);
+		int set = (int) ((keyHash & Long.MAX_VALUE) % setCount);
+		int setPosition = FILE_HEADER_SIZE + set * SET_SIZE * SLOT_SIZE;
+
+		synchronized (locks.getMonitor(set)) {
+			FileLock fileLock = locks.lock(setPosition, SET_SIZE * SLOT_SIZE, false);
+
+			try {
+				int position = -1;
+				long arrivalTime = 0;
+				long minArrivalTime = Long.MAX_VALUE;
+
+				for (int i = 0; i < SET_SIZE; i++) {
+					int slotPosition = setPosition + i * SLOT_SIZE;
+					long slotArrivalTime = buffer.getLong(slotPosition + 8);
+
+					if (buffer.getLong(slotPosition) == keyHash) {
+						position = slotPosition;
+						arrivalTime = slotArrivalTime;
+						break;
+					}
+
+					// the slot whose bucket has been full for the longest time
+					if (slotArrivalTime < minArrivalTime) {
+						minArrivalTime = slotArrivalTime;
+
+						if (slotArrivalTime <= now)
+							position = slotPosition;
+					}
+				}
+
+				// the set is full of buckets in use: wait until one is full
+				if (position < 0)
+					return minArrivalTime - now;
+
+				long waitTime = getWaitTime(arrivalTime, now, capacity, refillInterval);
+
+				if (waitTime > 0)
+					return waitTime;
+
+				buffer.putLong(position, keyHash);
+				buffer.putLong(position + 8, getNextArrivalTime(arrivalTime, now, refillInterval));
+
+				return 0;
+			} finally {
+				locks.release(fileLock);
+			}
+		}
+	}
+
+	/**
+	 * Closes the file. The store can't be used after this call.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Computes the 64-bit FNV-1a hash of the UTF-8 encoding of a key.
+	 */
+	private static long hash(String key) {
+		byte[] bytes;
+
+		try {
+			bytes = key.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new WicketRuntimeException(e);
+		}
+
+		long hash = 0xcbf29ce484222325L;
+
+		for (byte b : bytes) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+}
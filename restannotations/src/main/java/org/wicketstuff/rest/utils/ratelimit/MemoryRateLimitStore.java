@@ -0,0 +1,181 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.ratelimit;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * {@link IRateLimitStore} that keeps the buckets in memory. Buckets are
+ * consumed with compare-and-set loops, without locking. When the number of
+ * buckets exceeds the max size, the full ones (which are equivalent to
+ * missing buckets) are removed; if they are not enough, the buckets closest
+ * to full are removed as well, giving their clients a full bucket.<br/>
+ * Since a client that creates many buckets makes the store remove the
+ * buckets of other clients, the keys must not be chosen freely by clients:
+ * with {@link org.wicketstuff.rest.annotations.RateLimited.KeyType#HEADER}
+ * the header must be set or checked by a trusted party (e.g. an API key
+ * validated by a gateway).
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class MemoryRateLimitStore extends AbstractRateLimitStore {
+	/** The max number of buckets. */
+	private final int maxEntries;
+
+	/** The theoretical arrival times of the buckets. */
+	private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+
+	/** The number of buckets (ConcurrentHashMap.size() is not constant-time). */
+	private final AtomicInteger bucketCount = new AtomicInteger();
+
+	/** Set while a thread is removing buckets. */
+	private final AtomicBoolean purging = new AtomicBoolean();
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param maxEntries
+	 *            the max number of buckets.
+	 */
+	public MemoryRateLimitStore(int maxEntries) {
+		Args.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public long tryConsume(String key, int capacity, long refillInterval) {
+		long now = currentTime();
+		AtomicLong bucket = buckets.get(key);
+
+		if (bucket == null) {
+			// a new bucket is full, its first token is consumed right away
+			bucket = new AtomicLong(getNextArrivalTime(0, now, refillInterval));
+
+			AtomicLong existingBucket = buckets.putIfAbsent(key, bucket);
+
+			if (existingBucket == null) {
+				if (bucketCount.incrementAndGet() > maxEntries)
+					purge(now);
+
+				return 0;
+			}
+
+			bucket = existingBucket;
+		}
+
+		while (true) {
+			long arrivalTime = bucket.get();
+			long waitTime = getWaitTime(arrivalTime, now, capacity, refillInterval);
+
+			if (waitTime > 0)
+				return waitTime;
+
+			if (bucket.compareAndSet(arrivalTime,
+					getNextArrivalTime(arrivalTime, now, refillInterval)))
+				return 0;
+		}
+	}
+
+	/**
+	 * Removes the full buckets and, if they are not enough, other buckets
+	 * until a quarter of the store is free. Only one thread at a time purges
+	 * the store, the others go on.
+	 * 
+	 * @param now
+	 *            the current time.
+	 */
+	private void purge(long now) {
+		if (!purging.compareAndSet(false, true))
+			return;
+
+		try {
+			removeFullBuckets(now);
+
+			if (bucketCount.get() > maxEntries)
+				removeFullestBuckets();
+		} finally {
+			purging.set(false);
+		}
+	}
+
+	/**
+	 * Removes the full buckets.
+	 * 
+	 * @param now
+	 *            the current time.
+	 */
+	private void removeFullBuckets(long now) {
+		Iterator<Map.Entry<String, AtomicLong>> iterator = buckets.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			Map.Entry<String, AtomicLong> entry = iterator.next();
+
+			if (entry.getValue().get() <= now && buckets.remove(entry.getKey(), entry.getValue()))
+				bucketCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes the buckets closest to full (i.e. with the smallest arrival
+	 * time) until a quarter of the store is free. The buckets of the clients
+	 * being limited are removed last.
+	 */
+	private void removeFullestBuckets() {
+		List<Map.Entry<String, Long>> arrivalTimes = new ArrayList<Map.Entry<String, Long>>();
+
+		for (Map.Entry<String, AtomicLong> entry : buckets.entrySet())
+			arrivalTimes.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(),
+					entry.getValue().get()));
+
+		Collections.sort(arrivalTimes, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+				return entry1.getValue().compareTo(entry2.getValue());
+			}
+		});
+
+		for (Map.Entry<String, Long> entry : arrivalTimes) {
+			if (bucketCount.get() <= maxEntries * 3 / 4)
+				break;
+
+			if (buckets.remove(entry.getKey()) != null)
+				bucketCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the number of buckets.
+	 * 
+	 * @return the number of buckets in the store.
+	 */
+	public int size() {
+		return bucketCount.get();
+	}
+}
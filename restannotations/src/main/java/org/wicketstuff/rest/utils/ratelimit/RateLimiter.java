@@ -0,0 +1,135 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.ratelimit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.util.lang.Args;
+import org.wicketstuff.rest.annotations.RateLimited;
+import org.wicketstuff.rest.utils.http.HttpUtils;
+
+/**
+ * Applies the rate limits of the methods annotated with {@link RateLimited}.
+ * Each client has its own token bucket in an {@link IRateLimitStore}, and
+ * clients are identified as configured by {@link RateLimited#keyType()}.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class RateLimiter {
+	/** The store of the token buckets. */
+	private volatile IRateLimitStore store;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param store
+	 *            the store of the token buckets.
+	 */
+	public RateLimiter(IRateLimitStore store) {
+		setStore(store);
+	}
+
+	/**
+	 * Consumes a token of the bucket of the client that sent a request.
+	 * 
+	 * @param scope
+	 *            the scope of the buckets, typically the resource and the
+	 *            route of the limited method.
+	 * @param rateLimited
+	 *            the rate limit of the method.
+	 * @param refillInterval
+	 *            the time (in microseconds) needed to refill a token.
+	 * @param request
+	 *            the current request.
+	 * @param roleCheckingStrategy
+	 *            the strategy used to check the roles of the user. Can be null
+	 *            if the key type is not {@link RateLimited.KeyType#ROLE}.
+	 * @return 0 if a token has been consumed, otherwise the time (in
+	 *         microseconds) before one is available.
+	 */
+	public long tryConsume(String scope, RateLimited rateLimited, long refillInterval,
+			WebRequest request, IRoleCheckingStrategy roleCheckingStrategy) {
+		String bucketKey = scope + '\n' + getClientKey(rateLimited, request, roleCheckingStrategy);
+		int capacity = rateLimited.burst() > 0 ? rateLimited.burst() : rateLimited.value();
+
+		return store.tryConsume(bucketKey, capacity, refillInterval);
+	}
+
+	/**
+	 * Gets the key that identifies the client of a request. Clients that
+	 * can't be identified as required by the key type are identified by their
+	 * address. With {@link RateLimited.KeyType#ROLE} the key includes the user
+	 * (See {@link HttpUtils#getUserKey(WebRequest)}), so that each user of a
+	 * role gets its own bucket.
+	 * 
+	 * @param rateLimited
+	 *            the rate limit of the method.
+	 * @param request
+	 *            the current request.
+	 * @param roleCheckingStrategy
+	 *            the strategy used to check the roles of the user. Can be null.
+	 * @return the key of the client.
+	 */
+	public static String getClientKey(RateLimited rateLimited, WebRequest request,
+			IRoleCheckingStrategy roleCheckingStrategy) {
+		switch (rateLimited.keyType()) {
+		case HEADER:
+			String headerValue = request.getHeader(rateLimited.header());
+
+			if (headerValue != null)
+				return "header:" + headerValue;
+			break;
+		case ROLE:
+			String userKey = HttpUtils.getUserKey(request);
+
+			for (String role : rateLimited.roles()) {
+				if (userKey != null && roleCheckingStrategy != null
+						&& roleCheckingStrategy.hasAnyRole(new Roles(role)))
+					return "role:" + role + '\n' + userKey;
+			}
+			break;
+		default:
+			break;
+		}
+
+		return "ip:" + ((HttpServletRequest) request.getContainerRequest()).getRemoteAddr();
+	}
+
+	/**
+	 * Gets the store of the token buckets.
+	 * 
+	 * @return the rate limit store.
+	 */
+	public IRateLimitStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Sets the store of the token buckets.
+	 * 
+	 * @param store
+	 *            the rate limit store.
+	 */
+	public void setStore(IRateLimitStore store) {
+		Args.notNull(store, "rateLimitStore");
+		this.store = store;
+	}
+}
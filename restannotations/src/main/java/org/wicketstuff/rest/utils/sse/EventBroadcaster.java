@@ -0,0 +1,217 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.sse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Publishes Server-Sent Events to all the clients subscribed to it. A mapped
+ * method returning a broadcaster keeps the connection of the client open and
+ * pushes it the events as they are broadcast. Each event is serialized only
+ * once, no matter how many subscribers it has.<br/>
+ * The last events are kept in a bounded replay buffer, so that a client that
+ * reconnects with header 'Last-Event-ID' receives the events it missed (as
+ * long as they are still in the buffer).
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class EventBroadcaster {
+	/** The last events, in a circular buffer. */
+	private final ServerSentEvent[] replayBuffer;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition newEvent = lock.newCondition();
+
+	/** The id of the last broadcast event, 0 if none. */
+	private long lastEventId;
+
+	/** Number of clients currently subscribed. */
+	private int subscriberCount;
+
+	/** True once the broadcaster has been closed. */
+	private boolean closed;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param replayBufferSize
+	 *            max number of events kept to be replayed.
+	 */
+	public EventBroadcaster(int replayBufferSize) {
+		Args.isTrue(replayBufferSize > 0, "replayBufferSize must be positive");
+		this.replayBuffer = new ServerSentEvent[replayBufferSize];
+	}
+
+	/**
+	 * Broadcasts an event with the default name ('message').
+	 * 
+	 * @param data
+	 *            the data of the event.
+	 * @return the id of the event.
+	 */
+	public long broadcast(Object data) {
+		return broadcast(null, data);
+	}
+
+	/**
+	 * Broadcasts an event.
+	 * 
+	 * @param eventName
+	 *            the name of the event, null for the default one.
+	 * @param data
+	 *            the data of the event.
+	 * @return the id of the event.
+	 */
+	public long broadcast(String eventName, Object data) {
+		Args.notNull(data, "data");
+
+		if (eventName != null && (eventName.indexOf('\n') >= 0 || eventName.indexOf('\r') >= 0))
+			throw new IllegalArgumentException("Event names can't contain line breaks.");
+
+		lock.lock();
+
+		try {
+			if (closed)
+				throw new IllegalStateException("The broadcaster has been closed.");
+
+			lastEventId++;
+			replayBuffer[(int) (lastEventId % replayBuffer.length)] = new ServerSentEvent(
+					lastEventId, eventName, data);
+			newEvent.signalAll();
+
+			return lastEventId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for the events following the given one. If some of them are no
+	 * longer in the replay buffer, they are skipped.
+	 * 
+	 * @param lastReceivedId
+	 *            the id of the last event received by the subscriber.
+	 * @param timeout
+	 *            max time to wait (in milliseconds).
+	 * @return the following events, an empty list if none has been broadcast
+	 *         within the timeout, null if the broadcaster has been closed and
+	 *         there are no more events.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting.
+	 */
+	public List<ServerSentEvent> awaitEvents(long lastReceivedId, long timeout)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		lock.lockInterruptibly();
+
+		try {
+			while (lastEventId <= lastReceivedId && !closed) {
+				long remaining = deadline - System.nanoTime();
+
+				if (remaining <= 0)
+					return Collections.emptyList();
+
+				newEvent.awaitNanos(remaining);
+			}
+
+			if (lastEventId <= lastReceivedId)
+				return null;
+
+			// ids start from 1, even if the subscriber sent a lower one
+			long firstId = Math.max(Math.max(lastReceivedId + 1, 1), lastEventId
+					- replayBuffer.length + 1);
+			List<ServerSentEvent> events = new ArrayList<ServerSentEvent>(
+					(int) (lastEventId - firstId + 1));
+
+			for (long id = firstId; id <= lastEventId; id++)
+				events.add(replayBuffer[(int) (id % replayBuffer.length)]);
+
+			return events;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Registers a new subscriber.
+	 * 
+	 * @return the id of the last broadcast event, from which a new
+	 *         subscriber starts.
+	 */
+	public long subscribe() {
+		lock.lock();
+
+		try {
+			subscriberCount++;
+			return lastEventId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Unregisters a subscriber.
+	 */
+	public void unsubscribe() {
+		lock.lock();
+
+		try {
+			subscriberCount--;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of clients currently subscribed.
+	 * 
+	 * @return the number of subscribers.
+	 */
+	public int getSubscriberCount() {
+		lock.lock();
+
+		try {
+			return subscriberCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the broadcaster: the subscribers receive the pending events and
+	 * then their connections are closed.
+	 */
+	public void close() {
+		lock.lock();
+
+		try {
+			closed = true;
+			newEvent.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.sse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * An event published by an {@link EventBroadcaster}. The event is encoded in
+ * the text/event-stream format only once for each MIME type of its data, the
+ * first time it's sent, and the encoded frame is then shared by all the
+ * subscribers that use the same MIME type.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class ServerSentEvent {
+	/** The id of the event, increasing within its broadcaster. */
+	private final long id;
+
+	/** The name of the event, null for the default one ('message'). */
+	private final String name;
+
+	/** The data of the event. */
+	private final Object data;
+
+	/** The encoded event by MIME type of the data, added when it's first sent. */
+	private final ConcurrentMap<String, byte[]> frames = new ConcurrentHashMap<String, byte[]>(
+			4, 0.75f, 1);
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param id
+	 *            the id of the event.
+	 * @param name
+	 *            the name of the event, can be null.
+	 * @param data
+	 *            the data of the event.
+	 */
+	public ServerSentEvent(long id, String name, Object data) {
+		this.id = id;
+		this.name = name;
+		this.data = data;
+	}
+
+	/**
+	 * Gets the event encoded in the text/event-stream format.
+	 * 
+	 * @param mimeType
+	 *            the MIME type of the serialized data.
+	 * @param serializer
+	 *            the serializer of the data for the MIME type, used only if
+	 *            the event has not been encoded with it yet.
+	 * @return the encoded event.
+	 */
+	public byte[] getFrame(String mimeType, IEventDataSerializer serializer) {
+		byte[] frame = frames.get(mimeType);
+
+		if (frame == null) {
+			synchronized (this) {
+				frame = frames.get(mimeType);
+
+				if (frame == null) {
+					frame = encode(serializer.serialize(data));
+					frames.put(mimeType, frame);
+				}
+			}
+		}
+
+		return frame;
+	}
+
+	/**
+	 * Encodes the event with the given serialized data. Every line of the data
+	 * becomes a 'data' field.
+	 */
+	private byte[] encode(byte[] serializedData) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(serializedData.length + 64);
+
+		writeField(output, "id", String.valueOf(id));
+
+		if (name != null)
+			writeField(output, "event", name);
+
+		writeAscii(output, "data: ");
+
+		for (int i = 0; i < serializedData.length; i++) {
+			byte value = serializedData[i];
+
+			if (value == '\r' && i + 1 < serializedData.length && serializedData[i + 1] == '\n')
+				continue;
+
+			if (value == '\n' || value == '\r')
+				writeAscii(output, "\ndata: ");
+			else
+				output.write(value);
+		}
+
+		writeAscii(output, "\n\n");
+		return output.toByteArray();
+	}
+
+	private static void writeField(ByteArrayOutputStream output, String field, String value) {
+		try {
+			byte[] line = (field + ": " + value + "\n").getBytes("UTF-8");
+
+			output.write(line, 0, line.length);
+		} catch (UnsupportedEncodingException e) {
+			throw new WicketRuntimeException(e);
+		}
+	}
+
+	private static void writeAscii(ByteArrayOutputStream output, String text) {
+		for (int i = 0; i < text.length(); i++)
+			output.write(text.charAt(i));
+	}
+
+	/**
+	 * Gets the id of the event.
+	 * 
+	 * @return the id of the event.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the name of the event.
+	 * 
+	 * @return the name of the event, null for the default one.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the data of the event.
+	 * 
+	 * @return the data of the event.
+	 */
+	public Object getData() {
+		return data;
+	}
+}
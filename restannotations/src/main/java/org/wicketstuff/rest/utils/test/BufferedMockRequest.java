@@ -17,10 +17,12 @@
 package org.wicketstuff.rest.utils.test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 
 import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpSession;
 
 import org.apache.wicket.Application;
@@ -34,6 +36,7 @@ import org.apache.wicket.protocol.http.mock.MockHttpServletRequest;
  */
 public class BufferedMockRequest extends MockHttpServletRequest {
 	BufferedReader reader;
+	byte[] body;
 	
 	public BufferedMockRequest(Application application, HttpSession session, ServletContext context, String httpMethod) {
 		super(application, session, context);
@@ -48,6 +51,26 @@ public class BufferedMockRequest extends MockHttpServletRequest {
 		return super.getReader();
 	}
 
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		if(body == null)
+			return super.getInputStream();
+		
+		final ByteArrayInputStream inputStream = new ByteArrayInputStream(body);
+		
+		return new ServletInputStream() {
+			@Override
+			public int read() throws IOException {
+				return inputStream.read();
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return inputStream.read(b, off, len);
+			}
+		};
+	}
+
 	public void setReader(BufferedReader reader) {
 		this.reader = reader;
 	}
@@ -55,4 +78,8 @@ public class BufferedMockRequest extends MockHttpServletRequest {
 	public void setTextAsRequestBody(String requestBody) {
 		this.reader = new BufferedReader(new StringReader(requestBody));
 	}
+	
+	public void setBinaryRequestBody(byte[] requestBody) {
+		this.body = requestBody;
+	}
 }
@@ -0,0 +1,41 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.websocket;
+
+import java.io.IOException;
+
+/**
+ * Sends text messages to the client of a multiplexed connection. It adapts
+ * {@link MultiplexedConnection} to a specific WebSocket implementation.
+ * Implementations must allow concurrent invocations, as responses are sent
+ * by the threads that served their requests.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public interface IFrameSender {
+	/**
+	 * Sends a message to the client.
+	 * 
+	 * @param message
+	 *            the message text.
+	 * @throws IOException
+	 *             if the message can't be sent, for example because the
+	 *             connection has been closed.
+	 */
+	void send(String message) throws IOException;
+}
@@ -0,0 +1,254 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.websocket;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.wicket.util.lang.Args;
+import org.wicketstuff.rest.utils.http.BufferedHttpServletResponse;
+import org.wicketstuff.rest.utils.http.InternalRequestDispatcher;
+import org.wicketstuff.rest.utils.http.VirtualHttpServletRequest;
+
+/**
+ * Server side of a connection that carries many concurrent REST calls as
+ * {@link RestFrame}s. Every request frame is served on an executor with
+ * {@link InternalRequestDispatcher}, so it goes through the same mapped
+ * methods of the HTTP requests. Each response is sent as soon as it's ready
+ * and carries the correlation id of its request, which means that responses
+ * can be sent in a different order than requests.<br/>
+ * Once the number of requests being served reaches the limit of the
+ * connection, {@link #onMessage(String)} blocks until one of them completes,
+ * so that a client can't flood the server.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class MultiplexedConnection {
+	/** The dispatcher that serves the requests. */
+	private final InternalRequestDispatcher dispatcher;
+
+	/** The request the connection has been opened with. */
+	private final VirtualHttpServletRequest connectionRequest;
+
+	/** Sends responses to the client. */
+	private final IFrameSender sender;
+
+	/** Executor that serves the requests. */
+	private final Executor executor;
+
+	/** Permits for the requests being served. */
+	private final Semaphore inFlightRequests;
+
+	private volatile boolean closed;
+
+	/**
+	 * Class constructor.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher that serves the requests.
+	 * @param connectionRequest
+	 *            the request the connection has been opened with. It provides
+	 *            session, cookies and client data to the requests of the
+	 *            connection.
+	 * @param sender
+	 *            sends responses to the client.
+	 * @param executor
+	 *            executor that serves the requests.
+	 * @param maxInFlightRequests
+	 *            max number of requests served at the same time.
+	 */
+	public MultiplexedConnection(InternalRequestDispatcher dispatcher,
+			VirtualHttpServletRequest connectionRequest, IFrameSender sender, Executor executor,
+			int maxInFlightRequests) {
+		Args.notNull(dispatcher, "dispatcher");
+		Args.notNull(connectionRequest, "connectionRequest");
+		Args.notNull(sender, "sender");
+		Args.notNull(executor, "executor");
+		Args.isTrue(maxInFlightRequests > 0, "maxInFlightRequests must be greater than 0");
+
+		this.dispatcher = dispatcher;
+		this.connectionRequest = connectionRequest;
+		this.sender = sender;
+		this.executor = executor;
+		this.inFlightRequests = new Semaphore(maxInFlightRequests);
+	}
+
+	/**
+	 * Handles a message received from the client. Frames that can't be parsed
+	 * are answered with status 400.
+	 * 
+	 * @param message
+	 *            the message text.
+	 */
+	public void onMessage(String message) {
+		if (closed)
+			return;
+
+		final RestFrame frame;
+
+		try {
+			frame = RestFrame.parse(message);
+
+			if (frame.isResponse())
+				throw new IllegalArgumentException("Response frames can't be sent to the server.");
+		} catch (IllegalArgumentException e) {
+			String id = RestFrame.extractId(message);
+
+			if (id != null)
+				sendError(id, 400, e.getMessage());
+
+			return;
+		}
+
+		try {
+			inFlightRequests.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendError(frame.getId(), 503, "Server is shutting down.");
+			return;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						send(serve(frame));
+					} finally {
+						inFlightRequests.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlightRequests.release();
+			sendError(frame.getId(), 503, "Server is too busy to serve the request.");
+		}
+	}
+
+	/**
+	 * Serves a request frame.
+	 * 
+	 * @param frame
+	 *            the request frame.
+	 * @return the response frame.
+	 */
+	protected RestFrame serve(RestFrame frame) {
+		VirtualHttpServletRequest request = connectionRequest.newRequest(frame.getMethod(),
+				frame.getUrl());
+		List<String> headerNames = frame.getHeaderNames();
+		List<String> headerValues = frame.getHeaderValues();
+
+		for (int i = 0; i < headerNames.size(); i++)
+			request.addHeader(headerNames.get(i), headerValues.get(i));
+
+		try {
+			// the text of the frame is sent to the mapped methods as UTF-8
+			request.setCharacterEncoding("UTF-8");
+			request.setBody(frame.getBody().getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+
+		BufferedHttpServletResponse response;
+
+		try {
+			response = dispatcher.dispatch(request);
+		} catch (RuntimeException e) {
+			return newErrorFrame(frame.getId(), 500, "Unexpected error serving the request.");
+		}
+
+		return toFrame(frame.getId(), response);
+	}
+
+	/**
+	 * Converts a response into a frame.
+	 * 
+	 * @param id
+	 *            the correlation id of the request.
+	 * @param response
+	 *            the response.
+	 * @return the response frame.
+	 */
+	private RestFrame toFrame(String id, BufferedHttpServletResponse response) {
+		RestFrame frame = RestFrame.newResponse(id, response.getStatus());
+		List<String> headerNames = response.getHeaderNames();
+		List<String> headerValues = response.getHeaderValues();
+
+		for (int i = 0; i < headerNames.size(); i++) {
+			// the length of the frame body is not the length of the content
+			if (!"Content-Length".equalsIgnoreCase(headerNames.get(i)))
+				frame.addHeader(headerNames.get(i), headerValues.get(i));
+		}
+
+		String body = response.getContentAsString();
+
+		if (body.length() == 0 && response.getErrorMessage() != null)
+			body = response.getErrorMessage();
+
+		frame.setBody(body);
+		return frame;
+	}
+
+	private RestFrame newErrorFrame(String id, int status, String message) {
+		RestFrame frame = RestFrame.newResponse(id, status);
+
+		frame.setBody(message);
+		return frame;
+	}
+
+	private void sendError(String id, int status, String message) {
+		send(newErrorFrame(id, status, message));
+	}
+
+	/**
+	 * Sends a frame to the client. If the frame can't be sent the connection
+	 * is closed.
+	 */
+	private void send(RestFrame frame) {
+		if (closed)
+			return;
+
+		try {
+			sender.send(frame.encode());
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Closes the connection. Messages received after this method has been
+	 * called are ignored, and the responses of the requests still being
+	 * served are discarded.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Tells if the connection has been closed.
+	 * 
+	 * @return true if the connection has been closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+}
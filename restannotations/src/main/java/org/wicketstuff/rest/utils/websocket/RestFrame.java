@@ -0,0 +1,334 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Message exchanged over a multiplexed connection, carrying either a request
+ * or its response. The text of a frame looks like an HTTP/1.1 message: a start
+ * line, the header lines and, after an empty line, the body. The start line of
+ * a request contains the correlation id, the HTTP method and the URL (relative
+ * to the application root), while the start line of a response contains the
+ * correlation id of its request and the status code:
+ * 
+ * <pre>
+ * 42 PUT /persons/7
+ * Content-Type: application/json
+ * 
+ * {"name": "Mary"}
+ * </pre>
+ * 
+ * <pre>
+ * 42 200
+ * Content-Type: application/json
+ * 
+ * {"id": 7, "name": "Mary"}
+ * </pre>
+ * 
+ * Lines can be separated with '\n' or '\r\n'.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class RestFrame {
+	/** Max length of a correlation id. */
+	public static final int MAX_ID_LENGTH = 64;
+
+	/** The correlation id. */
+	private final String id;
+
+	/** The HTTP method, null for responses. */
+	private final String method;
+
+	/** The request URL, null for responses. */
+	private final String url;
+
+	/** The status code, -1 for requests. */
+	private final int status;
+
+	/** The names of the headers. */
+	private final List<String> headerNames = new ArrayList<String>();
+
+	/** The values of the headers. */
+	private final List<String> headerValues = new ArrayList<String>();
+
+	/** The body, empty if the frame has no body. */
+	private String body = "";
+
+	private RestFrame(String id, String method, String url, int status) {
+		this.id = id;
+		this.method = method;
+		this.url = url;
+		this.status = status;
+	}
+
+	/**
+	 * Creates a request frame.
+	 * 
+	 * @param id
+	 *            the correlation id.
+	 * @param method
+	 *            the HTTP method.
+	 * @param url
+	 *            the request URL.
+	 * @return the new frame.
+	 */
+	public static RestFrame newRequest(String id, String method, String url) {
+		checkId(id);
+		Args.notEmpty(method, "method");
+		Args.notEmpty(url, "url");
+
+		return new RestFrame(id, method, url, -1);
+	}
+
+	/**
+	 * Creates a response frame.
+	 * 
+	 * @param id
+	 *            the correlation id of the request.
+	 * @param status
+	 *            the status code.
+	 * @return the new frame.
+	 */
+	public static RestFrame newResponse(String id, int status) {
+		return new RestFrame(id, null, null, status);
+	}
+
+	/**
+	 * Parses the text of a frame.
+	 * 
+	 * @param text
+	 *            the frame text.
+	 * @return the parsed frame.
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid frame.
+	 */
+	public static RestFrame parse(String text) {
+		int bodyIndex = text.indexOf("\n\n");
+		int separatorLength = 2;
+		int crlfIndex = text.indexOf("\r\n\r\n");
+
+		if (crlfIndex >= 0 && (bodyIndex < 0 || crlfIndex < bodyIndex)) {
+			bodyIndex = crlfIndex;
+			separatorLength = 4;
+		}
+
+		String head = bodyIndex < 0 ? text : text.substring(0, bodyIndex);
+		String[] lines = head.split("\r?\n");
+		String[] startLine = lines[0].trim().split(" +");
+		RestFrame frame;
+
+		if (startLine.length == 2 && isStatusCode(startLine[1])) {
+			checkId(startLine[0]);
+			frame = newResponse(startLine[0], Integer.parseInt(startLine[1]));
+		} else if (startLine.length == 3) {
+			frame = newRequest(startLine[0], startLine[1], startLine[2]);
+		} else {
+			throw new IllegalArgumentException("Invalid start line: '" + lines[0] + "'");
+		}
+
+		for (int i = 1; i < lines.length; i++) {
+			int colonIndex = lines[i].indexOf(':');
+
+			if (colonIndex <= 0)
+				throw new IllegalArgumentException("Invalid header line: '" + lines[i] + "'");
+
+			frame.addHeader(lines[i].substring(0, colonIndex).trim(),
+					lines[i].substring(colonIndex + 1).trim());
+		}
+
+		if (bodyIndex >= 0)
+			frame.setBody(text.substring(bodyIndex + separatorLength));
+
+		return frame;
+	}
+
+	/**
+	 * Gets the correlation id that starts a frame text, without parsing the
+	 * rest of the frame. It's used to answer frames that can't be parsed.
+	 * 
+	 * @param text
+	 *            the frame text.
+	 * @return the correlation id or null if the text doesn't start with a
+	 *         valid one.
+	 */
+	public static String extractId(String text) {
+		int endIndex = 0;
+
+		while (endIndex < text.length() && endIndex <= MAX_ID_LENGTH
+				&& !Character.isWhitespace(text.charAt(endIndex)))
+			endIndex++;
+
+		return endIndex > 0 && endIndex <= MAX_ID_LENGTH ? text.substring(0, endIndex) : null;
+	}
+
+	private static boolean isStatusCode(String value) {
+		return value.length() == 3 && Character.isDigit(value.charAt(0))
+				&& Character.isDigit(value.charAt(1)) && Character.isDigit(value.charAt(2));
+	}
+
+	private static void checkId(String id) {
+		Args.notEmpty(id, "id");
+
+		if (id.length() > MAX_ID_LENGTH)
+			throw new IllegalArgumentException("Correlation id is longer than " + MAX_ID_LENGTH
+					+ " characters.");
+	}
+
+	/**
+	 * Encodes the frame as text.
+	 * 
+	 * @return the frame text.
+	 */
+	public String encode() {
+		StringBuilder text = new StringBuilder(64 + body.length());
+
+		text.append(id).append(' ');
+
+		if (isResponse())
+			text.append(status);
+		else
+			text.append(method).append(' ').append(url);
+
+		text.append('\n');
+
+		for (int i = 0; i < headerNames.size(); i++)
+			text.append(headerNames.get(i)).append(": ").append(headerValues.get(i)).append('\n');
+
+		return text.append('\n').append(body).toString();
+	}
+
+	/**
+	 * Adds a header to the frame.
+	 * 
+	 * @param name
+	 *            the header name.
+	 * @param value
+	 *            the header value. Line breaks are replaced with spaces.
+	 */
+	public void addHeader(String name, String value) {
+		Args.notEmpty(name, "name");
+
+		headerNames.add(name);
+		headerValues.add(value != null ? value.replace('\r', ' ').replace('\n', ' ') : "");
+	}
+
+	/**
+	 * Gets the first value of a header.
+	 * 
+	 * @param name
+	 *            the header name (case insensitive).
+	 * @return the header value or null if the frame doesn't have it.
+	 */
+	public String getHeader(String name) {
+		for (int i = 0; i < headerNames.size(); i++) {
+			if (headerNames.get(i).equalsIgnoreCase(name))
+				return headerValues.get(i);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the names of the headers. A name is repeated for every value of the
+	 * header.
+	 * 
+	 * @return the header names.
+	 */
+	public List<String> getHeaderNames() {
+		return Collections.unmodifiableList(headerNames);
+	}
+
+	/**
+	 * Gets the values of the headers, in the same order of
+	 * {@link #getHeaderNames()}.
+	 * 
+	 * @return the header values.
+	 */
+	public List<String> getHeaderValues() {
+		return Collections.unmodifiableList(headerValues);
+	}
+
+	/**
+	 * Gets the correlation id.
+	 * 
+	 * @return the correlation id.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the HTTP method of a request frame.
+	 * 
+	 * @return the HTTP method, null for responses.
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Gets the URL of a request frame.
+	 * 
+	 * @return the request URL, null for responses.
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Gets the status code of a response frame.
+	 * 
+	 * @return the status code, -1 for requests.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Tells if this frame carries a response.
+	 * 
+	 * @return true for responses, false for requests.
+	 */
+	public boolean isResponse() {
+		return method == null;
+	}
+
+	/**
+	 * Gets the body of the frame.
+	 * 
+	 * @return the body, empty if the frame has no body.
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * Sets the body of the frame.
+	 * 
+	 * @param body
+	 *            the body. Null is treated as an empty body.
+	 */
+	public void setBody(String body) {
+		this.body = body != null ? body : "";
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.utils.websocket;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.protocol.http.WebApplication;
+import org.eclipse.jetty.websocket.WebSocket;
+import org.eclipse.jetty.websocket.WebSocketServlet;
+import org.wicketstuff.rest.utils.concurrent.NamedThreadFactory;
+import org.wicketstuff.rest.utils.http.InternalRequestDispatcher;
+import org.wicketstuff.rest.utils.http.VirtualHttpServletRequest;
+
+/**
+ * Jetty servlet that exposes the REST resources of a Wicket application over
+ * WebSocket connections. Every text message must be a request
+ * {@link RestFrame}, which is served by the mapped methods of the resources
+ * and answered with a response frame (See {@link MultiplexedConnection}). The
+ * servlet requires the WebSocket support of Jetty 7 and is configured with the
+ * following init parameters:
+ * <ul>
+ * <li><b>applicationName</b>: the name of the Wicket application, which is
+ * the name of its filter (required).</li>
+ * <li><b>filterPath</b>: the path the Wicket filter is mapped to, without
+ * slashes (default is empty).</li>
+ * <li><b>maxInFlightRequests</b>: max number of requests of a connection that
+ * are served at the same time (default is 16).</li>
+ * </ul>
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class RestWebSocketServlet extends WebSocketServlet {
+	private static final long serialVersionUID = 1L;
+
+	/** Default max number of requests of a connection served at the same time. */
+	public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 16;
+
+	private String applicationName;
+	private String filterPath;
+	private int maxInFlightRequests;
+	private transient ExecutorService executor;
+
+	@Override
+	public void init() throws ServletException {
+		super.init();
+
+		applicationName = getInitParameter("applicationName");
+
+		if (applicationName == null)
+			throw new ServletException("Init parameter 'applicationName' is required.");
+
+		filterPath = getInitParameter("filterPath");
+
+		String maxInFlightParam = getInitParameter("maxInFlightRequests");
+		maxInFlightRequests = maxInFlightParam != null ? Integer.parseInt(maxInFlightParam)
+				: DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+		executor = Executors.newCachedThreadPool(new NamedThreadFactory("rest-websocket"));
+	}
+
+	@Override
+	public WebSocket doWebSocketConnect(HttpServletRequest request, String protocol) {
+		WebApplication application = (WebApplication) Application.get(applicationName);
+
+		if (application == null)
+			return null;
+
+		// the handshake request is copied because it's recycled by the container
+		return new MultiplexedWebSocket(new InternalRequestDispatcher(application),
+				new VirtualHttpServletRequest(request, filterPath));
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+		super.destroy();
+	}
+
+	/**
+	 * Jetty WebSocket that passes its messages to a
+	 * {@link MultiplexedConnection}.
+	 */
+	private class MultiplexedWebSocket implements WebSocket.OnTextMessage {
+		private final InternalRequestDispatcher dispatcher;
+		private final VirtualHttpServletRequest connectionRequest;
+		private volatile MultiplexedConnection multiplexedConnection;
+
+		MultiplexedWebSocket(InternalRequestDispatcher dispatcher,
+				VirtualHttpServletRequest connectionRequest) {
+			this.dispatcher = dispatcher;
+			this.connectionRequest = connectionRequest;
+		}
+
+		@Override
+		public void onOpen(final Connection connection) {
+			IFrameSender sender = new IFrameSender() {
+				@Override
+				public void send(String message) throws IOException {
+					// frames of concurrent responses must not be interleaved
+					synchronized (connection) {
+						connection.sendMessage(message);
+					}
+				}
+			};
+
+			multiplexedConnection = new MultiplexedConnection(dispatcher, connectionRequest,
+					sender, executor, maxInFlightRequests);
+		}
+
+		@Override
+		public void onMessage(String message) {
+			multiplexedConnection.onMessage(message);
+		}
+
+		@Override
+		public void onClose(int closeCode, String message) {
+			multiplexedConnection.close();
+		}
+	}
+}
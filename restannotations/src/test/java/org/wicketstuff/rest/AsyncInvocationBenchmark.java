@@ -0,0 +1,69 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest;
+
+import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+import org.apache.wicket.util.tester.WicketTester;
+
+/**
+ * Compares the time needed to serve the requests of a method invoked by the
+ * container thread with the one of a method annotated with
+ * {@link org.wicketstuff.rest.annotations.AsyncInvocation}, i.e. the cost of
+ * running a method on the method executor with the Wicket thread context.
+ * It's not run as a test, use its main method.
+ * 
+ * @author andrea del bene
+ * 
+ */
+public class AsyncInvocationBenchmark {
+	private static final int WARMUP_REQUESTS = 5000;
+	private static final int MEASURED_REQUESTS = 20000;
+
+	public static void main(String[] args) {
+		WicketTester tester = new WicketTester(new WicketApplication(new Roles()));
+
+		try {
+			run(tester, "direct", WARMUP_REQUESTS);
+			run(tester, "offloaded", WARMUP_REQUESTS);
+
+			long directTime = run(tester, "direct", MEASURED_REQUESTS);
+			long offloadedTime = run(tester, "offloaded", MEASURED_REQUESTS);
+
+			System.out.println("Container thread: " + directTime / MEASURED_REQUESTS
+					+ " ns/request");
+			System.out.println("Method executor:  " + offloadedTime / MEASURED_REQUESTS
+					+ " ns/request");
+		} finally {
+			tester.destroy();
+		}
+	}
+
+	private static long run(WicketTester tester, String path, int requests) {
+		long start = System.nanoTime();
+
+		for (int i = 0; i < requests; i++) {
+			tester.getRequest().setMethod("GET");
+			tester.executeUrl("./concurrency/" + path + "/" + i);
+
+			if (tester.getLastResponse().getStatus() != 200)
+				throw new IllegalStateException("Unexpected status: "
+						+ tester.getLastResponse().getStatus());
+		}
+
+		return System.nanoTime() - start;
+	}
+}
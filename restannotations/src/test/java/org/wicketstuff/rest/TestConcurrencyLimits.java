@@ -0,0 +1,355 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wicketstuff.rest.utils.concurrent.AdaptiveConcurrencyLimit;
+import org.wicketstuff.rest.utils.concurrent.HeldPermits;
+import org.wicketstuff.rest.utils.concurrent.InvocationPermits;
+import org.wicketstuff.rest.utils.concurrent.PriorityScheduler;
+import org.wicketstuff.rest.utils.ratelimit.IRateLimitStore;
+import org.wicketstuff.rest.utils.ratelimit.MappedFileRateLimitStore;
+import org.wicketstuff.rest.utils.ratelimit.MemoryRateLimitStore;
+
+public class TestConcurrencyLimits extends Assert {
+	/** Concurrency the synthetic resource can serve without queuing. */
+	private static final int CAPACITY = 10;
+
+	/** Latency of the synthetic resource when it's not overloaded. */
+	private static final long BASE_LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+	@Test
+	public void testAdaptiveLimitSimulation() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 1, 200, 1.5);
+		SlowResource resource = new SlowResource(limit, 100);
+
+		// 100 clients keep calling a resource that queues beyond its capacity
+		int completed = resource.run(20, BASE_LATENCY);
+
+		// the limit settles around the capacity, far below the offered load,
+		// without losing throughput
+		assertTrue("limit: " + limit.getLimit(), limit.getLimit() >= CAPACITY
+				&& limit.getLimit() <= 3 * CAPACITY);
+		assertEquals(BASE_LATENCY, limit.getMinLatency());
+		assertTrue("completed: " + completed, completed >= 20 * 1000 * 9 / 10);
+
+		// the resource gets slower for every request: the limit follows
+		resource.run(20, 4 * BASE_LATENCY);
+
+		assertTrue("limit: " + limit.getLimit(), limit.getLimit() >= CAPACITY
+				&& limit.getLimit() <= 3 * CAPACITY);
+		assertEquals(4 * BASE_LATENCY, limit.getMinLatency());
+	}
+
+	@Test
+	public void testAdaptiveLimitGrowsWithoutQueuing() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(5, 1, 50, 1.5);
+
+		// a low load doesn't make the limit grow
+		for (int i = 0; i < 100; i++) {
+			assertTrue(limit.tryAcquire());
+			limit.release(BASE_LATENCY);
+		}
+
+		assertEquals(5, limit.getLimit());
+
+		// latency doesn't depend on the load, which uses the whole limit
+		for (int i = 0; i < 100 && limit.getLimit() < 50; i++) {
+			int permits = limit.getLimit();
+
+			for (int j = 0; j < permits; j++)
+				assertTrue(limit.tryAcquire());
+
+			for (int j = 0; j < permits; j++)
+				limit.release(BASE_LATENCY);
+		}
+
+		assertEquals(50, limit.getLimit());
+
+		// failed invocations don't change the limit
+		for (int i = 0; i < 50; i++)
+			assertTrue(limit.tryAcquire());
+
+		assertFalse(limit.tryAcquire());
+
+		for (int i = 0; i < 50; i++)
+			limit.release(-1);
+
+		assertEquals(50, limit.getLimit());
+		assertEquals(0, limit.getInFlightCount());
+	}
+
+	@Test
+	public void testHeldPermits() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(5, 1, 50, 1.5);
+		InvocationPermits permits = new InvocationPermits(limit, 1, null, 0);
+
+		// permits taken over by the invocation are not released by the request
+		assertEquals(-1, permits.tryAcquire());
+		HeldPermits heldPermits = new HeldPermits(permits);
+
+		assertTrue(heldPermits.takeOver());
+		heldPermits.release(-1);
+		assertEquals(1, limit.getInFlightCount());
+
+		heldPermits.releaseTakenOver(BASE_LATENCY);
+		heldPermits.releaseTakenOver(BASE_LATENCY);
+		assertEquals(0, limit.getInFlightCount());
+
+		// an invocation that starts after the request is over gets no permits
+		assertEquals(-1, permits.tryAcquire());
+		heldPermits = new HeldPermits(permits);
+
+		heldPermits.release(-1);
+		assertFalse(heldPermits.takeOver());
+		heldPermits.releaseTakenOver(BASE_LATENCY);
+		assertEquals(0, limit.getInFlightCount());
+	}
+
+	@Test
+	public void testMemoryRateLimitStore() {
+		MemoryRateLimitStore store = new MemoryRateLimitStore(4);
+
+		testRateLimitStore(store, store);
+
+		// the store is bounded
+		for (int i = 0; i < 10; i++)
+			assertEquals(0, store.tryConsume("key" + i, 1, 60000000));
+
+		assertTrue(store.size() <= 4);
+
+		// new buckets don't evict the buckets of limited clients
+		long refillInterval = TimeUnit.MINUTES.toMicros(1);
+
+		store = new MemoryRateLimitStore(4);
+
+		for (int i = 0; i < 3; i++)
+			assertEquals(0, store.tryConsume("limited", 3, refillInterval));
+
+		for (int i = 0; i < 10; i++)
+			assertEquals(0, store.tryConsume("rotated" + i, 3, refillInterval));
+
+		assertTrue(store.tryConsume("limited", 3, refillInterval) > 0);
+	}
+
+	@Test
+	public void testMappedFileRateLimitStore() throws Exception {
+		File file = File.createTempFile("ratelimit", ".bin");
+
+		try {
+			MappedFileRateLimitStore store = new MappedFileRateLimitStore(file, 64);
+			MappedFileRateLimitStore otherStore = new MappedFileRateLimitStore(file, 64);
+
+			try {
+				// stores mapping the same file share the buckets
+				testRateLimitStore(store, otherStore);
+			} finally {
+				store.close();
+				otherStore.close();
+			}
+
+			file.delete();
+			store = new MappedFileRateLimitStore(file, 4);
+
+			try {
+				long refillInterval = TimeUnit.MINUTES.toMicros(1);
+
+				// all the keys share the only set of slots
+				for (int i = 0; i < 4; i++)
+					assertEquals(0, store.tryConsume("key" + i, 1, refillInterval));
+
+				// colliding keys don't reset the buckets in use
+				assertTrue(store.tryConsume("key4", 1, refillInterval) > 0);
+
+				for (int i = 0; i < 4; i++)
+					assertTrue(store.tryConsume("key" + i, 1, refillInterval) > 0);
+			} finally {
+				store.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private void testRateLimitStore(IRateLimitStore store, IRateLimitStore otherStore) {
+		long refillInterval = TimeUnit.MINUTES.toMicros(1);
+
+		assertEquals(0, store.tryConsume("a", 2, refillInterval));
+		assertEquals(0, otherStore.tryConsume("a", 2, refillInterval));
+
+		long waitTime = store.tryConsume("a", 2, refillInterval);
+
+		assertTrue(waitTime > refillInterval - 5000000 && waitTime <= refillInterval);
+		assertTrue(otherStore.tryConsume("a", 2, refillInterval) > 0);
+		assertEquals(0, otherStore.tryConsume("b", 2, refillInterval));
+	}
+
+	@Test
+	public void testPriorityScheduler() throws Exception {
+		PriorityScheduler scheduler = new PriorityScheduler(1, 3, 200);
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final List<String> runOrder = Collections.synchronizedList(new ArrayList<String>());
+
+		try {
+			scheduler.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					blocker.await();
+					return null;
+				}
+			}, 0);
+
+			Thread.sleep(50);
+
+			scheduler.submit(newTask("low1", runOrder), 0);
+			scheduler.submit(newTask("high", runOrder), 5);
+			Future<String> discarded = scheduler.submit(newTask("low2", runOrder), 0);
+
+			// the queue is full: a new task replaces the last one with lower priority
+			Future<String> medium = scheduler.submit(newTask("medium", runOrder), 3);
+
+			try {
+				scheduler.submit(newTask("low3", runOrder), 0);
+				fail("The queue is full of tasks with the same or higher priority");
+			} catch (RejectedExecutionException e) {
+				// expected
+			}
+
+			try {
+				discarded.get();
+				fail("The task should have been discarded");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+
+			blocker.countDown();
+			medium.get(5, TimeUnit.SECONDS);
+			assertEquals(Arrays.asList("high", "medium", "low1"), runOrder);
+
+			// a task that waited too long goes ahead of the ones with higher priority
+			runOrder.clear();
+
+			final CountDownLatch secondBlocker = new CountDownLatch(1);
+
+			scheduler.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					secondBlocker.await();
+					return null;
+				}
+			}, 0);
+			Thread.sleep(50);
+
+			scheduler.submit(newTask("old", runOrder), 0);
+			Thread.sleep(300);
+			scheduler.submit(newTask("new", runOrder), 5);
+
+			secondBlocker.countDown();
+
+			long start = System.currentTimeMillis();
+
+			while (runOrder.size() < 2 && System.currentTimeMillis() - start < 5000)
+				Thread.sleep(10);
+
+			assertEquals(Arrays.asList("old", "new"), runOrder);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private Callable<String> newTask(final String name, final List<String> runOrder) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				runOrder.add(name);
+				return name;
+			}
+		};
+	}
+
+	/**
+	 * Discrete-event simulation of a resource whose latency grows linearly
+	 * with the concurrency once it exceeds its capacity, called by a fixed
+	 * number of clients. Rejected clients retry after 5 milliseconds.
+	 */
+	private static class SlowResource {
+		private final AdaptiveConcurrencyLimit limit;
+		private final PriorityQueue<long[]> events = new PriorityQueue<long[]>(16,
+				new Comparator<long[]>() {
+					@Override
+					public int compare(long[] event1, long[] event2) {
+						return event1[0] < event2[0] ? -1 : (event1[0] > event2[0] ? 1 : 0);
+					}
+				});
+		private long time;
+
+		SlowResource(AdaptiveConcurrencyLimit limit, int clients) {
+			this.limit = limit;
+
+			// an event is made of time, latency of the completed call (or
+			// -1 for a new call)
+			for (int i = 0; i < clients; i++)
+				events.add(new long[] { i * 100000L, -1 });
+		}
+
+		/**
+		 * Runs the simulation for the given time.
+		 * 
+		 * @return the number of completed calls.
+		 */
+		int run(int seconds, long baseLatency) {
+			long endTime = time + TimeUnit.SECONDS.toNanos(seconds);
+			int completed = 0;
+
+			while (events.peek()[0] < endTime) {
+				long[] event = events.poll();
+
+				time = event[0];
+
+				if (event[1] >= 0) {
+					limit.release(event[1]);
+					completed++;
+					events.add(new long[] { time, -1 });
+				} else if (limit.tryAcquire()) {
+					long latency = baseLatency * Math.max(CAPACITY, limit.getInFlightCount())
+							/ CAPACITY;
+
+					events.add(new long[] { time + latency, latency });
+				} else {
+					events.add(new long[] { time + TimeUnit.MILLISECONDS.toNanos(5), -1 });
+				}
+			}
+
+			return completed;
+		}
+	}
+}
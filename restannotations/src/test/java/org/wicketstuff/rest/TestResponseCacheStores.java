@@ -0,0 +1,293 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wicketstuff.rest.utils.cache.CachedResponse;
+import org.wicketstuff.rest.utils.cache.IInvalidationListener;
+import org.wicketstuff.rest.utils.cache.IResponseCacheStore;
+import org.wicketstuff.rest.utils.cache.MappedFileResponseCacheStore;
+import org.wicketstuff.rest.utils.cache.MemoryResponseCacheStore;
+import org.wicketstuff.rest.utils.cache.PersistentResponseCacheStore;
+import org.wicketstuff.rest.utils.cache.RequestCoalescer;
+import org.wicketstuff.rest.utils.cache.ResponseCache;
+
+public class TestResponseCacheStores extends Assert {
+
+	@Test
+	public void testMemoryStore() {
+		MemoryResponseCacheStore store = new MemoryResponseCacheStore(2);
+
+		testStore(store);
+
+		// the oldest entries are evicted
+		store.put("a", new byte[1], Long.MAX_VALUE);
+		store.put("b", new byte[1], Long.MAX_VALUE);
+		store.put("c", new byte[1], Long.MAX_VALUE);
+
+		assertNull(store.get("a"));
+		assertNotNull(store.get("c"));
+
+		// invalidated keys don't take up capacity
+		store.invalidate("b");
+		store.put("a", new byte[1], Long.MAX_VALUE);
+		store.put("b", new byte[1], Long.MAX_VALUE);
+
+		assertNotNull(store.get("a"));
+		assertNotNull(store.get("b"));
+
+		store.invalidateAll();
+		store.put("x", new byte[1], Long.MAX_VALUE);
+		store.put("y", new byte[1], Long.MAX_VALUE);
+
+		assertNotNull(store.get("x"));
+		assertNotNull(store.get("y"));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void testMemoryStoreKeepsGenerations() {
+		ResponseCache cache = new ResponseCache(new MemoryResponseCacheStore(4));
+		long now = System.currentTimeMillis();
+
+		// the generation of the cache name must not be evicted
+		for (int i = 0; i < 20; i++) {
+			String path = "/items/" + i;
+
+			cache.put(cache.buildKey("items", path), new CachedResponse("items", "text/plain",
+					path.getBytes(), null, now, now + 60000));
+
+			assertNotNull(cache.get(cache.buildKey("items", path)));
+		}
+
+		assertNotNull(cache.get(cache.buildKey("items", "/items/18")));
+		assertNull(cache.get(cache.buildKey("items", "/items/0")));
+	}
+
+	@Test
+	public void testMappedFileStore() throws Exception {
+		File file = File.createTempFile("responsecache", ".bin");
+
+		try {
+			MappedFileResponseCacheStore store = new MappedFileResponseCacheStore(file, 64, 256);
+			MappedFileResponseCacheStore otherStore = new MappedFileResponseCacheStore(file, 64,
+					256);
+
+			testStore(store);
+
+			// the content of the file is shared
+			store.put("shared", "value".getBytes("UTF-8"), Long.MAX_VALUE);
+			assertEquals("value", new String(otherStore.get("shared"), "UTF-8"));
+
+			otherStore.invalidate("shared");
+			assertNull(store.get("shared"));
+
+			// values that don't fit a slot are not stored
+			store.put("big", new byte[512], Long.MAX_VALUE);
+			assertNull(store.get("big"));
+
+			store.close();
+			otherStore.close();
+
+			try {
+				new MappedFileResponseCacheStore(file, 32, 256);
+				fail("The layout of the file must be checked.");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMappedFileStoreCollisions() throws Exception {
+		File file = File.createTempFile("responsecache", ".bin");
+
+		try {
+			// a single set: all the keys collide
+			MappedFileResponseCacheStore store = new MappedFileResponseCacheStore(file, 1, 256);
+			long expirationTime = System.currentTimeMillis() + 60000;
+
+			store.put("generation", "1".getBytes("UTF-8"), Long.MAX_VALUE);
+
+			for (int i = 0; i < 10; i++)
+				store.put("key" + i, "value".getBytes("UTF-8"), expirationTime + i);
+
+			// the values that never expire are replaced last
+			assertEquals("1", new String(store.get("generation"), "UTF-8"));
+			assertNull(store.get("key0"));
+			assertEquals("value", new String(store.get("key9"), "UTF-8"));
+
+			store.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testPersistentStore() throws Exception {
+		File file = File.createTempFile("responsecache", ".bin");
+
+		try {
+			PersistentResponseCacheStore store = new PersistentResponseCacheStore(file, 4096, "1");
+
+			testStore(store);
+
+			store.put("kept", new byte[] { 1, 2 }, Long.MAX_VALUE);
+			store.put("replaced", new byte[] { 1 }, Long.MAX_VALUE);
+			store.put("replaced", new byte[] { 2 }, Long.MAX_VALUE);
+			store.put("invalidated", new byte[] { 1 }, Long.MAX_VALUE);
+			store.invalidate("invalidated");
+			store.put("expiring", new byte[] { 1 }, System.currentTimeMillis() + 50);
+			store.close();
+
+			Thread.sleep(100);
+
+			// the records are reloaded when the store is created again
+			store = new PersistentResponseCacheStore(file, 4096, "1");
+
+			assertArrayEquals(new byte[] { 1, 2 }, store.get("kept"));
+			assertArrayEquals(new byte[] { 2 }, store.get("replaced"));
+			assertNull(store.get("invalidated"));
+			assertNull(store.get("expiring"));
+
+			// the file is compacted when it's full
+			for (int i = 0; i < 100; i++)
+				store.put("replaced", new byte[100], Long.MAX_VALUE);
+
+			assertArrayEquals(new byte[] { 1, 2 }, store.get("kept"));
+			assertEquals(100, store.get("replaced").length);
+
+			// a replaced value is not restored if the new one doesn't fit
+			store.put("replaced", new byte[4000], Long.MAX_VALUE);
+			assertNull(store.get("replaced"));
+			store.close();
+
+			store = new PersistentResponseCacheStore(file, 4096, "1");
+
+			assertArrayEquals(new byte[] { 1, 2 }, store.get("kept"));
+			assertNull(store.get("replaced"));
+			store.close();
+
+			// a different data version clears the file
+			store = new PersistentResponseCacheStore(file, 4096, "2");
+
+			assertNull(store.get("kept"));
+			store.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testResponseCacheInvalidation() {
+		ResponseCache cache = new ResponseCache(new MemoryResponseCacheStore(16));
+		String key = cache.buildKey("persons", "/persons/1");
+		long now = System.currentTimeMillis();
+
+		cache.put(key, new CachedResponse("persons", "application/json", "{}".getBytes(), "\"1\"",
+				now, now + 60000));
+
+		CachedResponse cachedResponse = cache.get(cache.buildKey("persons", "/persons/1"));
+
+		assertEquals("application/json", cachedResponse.getContentType());
+		assertEquals("\"1\"", cachedResponse.getEntityTag());
+		assertEquals("{}", new String(cachedResponse.getContent()));
+
+		// responses computed before the invalidation are not reachable
+		String oldKey = cache.buildKey("persons", "/persons/1");
+
+		cache.invalidate("persons");
+		cache.put(oldKey, cachedResponse);
+
+		assertNull(cache.get(cache.buildKey("persons", "/persons/1")));
+	}
+
+	@Test
+	public void testRequestCoalescer() throws Exception {
+		final RequestCoalescer coalescer = new RequestCoalescer();
+		RequestCoalescer.Call leaderCall = new RequestCoalescer.Call("/items/1");
+
+		assertNull(coalescer.join(leaderCall));
+
+		// identical requests wait for the in-flight invocation
+		final RequestCoalescer.Call inFlightCall = coalescer.join(new RequestCoalescer.Call(
+				"/items/1"));
+		final List<CachedResponse> sharedResponses = new ArrayList<CachedResponse>();
+		Thread follower = new Thread() {
+			@Override
+			public void run() {
+				try {
+					sharedResponses.add(inFlightCall.await(10000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		assertSame(leaderCall, inFlightCall);
+		assertNull(coalescer.join(new RequestCoalescer.Call("/items/2")));
+		follower.start();
+
+		CachedResponse response = new CachedResponse(null, "text/plain", "item1".getBytes(),
+				null, -1, Long.MAX_VALUE);
+
+		coalescer.complete(leaderCall, response);
+		// later completions are ignored
+		coalescer.complete(leaderCall, null);
+		follower.join(10000);
+
+		assertSame(response, sharedResponses.get(0));
+		assertNull(coalescer.join(new RequestCoalescer.Call("/items/1")));
+
+		// followers stop waiting when the timeout expires
+		assertNull(coalescer.join(new RequestCoalescer.Call("/items/1")).await(10));
+	}
+
+	private void testStore(IResponseCacheStore store) {
+		final List<String> invalidatedKeys = new ArrayList<String>();
+
+		store.addInvalidationListener(new IInvalidationListener() {
+			@Override
+			public void onInvalidate(String key) {
+				invalidatedKeys.add(key);
+			}
+		});
+
+		store.put("key", new byte[] { 1, 2, 3 }, Long.MAX_VALUE);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, store.get("key"));
+
+		store.put("expired", new byte[] { 1 }, System.currentTimeMillis() - 1);
+		assertNull(store.get("expired"));
+
+		store.invalidate("key");
+		assertNull(store.get("key"));
+		assertEquals("key", invalidatedKeys.get(0));
+
+		store.put("key", new byte[] { 1 }, Long.MAX_VALUE);
+		store.invalidateAll();
+		assertNull(store.get("key"));
+		assertNull(invalidatedKeys.get(1));
+	}
+}
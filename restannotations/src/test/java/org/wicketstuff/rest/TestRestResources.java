@@ -19,8 +19,22 @@ package org.wicketstuff.rest;
 import static org.junit.Assert.assertEquals;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.servlet.http.Cookie;
 import javax.xml.bind.JAXB;
@@ -31,6 +45,7 @@ import junit.framework.Assert;
 import org.apache.wicket.Session;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+import org.apache.wicket.protocol.http.servlet.ServletWebRequest;
 import org.apache.wicket.util.tester.WicketTester;
 import org.junit.After;
 import org.junit.Before;
@@ -41,7 +56,13 @@ import org.wicketstuff.rest.annotations.parameters.RequestBody;
 import org.wicketstuff.rest.contenthandling.RestMimeTypes;
 import org.wicketstuff.rest.contenthandling.serialdeserial.TestJsonDesSer;
 import org.wicketstuff.rest.resource.RestResourceFullAnnotated;
+import org.wicketstuff.rest.utils.http.HttpUtils;
+import org.wicketstuff.rest.utils.http.InternalRequestDispatcher;
+import org.wicketstuff.rest.utils.http.VirtualHttpServletRequest;
 import org.wicketstuff.rest.utils.test.BufferedMockRequest;
+import org.wicketstuff.rest.utils.websocket.IFrameSender;
+import org.wicketstuff.rest.utils.websocket.MultiplexedConnection;
+import org.wicketstuff.rest.utils.websocket.RestFrame;
 
 /**
  * Simple test using the WicketTester
@@ -127,6 +148,41 @@ public class TestRestResources {
 		tester.executeUrl("./api/19");
 	}
 
+	@Test
+	public void testRequestContentType() {
+		// a body with a content type not consumed by the method is rejected
+		BufferedMockRequest mockRequest = newJsonMockRequest();
+		mockRequest.setHeader("Content-Type", RestMimeTypes.APPLICATION_XML);
+
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./api/19");
+		Assert.assertEquals(415, tester.getLastResponse().getStatus());
+
+		// charset parameters are allowed, as long as they are supported
+		mockRequest = newJsonMockRequest();
+		mockRequest.setHeader("Content-Type", "application/json; charset=UTF-8");
+
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./api/19");
+		Assert.assertEquals(200, tester.getLastResponse().getStatus());
+		testIfResponseStringIsEqual(TestJsonDesSer.getJSON());
+
+		mockRequest = newJsonMockRequest();
+		mockRequest.setHeader("Content-Type", "application/json; charset=no-such-charset");
+
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./api/19");
+		Assert.assertEquals(415, tester.getLastResponse().getStatus());
+	}
+
+	private BufferedMockRequest newJsonMockRequest() {
+		BufferedMockRequest mockRequest = new BufferedMockRequest(tester.getApplication(),
+				tester.getHttpSession(), tester.getServletContext(), "POST");
+		mockRequest.setTextAsRequestBody(TestJsonDesSer.getJSON());
+
+		return mockRequest;
+	}
+
 	@Test
 	public void testJsonSerializedResponse() {
 		// test JSON response
@@ -196,7 +252,680 @@ public class TestRestResources {
 		
 		assertEquals(writer.toString(), tester.getLastResponseAsString());
 	}
+
+	@Test
+	public void testAcceptNegotiation() throws Exception {
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", RestMimeTypes.APPLICATION_JSON);
+		tester.executeUrl("./api3/negotiated/person");
+
+		assertEquals(RestMimeTypes.APPLICATION_JSON, tester.getLastResponse().getContentType());
+		testIfResponseStringIsEqual(TestJsonDesSer.getJSON());
+
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", "application/json;q=0.5, application/*;q=0.9");
+		tester.executeUrl("./api3/negotiated/person");
+
+		assertEquals(RestMimeTypes.APPLICATION_XML, tester.getLastResponse().getContentType());
+		assertEquals("Accept", tester.getLastResponse().getHeader("Vary"));
+
+		// same header value, served by the negotiation cache
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", "application/json;q=0.5, application/*;q=0.9");
+		tester.executeUrl("./api3/negotiated/person");
+
+		assertEquals(RestMimeTypes.APPLICATION_XML, tester.getLastResponse().getContentType());
+
+		// with equal quality the first type declared in 'produces' wins
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", "*/*");
+		tester.executeUrl("./api3/negotiated/person");
+
+		assertEquals(RestMimeTypes.APPLICATION_JSON, tester.getLastResponse().getContentType());
+
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", "image/png, application/json;q=0");
+		tester.executeUrl("./api3/negotiated/person");
+
+		assertEquals(406, tester.getLastResponse().getStatus());
+
+		// methods with a single output format ignore header 'Accept'
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", "image/png");
+		tester.executeUrl("./api/12345");
+
+		assertEquals(200, tester.getLastResponse().getStatus());
+		testIfResponseStringIsEqual("12345");
+	}
+
+	@Test
+	public void testCompressedResponse() throws Exception {
+		// content bigger than the threshold is compressed while it's written
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Accept-Encoding", "deflate;q=0.5, gzip");
+		tester.executeUrl("./compressed");
+
+		assertEquals("gzip", tester.getLastResponse().getHeader("Content-Encoding"));
+		assertEquals(TestJsonDesSer.getJSON(), readCompressedResponse(true));
+
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Accept-Encoding", "deflate");
+		tester.executeUrl("./compressed");
+
+		assertEquals("deflate", tester.getLastResponse().getHeader("Content-Encoding"));
+		assertEquals(TestJsonDesSer.getJSON(), readCompressedResponse(false));
+
+		// compressed content of GET methods is cached by URL and ETag
+		for (int i = 0; i < 2; i++) {
+			tester.getRequest().setMethod("GET");
+			tester.getRequest().setHeader("Accept-Encoding", "gzip");
+			tester.executeUrl("./compressed");
+
+			assertEquals("gzip", tester.getLastResponse().getHeader("Content-Encoding"));
+			Assert.assertTrue(tester.getLastResponse().getHeader("ETag").endsWith("-gzip\""));
+			assertEquals("testMethodNoArgs", readCompressedResponse(true));
+		}
+
+		// content smaller than the threshold or with no accepted encoding
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept-Encoding", "gzip");
+		tester.executeUrl("./compressed/123");
+
+		Assert.assertNull(tester.getLastResponse().getHeader("Content-Encoding"));
+		testIfResponseStringIsEqual("123");
+
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Accept-Encoding", "identity, gzip;q=0");
+		tester.executeUrl("./compressed");
+
+		Assert.assertNull(tester.getLastResponse().getHeader("Content-Encoding"));
+		testIfResponseStringIsEqual(TestJsonDesSer.getJSON());
+	}
+
+	@Test
+	public void testContentLength() throws Exception {
+		// small content is buffered and sent with its length
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./compressed/123");
+
+		assertEquals("3", tester.getLastResponse().getHeader("Content-Length"));
+		testIfResponseStringIsEqual("123");
+
+		// content bigger than the threshold is streamed
+		tester.getRequest().setMethod("POST");
+		tester.executeUrl("./compressed");
+
+		Assert.assertNull(tester.getLastResponse().getHeader("Content-Length"));
+		testIfResponseStringIsEqual(TestJsonDesSer.getJSON());
+	}
+
+	@Test
+	public void testCacheableResponse() throws Exception {
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/item/1?lang=en");
+		testIfResponseStringIsEqual("item1-en-1");
+
+		// cache hit: the method is not invoked again
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/item/1?lang=en");
+		testIfResponseStringIsEqual("item1-en-1");
+		// the charset set by the serial/deserial is kept
+		assertEquals(RestMimeTypes.TEXT_PLAIN + ";charset=UTF-8", tester.getLastResponse()
+				.getContentType());
+
+		// path variables and selected query parameters are part of the key
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/item/1?lang=it");
+		testIfResponseStringIsEqual("item1-it-2");
+
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/item/2?lang=en");
+		testIfResponseStringIsEqual("item2-en-3");
+
+		// invalidation from a mutating method
+		tester.getRequest().setMethod("PUT");
+		tester.executeUrl("./cached/item/1");
+
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/item/1?lang=en");
+		testIfResponseStringIsEqual("item1-en-4");
+	}
+
+	@Test
+	public void testCoalescedRequests() throws Exception {
+		// with no in-flight invocation the method is invoked as usual
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/report/1?lang=en");
+		testIfResponseStringIsEqual("report1-en-1");
+
+		// responses are not cached once the invocation is complete
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/report/1?lang=en");
+		testIfResponseStringIsEqual("report1-en-2");
+		Assert.assertNotNull(tester.getLastResponse().getHeader("ETag"));
+	}
+
+	@Test
+	public void testIdempotentRequests() throws Exception {
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Idempotency-Key", "key1");
+		tester.executeUrl("./cached/orders");
+		testIfResponseStringIsEqual("order1");
+		Assert.assertEquals(201, tester.getLastResponse().getStatus());
+		Assert.assertNull(tester.getLastResponse().getHeader("Idempotent-Replayed"));
+
+		// retries get the stored response without invoking the method
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Idempotency-Key", "key1");
+		tester.executeUrl("./cached/orders");
+		testIfResponseStringIsEqual("order1");
+		Assert.assertEquals(201, tester.getLastResponse().getStatus());
+		Assert.assertEquals("/orders/1", tester.getLastResponse().getHeader("Location"));
+		Assert.assertEquals("true", tester.getLastResponse().getHeader("Idempotent-Replayed"));
+
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Idempotency-Key", "key2");
+		tester.executeUrl("./cached/orders");
+		testIfResponseStringIsEqual("order2");
+
+		// requests without key are always executed
+		tester.getRequest().setMethod("POST");
+		tester.executeUrl("./cached/orders");
+		testIfResponseStringIsEqual("order3");
+	}
+
+	@Test
+	public void testIdempotentCompressedResponses() throws Exception {
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Idempotency-Key", "receipt");
+		tester.getRequest().setHeader("Accept-Encoding", "gzip");
+		tester.executeUrl("./cached/receipts");
+
+		assertEquals("gzip", tester.getLastResponse().getHeader("Content-Encoding"));
+		String receipt = readCompressedResponse(true);
+		Assert.assertTrue(receipt.startsWith("receipt"));
+
+		// the body is stored uncompressed and compressed again if accepted
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Idempotency-Key", "receipt");
+		tester.executeUrl("./cached/receipts");
+
+		Assert.assertNull(tester.getLastResponse().getHeader("Content-Encoding"));
+		Assert.assertEquals("true", tester.getLastResponse().getHeader("Idempotent-Replayed"));
+		Assert.assertTrue(tester.getLastResponse().getContentType().contains("charset="));
+		testIfResponseStringIsEqual(receipt);
+
+		tester.getRequest().setMethod("POST");
+		tester.getRequest().setHeader("Idempotency-Key", "receipt");
+		tester.getRequest().setHeader("Accept-Encoding", "gzip");
+		tester.executeUrl("./cached/receipts");
+
+		assertEquals("gzip", tester.getLastResponse().getHeader("Content-Encoding"));
+		assertEquals(receipt, readCompressedResponse(true));
+	}
+
+	@Test
+	public void testFutureResults() throws Exception {
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/future/foo");
+		testIfResponseStringIsEqual("async-foo");
+		// the result of the future is passed to onAfterMethodInvoked
+		Assert.assertEquals("async-foo", tester.getLastResponse().getHeader("X-Method-Result"));
+
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/slowfuture");
+		Assert.assertEquals(504, tester.getLastResponse().getStatus());
+	}
+
+	@Test
+	public void testAsyncInvocation() throws Exception {
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/direct/foo");
+		testIfResponseStringIsEqual("foo-true-false");
+
+		// the method runs on the method executor with the thread context
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/offloaded/foo");
+		testIfResponseStringIsEqual("foo-true-true");
+		Assert.assertEquals("foo-true-true", tester.getLastResponse().getHeader("X-Method-Result"));
+
+		// hanging invocations are bounded by the async result timeout
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/hanging");
+		Assert.assertEquals(504, tester.getLastResponse().getStatus());
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		// the method can read the time left before its deadline
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/deadline/0");
+		testIfResponseStringIsEqual("remaining-true");
+
+		// once the deadline has passed the method is interrupted and loses the
+		// request cycle, but it can still tell that its deadline has passed
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/deadline/5000");
+		Assert.assertEquals(504, tester.getLastResponse().getStatus());
+
+		// methods without deadline have no remaining time
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/deadline/interrupted");
+		testIfResponseStringIsEqual("interrupted-true-0-false--1");
+	}
+
+	@Test
+	public void testLargeTextualContent() throws Exception {
+		String largeText = RestResourceFullAnnotated.createLargeText(5000);
+
+		// long contents are encoded in chunks
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./api/largetext/5000");
+		Assert.assertEquals(largeText, new String(tester.getLastResponse().getBinaryContent(),
+				"UTF-8"));
+
+		// request bodies are read in chunks, keeping line terminators
+		BufferedMockRequest mockRequest = new BufferedMockRequest(tester.getApplication(),
+				tester.getHttpSession(), tester.getServletContext(), "POST");
+		mockRequest.setTextAsRequestBody(largeText);
+
+		Assert.assertEquals(largeText,
+				HttpUtils.readStringFromRequest(new ServletWebRequest(mockRequest, ""), "UTF-8"));
+	}
+
+	@Test
+	public void testStreamedResult() throws Exception {
+		StringBuilder expected = new StringBuilder();
+
+		for (int i = 0; i < 100; i++)
+			expected.append("element").append(i).append('\n');
+
+		// elements are written as the producer publishes them
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/stream/100");
+		testIfResponseStringIsEqual(expected.toString());
+		Assert.assertEquals(RestMimeTypes.TEXT_PLAIN, tester.getLastResponse().getContentType());
+	}
+
+	@Test
+	public void testMultiplexedConnection() throws Exception {
+		FrameClient client = openConnection();
+
+		try {
+			// responses are sent as soon as they are ready
+			client.request("1 GET /concurrency/delayed/500");
+			client.request("2 POST /api/19\nContent-Type: application/json\n\n"
+					+ TestJsonDesSer.getJSON());
+
+			RestFrame response = client.nextResponse();
+			Assert.assertEquals("2", response.getId());
+			Assert.assertEquals(200, response.getStatus());
+			Assert.assertEquals(TestJsonDesSer.getJSON(), response.getBody());
+
+			response = client.nextResponse();
+			Assert.assertEquals("1", response.getId());
+			Assert.assertEquals("delayed-500", response.getBody());
+			Assert.assertTrue(response.getHeader("Content-Type").startsWith(
+					RestMimeTypes.TEXT_PLAIN));
+
+			// authorization is checked as for HTTP requests
+			roles.clear();
+			client.request("3 GET /api/admin");
+			response = client.nextResponse();
+			Assert.assertEquals("3", response.getId());
+			Assert.assertEquals(401, response.getStatus());
+
+			// invalid frames are rejected
+			client.request("4 GET");
+			response = client.nextResponse();
+			Assert.assertEquals("4", response.getId());
+			Assert.assertEquals(400, response.getStatus());
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testBulkhead() throws Exception {
+		FrameClient client = openConnection();
+
+		try {
+			client.request("1 GET /concurrency/limited");
+			client.request("2 GET /concurrency/limited/started");
+			Assert.assertEquals("started-true", client.nextResponse().getBody());
+
+			client.request("3 GET /concurrency/inflight");
+			Assert.assertEquals("{GET /limited=1}", client.nextResponse().getBody());
+
+			// the excess request is rejected while the first one is running
+			client.request("4 GET /concurrency/limited");
+			RestFrame response = client.nextResponse();
+			Assert.assertEquals("4", response.getId());
+			Assert.assertEquals(503, response.getStatus());
+			Assert.assertEquals("2", response.getHeader("Retry-After"));
+
+			// other routes are not affected
+			client.request("5 GET /concurrency/delayed/0");
+			response = client.nextResponse();
+			Assert.assertEquals("5", response.getId());
+			Assert.assertEquals(200, response.getStatus());
+
+			// the first request completes once it's released
+			client.request("6 PUT /concurrency/limited/release");
+			Map<String, RestFrame> responses = client.nextResponses(2);
+			Assert.assertEquals(200, responses.get("6").getStatus());
+			Assert.assertEquals("limited-true", responses.get("1").getBody());
+
+			client.request("7 GET /concurrency/inflight");
+			Assert.assertEquals("{GET /limited=0}", client.nextResponse().getBody());
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testPriorityScheduling() throws Exception {
+		FrameClient client = openConnection();
+
+		try {
+			// the only worker of the scheduler is busy until the others are queued
+			client.request("1 GET /priority/work/hold");
+			client.request("2 GET /priority/work");
+			client.request("3 GET /priority/health");
+
+			Map<String, RestFrame> responses = client.nextResponses(3);
+			Assert.assertEquals("hold-true", responses.get("1").getBody());
+
+			// the method with higher priority goes ahead of the queued one
+			Assert.assertEquals("ok-1", responses.get("3").getBody());
+			Assert.assertEquals("work-2", responses.get("2").getBody());
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testRateLimit() {
+		for (int i = 0; i < 2; i++) {
+			tester.getRequest().setMethod("GET");
+			tester.getRequest().setHeader("X-Client", "a");
+			tester.executeUrl("./concurrency/rated");
+			testIfResponseStringIsEqual("rated");
+		}
+
+		// the bucket of the client is empty and gets a token every 30 seconds
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("X-Client", "a");
+		tester.executeUrl("./concurrency/rated");
+		Assert.assertEquals(429, tester.getLastResponse().getStatus());
+		Assert.assertEquals("30", tester.getLastResponse().getHeader("Retry-After"));
+
+		// other clients have their own bucket
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("X-Client", "b");
+		tester.executeUrl("./concurrency/rated");
+		testIfResponseStringIsEqual("rated");
+
+		// clients without the header are identified by their address
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./concurrency/rated");
+		testIfResponseStringIsEqual("rated");
+	}
+
+	@Test
+	public void testBatchRequest() {
+		roles.clear();
+
+		BufferedMockRequest mockRequest = newJsonMockRequest();
+		mockRequest.setHeader("Content-Type", RestMimeTypes.APPLICATION_JSON);
+		tester.setRequest(mockRequest);
+
+		tester.executeUrl("./concurrency/batch");
+
+		// every sub-request gets its own response, in the original order.
+		// Consecutive GET sub-requests run in parallel, so both of them reach
+		// the barrier
+		Assert.assertEquals(200, tester.getLastResponse().getStatus());
+		testIfResponseStringIsEqual("200 parallel-true\n200 parallel-true\n"
+				+ "401 User is not allowed to invoke method on server.\n"
+				+ "400 Batch requests can't be nested.\n");
+	}
+
+	@Test
+	public void testInProcessInvocation() {
+		roles.add("ROLE_ADMIN");
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./api/composite/7");
+		testIfResponseStringIsEqual("Mary-testMethodGetParameter");
+
+		// roles are checked for in-process invocations too
+		roles.clear();
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./api/composite/7");
+		Assert.assertEquals(401, tester.getLastResponse().getStatus());
+	}
+
+	@Test
+	public void testServerSentEvents() throws Exception {
+		for (int i = 1; i <= 4; i++) {
+			tester.getRequest().setMethod("PUT");
+			tester.executeUrl("./concurrency/events/value" + i);
+		}
+
+		// the stream ends once the broadcaster is closed
+		tester.getRequest().setMethod("DELETE");
+		tester.executeUrl("./concurrency/events");
+
+		// missed events are replayed from the bounded buffer
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Accept", RestMimeTypes.TEXT_EVENT_STREAM);
+		tester.getRequest().setHeader("Last-Event-ID", "1");
+		tester.executeUrl("./concurrency/events");
+
+		Assert.assertEquals(RestMimeTypes.TEXT_EVENT_STREAM + ";charset=UTF-8", tester
+				.getLastResponse().getContentType());
+		testIfResponseStringIsEqual(":\n\nid: 2\nevent: update\ndata: value2\n\n"
+				+ "id: 3\nevent: update\ndata: value3\n\nid: 4\nevent: update\ndata: value4\n\n");
+
+		// only events still in the buffer are replayed
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Last-Event-ID", "0");
+		tester.executeUrl("./concurrency/events");
+		Assert.assertTrue(tester.getLastResponseAsString().startsWith(":\n\nid: 2\n"));
+
+		// negative ids are ignored
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("Last-Event-ID", "-4");
+		tester.executeUrl("./concurrency/events");
+		testIfResponseStringIsEqual(":\n\n");
+	}
+
+	@Test
+	public void testConditionalRequests() throws Exception {
+		// cached responses have a hashed ETag and a last modified time
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/item/5");
+
+		String entityTag = tester.getLastResponse().getHeader("ETag");
+		String lastModified = tester.getLastResponse().getHeader("Last-Modified");
+
+		Assert.assertNotNull(entityTag);
+		Assert.assertNotNull(lastModified);
+
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("If-None-Match", "\"other\", " + entityTag);
+		tester.executeUrl("./cached/item/5");
+
+		assertEquals(304, tester.getLastResponse().getStatus());
+		assertEquals(0, tester.getLastResponse().getBinaryContent().length);
+
+		// the mock request parses dates with day precision
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().addDateHeader("If-Modified-Since",
+				System.currentTimeMillis() + 2 * 24 * 3600 * 1000);
+		tester.executeUrl("./cached/item/5");
+
+		assertEquals(304, tester.getLastResponse().getStatus());
+
+		// the version method avoids the invocation of the mapped method
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/versioned/7");
+
+		String response = tester.getLastResponseAsString();
+		entityTag = tester.getLastResponse().getHeader("ETag");
+
+		assertEquals("\"7.0\"", entityTag);
+
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("If-None-Match", entityTag);
+		tester.executeUrl("./cached/versioned/7");
+
+		assertEquals(304, tester.getLastResponse().getStatus());
+
+		tester.getRequest().setMethod("PUT");
+		tester.executeUrl("./cached/versioned/7");
+
+		tester.getRequest().setMethod("GET");
+		tester.getRequest().setHeader("If-None-Match", entityTag);
+		tester.executeUrl("./cached/versioned/7");
+
+		assertEquals(200, tester.getLastResponse().getStatus());
+		assertEquals("\"7.1\"", tester.getLastResponse().getHeader("ETag"));
+		Assert.assertFalse(response.equals(tester.getLastResponseAsString()));
+	}
+
+	@Test
+	public void testSerializeOnce() throws Exception {
+		// the same version of a returned object is serialized only once
+		for (int i = 0; i < 2; i++) {
+			tester.getRequest().setMethod("GET");
+			tester.executeUrl("./cached/configuration");
+			testIfResponseStringIsEqual("configuration-v0-1");
+			assertEquals("\"0\"", tester.getLastResponse().getHeader("ETag"));
+		}
+
+		tester.getRequest().setMethod("PUT");
+		tester.executeUrl("./cached/configuration");
+
+		tester.getRequest().setMethod("GET");
+		tester.executeUrl("./cached/configuration");
+		testIfResponseStringIsEqual("configuration-v1-2");
+	}
+
+	@Test
+	public void testCompressedRequestBody() throws Exception {
+		BufferedMockRequest mockRequest = newCompressedMockRequest(TestJsonDesSer.getJSON()
+				.getBytes("UTF-8"), "gzip");
+
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./compressed/19");
+		Assert.assertEquals(200, tester.getLastResponse().getStatus());
+
+		// decompressed size is checked against the max body size
+		mockRequest = newCompressedMockRequest(new byte[64 * 1024], "gzip");
+
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./compressed/19");
+		Assert.assertEquals(413, tester.getLastResponse().getStatus());
+
+		mockRequest = newCompressedMockRequest(new byte[16], "br");
+
+		tester.setRequest(mockRequest);
+		tester.executeUrl("./compressed/19");
+		Assert.assertEquals(415, tester.getLastResponse().getStatus());
+	}
+
+	private BufferedMockRequest newCompressedMockRequest(byte[] body, String encoding)
+			throws IOException {
+		BufferedMockRequest mockRequest = new BufferedMockRequest(tester.getApplication(),
+				tester.getHttpSession(), tester.getServletContext(), "POST");
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream outputStream = new GZIPOutputStream(compressed);
+
+		outputStream.write(body);
+		outputStream.close();
+
+		mockRequest.setBinaryRequestBody(compressed.toByteArray());
+		mockRequest.setHeader("Content-Encoding", encoding);
+
+		return mockRequest;
+	}
+
+	private String readCompressedResponse(boolean gzip) throws IOException {
+		InputStream compressed = new ByteArrayInputStream(tester.getLastResponse()
+				.getBinaryContent());
+		InputStream inputStream = gzip ? new GZIPInputStream(compressed)
+				: new InflaterInputStream(compressed);
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int read;
+
+		while ((read = inputStream.read(buffer)) > 0)
+			content.write(buffer, 0, read);
+
+		return content.toString("UTF-8");
+	}
+
+	/**
+	 * Opens a multiplexed connection to the application. Its frames are served
+	 * concurrently, so it's used to issue concurrent requests.
+	 */
+	private FrameClient openConnection() {
+		return new FrameClient(tester);
+	}
+
 	protected void testIfResponseStringIsEqual(String value) {
 		Assert.assertEquals(value, tester.getLastResponseAsString());
 	}
+
+	/**
+	 * Client side of a multiplexed connection that collects the frames sent
+	 * back by the application.
+	 */
+	private static class FrameClient implements IFrameSender {
+		private final BlockingQueue<String> sentFrames = new LinkedBlockingQueue<String>();
+		private final ExecutorService executor = Executors.newCachedThreadPool();
+		private final MultiplexedConnection connection;
+
+		FrameClient(WicketTester tester) {
+			connection = new MultiplexedConnection(new InternalRequestDispatcher(
+					tester.getApplication()), new VirtualHttpServletRequest(
+					tester.getRequest(), ""), this, executor, 4);
+		}
+
+		@Override
+		public void send(String message) {
+			sentFrames.add(message);
+		}
+
+		void request(String frame) {
+			connection.onMessage(frame);
+		}
+
+		RestFrame nextResponse() throws InterruptedException {
+			String frame = sentFrames.poll(5, TimeUnit.SECONDS);
+
+			Assert.assertNotNull("No response received", frame);
+			return RestFrame.parse(frame);
+		}
+
+		/**
+		 * Gets the next responses, whatever order they are sent in.
+		 */
+		Map<String, RestFrame> nextResponses(int count) throws InterruptedException {
+			Map<String, RestFrame> responses = new HashMap<String, RestFrame>();
+
+			for (int i = 0; i < count; i++) {
+				RestFrame response = nextResponse();
+				responses.put(response.getId(), response);
+			}
+
+			return responses;
+		}
+
+		void close() {
+			connection.close();
+			executor.shutdownNow();
+		}
+	}
 }
@@ -31,9 +31,13 @@ import org.wicketstuff.rest.contenthandling.RestMimeTypes;
 import org.wicketstuff.rest.contenthandling.serialdeserial.MultiFormatSerialDeserial;
 import org.wicketstuff.rest.contenthandling.serialdeserial.TestJsonDesSer;
 import org.wicketstuff.rest.contenthandling.serialdeserial.XmlSerialDeser;
+import org.wicketstuff.rest.resource.CachedRestResource;
+import org.wicketstuff.rest.resource.ConcurrencyRestResource;
 import org.wicketstuff.rest.resource.MultiFormatRestResource;
+import org.wicketstuff.rest.resource.PriorityRestResource;
 import org.wicketstuff.rest.resource.RegExpRestResource;
 import org.wicketstuff.rest.resource.RestResourceFullAnnotated;
+import org.wicketstuff.rest.utils.http.CompressedContentCache;
 
 
 
@@ -99,6 +103,54 @@ public class WicketApplication extends WebApplication implements IRoleCheckingSt
 			}
 			
 		});
+		
+		mountResource("/compressed", new ResourceReference("compressedRestResource"){
+			RestResourceFullAnnotated resource = new RestResourceFullAnnotated(new TestJsonDesSer(),
+					WicketApplication.this);
+			{
+				resource.setCompressionThreshold(16);
+				resource.setCompressedContentCache(new CompressedContentCache(16, 4096));
+				resource.setHashEntityTags(true);
+				resource.setMaxRequestBodySize(1024);
+				resource.setContentLengthThreshold(64);
+			}
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+			
+		});
+		
+		mountResource("/cached", new ResourceReference("cachedRestResource"){
+			CachedRestResource resource = new CachedRestResource(new TestJsonDesSer());
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+			
+		});
+		
+		mountResource("/concurrency", new ResourceReference("concurrencyRestResource"){
+			ConcurrencyRestResource resource = new ConcurrencyRestResource(new TestJsonDesSer());
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+			
+		});
+		
+		mountResource("/priority", new ResourceReference("priorityRestResource"){
+			PriorityRestResource resource = new PriorityRestResource(new TestJsonDesSer());
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+			
+		});
 	}
 	
 	@Override
@@ -18,6 +18,8 @@ package org.wicketstuff.rest.contenthandling.serialdeserial;
 
 import org.wicketstuff.rest.contenthandling.RestMimeTypes;
 import org.wicketstuff.rest.resource.RestResourceFullAnnotated;
+import org.wicketstuff.rest.utils.batch.BatchRequest;
+import org.wicketstuff.rest.utils.batch.BatchResponse;
 
 public class TestJsonDesSer extends TextualObjectSerialDeserial {
 	public TestJsonDesSer() {
@@ -32,13 +34,33 @@ public class TestJsonDesSer extends TextualObjectSerialDeserial {
 		return "{\"name\" : \"Mary\", \"surname\" : \"Smith\", \"email\" : \"m.smith@gmail.com\"}";
 	}
 
+	static public BatchRequest[] getBatch() {
+		return new BatchRequest[] { new BatchRequest("GET", "/concurrency/barrier"),
+				new BatchRequest("GET", "/concurrency/barrier"),
+				new BatchRequest("GET", "/api/admin"),
+				new BatchRequest("POST", "/concurrency/batch") };
+	}
+
 	@Override
 	public String objectToString(Object targetObject, String mimeType) {
+		if (targetObject instanceof BatchResponse[]) {
+			StringBuilder result = new StringBuilder();
+
+			for (BatchResponse response : (BatchResponse[]) targetObject)
+				result.append(response.getStatus()).append(' ').append(response.getBody())
+						.append('\n');
+
+			return result.toString();
+		}
+
 		return getJSON();
 	}
 
 	@Override
 	public <T> T stringToObject(String source, Class<T> targetClass, String mimeType) {
+		if (targetClass == BatchRequest[].class)
+			return (T) getBatch();
+
 		return (T) getObject();
 	}
 }
@@ -0,0 +1,126 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.resource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.http.WebResponse;
+import org.wicketstuff.rest.annotations.Cacheable;
+import org.wicketstuff.rest.annotations.Coalesced;
+import org.wicketstuff.rest.annotations.Idempotent;
+import org.wicketstuff.rest.annotations.MethodMapping;
+import org.wicketstuff.rest.annotations.Versioned;
+import org.wicketstuff.rest.annotations.parameters.RequestParam;
+import org.wicketstuff.rest.contenthandling.IVersionedObject;
+import org.wicketstuff.rest.contenthandling.RestMimeTypes;
+import org.wicketstuff.rest.contenthandling.serialdeserial.TestJsonDesSer;
+import org.wicketstuff.rest.utils.http.HttpMethod;
+
+public class CachedRestResource extends AbstractRestResource<TestJsonDesSer> {
+	private final AtomicInteger invocationCount = new AtomicInteger();
+	private final AtomicInteger version = new AtomicInteger();
+	private final VersionedConfiguration configuration = new VersionedConfiguration();
+
+	public CachedRestResource(TestJsonDesSer jsonSerialDeserial) {
+		super(jsonSerialDeserial);
+	}
+
+	@MethodMapping(value = "/item/{id}", produces = RestMimeTypes.TEXT_PLAIN)
+	@Cacheable(value = "items", queryParams = "lang")
+	public String getItem(int id, @RequestParam(value = "lang", required = false) String lang) {
+		return "item" + id + "-" + lang + "-" + invocationCount.incrementAndGet();
+	}
+
+	@MethodMapping(value = "/item/{id}", httpMethod = HttpMethod.PUT, produces = RestMimeTypes.TEXT_PLAIN)
+	public void updateItem(int id) {
+		invalidateResponseCache("items");
+	}
+
+	@MethodMapping(value = "/versioned/{id}", produces = RestMimeTypes.TEXT_PLAIN)
+	@Versioned("getVersionedItemVersion")
+	public String getVersionedItem(int id) {
+		return "item" + id + "-v" + version.get() + "-" + invocationCount.incrementAndGet();
+	}
+
+	public String getVersionedItemVersion(int id) {
+		return id + "." + version.get();
+	}
+
+	@MethodMapping(value = "/versioned/{id}", httpMethod = HttpMethod.PUT, produces = RestMimeTypes.TEXT_PLAIN)
+	public void updateVersionedItem(int id) {
+		version.incrementAndGet();
+	}
+
+	@MethodMapping(value = "/report/{id}", produces = RestMimeTypes.TEXT_PLAIN)
+	@Coalesced(queryParams = "lang")
+	public String getReport(int id, @RequestParam(value = "lang", required = false) String lang) {
+		return "report" + id + "-" + lang + "-" + invocationCount.incrementAndGet();
+	}
+
+	@MethodMapping(value = "/orders", httpMethod = HttpMethod.POST, produces = RestMimeTypes.TEXT_PLAIN)
+	@Idempotent
+	public String createOrder() {
+		int orderId = invocationCount.incrementAndGet();
+		WebResponse response = (WebResponse) RequestCycle.get().getResponse();
+
+		response.setStatus(201);
+		response.setHeader("Location", "/orders/" + orderId);
+
+		return "order" + orderId;
+	}
+
+	@MethodMapping(value = "/receipts", httpMethod = HttpMethod.POST, produces = RestMimeTypes.TEXT_PLAIN)
+	@Idempotent
+	public String createReceipt() {
+		StringBuilder receipt = new StringBuilder("receipt" + invocationCount.incrementAndGet());
+
+		// big enough to be compressed
+		for (int i = 0; i < 256; i++)
+			receipt.append(" line").append(i);
+
+		return receipt.toString();
+	}
+
+	@MethodMapping(value = "/configuration", produces = RestMimeTypes.TEXT_PLAIN)
+	public VersionedConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	@MethodMapping(value = "/configuration", httpMethod = HttpMethod.PUT, produces = RestMimeTypes.TEXT_PLAIN)
+	public void updateConfiguration() {
+		configuration.version++;
+	}
+
+	/**
+	 * Versioned object that counts how many times it's serialized.
+	 */
+	public static class VersionedConfiguration implements IVersionedObject {
+		private volatile int version;
+		private final AtomicInteger serializationCount = new AtomicInteger();
+
+		@Override
+		public String getVersion() {
+			return String.valueOf(version);
+		}
+
+		@Override
+		public String toString() {
+			return "configuration-v" + version + "-" + serializationCount.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.resource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.http.WebResponse;
+import org.wicketstuff.rest.annotations.AsyncInvocation;
+import org.wicketstuff.rest.annotations.Bulkhead;
+import org.wicketstuff.rest.annotations.Deadline;
+import org.wicketstuff.rest.annotations.MethodMapping;
+import org.wicketstuff.rest.annotations.RateLimited;
+import org.wicketstuff.rest.contenthandling.RestMimeTypes;
+import org.wicketstuff.rest.contenthandling.serialdeserial.TestJsonDesSer;
+import org.wicketstuff.rest.utils.concurrent.StreamPublisher;
+import org.wicketstuff.rest.utils.http.HttpMethod;
+import org.wicketstuff.rest.utils.sse.EventBroadcaster;
+
+public class ConcurrencyRestResource extends AbstractRestResource<TestJsonDesSer> {
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final EventBroadcaster broadcaster = new EventBroadcaster(3);
+	private final CountDownLatch deadlineInterrupted = new CountDownLatch(1);
+	private volatile String stateAfterDeadline;
+	private final CountDownLatch limitedStarted = new CountDownLatch(1);
+	private final CountDownLatch limitedReleased = new CountDownLatch(1);
+	private final CyclicBarrier parallelBarrier = new CyclicBarrier(2);
+
+	public ConcurrencyRestResource(TestJsonDesSer jsonSerialDeserial) {
+		super(jsonSerialDeserial);
+		setAsyncResultTimeout(500);
+		setBatchPath("/batch");
+	}
+
+	@MethodMapping(value = "/future/{value}", produces = RestMimeTypes.TEXT_PLAIN)
+	public Future<String> getFutureValue(final String value) {
+		return executor.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return "async-" + value;
+			}
+		});
+	}
+
+	@MethodMapping(value = "/slowfuture", produces = RestMimeTypes.TEXT_PLAIN)
+	public Future<String> getSlowFutureValue() {
+		return executor.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				Thread.sleep(10000);
+				return "too late";
+			}
+		});
+	}
+
+	@MethodMapping(value = "/direct/{value}", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getDirectValue(String value) {
+		return describeInvocation(value);
+	}
+
+	@MethodMapping(value = "/offloaded/{value}", produces = RestMimeTypes.TEXT_PLAIN)
+	@AsyncInvocation
+	public String getOffloadedValue(String value) {
+		return describeInvocation(value);
+	}
+
+	@MethodMapping(value = "/hanging", produces = RestMimeTypes.TEXT_PLAIN)
+	@AsyncInvocation
+	public String getHangingValue() throws InterruptedException {
+		Thread.sleep(10000);
+		return "too late";
+	}
+
+	@MethodMapping(value = "/delayed/{millis}", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getDelayedValue(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+		return "delayed-" + millis;
+	}
+
+	@MethodMapping(value = "/barrier", produces = RestMimeTypes.TEXT_PLAIN)
+	public String awaitBarrier() {
+		// passed only by two invocations running at the same time
+		try {
+			parallelBarrier.await(5, TimeUnit.SECONDS);
+			return "parallel-true";
+		} catch (Exception e) {
+			return "parallel-false";
+		}
+	}
+
+	@Deadline(200)
+	@MethodMapping(value = "/deadline/{millis}", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getDeadlineValue(long millis) {
+		long remainingTime = getRemainingTime();
+
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			// the deadline has passed and the request is over
+			stateAfterDeadline = getRemainingTime() + "-" + (RequestCycle.get() != null);
+			deadlineInterrupted.countDown();
+		}
+
+		return "remaining-" + (remainingTime > 0 && remainingTime <= 200);
+	}
+
+	@MethodMapping(value = "/deadline/interrupted", produces = RestMimeTypes.TEXT_PLAIN)
+	public String isDeadlineInterrupted() throws InterruptedException {
+		boolean interrupted = deadlineInterrupted.await(5, TimeUnit.SECONDS);
+
+		return "interrupted-" + interrupted + "-" + stateAfterDeadline + "-" + getRemainingTime();
+	}
+
+	@Bulkhead(value = 1, retryAfter = 2)
+	@MethodMapping(value = "/limited", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getLimitedValue() throws InterruptedException {
+		limitedStarted.countDown();
+
+		// the permit is held until the test releases it
+		return "limited-" + limitedReleased.await(5, TimeUnit.SECONDS);
+	}
+
+	@MethodMapping(value = "/limited/started", produces = RestMimeTypes.TEXT_PLAIN)
+	public String isLimitedStarted() throws InterruptedException {
+		return "started-" + limitedStarted.await(5, TimeUnit.SECONDS);
+	}
+
+	@MethodMapping(value = "/limited/release", httpMethod = HttpMethod.PUT, produces = RestMimeTypes.TEXT_PLAIN)
+	public void releaseLimited() {
+		limitedReleased.countDown();
+	}
+
+	@RateLimited(value = 2, unit = TimeUnit.MINUTES, keyType = RateLimited.KeyType.HEADER, header = "X-Client")
+	@MethodMapping(value = "/rated", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getRatedValue() {
+		return "rated";
+	}
+
+	@MethodMapping(value = "/inflight", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getInFlightValues() {
+		return getInFlightCounts().toString();
+	}
+
+	@MethodMapping(value = "/stream/{count}", produces = RestMimeTypes.TEXT_PLAIN)
+	public StreamPublisher<String> getStream(final int count) {
+		final StreamPublisher<String> publisher = new StreamPublisher<String>(2);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < count && publisher.publish("element" + i); i++)
+						;
+
+					publisher.complete();
+				} catch (InterruptedException e) {
+					publisher.fail(e);
+				}
+			}
+		});
+
+		return publisher;
+	}
+
+	@MethodMapping(value = "/events", produces = RestMimeTypes.TEXT_PLAIN)
+	public EventBroadcaster getEvents() {
+		return broadcaster;
+	}
+
+	@MethodMapping(value = "/events/{value}", httpMethod = HttpMethod.PUT, produces = RestMimeTypes.TEXT_PLAIN)
+	public void broadcastEvent(String value) {
+		broadcaster.broadcast("update", value);
+	}
+
+	@MethodMapping(value = "/events", httpMethod = HttpMethod.DELETE, produces = RestMimeTypes.TEXT_PLAIN)
+	public void closeEvents() {
+		broadcaster.close();
+	}
+
+	private String describeInvocation(String value) {
+		// the Wicket thread context must be available to the method
+		return value + "-" + (RequestCycle.get() != null) + "-"
+				+ Thread.currentThread().getName().startsWith("rest-method");
+	}
+
+	@Override
+	protected void onAfterMethodInvoked(MethodMappingInfo mappedMethod, Attributes attributes,
+			Object result) {
+		// exposes the result passed to this method
+		((WebResponse) attributes.getResponse()).setHeader("X-Method-Result", String.valueOf(result));
+	}
+}
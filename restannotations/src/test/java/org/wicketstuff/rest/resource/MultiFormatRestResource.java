@@ -39,4 +39,10 @@ public class MultiFormatRestResource extends AbstractRestResource<MultiFormatSer
 	public Person returnMarshaledObject(){
 		return RestResourceFullAnnotated.createTestPerson();
 	}
+	
+	@MethodMapping(value = "/negotiated/person", produces = { RestMimeTypes.APPLICATION_JSON,
+			RestMimeTypes.APPLICATION_XML })
+	public Person returnNegotiatedObject(){
+		return RestResourceFullAnnotated.createTestPerson();
+	}
 }
@@ -0,0 +1,65 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wicketstuff.rest.resource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.wicketstuff.rest.annotations.MethodMapping;
+import org.wicketstuff.rest.annotations.Priority;
+import org.wicketstuff.rest.contenthandling.RestMimeTypes;
+import org.wicketstuff.rest.contenthandling.serialdeserial.TestJsonDesSer;
+import org.wicketstuff.rest.utils.concurrent.PriorityScheduler;
+
+public class PriorityRestResource extends AbstractRestResource<TestJsonDesSer> {
+	private final CountDownLatch submitted = new CountDownLatch(3);
+	private final AtomicInteger executed = new AtomicInteger();
+
+	public PriorityRestResource(TestJsonDesSer jsonSerialDeserial) {
+		super(jsonSerialDeserial);
+		setRequestScheduler(new PriorityScheduler(1, 10, 10000) {
+			@Override
+			public <T> Future<T> submit(Callable<T> callable, int priority) {
+				Future<T> future = super.submit(callable, priority);
+
+				submitted.countDown();
+				return future;
+			}
+		});
+		setRolePriority("ROLE_ADMIN", 5);
+	}
+
+	@MethodMapping(value = "/work/hold", produces = RestMimeTypes.TEXT_PLAIN)
+	public String holdWorker() throws InterruptedException {
+		// the worker is released once the other two invocations are queued
+		return "hold-" + submitted.await(5, TimeUnit.SECONDS);
+	}
+
+	@MethodMapping(value = "/work", produces = RestMimeTypes.TEXT_PLAIN)
+	public String doWork() {
+		return "work-" + executed.incrementAndGet();
+	}
+
+	@Priority(10)
+	@MethodMapping(value = "/health", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getHealth() {
+		return "ok-" + executed.incrementAndGet();
+	}
+}
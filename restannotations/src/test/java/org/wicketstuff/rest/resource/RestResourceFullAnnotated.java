@@ -168,6 +168,31 @@ public class RestResourceFullAnnotated extends AbstractRestResource<TestJsonDesS
 		return "testRequiredDefault";
 	}
 	
+	@MethodMapping(value = "/composite/{id}", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getComposite(int id) {
+		// other routes are invoked without HTTP and serialization
+		Person person = invoke(HttpMethod.POST, "/" + id, createTestPerson(), Person.class);
+		String product = invoke(HttpMethod.GET, "/products/" + id + "?price=2.5", null,
+				String.class);
+		invoke(HttpMethod.GET, "/admin", null, Void.class);
+
+		return person.getName() + "-" + product;
+	}
+
+	@MethodMapping(value = "/largetext/{lines}", produces = RestMimeTypes.TEXT_PLAIN)
+	public String getLargeText(int lines) {
+		return createLargeText(lines);
+	}
+	
+	public static String createLargeText(int lines) {
+		StringBuilder text = new StringBuilder();
+		
+		for (int i = 0; i < lines; i++)
+			text.append("line ").append(i).append(" \u00e0\u00e8\u00ec \u20ac\n");
+		
+		return text.toString();
+	}
+	
 	public static Person createTestPerson() {
 		return new Person("Mary", "Smith", "m.smith@gmail.com");
 	}